@@ -1,10 +1,74 @@
 import tester.*;
 import javalib.impworld.*;
 import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.imageio.ImageIO;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
 
 import javalib.worldimages.*;
 
@@ -13,21 +77,17 @@ class Node {
   private final ArrayList<Edge> outEdges;
   private final int row;
   private final int col;
-  // color method changes this Node's render color for animation, user control
-  private Color renderColor;
 
-  Node(ArrayList<Edge> outEdges, int row, int col, Color renderColor) {
+  Node(ArrayList<Edge> outEdges, int row, int col) {
     this.outEdges = outEdges;
     this.row = row;
     this.col = col;
-    this.renderColor = renderColor;
   }
 
   Node(int row, int col) {
     this.outEdges = new ArrayList<Edge>();
     this.row = row;
     this.col = col;
-    this.renderColor = Color.LIGHT_GRAY;
   }
 
   // adds the given MazeNode to be included in this MazeNode's outEdges
@@ -45,32 +105,42 @@ class Node {
     edge.getOtherNode(this).outEdges.add(edge);
   }
 
-  // initializes the given list with the edges of this MazeNode
-  // EFFECT: adds the edges of this MazeNode to the given list
-  void addEdgesToList(ArrayList<Edge> edgeList) {
-    for (Edge me : this.outEdges) {
-      if (!edgeList.contains(me)) {
-        edgeList.add(me);
+  // returns the Edge between this Node and the given Node, or null if they are
+  // not neighbors
+  Edge edgeTo(Node other) {
+    for (int i = 0; i < this.outEdges.size(); i += 1) {
+      Edge edge = this.outEdges.get(i);
+      if (edge.getOtherNode(this) == other) {
+        return edge;
       }
     }
+    return null;
   }
 
-  // adds the connected nodes to this MazeNode
-  // EFFECT: adds the nodes present in validPaths to the given nodeList
-  void addConnectedNodes(ArrayList<Node> nodeList, ArrayList<Node> alreadySeen,
-      HashMap<Node, Node> prev, ArrayList<Edge> validPaths, boolean addAtTail) {
-    for (Edge e : this.outEdges) {
-      if (validPaths.contains(e)) {
-        Node connectedNode = e.getOtherNode(this);
-        if (!alreadySeen.contains(connectedNode)) {
-          if (addAtTail) {
-            nodeList.add(connectedNode);
-          }
-          else {
-            nodeList.add(0, connectedNode);
-          }
-          prev.put(connectedNode, this);
-        }
+  // removes every edge from this Node, keeping the list's storage for reuse
+  // EFFECT: clears this Node's outEdges
+  void clearEdges() {
+    this.outEdges.clear();
+  }
+
+  // returns the index of this Node in a row-major grid of the given width
+  int index(int width) {
+    return this.row * width + this.col;
+  }
+
+  // appends each distinct edge of this MazeNode to the given list, comparing it
+  // only with the few other edges of this MazeNode, so an Edge shared with a Node
+  // already added is added again
+  // EFFECT: adds the edges of this MazeNode to the given list
+  void addEdgesToList(ArrayList<Edge> edgeList) {
+    for (int i = 0; i < this.outEdges.size(); i += 1) {
+      Edge me = this.outEdges.get(i);
+      boolean repeated = false;
+      for (int j = 0; j < i; j += 1) {
+        repeated = repeated || this.outEdges.get(j) == me;
+      }
+      if (!repeated) {
+        edgeList.add(me);
       }
     }
   }
@@ -86,56 +156,46 @@ class Node {
     }
   }
 
-  // returns whether this MazeNode connects to the given MazeNode
-  boolean connectsToNode(Node mn, ArrayList<Edge> validPaths) {
-    for (Node cmn : this.connectedNodes(validPaths)) {
-      if (mn == cmn) {
-        return true;
-      }
-    }
-
-    return false;
-  }
-
-  // renders this MazeNode as an rectangular square, with borders if necessary
-  WorldImage render(int width, int height, ArrayList<Edge> validPaths, int nodeDim) {
-    WorldImage nodeImage = new RectangleImage(nodeDim, nodeDim, OutlineMode.SOLID,
-        this.renderColor);
+  // renders this Node as a square of the given color, with a border for each of
+  // its Edges whose passage is closed in the given bit planes
+  WorldImage render(WallPlanes walls, int nodeDim, Color color) {
+    WorldImage nodeImage = new RectangleImage(nodeDim, nodeDim, OutlineMode.SOLID, color);
+    int width = walls.getWidth();
 
     for (Edge me : this.outEdges) {
-      if (!validPaths.contains(me)) {
+      if (!walls.isOpen(me.firstIndex(width), me.secondIndex(width))) {
         nodeImage = me.renderBorder(nodeImage, this, nodeDim);
       }
     }
     return nodeImage;
   }
 
-  // initializes this Node's color field
-  // EFFECT: sets this Node's render color to the given color
-  void color(Color color) {
-    this.renderColor = color;
-  }
-
-  void resetColor() {
-    if (this.row == 0 && this.col == 0) {
-      this.color(Color.GREEN);
-    }
-    else {
-      this.color(Color.LIGHT_GRAY);
+  // returns the number of this Node's Edges whose passage is open in the given
+  // bit planes, checking one Edge at a time as render does
+  int openEdgeCount(WallPlanes walls) {
+    int width = walls.getWidth();
+    int count = 0;
+    for (Edge me : this.outEdges) {
+      if (walls.isOpen(me.firstIndex(width), me.secondIndex(width))) {
+        count += 1;
+      }
     }
+    return count;
   }
 
-  // returns the MazeNodes connected to this Node given the valid MazeEdges that
-  // indicated which edges can connect two MazeNodes and which can't
-  ArrayList<Node> connectedNodes(ArrayList<Edge> validPaths) {
-    ArrayList<Node> res = new ArrayList<Node>();
+  // returns the number of this Node's Edges whose passage is open in exactly
+  // one of the given bit planes, checking one Edge at a time
+  int changedEdgeCount(WallPlanes walls, WallPlanes others) {
+    int width = walls.getWidth();
+    int count = 0;
     for (Edge me : this.outEdges) {
-      if (validPaths.contains(me)) {
-        res.add(me.getOtherNode(this));
+      int first = me.firstIndex(width);
+      int second = me.secondIndex(width);
+      if (walls.isOpen(first, second) != others.isOpen(first, second)) {
+        count += 1;
       }
     }
-
-    return res;
+    return count;
   }
 }
 
@@ -143,7 +203,8 @@ class Node {
 class Edge {
   private final Node firstNode;
   private final Node secondNode;
-  private final int weight;
+  // not final since pooled Edges are reweighed each time the maze is regenerated
+  private int weight;
 
   Edge(Node firstNode, Node secondNode, int weight) {
     this.firstNode = firstNode;
@@ -157,18 +218,22 @@ class Edge {
     return this.weight - me.weight;
   }
 
-  // returns whether this MazeEdge's firstNode and secondNode have the same
-  // representatives in the given MazeUnionFind data structure
-  boolean sameRepresentatives(UnionFind uf) {
-    return uf.find(this.firstNode) == uf.find(this.secondNode);
+  // returns the index of this Edge's first Node in a row-major grid of the given
+  // width
+  int firstIndex(int width) {
+    return this.firstNode.index(width);
+  }
+
+  // returns the index of this Edge's second Node in a row-major grid of the given
+  // width
+  int secondIndex(int width) {
+    return this.secondNode.index(width);
   }
 
-  // unions this Edge's firstNode and secondNode - placing it as part of the same
-  // tree
-  // EFFECT: maps this MazeEdge's firstNode to this MazeEdge's secondNode in the
-  // MazeUnionFind data structure
-  void unionNodes(UnionFind uf) {
-    uf.union(this.firstNode, this.secondNode);
+  // sets the weight of this Edge
+  // EFFECT: sets this Edge's weight to the given weight
+  void reweigh(int weight) {
+    this.weight = weight;
   }
 
   // renders this MazeEdge's border onto the given nodeImage of the given node
@@ -209,695 +274,8024 @@ class Edge {
   }
 }
 
-// to represent the Union-Find data structure for Kruskal's algorithm
-class UnionFind {
-  private final HashMap<Node, Node> representatives;
-
-  UnionFind(HashMap<Node, Node> representatives) {
-    this.representatives = representatives;
+// to represent how many animation steps a Maze runs per tick
+// an animation is spread over at most targetSeconds of wall time, judged by the
+// measured time between ticks (which includes drawing each frame), and its steps
+// may use at most stepShare of each tick; animations short enough to finish in
+// time at one step per tick keep moving one step per tick
+class AnimationScheduler {
+  // longest gap between ticks that is taken into account, so a pause in ticking
+  // does not make the next animation rush
+  static final long MAX_INTERVAL_NANOS = 1000000000L;
+
+  private final double tickNanos;
+  private final double targetNanos;
+  private final double stepShare;
+  private long lastTick;
+  // moving averages of the time between ticks and of the cost of one step, 0
+  // until measured
+  private double intervalNanos;
+  private double stepNanos;
+
+  AnimationScheduler(double tickSeconds, double targetSeconds, double stepShare) {
+    this.tickNanos = tickSeconds * 1e9;
+    this.targetNanos = targetSeconds * 1e9;
+    this.stepShare = stepShare;
+    this.lastTick = -1;
+    this.intervalNanos = 0;
+    this.stepNanos = 0;
   }
 
-  UnionFind() {
-    this.representatives = new HashMap<Node, Node>();
+  // returns how many steps to run in the tick starting at the given time, for an
+  // animation with the given number of steps in total
+  // EFFECT: updates the measured time between ticks
+  int stepsPerTick(int total, long now) {
+    if (this.lastTick >= 0) {
+      double gap = Math.min(now - this.lastTick, MAX_INTERVAL_NANOS);
+      if (this.intervalNanos == 0) {
+        this.intervalNanos = gap;
+      }
+      else {
+        this.intervalNanos = 0.8 * this.intervalNanos + 0.2 * gap;
+      }
+    }
+    this.lastTick = now;
+
+    double interval = Math.max(this.tickNanos, this.intervalNanos);
+    int steps = (int) Math.ceil(total * interval / this.targetNanos);
+
+    if (this.stepNanos > 0) {
+      steps = Math.min(steps, (int) (this.stepShare * interval / this.stepNanos));
+    }
+
+    return Math.max(1, steps);
   }
 
-  // initializes the representatives HashMap
-  // EFFECT: maps every MazeNode in the given nodes list to itself into
-  // representatives
-  void initRepresentatives(ArrayList<ArrayList<Node>> nodes) {
-    for (int i = 0; i < nodes.size(); i += 1) {
-      for (int j = 0; j < nodes.get(i).size(); j += 1) {
-        Node node = nodes.get(i).get(j);
-        this.representatives.put(node, node);
-      }
+  // records how long the given number of steps took
+  // EFFECT: updates the measured cost of one step
+  void recordSteps(int steps, long nanos) {
+    double perStep = (double) nanos / Math.max(1, steps);
+    if (this.stepNanos == 0) {
+      this.stepNanos = perStep;
     }
+    else {
+      this.stepNanos = 0.8 * this.stepNanos + 0.2 * perStep;
+    }
+  }
+}
+
+// to represent the candidate passages of a board for Kruskal's algorithm as
+// packed longs, each holding a passage's key in its high 32 bits and its id in
+// its low 32 bits, so they can be sorted and walked without an Edge apiece
+// a passage's id is 4 * cell + slot, where cell is the earlier of its two cells
+// in row-major order and slot is the forward slot of the later one, as in
+// NodeArena; its key is hashed from a seed and its id, so any passage's key can
+// be recomputed on demand, in any order
+class PassageKeys {
+  private long[] keys;
+  private long[] scratch;
+  private int[] counts;
+  private int size;
+
+  PassageKeys() {
+    this.keys = new long[0];
+    this.scratch = new long[0];
+    this.counts = new int[0];
+    this.size = 0;
+  }
+
+  // returns the draw from 0 to 99 of the passage with the given id, mixed from
+  // the given seed and the id with the SplitMix64 finalizer
+  static int draw(long seed, int id) {
+    long z = seed + (id + 1L) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    z = z ^ (z >>> 31);
+    return (int) ((z >>> 1) % 100);
   }
 
-  // finds the representative of the given MazeNode
-  Node find(Node mn) {
-    if (mn == this.representatives.get(mn)) {
-      return mn;
+  // returns the id of the passage from the given cell to its neighbor at the
+  // given forward offset
+  static int id(int cell, int rowStep, int colStep) {
+    if (rowStep == 0) {
+      return 4 * cell;
     }
     else {
-      return this.find(this.representatives.get(mn));
+      return 4 * cell + colStep + 2;
     }
   }
 
-  // unions the first given MazeNode with the second given MazeNode
-  // EFFECT: maps the representative of the first given MazeNode to the second
-  // given MazeNode in representatives
-  void union(Node mn1, Node mn2) {
-    this.representatives.put(this.find(mn1), this.find(mn2));
+  // returns the earlier cell of the passage with the given id
+  static int cell(int id) {
+    return id >>> 2;
   }
 
-  // returns the amount of trees in this Union-Find data structure
-  int treeCount() {
-    ArrayList<Node> uniqueReps = new ArrayList<Node>();
-    for (Node mn : this.representatives.keySet()) {
-      if (!uniqueReps.contains(this.find(mn))) {
-        uniqueReps.add(this.find(mn));
-      }
+  // returns the row offset from the earlier to the later cell of the passage
+  // with the given id
+  static int rowStep(int id) {
+    if ((id & 3) == 0) {
+      return 0;
+    }
+    else {
+      return 1;
     }
+  }
 
-    return uniqueReps.size();
+  // returns the column offset from the earlier to the later cell of the passage
+  // with the given id
+  static int colStep(int id) {
+    if ((id & 3) == 0) {
+      return 1;
+    }
+    else {
+      return (id & 3) - 2;
+    }
   }
-}
 
-//to represent a comparator to sort Edges by their weights
-class SortByWeight implements Comparator<Edge> {
-  public int compare(Edge me1, Edge me2) {
-    return me1.compareTo(me2);
+  // fills these keys with the passages between active neighbors of the given
+  // mask in the given topology, keyed from the given seed and skewed by the
+  // given bias map, in row-major order of their earlier cells
+  // EFFECT: replaces the contents of these keys, growing their storage if needed
+  void build(int width, int height, long seed, BiasMap bias, MazeMask mask,
+      Topology topology) {
+    int capacity = Topology.MAX_DEGREE * mask.activeCount();
+    if (capacity > this.keys.length) {
+      this.keys = new long[Math.max(capacity, 2 * this.keys.length)];
+    }
+
+    this.size = 0;
+    for (int k = 0; k < mask.activeCount(); k += 1) {
+      int cell = mask.activeCell(k);
+      int i = cell / width;
+      int j = cell % width;
+      int[] dr = topology.rowOffsets(i, j);
+      int[] dc = topology.colOffsets(i, j);
+      int region = bias.regionOf(i, j, width, height);
+
+      for (int n = 0; n < dr.length; n += 1) {
+        int row = i + dr[n];
+        int col = j + dc[n];
+        if ((dr[n] > 0 || (dr[n] == 0 && dc[n] > 0)) && row < height && col >= 0
+            && col < width && mask.isActive(row * width + col)) {
+          int id = PassageKeys.id(cell, dr[n], dc[n]);
+          long key = bias.key(PassageKeys.draw(seed, id), dr[n] == 0, region);
+          this.keys[this.size] = (key << 32) | id;
+          this.size += 1;
+        }
+      }
+    }
   }
-}
 
-// to represent the Maze
-class Maze extends World {
-  // ArrayList representing all the nodes in the Maze
-  // not final since nodes can be reinitialized to create a different maze
-  private ArrayList<ArrayList<Node>> nodes;
+  // sorts these passages by key, keeping passages of equal key in order
+  // EFFECT: reorders these keys
+  void sort() {
+    int maxKey = 0;
+    for (int i = 0; i < this.size; i += 1) {
+      maxKey = Math.max(maxKey, this.key(i));
+    }
 
-  // ArrayList of Edge representing all edges that can be traversed (connections
-  // between Nodes that aren't walls)
-  // validPaths must be reinitialized for knocking down walls, or constructing the
-  // maze
-  private ArrayList<Edge> validPaths;
+    if (maxKey + 2 > this.counts.length) {
+      this.counts = new int[Math.max(maxKey + 2, 2 * this.counts.length)];
+    }
+    if (this.size > this.scratch.length) {
+      this.scratch = new long[Math.max(this.size, 2 * this.scratch.length)];
+    }
 
-  // width and height of the maze
-  // dimensions of nodes of the maze can be reinitialized since width and height
-  // can be changed
-  private int width;
-  private int height;
-  private int sceneWidth;
-  private int sceneHeight;
-  private int nodeDim;
-  private Node topLeft;
-  private Node bottomRight;
+    Arrays.fill(this.counts, 0, maxKey + 2, 0);
+    for (int i = 0; i < this.size; i += 1) {
+      this.counts[this.key(i) + 1] += 1;
+    }
+    for (int w = 1; w <= maxKey + 1; w += 1) {
+      this.counts[w] += this.counts[w - 1];
+    }
 
-  // searchPath and visitedNodes change based on BFS or DFS
-  private ArrayList<Node> searchPath;
-  private ArrayList<Node> visitedNodes;
+    for (int i = 0; i < this.size; i += 1) {
+      int key = this.key(i);
+      this.scratch[this.counts[key]] = this.keys[i];
+      this.counts[key] += 1;
+    }
 
-  private final Random rand;
+    long[] sorted = this.scratch;
+    this.scratch = this.keys;
+    this.keys = sorted;
+  }
 
-  // states of the Maze
-  // states are mutated to allow for functionality of the program
-  private boolean bfs;
-  private boolean mazeConstructionControl;
-  private boolean userControl;
-  private boolean searchControl;
-  private boolean pathAnimationControl;
-  private boolean finishedPathAnimation;
-  private boolean viewVisitedPaths;
-  private boolean viewColorGradient;
-  private int pathAnimationIndex;
-  private int searchAnimationIndex;
-  private boolean horizBias;
-  private boolean vertBias;
-  private int mazeAnimationIndex;
-  private int userRow;
-  private int userCol;
-  private String title;
-  private int wrongMoves;
-  private int steps;
+  // returns the number of passages held
+  int size() {
+    return this.size;
+  }
 
-  Maze(int width, int height, Random rand) {
-    this.nodes = new ArrayList<ArrayList<Node>>();
-    this.rand = rand;
-    this.nodeDim = 20;
+  // returns the key of the k-th passage
+  int key(int k) {
+    return (int) (this.keys[k] >>> 32);
+  }
 
-    this.genNewMaze(width, height);
+  // returns the id of the k-th passage
+  int id(int k) {
+    return (int) this.keys[k];
   }
+}
 
-  Maze(int width, int height) {
-    this(width, height, new Random());
+// to represent the open passages of a board as bit planes, one per forward slot
+// as in NodeArena: bit c of plane s is set when cell c is open to its neighbor
+// after it in row-major order at slot s, so each passage is a single bit
+// bulk queries work on 64 cells per long with word-wide bitwise operations
+class WallPlanes {
+  private long[][] planes;
+  private int width;
+  private int height;
+  private int words;
+  // bit s is set once a passage at slot s has been opened since the last reset;
+  // planes without it are all zero, so square boards skip their two diagonal
+  // planes
+  private int used;
+
+  WallPlanes() {
+    this.planes = new long[4][0];
+    this.width = 0;
+    this.height = 0;
+    this.words = 0;
+    this.used = 0;
   }
 
-  // test constructor
-  Maze(ArrayList<ArrayList<Node>> nodes, ArrayList<Edge> validPaths, int width, int height,
-      Random rand) {
+  // closes every passage and sizes these planes to a board of the given width
+  // and height
+  // EFFECT: clears the words of the used planes, and grows the planes
+  // geometrically if they are too small
+  void reset(int width, int height) {
+    for (int s = 0; s < 4; s += 1) {
+      if ((this.used & (1 << s)) != 0) {
+        Arrays.fill(this.planes[s], 0, this.words, 0);
+      }
+    }
+
     this.width = width;
     this.height = height;
-    this.rand = rand;
-    this.nodeDim = 20;
-    this.sceneWidth = this.width * (this.nodeDim + 10);
-    this.sceneHeight = this.height * (this.nodeDim + 10);
-
-    this.nodes = nodes;
-    this.validPaths = validPaths;
+    this.words = (width * height + 63) >>> 6;
+    this.used = 0;
+    for (int s = 0; s < 4; s += 1) {
+      if (this.words > this.planes[s].length) {
+        this.planes[s] = new long[Math.max(this.words, 2 * this.planes[s].length)];
+      }
+    }
+  }
 
-    this.topLeft = this.nodes.get(0).get(0);
-    this.bottomRight = this.nodes.get(this.height - 1).get(this.width - 1);
+  // returns the width of the board these planes cover
+  int getWidth() {
+    return this.width;
+  }
 
-    this.searchPath = new ArrayList<Node>();
-    this.visitedNodes = new ArrayList<Node>();
+  // returns the height of the board these planes cover
+  int getHeight() {
+    return this.height;
+  }
 
-    this.findPath(this.topLeft, this.bottomRight, false);
+  // returns the distance in cells from the earlier cell of a passage at the
+  // given slot to the later one
+  int offset(int slot) {
+    if (slot == 0) {
+      return 1;
+    }
+    else {
+      return this.width + slot - 2;
+    }
+  }
 
-    this.resetBoardColor();
-    this.resetStates();
+  // returns the index of the bit of the passage between the given cells, as
+  // slot * cells + earlier cell, or -1 if they are not forward neighbors
+  int bitOf(int cell, int other) {
+    int first = Math.min(cell, other);
+    int second = Math.max(cell, other);
+    int rowStep = second / this.width - first / this.width;
+    int colStep = second % this.width - first % this.width;
+    if (rowStep == 0 && colStep == 1 || rowStep == 1 && Math.abs(colStep) <= 1) {
+      int slot = PassageKeys.id(first, rowStep, colStep) & 3;
+      return slot * this.width * this.height + first;
+    }
+    else {
+      return -1;
+    }
+  }
 
-    this.viewVisitedPaths = true;
+  // returns whether the passage between the given cells is open
+  boolean isOpen(int cell, int other) {
+    int bit = this.bitOf(cell, other);
+    return bit >= 0 && this.get(bit);
   }
 
-  // resets the states for this Maze
-  // EFFECT: sets every state variable for this Maze world to false
-  void resetStates() {
-    this.bfs = false;
-    this.userControl = false;
-    this.searchControl = false;
-    this.pathAnimationControl = false;
-    this.finishedPathAnimation = false;
-    this.viewColorGradient = false;
-    this.horizBias = false;
-    this.vertBias = false;
-    this.userCol = 0;
-    this.userRow = 0;
-    this.pathAnimationIndex = 0;
-    this.searchAnimationIndex = 0;
-    this.mazeAnimationIndex = 0;
-    this.topLeft.color(Color.GREEN);
-    this.bottomRight.color(Color.MAGENTA);
-    this.visitedNodes = new ArrayList<Node>();
-    this.wrongMoves = 0;
-    this.steps = 0;
+  // opens or closes the passage between the given neighboring cells
+  // EFFECT: sets or clears the passage's bit
+  void set(int cell, int other, boolean open) {
+    int bit = this.bitOf(cell, other);
+    if (bit >= 0) {
+      int cells = this.width * this.height;
+      long[] plane = this.planes[bit / cells];
+      int first = bit % cells;
+      if (open) {
+        this.used |= 1 << (bit / cells);
+        plane[first >>> 6] |= 1L << first;
+      }
+      else {
+        plane[first >>> 6] &= ~(1L << first);
+      }
+    }
   }
 
-  // reinitializes the board color
-  // EFFECT: sets all Nodes to light gray except the topLeft and bottomRight nodes
-  void resetBoardColor() {
-    for (int i = 0; i < this.height; i += 1) {
-      for (int j = 0; j < this.width; j += 1) {
-        this.nodes.get(i).get(j).resetColor();
+  // returns the number of open passages
+  int openCount() {
+    int count = 0;
+    for (int s = 0; s < 4; s += 1) {
+      long[] plane = this.planes[s];
+      for (int w = 0; w < this.words && (this.used & (1 << s)) != 0; w += 1) {
+        count += Long.bitCount(plane[w]);
       }
     }
+    return count;
   }
 
-  // initializes this Maze's nodes with the given width and height
-  // EFFECT: sets nodes to a 2d ArrayList of Nodes with given width and height and
-  // connects them to their adjacent neighbors
-  void initNodes(int width, int height) {
-    this.nodes = new ArrayList<ArrayList<Node>>();
-    int horizBiasVal = 1;
+  // returns word w of the given plane moved the given number of bits toward
+  // higher cells, so that bit c of the result is bit c - shift of the plane
+  long shifted(long[] plane, int w, int shift) {
+    int hi = w - (shift >>> 6);
+    int bits = shift & 63;
+    long high = hi >= 0 ? plane[hi] : 0;
+    long low = hi >= 1 ? plane[hi - 1] : 0;
+    // two shifts, since a long shifted by 64 is left unchanged
+    return (high << bits) | ((low >>> 1) >>> (63 - bits));
+  }
 
-    if (this.horizBias) {
-      horizBiasVal *= 50;
+  // returns the cells of word w with exactly one open passage, counting each
+  // cell's passages to later neighbors from the planes and to earlier ones from
+  // the planes shifted by their slot's offset, with two bit-sliced counters
+  long deadEnds(int w) {
+    long once = 0;
+    long twice = 0;
+    for (int s = 0; s < 4; s += 1) {
+      long later = this.planes[s][w];
+      twice |= once & later;
+      once |= later;
+      long earlier = this.shifted(this.planes[s], w, this.offset(s));
+      twice |= once & earlier;
+      once |= earlier;
     }
+    return once & ~twice;
+  }
 
-    int vertBiasVal = 1;
-
-    if (this.vertBias) {
-      vertBiasVal *= 50;
+  // returns the number of cells with exactly one open passage
+  int deadEndCount() {
+    int count = 0;
+    // past the first words every shifted read is in bounds, so the slots are
+    // unrolled with their shifts worked out once, and the diagonal planes are
+    // only read if a passage was ever opened in them
+    int safe = Math.min(this.words, ((this.width + 1) >>> 6) + 1);
+    for (int w = 0; w < safe; w += 1) {
+      count += Long.bitCount(this.deadEnds(w));
     }
 
-    for (int i = 0; i < height; i += 1) {
-      this.nodes.add(new ArrayList<Node>());
-      for (int j = 0; j < width; j += 1) {
-        this.nodes.get(i).add(new Node(i, j));
+    long[] right = this.planes[0];
+    long[] downLeft = this.planes[1];
+    long[] down = this.planes[2];
+    long[] downRight = this.planes[3];
+    int leftWords = (this.width - 1) >>> 6;
+    int leftBits = (this.width - 1) & 63;
+    int upWords = this.width >>> 6;
+    int upBits = this.width & 63;
+    int rightWords = (this.width + 1) >>> 6;
+    int rightBits = (this.width + 1) & 63;
+    boolean diagonal = (this.used & 10) != 0;
+    for (int w = safe; w < this.words; w += 1) {
+      long a = right[w];
+      long b = (right[w] << 1) | (right[w - 1] >>> 63);
+      long e = down[w];
+      long f = (down[w - upWords] << upBits) | ((down[w - upWords - 1] >>> 1) >>> (63 - upBits));
+
+      long once = a;
+      long twice = once & b;
+      once |= b;
+      twice |= once & e;
+      once |= e;
+      twice |= once & f;
+      once |= f;
+      if (diagonal) {
+        long c = downLeft[w];
+        long d = (downLeft[w - leftWords] << leftBits)
+            | ((downLeft[w - leftWords - 1] >>> 1) >>> (63 - leftBits));
+        long g = downRight[w];
+        long h = (downRight[w - rightWords] << rightBits)
+            | ((downRight[w - rightWords - 1] >>> 1) >>> (63 - rightBits));
+        twice |= once & c;
+        once |= c;
+        twice |= once & d;
+        once |= d;
+        twice |= once & g;
+        once |= g;
+        twice |= once & h;
+        once |= h;
       }
+      count += Long.bitCount(once & ~twice);
     }
+    return count;
+  }
 
-    for (int i = 0; i < height; i += 1) {
-      for (int j = 0; j < width; j += 1) {
-        if (i < this.height - 1) {
-          this.nodes.get(i).get(j).addOutEdge(this.nodes.get(i + 1).get(j),
-              this.rand.nextInt(100) * horizBiasVal);
-        }
-
-        if (j < this.width - 1) {
-          this.nodes.get(i).get(j).addOutEdge(this.nodes.get(i).get(j + 1),
-              this.rand.nextInt(100) * vertBiasVal);
-        }
+  // closes every passage with an end outside the given mask
+  // EFFECT: clears the bits of those passages
+  void retain(MazeMask mask) {
+    long[] active = mask.words();
+    for (int s = 0; s < 4; s += 1) {
+      long[] plane = this.planes[s];
+      int offset = this.offset(s);
+      for (int w = 0; w < this.words && (this.used & (1 << s)) != 0; w += 1) {
+        // a passage's later end is active when the mask shifted back by the
+        // offset is
+        int ahead = w + (offset >>> 6);
+        int bits = offset & 63;
+        long next = ahead < active.length ? active[ahead] : 0;
+        long after = ahead + 1 < active.length ? active[ahead + 1] : 0;
+        long later = bits == 0 ? next : (next >>> bits) | (after << (64 - bits));
+        plane[w] &= active[w] & later;
       }
     }
   }
 
-  // generates a new Maze
-  // EFFECT: connects new Nodes, sets topLeft and bottomRight, finds the valid
-  // paths, and sets the state as user controlled
-  void genNewMaze(int width, int height) {
-    this.width = width;
-    this.height = height;
-    this.sceneWidth = this.width * (this.nodeDim + 10);
-    this.sceneHeight = this.height * (this.nodeDim + 10);
+  // returns the number of passages open in exactly one of these planes and the
+  // given planes
+  // throws an IllegalArgumentException if they cover boards of different sizes
+  int diffCount(WallPlanes other) {
+    this.checkSameSize(other);
+    int count = 0;
+    int used = this.used | other.used;
+    for (int s = 0; s < 4; s += 1) {
+      long[] mine = this.planes[s];
+      long[] theirs = other.planes[s];
+      for (int w = 0; w < this.words && (used & (1 << s)) != 0; w += 1) {
+        count += Long.bitCount(mine[w] ^ theirs[w]);
+      }
+    }
+    return count;
+  }
 
-    this.initNodes(this.width, this.height);
+  // sets the given planes to the passages open in exactly one of these planes
+  // and the other given planes
+  // throws an IllegalArgumentException if these and the other planes cover
+  // boards of different sizes
+  // EFFECT: resets the given output planes and fills them with the difference
+  void diff(WallPlanes other, WallPlanes out) {
+    this.checkSameSize(other);
+    out.reset(this.width, this.height);
+    out.used = this.used | other.used;
+    for (int s = 0; s < 4; s += 1) {
+      long[] mine = this.planes[s];
+      long[] theirs = other.planes[s];
+      long[] result = out.planes[s];
+      for (int w = 0; w < this.words && (out.used & (1 << s)) != 0; w += 1) {
+        result[w] = mine[w] ^ theirs[w];
+      }
+    }
+  }
 
-    this.topLeft = this.nodes.get(0).get(0);
-    this.bottomRight = this.nodes.get(this.height - 1).get(this.width - 1);
+  // throws an IllegalArgumentException if the given planes cover a board of a
+  // different size than these
+  void checkSameSize(WallPlanes other) {
+    if (this.width != other.width || this.height != other.height) {
+      throw new IllegalArgumentException("mazes must be the same size");
+    }
+  }
 
-    this.validPaths = this.findValidPaths();
+  // returns whether a passage at the given slot has been opened since these
+  // planes were last reset
+  boolean uses(int slot) {
+    return (this.used & (1 << slot)) != 0;
+  }
 
-    this.searchPath = new ArrayList<Node>();
-    this.visitedNodes = new ArrayList<Node>();
+  // returns the number of words in each plane
+  int words() {
+    return this.words;
+  }
 
-    this.findPath(this.topLeft, this.bottomRight, false);
+  // returns word w of the plane of the given slot
+  long word(int slot, int w) {
+    return this.planes[slot][w];
+  }
 
-    this.setMazeAnimationState();
+  // sets word w of the plane of the given slot to the given bits
+  // EFFECT: replaces the word
+  void setWord(int slot, int w, long bits) {
+    if (bits != 0) {
+      this.used |= 1 << slot;
+    }
+    this.planes[slot][w] = bits;
+  }
 
-    this.viewVisitedPaths = true;
+  // returns whether the passage with the given bit index is open
+  boolean get(int bit) {
+    int cells = this.width * this.height;
+    int first = bit % cells;
+    return (this.planes[bit / cells][first >>> 6] & (1L << first)) != 0;
   }
 
-  // sets the state for maze construction animation
-  // EFFECT: sets the state variables appropriate for maze construction
-  void setMazeAnimationState() {
-    this.resetStates();
-    this.title = "Maze Construction";
-    this.mazeConstructionControl = true;
-    this.validPaths = new ArrayList<Edge>();
+  // opens the passage with the given bit index if it is closed, and closes it
+  // otherwise
+  // EFFECT: flips the passage's bit
+  void flip(int bit) {
+    int cells = this.width * this.height;
+    int first = bit % cells;
+    this.setWord(bit / cells, first >>> 6, this.planes[bit / cells][first >>> 6] ^ (1L << first));
   }
 
-  // sets the state for DFS animation
-  // EFFECT: sets the state variables appropriate for DFS
-  void setDFSState() {
-    this.resetBoardColor();
-    this.resetStates();
-    this.bfs = false;
-    this.searchControl = true;
-    this.title = "Depth-First Search";
-    this.findPath(this.topLeft, this.bottomRight, this.bfs);
+  // makes these planes a copy of the given planes
+  // EFFECT: resets these planes to the other planes' size and copies their words
+  void copyFrom(WallPlanes other) {
+    this.reset(other.width, other.height);
+    this.used = other.used;
+    for (int s = 0; s < 4; s += 1) {
+      System.arraycopy(other.planes[s], 0, this.planes[s], 0, this.words);
+    }
   }
+}
 
-  // sets the state for BFS animation
-  // EFFECT: sets the state variables appropriate for BFS
-  void setBFSState() {
-    this.resetBoardColor();
-    this.resetStates();
-    this.bfs = true;
-    this.searchControl = true;
-    this.title = "Breadth-First Search";
-    this.findPath(this.topLeft, this.bottomRight, this.bfs);
+// to represent the unsigned varints the compact maze formats are written in:
+// seven bits per byte, lowest first, with the high bit set on every byte but
+// the last
+class Varint {
+  // the most bytes a varint of an int takes
+  static final int MAX_BYTES = 5;
+
+  // writes the given value, read as unsigned, into the given buffer at the
+  // given position, and returns the position after it
+  // EFFECT: modifies the buffer
+  static int put(byte[] buffer, int pos, int value) {
+    while ((value & ~0x7f) != 0) {
+      buffer[pos] = (byte) ((value & 0x7f) | 0x80);
+      pos += 1;
+      value >>>= 7;
+    }
+    buffer[pos] = (byte) value;
+    return pos + 1;
   }
 
-  // sets the state for path animation
-  // EFFECT: sets the state variables appropriate for path animation
-  void setPathAnimationState() {
-    this.pathAnimationControl = true;
+  // returns the varint in the given bytes at pos[0], or -1 if the bytes end
+  // first or it does not fit in a non-negative int
+  // EFFECT: moves pos[0] past the bytes read
+  static int get(byte[] bytes, int[] pos) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      if (pos[0] >= bytes.length) {
+        return -1;
+      }
+      int b = bytes[pos[0]];
+      pos[0] += 1;
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value < 0 ? -1 : value;
+      }
+    }
+    return -1;
   }
 
-  // sets the state for user control
-  // EFFECT: sets the state variables appropriate for user control
-  void setUserState() {
-    this.resetBoardColor();
-    this.resetStates();
-    this.userControl = true;
-    this.title = "User";
-    this.topLeft.color(Color.yellow);
+  // returns the given signed value folded onto the non-negative ints, with
+  // small magnitudes staying small: 0, -1, 1, -2 become 0, 1, 2, 3
+  static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
   }
 
-  // sets the state for viewing visited paths
-  // EFFECT: sets the state variables appropriate for viewing the visited paths
-  void setViewVisitedPathsState() {
-    this.viewVisitedPaths = !this.viewVisitedPaths;
+  // returns the signed value the given zigzagged value was folded from
+  static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
 
-    for (Node mn : this.visitedNodes) {
-      if (this.viewVisitedPaths && mn != this.topLeft) {
-        mn.color(new Color(145, 184, 242, 255));
+// to represent the passages that differ between a base maze and a variant of
+// it, as the increasing bit indices of WallPlanes that flip from one to the
+// other, so a variant costs a few bytes per edited wall rather than a bit per
+// passage of the board
+class WallDelta {
+  private final int width;
+  private final int height;
+  private final int[] flips;
+
+  // throws an IllegalArgumentException if the flips are not increasing bit
+  // indices of a board of the given size
+  WallDelta(int width, int height, int[] flips) {
+    for (int k = 0; k < flips.length; k += 1) {
+      if (flips[k] < 0 || flips[k] >= 4 * width * height || k > 0 && flips[k] <= flips[k - 1]) {
+        throw new IllegalArgumentException("flips must be increasing bits of the board");
       }
-      else {
-        mn.resetColor();
+    }
+    this.width = width;
+    this.height = height;
+    this.flips = Arrays.copyOf(flips, flips.length);
+  }
+
+  // returns the delta that turns the given base planes into the given variant
+  // planes, found a word at a time
+  // throws an IllegalArgumentException if they cover boards of different sizes
+  static WallDelta between(WallPlanes base, WallPlanes variant) {
+    int[] flips = new int[base.diffCount(variant)];
+    int cells = base.getWidth() * base.getHeight();
+    int count = 0;
+    for (int s = 0; s < 4; s += 1) {
+      for (int w = 0; w < base.words(); w += 1) {
+        long changed = base.word(s, w) ^ variant.word(s, w);
+        for (; changed != 0; changed &= changed - 1) {
+          flips[count] = s * cells + 64 * w + Long.numberOfTrailingZeros(changed);
+          count += 1;
+        }
       }
     }
+    return new WallDelta(base.getWidth(), base.getHeight(), flips);
+  }
 
-    if (this.userControl) {
-      this.nodes.get(this.userRow).get(this.userCol).color(Color.YELLOW);
+  // returns the number of passages this delta flips
+  int size() {
+    return this.flips.length;
+  }
+
+  // returns the bit index of the k-th passage this delta flips
+  int flip(int k) {
+    return this.flips[k];
+  }
+
+  // flips this delta's passages in the given planes, in time proportional to
+  // the size of this delta
+  // throws an IllegalArgumentException if the planes cover a board of another
+  // size
+  // EFFECT: flips the bit of every passage in this delta
+  void applyTo(WallPlanes planes) {
+    this.checkSize(planes.getWidth(), planes.getHeight());
+    for (int k = 0; k < this.flips.length; k += 1) {
+      planes.flip(this.flips[k]);
     }
+  }
 
-    if (this.pathAnimationControl || this.finishedPathAnimation) {
-      for (Node mn : this.searchPath) {
-        mn.color(Color.BLUE);
-      }
+  // flips this delta's passages in the given variant, in time proportional to
+  // the size of this delta
+  // throws an IllegalArgumentException if the variant covers a board of
+  // another size
+  // EFFECT: flips the bit of every passage in this delta
+  void applyTo(WallVariant variant) {
+    this.checkSize(variant.getWidth(), variant.getHeight());
+    for (int k = 0; k < this.flips.length; k += 1) {
+      variant.flip(this.flips[k]);
     }
   }
 
-  // colors every square with a gradient of colors indicating how far it is from
-  // the given Node
-  // EFFECT: sets each Node in the maze to a color representing how far it is from
-  // the given Node
-  void colorGradient(Node to) {
-    this.resetBoardColor();
-    this.resetStates();
-    this.viewColorGradient = true;
-    this.title = "Color Gradient";
+  // throws an IllegalArgumentException if the given size is not this delta's
+  void checkSize(int width, int height) {
+    if (width != this.width || height != this.height) {
+      throw new IllegalArgumentException("mazes must be the same size");
+    }
+  }
 
-    this.findPath(this.topLeft, this.bottomRight, bfs);
+  // returns this delta as bytes: the width, the height and the number of
+  // flips, then the gap before each flip, all as unsigned varints
+  byte[] encode() {
+    byte[] buffer = new byte[Varint.MAX_BYTES * (this.flips.length + 3)];
+    int pos = Varint.put(buffer, 0, this.width);
+    pos = Varint.put(buffer, pos, this.height);
+    pos = Varint.put(buffer, pos, this.flips.length);
+    int last = -1;
+    for (int k = 0; k < this.flips.length; k += 1) {
+      pos = Varint.put(buffer, pos, this.flips[k] - last - 1);
+      last = this.flips[k];
+    }
+    return Arrays.copyOf(buffer, pos);
+  }
 
-    int maxSearchLength = this.searchPath.size();
+  // returns the delta encoded in the given bytes
+  // throws an IllegalArgumentException if they are not an encoded delta
+  static WallDelta decode(byte[] bytes) {
+    int[] pos = new int[1];
+    int width = Varint.get(bytes, pos);
+    int height = Varint.get(bytes, pos);
+    int count = Varint.get(bytes, pos);
+    if (width < 0 || height < 0 || count < 0 || count > bytes.length) {
+      throw new IllegalArgumentException("malformed wall delta");
+    }
 
-    for (int i = 0; i < this.height; i += 1) {
-      for (int j = 0; j < this.width; j += 1) {
-        Node node = this.nodes.get(i).get(j);
-        this.findPath(node, to, bfs);
-        double lengthToNode = this.searchPath.size();
-        double percentageOfMax = (lengthToNode / maxSearchLength) * 100;
-        if (percentageOfMax <= 20) {
-          node.color(Color.RED);
-        }
-        else if (percentageOfMax <= 40) {
-          node.color(Color.ORANGE);
-        }
-        else if (percentageOfMax <= 60) {
-          node.color(Color.YELLOW);
-        }
-        else if (percentageOfMax <= 80) {
-          node.color(Color.GREEN);
-        }
-        else {
-          node.color(Color.BLUE);
-        }
+    int[] flips = new int[count];
+    int last = -1;
+    for (int k = 0; k < count; k += 1) {
+      int gap = Varint.get(bytes, pos);
+      if (gap < 0) {
+        throw new IllegalArgumentException("malformed wall delta");
       }
+      last += gap + 1;
+      flips[k] = last;
+    }
+    if (pos[0] != bytes.length) {
+      throw new IllegalArgumentException("malformed wall delta");
     }
+    return new WallDelta(width, height, flips);
   }
+}
 
-  // finds the cheapest path in this Maze that would connect all the MazeNodes
-  ArrayList<Edge> findValidPaths() {
-    UnionFind uF = new UnionFind();
-    ArrayList<Edge> edgesInTree = new ArrayList<Edge>();
-    ArrayList<Edge> worklist = new ArrayList<Edge>();
+// to represent a copy-on-write variant of a set of base WallPlanes
+// the first write to a word copies it into a small open-addressed table, and
+// every other word is read from the base, so a variant costs memory and time in
+// proportion to its edits; the base must not change while variants of it are
+// in use
+class WallVariant {
+  private final WallPlanes base;
+  // keys[i] is slot * words + w for a copied word, or -1 for an empty entry
+  private int[] keys;
+  private long[] values;
+  private int size;
+
+  WallVariant(WallPlanes base) {
+    this.base = base;
+    this.keys = new int[16];
+    this.values = new long[16];
+    Arrays.fill(this.keys, -1);
+    this.size = 0;
+  }
 
-    uF.initRepresentatives(this.nodes);
+  // returns the width of the board of this variant
+  int getWidth() {
+    return this.base.getWidth();
+  }
 
-    for (int i = 0; i < this.height; i += 1) {
-      for (int j = 0; j < this.width; j += 1) {
-        Node node = this.nodes.get(i).get(j);
-        node.addEdgesToList(worklist);
-      }
+  // returns the height of the board of this variant
+  int getHeight() {
+    return this.base.getHeight();
+  }
+
+  // returns the number of words this variant has copied from its base
+  int copiedWords() {
+    return this.size;
+  }
+
+  // returns the table entry of the given word key, or the empty entry where it
+  // would go
+  int find(int key) {
+    int mask = this.keys.length - 1;
+    int i = ((key * 0x9E3779B9) >>> 1) & mask;
+    while (this.keys[i] != key && this.keys[i] >= 0) {
+      i = (i + 1) & mask;
     }
+    return i;
+  }
 
-    worklist.sort(new SortByWeight());
+  // returns word w of the plane of the given slot in this variant
+  long word(int slot, int w) {
+    int i = this.find(slot * this.base.words() + w);
+    if (this.keys[i] >= 0) {
+      return this.values[i];
+    }
+    else {
+      return this.base.word(slot, w);
+    }
+  }
 
-    while (uF.treeCount() > 1) {
-      Edge edge = worklist.remove(0);
-      if (edge.sameRepresentatives(uF)) {
-        // do nothing
+  // returns whether the passage between the given cells is open in this
+  // variant
+  boolean isOpen(int cell, int other) {
+    int bit = this.base.bitOf(cell, other);
+    if (bit < 0) {
+      return false;
+    }
+    int cells = this.getWidth() * this.getHeight();
+    int first = bit % cells;
+    return (this.word(bit / cells, first >>> 6) & (1L << first)) != 0;
+  }
+
+  // opens the passage with the given bit index if it is closed, and closes it
+  // otherwise, copying its word from the base first if needed
+  // EFFECT: flips the passage's bit in this variant's copy of its word
+  void flip(int bit) {
+    int cells = this.getWidth() * this.getHeight();
+    int first = bit % cells;
+    int key = bit / cells * this.base.words() + (first >>> 6);
+    int i = this.find(key);
+    if (this.keys[i] < 0) {
+      this.keys[i] = key;
+      this.values[i] = this.base.word(bit / cells, first >>> 6);
+      this.size += 1;
+    }
+    this.values[i] ^= 1L << first;
+
+    if (2 * this.size > this.keys.length) {
+      this.grow();
+    }
+  }
+
+  // doubles the table of copied words
+  // EFFECT: rehashes every copied word into a table twice the size
+  void grow() {
+    int[] oldKeys = this.keys;
+    long[] oldValues = this.values;
+    this.keys = new int[2 * oldKeys.length];
+    this.values = new long[2 * oldKeys.length];
+    Arrays.fill(this.keys, -1);
+    for (int k = 0; k < oldKeys.length; k += 1) {
+      if (oldKeys[k] >= 0) {
+        int i = this.find(oldKeys[k]);
+        this.keys[i] = oldKeys[k];
+        this.values[i] = oldValues[k];
       }
-      else {
-        edgesInTree.add(edge);
-        edge.unionNodes(uF);
+    }
+  }
+
+  // returns the number of passages open in this variant, from the base's count
+  // and the words this variant has changed
+  int openCount() {
+    int count = this.base.openCount();
+    int words = this.base.words();
+    for (int i = 0; i < this.keys.length; i += 1) {
+      if (this.keys[i] >= 0) {
+        long original = this.base.word(this.keys[i] / words, this.keys[i] % words);
+        count += Long.bitCount(this.values[i]) - Long.bitCount(original);
       }
     }
+    return count;
+  }
 
-    return edgesInTree;
+  // returns the given planes filled with this variant's passages
+  // EFFECT: copies the base into the given planes, then this variant's words
+  WallPlanes materialize(WallPlanes out) {
+    out.copyFrom(this.base);
+    int words = this.base.words();
+    for (int i = 0; i < this.keys.length; i += 1) {
+      if (this.keys[i] >= 0) {
+        out.setWord(this.keys[i] / words, this.keys[i] % words, this.values[i]);
+      }
+    }
+    return out;
   }
+}
 
-  // find the path from the first given MazeNode to the second given MazeNode
-  // using
-  // EFFECT: sets this Maze's searchPath and visitedNodes to the path generated
-  // from the given from Node to the given to Node using the given search method
-  // and the total Nodes visited, respectively
-  void findPath(Node from, Node to, boolean bfs) {
-    ArrayList<Node> alreadySeen = new ArrayList<Node>();
-    ArrayList<Node> worklist = new ArrayList<Node>();
-    HashMap<Node, Node> prevMap = new HashMap<Node, Node>();
+// to represent the order a maze's construction knocks down its walls, stored as
+// the differences between successive passage ids (see PassageKeys), zigzagged
+// and packed as varints, with a snapshot of the open walls every interval steps
+// so the construction can be replayed from any step without regenerating it
+class ConstructionLog {
+  private final int width;
+  private final int height;
+  private final int interval;
+  private byte[] bytes;
+  private int length;
+  private int steps;
+  private int lastId;
+
+  // the walls open after every step logged so far, and checkpoints[k] the
+  // used planes of the walls open after k * interval steps, null for planes
+  // with no passages; the steps after it are logged from byte offsets[k],
+  // relative to the id baseIds[k]
+  private final WallPlanes current;
+  private final ArrayList<long[][]> checkpoints;
+  private int[] offsets;
+  private int[] baseIds;
+
+  // throws an IllegalArgumentException if the interval is not positive
+  ConstructionLog(int width, int height, int interval) {
+    if (interval < 1) {
+      throw new IllegalArgumentException("interval must be positive");
+    }
+
+    this.width = width;
+    this.height = height;
+    this.interval = interval;
+    this.bytes = new byte[64];
+    this.length = 0;
+    this.steps = 0;
+    this.lastId = 0;
+    this.current = new WallPlanes();
+    this.current.reset(width, height);
+    this.checkpoints = new ArrayList<long[][]>();
+    this.offsets = new int[16];
+    this.baseIds = new int[16];
+    this.checkpoint();
+  }
 
-    prevMap.put(from, from);
-    worklist.add(from);
+  // returns the width of the logged maze
+  int getWidth() {
+    return this.width;
+  }
 
-    while (!worklist.isEmpty()) {
-      Node next = worklist.remove(0);
+  // returns the height of the logged maze
+  int getHeight() {
+    return this.height;
+  }
 
-      if (next == to) {
-        this.searchPath = new ArrayList<Node>();
-        this.backtrack(next, prevMap, this.searchPath);
+  // returns the number of steps logged
+  int steps() {
+    return this.steps;
+  }
 
-        for (int i = alreadySeen.size() - 1; i >= 0; i -= 1) {
-          this.visitedNodes.add(alreadySeen.get(i));
+  // returns the number of bytes this log holds: its varints, checkpoints and
+  // their offsets
+  long byteSize() {
+    long size = this.length + 8L * this.offsets.length;
+    for (long[][] checkpoint : this.checkpoints) {
+      for (int s = 0; s < 4; s += 1) {
+        if (checkpoint[s] != null) {
+          size += 8L * checkpoint[s].length;
         }
-        return;
-      }
-      else if (alreadySeen.contains(next)) {
-        // do nothing
-      }
-      else {
-        next.addConnectedNodes(worklist, alreadySeen, prevMap, this.validPaths, bfs);
-        alreadySeen.add(0, next);
       }
     }
+    return size;
   }
 
-  // backtracks through the given HashMap to get the path from the given node to
-  // the start
-  // EFFECT: adds the nodes found by backtracking through the HashMap to the given
-  // path ArrayList
-  void backtrack(Node node, HashMap<Node, Node> prev, ArrayList<Node> path) {
-    if (prev.get(node) == node) {
-      path.add(node);
-      return;
+  // returns the later cell of the passage with the given id on this log's board
+  int otherCell(int id) {
+    return PassageKeys.cell(id) + PassageKeys.rowStep(id) * this.width
+        + PassageKeys.colStep(id);
+  }
+
+  // returns whether the given id is a passage between two cells of this log's
+  // board, rather than one that would leave it or wrap around a row
+  boolean isPassage(int id) {
+    int cells = this.width * this.height;
+    int cell = PassageKeys.cell(id);
+    return id >= 0 && id < 4 * cells && this.otherCell(id) < cells
+        && this.current.bitOf(cell, this.otherCell(id)) == (id & 3) * cells + cell;
+  }
+
+  // logs the opening of the passage with the given id as the next step
+  // EFFECT: appends the id's varint, opens the passage in current, and takes a
+  // checkpoint after every interval steps
+  void append(int id) {
+    if (this.length + Varint.MAX_BYTES > this.bytes.length) {
+      this.bytes = Arrays.copyOf(this.bytes, 2 * this.bytes.length);
     }
-    else {
-      path.add(node);
-      this.backtrack(prev.get(node), prev, path);
+    this.length = Varint.put(this.bytes, this.length, Varint.zigzag(id - this.lastId));
+    this.lastId = id;
+    this.steps += 1;
+    this.current.set(PassageKeys.cell(id), this.otherCell(id), true);
+
+    if (this.steps % this.interval == 0) {
+      this.checkpoint();
     }
   }
 
-  // renders this Maze as an image grid
-  WorldImage render() {
-    WorldImage rows = new EmptyImage();
-    for (ArrayList<Node> nodes : this.nodes) {
-      WorldImage row = new EmptyImage();
-      for (Node mn : nodes) {
-        row = new BesideImage(row,
-            mn.render(this.width, this.height, this.validPaths, this.nodeDim));
+  // snapshots the walls open after the steps logged so far
+  // EFFECT: adds a checkpoint, its byte offset and its base id
+  void checkpoint() {
+    long[][] planes = new long[4][];
+    for (int s = 0; s < 4; s += 1) {
+      if (this.current.uses(s)) {
+        planes[s] = new long[this.current.words()];
+        for (int w = 0; w < planes[s].length; w += 1) {
+          planes[s][w] = this.current.word(s, w);
+        }
       }
-      rows = new AboveImage(rows, row);
     }
-    return rows;
+
+    int k = this.checkpoints.size();
+    if (k == this.offsets.length) {
+      this.offsets = Arrays.copyOf(this.offsets, 2 * k);
+      this.baseIds = Arrays.copyOf(this.baseIds, 2 * k);
+    }
+    this.checkpoints.add(planes);
+    this.offsets[k] = this.length;
+    this.baseIds[k] = this.lastId;
   }
 
-  // animates the maze construction, search, or path animation based on state
-  // EFFECT: animates the state and incremenets animation indexes based on state
-  public void onTick() {
-    if (this.mazeConstructionControl) {
-      if (this.mazeAnimationIndex > this.findValidPaths().size() - 1) {
-        this.mazeConstructionControl = false;
-        this.setUserState();
+  // writes the ids of the steps from the given step on into the given array,
+  // as many as fit, and returns how many were written; starts decoding at the
+  // last checkpoint at or before the step
+  // throws an IllegalArgumentException if the step is not between 0 and the
+  // number of steps logged
+  // EFFECT: modifies the given array
+  int read(int from, int[] out) {
+    if (from < 0 || from > this.steps) {
+      throw new IllegalArgumentException("step must be between 0 and " + this.steps);
+    }
+
+    int step = from / this.interval * this.interval;
+    int[] pos = new int[] { this.offsets[from / this.interval] };
+    int id = this.baseIds[from / this.interval];
+    int count = 0;
+    for (; step < this.steps && count < out.length; step += 1) {
+      id += Varint.unzigzag(Varint.get(this.bytes, pos));
+      if (step >= from) {
+        out[count] = id;
+        count += 1;
       }
+    }
+    return count;
+  }
 
-      if (this.mazeAnimationIndex <= this.findValidPaths().size() - 1) {
-        this.validPaths.add(this.findValidPaths().get(mazeAnimationIndex));
-        mazeAnimationIndex += 1;
+  // sets the given planes to the walls open after the given number of steps,
+  // from the last checkpoint at or before it
+  // throws an IllegalArgumentException if the step is not between 0 and the
+  // number of steps logged
+  // EFFECT: resets the given planes and opens the walls in them
+  void seek(int step, WallPlanes out) {
+    if (step < 0 || step > this.steps) {
+      throw new IllegalArgumentException("step must be between 0 and " + this.steps);
+    }
+
+    long[][] checkpoint = this.checkpoints.get(step / this.interval);
+    out.reset(this.width, this.height);
+    for (int s = 0; s < 4; s += 1) {
+      for (int w = 0; checkpoint[s] != null && w < checkpoint[s].length; w += 1) {
+        out.setWord(s, w, checkpoint[s][w]);
       }
     }
 
-    else if (this.searchControl) {
-      if (!this.viewVisitedPaths || this.searchAnimationIndex > this.visitedNodes.size() - 1) {
-        this.searchControl = false;
-        this.setPathAnimationState();
+    int[] ids = new int[step % this.interval];
+    this.read(step / this.interval * this.interval, ids);
+    for (int k = 0; k < ids.length; k += 1) {
+      out.set(PassageKeys.cell(ids[k]), this.otherCell(ids[k]), true);
+    }
+  }
+
+  // returns this log as bytes: the width, the height, the interval and the
+  // number of steps as unsigned varints, then the logged varints as they are
+  // kept; the checkpoints are left out, since decoding rebuilds them
+  byte[] encode() {
+    byte[] buffer = new byte[4 * Varint.MAX_BYTES + this.length];
+    int pos = Varint.put(buffer, 0, this.width);
+    pos = Varint.put(buffer, pos, this.height);
+    pos = Varint.put(buffer, pos, this.interval);
+    pos = Varint.put(buffer, pos, this.steps);
+    System.arraycopy(this.bytes, 0, buffer, pos, this.length);
+    return Arrays.copyOf(buffer, pos + this.length);
+  }
+
+  // returns the log encoded in the given bytes, with its checkpoints rebuilt
+  // throws an IllegalArgumentException if they are not an encoded log
+  static ConstructionLog decode(byte[] bytes) {
+    int[] pos = new int[1];
+    int width = Varint.get(bytes, pos);
+    int height = Varint.get(bytes, pos);
+    int interval = Varint.get(bytes, pos);
+    int steps = Varint.get(bytes, pos);
+    if (width < 1 || height < 1 || interval < 1 || steps < 0 || steps > bytes.length
+        || (long) width * height > Integer.MAX_VALUE / 4) {
+      throw new IllegalArgumentException("malformed construction log");
+    }
+
+    ConstructionLog log = new ConstructionLog(width, height, interval);
+    int id = 0;
+    for (int k = 0; k < steps; k += 1) {
+      int gap = Varint.get(bytes, pos);
+      if (gap < 0) {
+        throw new IllegalArgumentException("malformed construction log");
+      }
+      id += Varint.unzigzag(gap);
+      if (!log.isPassage(id)) {
+        throw new IllegalArgumentException("malformed construction log");
       }
+      log.append(id);
+    }
+    if (pos[0] != bytes.length) {
+      throw new IllegalArgumentException("malformed construction log");
+    }
+    return log;
+  }
+}
 
-      if (this.searchAnimationIndex <= this.visitedNodes.size() - 1) {
-        this.visitedNodes.get(searchAnimationIndex).color(new Color(145, 184, 242, 255));
-        if (!this.searchPath.contains(this.visitedNodes.get(searchAnimationIndex))) {
-          this.wrongMoves += 1;
-        }
-        this.steps += 1;
-        this.searchAnimationIndex += 1;
+// to represent the Union-Find data structure over grid indices for Kruskal's
+// algorithm, stored in arrays that are reset in place and only reallocated when
+// they must grow
+class IndexUnionFind {
+  private int[] parents;
+  private int[] sizes;
+  private int trees;
+
+  IndexUnionFind() {
+    this.parents = new int[0];
+    this.sizes = new int[0];
+    this.trees = 0;
+  }
+
+  // makes each of the first count indices its own tree
+  // EFFECT: resets parents and sizes, growing them geometrically if they are too
+  // small
+  void reset(int count) {
+    if (count > this.parents.length) {
+      int capacity = Math.max(count, 2 * this.parents.length);
+      this.parents = new int[capacity];
+      this.sizes = new int[capacity];
+    }
+
+    for (int i = 0; i < count; i += 1) {
+      this.parents[i] = i;
+      this.sizes[i] = 1;
+    }
+    this.trees = count;
+  }
+
+  // finds the representative of the given index
+  // EFFECT: halves the path from the given index to its representative
+  int find(int i) {
+    while (this.parents[i] != i) {
+      this.parents[i] = this.parents[this.parents[i]];
+      i = this.parents[i];
+    }
+    return i;
+  }
+
+  // unions the trees of the two given indices, hanging the smaller under the
+  // larger
+  // EFFECT: links the representatives of the given indices if they differ
+  void union(int i, int j) {
+    int ri = this.find(i);
+    int rj = this.find(j);
+
+    if (ri != rj) {
+      if (this.sizes[ri] < this.sizes[rj]) {
+        int swap = ri;
+        ri = rj;
+        rj = swap;
       }
+      this.parents[rj] = ri;
+      this.sizes[ri] += this.sizes[rj];
+      this.trees -= 1;
+    }
+  }
+
+  // returns the amount of trees in this Union-Find data structure
+  int treeCount() {
+    return this.trees;
+  }
+}
 
+// to represent which cells of a width x height board are part of a maze
+// the active cells are also kept as a compressed, row-major index, so walking
+// them never touches a masked cell
+class MazeMask {
+  private final int width;
+  private final int height;
+  private final BitSet active;
+  private final int[] activeCells;
+  // the active cells as 64-cell words, for masking bit planes
+  private final long[] words;
+
+  MazeMask(int width, int height, BitSet active) {
+    if (active.isEmpty()) {
+      throw new IllegalArgumentException("a mask needs at least one active cell");
     }
-    else if (this.pathAnimationControl) {
-      if (this.pathAnimationIndex > this.searchPath.size() - 1) {
-        this.pathAnimationControl = false;
-        this.finishedPathAnimation = true;
+
+    this.width = width;
+    this.height = height;
+    this.active = active;
+    this.activeCells = new int[active.cardinality()];
+    this.words = Arrays.copyOf(active.get(0, width * height).toLongArray(),
+        (width * height + 63) >>> 6);
+
+    int k = 0;
+    for (int i = active.nextSetBit(0); i >= 0 && i < width * height; i = active
+        .nextSetBit(i + 1)) {
+      this.activeCells[k] = i;
+      k += 1;
+    }
+  }
+
+  // returns a mask of the given size with every cell active
+  static MazeMask full(int width, int height) {
+    BitSet active = new BitSet(width * height);
+    active.set(0, width * height);
+    return new MazeMask(width, height, active);
+  }
+
+  // returns a mask of the given size whose active cells form the largest
+  // ellipse that fits
+  static MazeMask circle(int width, int height) {
+    BitSet active = new BitSet(width * height);
+    double centerRow = (height - 1) / 2.0;
+    double centerCol = (width - 1) / 2.0;
+
+    for (int i = 0; i < height; i += 1) {
+      for (int j = 0; j < width; j += 1) {
+        double dy = (i - centerRow) / (height / 2.0);
+        double dx = (j - centerCol) / (width / 2.0);
+        if (dx * dx + dy * dy <= 1) {
+          active.set(i * width + j);
+        }
       }
-      if (this.pathAnimationIndex <= this.searchPath.size() - 1) {
-        this.searchPath.get(this.pathAnimationIndex).color(Color.blue);
-        this.pathAnimationIndex += 1;
+    }
+    return new MazeMask(width, height, active);
+  }
+
+  // returns a mask of the given size sampled from the given image, where dark,
+  // opaque pixels are active
+  static MazeMask fromImage(BufferedImage image, int width, int height) {
+    BitSet active = new BitSet(width * height);
+
+    for (int i = 0; i < height; i += 1) {
+      for (int j = 0; j < width; j += 1) {
+        int x = (int) ((j + 0.5) * image.getWidth() / width);
+        int y = (int) ((i + 0.5) * image.getHeight() / height);
+        int argb = image.getRGB(x, y);
+        int alpha = argb >>> 24;
+        int luminance = (((argb >> 16) & 0xff) * 299 + ((argb >> 8) & 0xff) * 587
+            + (argb & 0xff) * 114) / 1000;
+        if (alpha >= 128 && luminance < 128) {
+          active.set(i * width + j);
+        }
       }
     }
+    return new MazeMask(width, height, active);
   }
 
-  // handles key input to change states for this Maze
-  // EFFECT: sets the state 
-  public void onKeyEvent(String key) {
-    if (this.mazeConstructionControl) {
-      return;
+  // returns a mask of the given size sampled from the image in the given file
+  static MazeMask load(File file, int width, int height) throws IOException {
+    BufferedImage image = ImageIO.read(file);
+    if (image == null) {
+      throw new IOException(file + " is not an image");
     }
+    return MazeMask.fromImage(image, width, height);
+  }
 
-    if (key.equals("d")) {
-      this.setDFSState();
+  // returns a mask of the given size whose active cells spell the given text
+  static MazeMask text(String text, int width, int height) {
+    // draw at 8 pixels per cell so sampling smooths the glyph edges
+    BufferedImage image = new BufferedImage(width * 8, height * 8, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, image.getWidth(), image.getHeight());
+    g.setColor(Color.BLACK);
+
+    Font font = new Font(Font.SANS_SERIF, Font.BOLD, image.getHeight());
+    FontMetrics metrics = g.getFontMetrics(font);
+    double scale = Math.min(1.0, 0.95 * image.getWidth() / Math.max(1, metrics.stringWidth(text)));
+    g.setFont(font.deriveFont((float) (image.getHeight() * scale)));
+    metrics = g.getFontMetrics();
+    g.drawString(text, (image.getWidth() - metrics.stringWidth(text)) / 2,
+        (image.getHeight() - metrics.getHeight()) / 2 + metrics.getAscent());
+    g.dispose();
+
+    return MazeMask.fromImage(image, width, height);
+  }
+
+  // returns the mask described by the given spec for a board of the given size:
+  // "full", "circle", "text:WORDS" or "png:PATH"
+  // throws an IllegalArgumentException if the spec is unknown
+  static MazeMask fromSpec(String spec, int width, int height) throws IOException {
+    if (spec.equals("full")) {
+      return MazeMask.full(width, height);
+    }
+    else if (spec.equals("circle")) {
+      return MazeMask.circle(width, height);
+    }
+    else if (spec.startsWith("text:")) {
+      return MazeMask.text(spec.substring(5), width, height);
+    }
+    else if (spec.startsWith("png:")) {
+      return MazeMask.load(new File(spec.substring(4)), width, height);
+    }
+    else {
+      throw new IllegalArgumentException("unknown mask " + spec);
     }
+  }
 
-    if (key.equals("b")) {
-      this.setBFSState();
+  // returns this mask scaled to the given size, where a cell is active if any
+  // cell of this mask it covers is; every cell of this mask is covered by some
+  // cell of the result, so a shrunk mask never loses all its active cells
+  MazeMask resized(int width, int height) {
+    if (width == this.width && height == this.height) {
+      return this;
+    }
+    if (this.isFull()) {
+      return MazeMask.full(width, height);
+    }
+
+    BitSet active = new BitSet(width * height);
+    for (int i = 0; i < height; i += 1) {
+      int top = i * this.height / height;
+      int bottom = Math.max(top + 1, (i + 1) * this.height / height);
+      for (int j = 0; j < width; j += 1) {
+        int left = j * this.width / width;
+        int right = Math.max(left + 1, (j + 1) * this.width / width);
+        boolean covered = false;
+        for (int row = top; row < bottom && !covered; row += 1) {
+          int next = this.active.nextSetBit(row * this.width + left);
+          covered = next >= 0 && next < row * this.width + right;
+        }
+        if (covered) {
+          active.set(i * width + j);
+        }
+      }
+    }
+    return new MazeMask(width, height, active);
+  }
+
+  // returns whether every cell of this mask is active
+  boolean isFull() {
+    return this.activeCells.length == this.width * this.height;
+  }
+
+  // returns the width of this mask
+  int getWidth() {
+    return this.width;
+  }
+
+  // returns the height of this mask
+  int getHeight() {
+    return this.height;
+  }
+
+  // returns whether the cell at the given row-major index is active
+  boolean isActive(int index) {
+    return this.active.get(index);
+  }
+
+  // returns the active cells as words of 64 cells each, in row-major order
+  long[] words() {
+    return this.words;
+  }
+
+  // returns the number of active cells
+  int activeCount() {
+    return this.activeCells.length;
+  }
+
+  // returns the row-major index of the given active cell, counting from 0 in
+  // row-major order
+  int activeCell(int k) {
+    return this.activeCells[k];
+  }
+}
+
+// to represent what it costs to enter each cell of a width x height board, as a
+// short per cell in row-major order: plain cells cost 1, mud and water more
+// as a CellGraph it is an open board, where every cell reaches the four cells
+// beside it and a passage weighs what the cell it enters costs
+class TerrainMap implements CellGraph {
+  static final short PLAIN = 1;
+  static final short MUD = 4;
+  static final short WATER = 9;
+
+  private final int width;
+  private final int height;
+  private final short[] costs;
+  // no cost has ever been higher; it only grows, so it stays an upper bound
+  private int maxCost;
+
+  TerrainMap(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.costs = new short[width * height];
+    Arrays.fill(this.costs, PLAIN);
+    this.maxCost = PLAIN;
+  }
+
+  // returns a board of the given size where every cell is plain
+  static TerrainMap flat(int width, int height) {
+    return new TerrainMap(width, height);
+  }
+
+  // returns a board of the given size with round patches of mud and water
+  // scattered over about the given share of its cells
+  // throws an IllegalArgumentException if the share is not between 0 and 1
+  static TerrainMap random(int width, int height, Random rand, double share) {
+    if (share < 0 || share > 1) {
+      throw new IllegalArgumentException("terrain must be between 0 and 1");
+    }
+
+    TerrainMap map = new TerrainMap(width, height);
+    int rough = 0;
+    int goal = (int) (share * width * height);
+    int largest = Math.max(1, Math.min(width, height) / 8);
+
+    while (rough < goal) {
+      int radius = 1 + rand.nextInt(largest);
+      int row = rand.nextInt(height);
+      int col = rand.nextInt(width);
+      short cost = rand.nextBoolean() ? MUD : WATER;
+
+      for (int i = Math.max(0, row - radius); i <= Math.min(height - 1, row + radius); i += 1) {
+        for (int j = Math.max(0, col - radius); j <= Math.min(width - 1, col + radius); j += 1) {
+          int cell = i * width + j;
+          if ((i - row) * (i - row) + (j - col) * (j - col) <= radius * radius
+              && map.costs[cell] == PLAIN && rough < goal) {
+            map.setCost(cell, cost);
+            rough += 1;
+          }
+        }
+      }
     }
 
-    if (key.equals("u")) {
-      this.setUserState();
-    }
+    return map;
+  }
+
+  // returns this board scaled to the given size, keeping the cost of the nearest
+  // cell
+  TerrainMap resized(int width, int height) {
+    if (width == this.width && height == this.height) {
+      return this;
+    }
+
+    TerrainMap map = new TerrainMap(width, height);
+    if (this.isFlat()) {
+      return map;
+    }
+    for (int i = 0; i < height; i += 1) {
+      for (int j = 0; j < width; j += 1) {
+        int row = i * this.height / height;
+        int col = j * this.width / width;
+        map.setCost(i * width + j, this.costs[row * this.width + col]);
+      }
+    }
+    return map;
+  }
+
+  // returns the width of this board
+  int getWidth() {
+    return this.width;
+  }
+
+  // returns the height of this board
+  int getHeight() {
+    return this.height;
+  }
+
+  // returns whether every cell of this board has always been plain
+  boolean isFlat() {
+    return this.maxCost == PLAIN;
+  }
+
+  // returns the cost of entering the cell with the given row-major index
+  short cost(int cell) {
+    return this.costs[cell];
+  }
+
+  // sets the cost of entering the cell with the given row-major index
+  // throws an IllegalArgumentException if the cost is less than plain
+  // EFFECT: sets the cell's cost and raises maxCost if it is higher
+  void setCost(int cell, short cost) {
+    if (cost < PLAIN) {
+      throw new IllegalArgumentException("a cell costs at least " + PLAIN);
+    }
+    this.costs[cell] = cost;
+    this.maxCost = Math.max(this.maxCost, cost);
+  }
+
+  // returns the number of cells of this board
+  public int cellCount() {
+    return this.width * this.height;
+  }
+
+  // cells are open to the four cells beside them
+  public int maxDegree() {
+    return 4;
+  }
+
+  // returns the highest cost any cell has had
+  public int maxWeight() {
+    return this.maxCost;
+  }
+
+  // every move costs at least a plain cell
+  public int estimate(int cell, int target) {
+    return PLAIN * (Math.abs(target / this.width - cell / this.width)
+        + Math.abs(target % this.width - cell % this.width));
+  }
+
+  // writes the cells beside the given cell into the first given array, in the
+  // order up, left, down, right, and their costs into the second, and returns
+  // how many there are
+  // EFFECT: modifies the given arrays
+  public int openNeighbors(int cell, int[] out, int[] weights) {
+    int row = cell / this.width;
+    int col = cell % this.width;
+    int count = 0;
+
+    if (row > 0) {
+      out[count] = cell - this.width;
+      count += 1;
+    }
+    if (col > 0) {
+      out[count] = cell - 1;
+      count += 1;
+    }
+    if (row < this.height - 1) {
+      out[count] = cell + this.width;
+      count += 1;
+    }
+    if (col < this.width - 1) {
+      out[count] = cell + 1;
+      count += 1;
+    }
+
+    for (int k = 0; k < count; k += 1) {
+      weights[k] = this.costs[out[k]];
+    }
+    return count;
+  }
+}
+
+// to represent how the cells of a width x height board neighbor each other
+// cells are int ids in row-major order; the neighbors of a cell are given by
+// precomputed tables of row and column offsets, one pair per class of cell, so
+// iterating them is a loop over a small array that never allocates
+// the k-th offset of a cell is also the k-th side of its polygon, between its
+// k-th and (k + 1)-th corners
+abstract class Topology {
+  static final Topology SQUARE = new SquareTopology();
+  static final Topology HEX = new HexTopology();
+  static final Topology TRIANGLE = new TriangleTopology();
+
+  // the largest number of neighbors any cell has
+  static final int MAX_DEGREE = 6;
+
+  private final String name;
+  private final int[][] rowOffsets;
+  private final int[][] colOffsets;
+
+  Topology(String name, int[][] rowOffsets, int[][] colOffsets) {
+    this.name = name;
+    this.rowOffsets = rowOffsets;
+    this.colOffsets = colOffsets;
+  }
+
+  // returns the topology with the given name
+  // throws an IllegalArgumentException if there is no such topology
+  static Topology named(String name) {
+    if (name.equals(SQUARE.name())) {
+      return SQUARE;
+    }
+    else if (name.equals(HEX.name())) {
+      return HEX;
+    }
+    else if (name.equals(TRIANGLE.name())) {
+      return TRIANGLE;
+    }
+    else {
+      throw new IllegalArgumentException("unknown topology " + name);
+    }
+  }
+
+  // returns the name of this topology
+  String name() {
+    return this.name;
+  }
+
+  // returns the class of the cell at the given row and column, which picks its
+  // offset tables
+  abstract int classOf(int row, int col);
+
+  // returns the row offsets of the neighbors of the cell at the given row and
+  // column; the array is shared and must not be modified
+  int[] rowOffsets(int row, int col) {
+    return this.rowOffsets[this.classOf(row, col)];
+  }
+
+  // returns the column offsets of the neighbors of the cell at the given row and
+  // column; the array is shared and must not be modified
+  int[] colOffsets(int row, int col) {
+    return this.colOffsets[this.classOf(row, col)];
+  }
+
+  // returns the number of neighbors the cell at the given row and column has on
+  // an unbounded board
+  int degree(int row, int col) {
+    return this.rowOffsets[this.classOf(row, col)].length;
+  }
+
+  // returns the index of the given offset among the neighbors of the cell at the
+  // given row and column, or -1 if that cell is not a neighbor
+  int slot(int row, int col, int rowStep, int colStep) {
+    int[] dr = this.rowOffsets(row, col);
+    int[] dc = this.colOffsets(row, col);
+    for (int k = 0; k < dr.length; k += 1) {
+      if (dr[k] == rowStep && dc[k] == colStep) {
+        return k;
+      }
+    }
+    return -1;
+  }
+
+  // returns the fewest moves between the cells at the given rows and columns on
+  // an unbounded board; squares and triangles move one row or one column at a
+  // time
+  int steps(int row, int col, int toRow, int toCol) {
+    return Math.abs(toRow - row) + Math.abs(toCol - col);
+  }
+
+  // returns the width in pixels of a board of the given width
+  abstract int imageWidth(int width, int nodeDim);
+
+  // returns the height in pixels of a board of the given height
+  abstract int imageHeight(int height, int nodeDim);
+
+  // sets the first degree entries of the given arrays to the corners of the cell
+  // at the given row and column
+  // EFFECT: modifies the given arrays
+  abstract void corners(int row, int col, int nodeDim, double[] xs, double[] ys);
+
+  // renders a board of the given size, drawing each active cell of the given
+  // mask in its palette color, and a wall on every side whose bit is not set in
+  // the given openings
+  WorldImage render(int width, int height, int nodeDim, MazeMask mask, byte[] cellColors,
+      byte[] openings) {
+    ComputedPixelImage image = new ComputedPixelImage(this.imageWidth(width, nodeDim),
+        this.imageHeight(height, nodeDim));
+    double[] xs = new double[MAX_DEGREE];
+    double[] ys = new double[MAX_DEGREE];
+
+    for (int k = 0; k < mask.activeCount(); k += 1) {
+      int cell = mask.activeCell(k);
+      int row = cell / width;
+      int col = cell % width;
+      int degree = this.degree(row, col);
+      this.corners(row, col, nodeDim, xs, ys);
+      Topology.fillConvex(image, xs, ys, degree, Palette.color(cellColors[cell]));
+    }
+
+    for (int k = 0; k < mask.activeCount(); k += 1) {
+      int cell = mask.activeCell(k);
+      int row = cell / width;
+      int col = cell % width;
+      int degree = this.degree(row, col);
+      this.corners(row, col, nodeDim, xs, ys);
+      for (int side = 0; side < degree; side += 1) {
+        if ((openings[cell] & (1 << side)) == 0) {
+          int next = (side + 1) % degree;
+          Topology.drawLine(image, xs[side], ys[side], xs[next], ys[next], Color.GRAY);
+        }
+      }
+    }
+
+    return image;
+  }
+
+  // fills the convex polygon with the given n corners
+  // EFFECT: sets the pixels of the given image whose centers are inside the
+  // polygon to the given color
+  static void fillConvex(ComputedPixelImage image, double[] xs, double[] ys, int n,
+      Color color) {
+    double top = ys[0];
+    double bottom = ys[0];
+    for (int k = 1; k < n; k += 1) {
+      top = Math.min(top, ys[k]);
+      bottom = Math.max(bottom, ys[k]);
+    }
+
+    int firstRow = Math.max(0, (int) Math.floor(top));
+    int lastRow = Math.min(image.height - 1, (int) Math.ceil(bottom));
+    for (int y = firstRow; y <= lastRow; y += 1) {
+      double center = y + 0.5;
+      double left = Double.MAX_VALUE;
+      double right = -Double.MAX_VALUE;
+
+      for (int k = 0; k < n; k += 1) {
+        int next = (k + 1) % n;
+        if ((ys[k] <= center && center < ys[next]) || (ys[next] <= center && center < ys[k])) {
+          double x = xs[k] + (center - ys[k]) * (xs[next] - xs[k]) / (ys[next] - ys[k]);
+          left = Math.min(left, x);
+          right = Math.max(right, x);
+        }
+      }
+
+      int from = Math.max(0, (int) Math.round(left));
+      int to = Math.min(image.width, (int) Math.round(right));
+      if (to > from) {
+        image.setPixels(from, y, to - from, 1, color);
+      }
+    }
+  }
+
+  // draws a line between the given points
+  // EFFECT: sets the pixels of the given image along the line to the given color
+  static void drawLine(ComputedPixelImage image, double x0, double y0, double x1, double y1,
+      Color color) {
+    int steps = (int) Math.ceil(Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0)));
+    for (int s = 0; s <= steps; s += 1) {
+      double t = steps == 0 ? 0 : (double) s / steps;
+      int x = Math.min(image.width - 1, Math.max(0, (int) Math.round(x0 + (x1 - x0) * t)));
+      int y = Math.min(image.height - 1, Math.max(0, (int) Math.round(y0 + (y1 - y0) * t)));
+      image.setPixel(x, y, color);
+    }
+  }
+}
+
+// to represent a board of squares, each with four neighbors: up, left, down and
+// right
+class SquareTopology extends Topology {
+  SquareTopology() {
+    super("square", new int[][] { { -1, 0, 1, 0 } }, new int[][] { { 0, -1, 0, 1 } });
+  }
+
+  // every square has the same neighbors
+  int classOf(int row, int col) {
+    return 0;
+  }
+
+  int imageWidth(int width, int nodeDim) {
+    return width * nodeDim + 1;
+  }
+
+  int imageHeight(int height, int nodeDim) {
+    return height * nodeDim + 1;
+  }
+
+  // corners run top right, top left, bottom left, bottom right, so the sides
+  // face up, left, down and right
+  void corners(int row, int col, int nodeDim, double[] xs, double[] ys) {
+    double x = col * nodeDim;
+    double y = row * nodeDim;
+    xs[0] = x + nodeDim;
+    ys[0] = y;
+    xs[1] = x;
+    ys[1] = y;
+    xs[2] = x;
+    ys[2] = y + nodeDim;
+    xs[3] = x + nodeDim;
+    ys[3] = y + nodeDim;
+  }
+}
+
+// to represent a board of pointy-topped hexagons with every odd row shifted half
+// a cell to the right, each with six neighbors: east, south east, south west,
+// west, north west and north east
+class HexTopology extends Topology {
+  // distance from the center of a hexagon to its corners, per unit of nodeDim,
+  // so that nodeDim is the distance between opposite sides
+  private static final double RADIUS = 1 / Math.sqrt(3);
+
+  HexTopology() {
+    super("hex",
+        new int[][] { { 0, 1, 1, 0, -1, -1 }, { 0, 1, 1, 0, -1, -1 } },
+        new int[][] { { 1, 0, -1, -1, -1, 0 }, { 1, 1, 0, -1, 0, 1 } });
+  }
+
+  // even and odd rows are shifted against each other
+  int classOf(int row, int col) {
+    return row & 1;
+  }
+
+  // counts moves in axial coordinates, where a column is shifted back by half the
+  // rows above it
+  int steps(int row, int col, int toRow, int toCol) {
+    int dq = (toCol - (toRow - (toRow & 1)) / 2) - (col - (row - (row & 1)) / 2);
+    int dr = toRow - row;
+    return (Math.abs(dq) + Math.abs(dr) + Math.abs(dq + dr)) / 2;
+  }
+
+  int imageWidth(int width, int nodeDim) {
+    return (int) Math.ceil(nodeDim * (width + 0.5)) + 1;
+  }
+
+  int imageHeight(int height, int nodeDim) {
+    return (int) Math.ceil(nodeDim * RADIUS * (1.5 * height + 0.5)) + 1;
+  }
+
+  // corners start at the upper right and run clockwise, so the first side faces
+  // east
+  void corners(int row, int col, int nodeDim, double[] xs, double[] ys) {
+    double radius = nodeDim * RADIUS;
+    double x = nodeDim * (col + 0.5 + 0.5 * (row & 1));
+    double y = radius + row * 1.5 * radius;
+    for (int k = 0; k < 6; k += 1) {
+      double angle = Math.toRadians(60 * k - 30);
+      xs[k] = x + radius * Math.cos(angle);
+      ys[k] = y + radius * Math.sin(angle);
+    }
+  }
+}
+
+// to represent a board of triangles that alternately point up and down, starting
+// with an upward one in the top left; upward triangles neighbor left, right and
+// down, downward ones left, right and up
+class TriangleTopology extends Topology {
+  // height of a triangle per unit of nodeDim, which is the length of its sides
+  private static final double HEIGHT = Math.sqrt(3) / 2;
+
+  TriangleTopology() {
+    super("triangle", new int[][] { { 0, 0, 1 }, { 0, 0, -1 } },
+        new int[][] { { -1, 1, 0 }, { -1, 1, 0 } });
+  }
+
+  // triangles point up when their row and column add up to an even number
+  int classOf(int row, int col) {
+    return (row + col) & 1;
+  }
+
+  int imageWidth(int width, int nodeDim) {
+    return (int) Math.ceil(nodeDim * (width + 1) / 2.0) + 1;
+  }
+
+  int imageHeight(int height, int nodeDim) {
+    return (int) Math.ceil(nodeDim * HEIGHT * height) + 1;
+  }
+
+  // corners run from the left corner of the base over the tip to the right
+  // corner of the base, so the sides face left, right and towards the base
+  void corners(int row, int col, int nodeDim, double[] xs, double[] ys) {
+    double x = col * nodeDim / 2.0;
+    double top = row * nodeDim * HEIGHT;
+    double bottom = top + nodeDim * HEIGHT;
+    boolean up = this.classOf(row, col) == 0;
+
+    xs[0] = x;
+    ys[0] = up ? bottom : top;
+    xs[1] = x + nodeDim / 2.0;
+    ys[1] = up ? top : bottom;
+    xs[2] = x + nodeDim;
+    ys[2] = up ? bottom : top;
+  }
+}
+
+// to represent a graph over int cell ids that a CellSearch can walk
+interface CellGraph {
+  // returns the number of cells in this graph; ids run from 0 to cellCount - 1
+  int cellCount();
+
+  // returns the largest number of open neighbors any cell can have
+  int maxDegree();
+
+  // returns the largest weight any passage can have
+  int maxWeight();
+
+  // returns a lower bound on the total weight of any path from the first given
+  // cell to the second, which differs between neighboring cells by no more than
+  // the weight of the passage between them
+  int estimate(int cell, int target);
+
+  // writes the cells the given cell has open passages to into the first given
+  // array, and the weights of those passages into the second, and returns how
+  // many there are; both arrays hold at least maxDegree entries
+  // EFFECT: modifies the given arrays
+  int openNeighbors(int cell, int[] out, int[] weights);
+}
+
+// to represent a priority queue of int items from 0 to a capacity, keyed by
+// longs, that can lower the key of an item already in it
+interface IndexedQueue {
+  // returns whether this queue is empty
+  boolean isEmpty();
+
+  // returns the number of items in this queue
+  int size();
+
+  // returns whether the given item is in this queue
+  boolean contains(int item);
+
+  // returns the key of the given item, which is kept after it is polled
+  long key(int item);
+
+  // adds the given item with the given key
+  // EFFECT: adds the item to this queue
+  void push(int item, long key);
+
+  // lowers the key of the given item, which is in this queue
+  // EFFECT: sets the item's key and moves it to match
+  void decrease(int item, long key);
+
+  // removes and returns the item with the smallest key
+  // EFFECT: removes the item from this queue
+  int poll();
+}
+
+// to represent a binary min-heap of int items from 0 to a capacity, keyed by
+// longs, that can lower the key of an item already in it
+// positions[item] is the index of the item in the heap, or -1 if it is absent
+class IndexedMinHeap implements IndexedQueue {
+  private int[] heap;
+  private long[] keys;
+  private int[] positions;
+  private int size;
+
+  IndexedMinHeap() {
+    this.heap = new int[0];
+    this.keys = new long[0];
+    this.positions = new int[0];
+    this.size = 0;
+  }
+
+  // empties this heap and makes room for items below the given capacity
+  // EFFECT: clears this heap, growing its arrays geometrically if they are too
+  // small
+  void reset(int capacity) {
+    if (capacity > this.positions.length) {
+      int grown = Math.max(capacity, 2 * this.positions.length);
+      this.heap = new int[grown];
+      this.keys = new long[grown];
+      this.positions = new int[grown];
+    }
+    Arrays.fill(this.positions, 0, capacity, -1);
+    this.size = 0;
+  }
+
+  // returns whether this heap is empty
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  // returns the number of items in this heap
+  public int size() {
+    return this.size;
+  }
+
+  // returns whether the given item is in this heap
+  public boolean contains(int item) {
+    return this.positions[item] >= 0;
+  }
+
+  // returns the key of the given item, which is kept after it is polled
+  public long key(int item) {
+    return this.keys[item];
+  }
+
+  // adds the given item with the given key
+  // EFFECT: adds the item and restores the heap order
+  public void push(int item, long key) {
+    this.keys[item] = key;
+    this.heap[this.size] = item;
+    this.positions[item] = this.size;
+    this.size += 1;
+    this.siftUp(this.size - 1);
+  }
+
+  // lowers the key of the given item, which is in this heap
+  // EFFECT: sets the item's key and restores the heap order
+  public void decrease(int item, long key) {
+    this.keys[item] = key;
+    this.siftUp(this.positions[item]);
+  }
+
+  // removes and returns the item with the smallest key
+  // EFFECT: removes the item and restores the heap order
+  public int poll() {
+    int top = this.heap[0];
+    this.positions[top] = -1;
+    this.size -= 1;
+
+    if (this.size > 0) {
+      this.heap[0] = this.heap[this.size];
+      this.positions[this.heap[0]] = 0;
+      this.siftDown(0);
+    }
+    return top;
+  }
+
+  // moves the item at the given index up until its parent's key is no larger
+  // EFFECT: swaps items in heap and updates their positions
+  void siftUp(int index) {
+    int item = this.heap[index];
+    long key = this.keys[item];
+
+    while (index > 0) {
+      int parent = (index - 1) / 2;
+      if (this.keys[this.heap[parent]] <= key) {
+        break;
+      }
+      this.heap[index] = this.heap[parent];
+      this.positions[this.heap[index]] = index;
+      index = parent;
+    }
+
+    this.heap[index] = item;
+    this.positions[item] = index;
+  }
+
+  // moves the item at the given index down until its children's keys are no
+  // smaller
+  // EFFECT: swaps items in heap and updates their positions
+  void siftDown(int index) {
+    int item = this.heap[index];
+    long key = this.keys[item];
+
+    while (2 * index + 1 < this.size) {
+      int child = 2 * index + 1;
+      if (child + 1 < this.size && this.keys[this.heap[child + 1]] < this.keys[this.heap[child]]) {
+        child += 1;
+      }
+      if (key <= this.keys[this.heap[child]]) {
+        break;
+      }
+      this.heap[index] = this.heap[child];
+      this.positions[this.heap[index]] = index;
+      index = child;
+    }
+
+    this.heap[index] = item;
+    this.positions[item] = index;
+  }
+}
+
+// to represent a monotone priority queue of int items from 0 to a capacity,
+// keyed by longs, as a ring of buckets with one bucket per key; every key pushed
+// must be at least the last key polled and at most span more than it, which
+// holds for Dijkstra's algorithm when span is the largest passage weight
+// heads[key % buckets] is the first item with the given key, or -1, next and
+// prev link the items of a bucket into a list, and prev[item] is ABSENT when
+// the item is not in the queue
+class BucketQueue implements IndexedQueue {
+  // the largest span a queue is built for; wider spans leave most buckets empty
+  static final int MAX_SPAN = 1 << 12;
+  static final int ABSENT = -2;
+
+  private int[] heads;
+  private int[] next;
+  private int[] prev;
+  private long[] keys;
+  private int buckets;
+  private long cursor;
+  private int size;
+
+  BucketQueue() {
+    this.heads = new int[0];
+    this.next = new int[0];
+    this.prev = new int[0];
+    this.keys = new long[0];
+  }
+
+  // empties this queue and makes room for items below the given capacity whose
+  // keys are at most the given span above the smallest key in the queue
+  // EFFECT: clears this queue, growing its arrays geometrically if they are too
+  // small
+  void reset(int capacity, int span) {
+    if (capacity > this.prev.length) {
+      int grown = Math.max(capacity, 2 * this.prev.length);
+      this.next = new int[grown];
+      this.prev = new int[grown];
+      this.keys = new long[grown];
+    }
+    if (span + 1 > this.heads.length) {
+      this.heads = new int[span + 1];
+    }
+
+    this.buckets = span + 1;
+    Arrays.fill(this.heads, 0, this.buckets, -1);
+    Arrays.fill(this.prev, 0, capacity, ABSENT);
+    this.cursor = 0;
+    this.size = 0;
+  }
+
+  // returns whether this queue is empty
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  // returns the number of items in this queue
+  public int size() {
+    return this.size;
+  }
+
+  // returns whether the given item is in this queue
+  public boolean contains(int item) {
+    return this.prev[item] != ABSENT;
+  }
+
+  // returns the key of the given item, which is kept after it is polled
+  public long key(int item) {
+    return this.keys[item];
+  }
+
+  // adds the given item with the given key
+  // EFFECT: links the item into the bucket of its key, moving the cursor back to
+  // the key if the queue is empty or the key is below it, since the items pushed
+  // after an emptying poll need not come in order of their keys
+  public void push(int item, long key) {
+    if (this.size == 0 || key < this.cursor) {
+      this.cursor = key;
+    }
+    this.keys[item] = key;
+    this.link(item);
+    this.size += 1;
+  }
+
+  // lowers the key of the given item, which is in this queue
+  // EFFECT: moves the item to the bucket of its new key
+  public void decrease(int item, long key) {
+    this.unlink(item);
+    this.keys[item] = key;
+    this.link(item);
+  }
+
+  // removes and returns an item with the smallest key
+  // EFFECT: advances the cursor to the first bucket holding an item and unlinks
+  // that bucket's first item
+  public int poll() {
+    int bucket = (int) (this.cursor % this.buckets);
+    while (this.heads[bucket] < 0) {
+      this.cursor += 1;
+      bucket += 1;
+      if (bucket == this.buckets) {
+        bucket = 0;
+      }
+    }
+
+    int item = this.heads[bucket];
+    this.unlink(item);
+    this.prev[item] = ABSENT;
+    this.size -= 1;
+    return item;
+  }
+
+  // adds the given item to the front of the bucket of its key
+  // EFFECT: modifies heads, next and prev
+  void link(int item) {
+    int bucket = (int) (this.keys[item] % this.buckets);
+    int head = this.heads[bucket];
+    this.next[item] = head;
+    this.prev[item] = -1;
+    if (head >= 0) {
+      this.prev[head] = item;
+    }
+    this.heads[bucket] = item;
+  }
+
+  // removes the given item from the bucket of its key
+  // EFFECT: modifies heads, next and prev
+  void unlink(int item) {
+    int before = this.prev[item];
+    int after = this.next[item];
+    if (before >= 0) {
+      this.next[before] = after;
+    }
+    else {
+      this.heads[(int) (this.keys[item] % this.buckets)] = after;
+    }
+    if (after >= 0) {
+      this.prev[after] = before;
+    }
+  }
+}
+
+// to represent a breadth-first, depth-first, Dijkstra or A* search over the
+// cells of a CellGraph, whose buffers are reused by every search
+class CellSearch {
+  private final BitSet seen;
+  // prev[cell] is the cell the given cell was reached from
+  private int[] prev;
+  // BFS takes cells from the head of the frontier and DFS from its tail; both
+  // add at the tail
+  private int[] frontier;
+  private int[] order;
+  private int[] path;
+  private int[] neighbors;
+  private int[] weights;
+  // distances[cell] is the total passage weight from the source to a cell the
+  // last Dijkstra or A* search settled
+  private long[] distances;
+  // the cells Dijkstra's algorithm has reached but not settled, keyed by their
+  // distance from the source plus the graph's estimate of the rest of the way;
+  // graphs with small weights use the bucket queue and the rest the heap
+  private final BucketQueue buckets;
+  private final IndexedMinHeap heap;
+  private int expanded;
+  private int frontierMax;
+  private int levelMax;
+  private int pathLength;
+  private long pathCost;
+
+  CellSearch() {
+    this.seen = new BitSet();
+    this.prev = new int[0];
+    this.frontier = new int[0];
+    this.order = new int[0];
+    this.path = new int[0];
+    this.neighbors = new int[0];
+    this.weights = new int[0];
+    this.distances = new long[0];
+    this.buckets = new BucketQueue();
+    this.heap = new IndexedMinHeap();
+  }
+
+  // searches the given graph from the given source cell for the given target
+  // cell, breadth first if bfs is true and depth first otherwise, and returns
+  // whether the target was reached
+  // EFFECT: records the cells expanded, in order, the largest frontier, and, if
+  // the target was reached, the path to it
+  boolean run(CellGraph graph, int source, int target, boolean bfs) {
+    this.reserve(graph.cellCount(), graph.maxDegree());
+    this.seen.clear();
+    this.expanded = 0;
+    this.frontierMax = 1;
+    this.levelMax = 0;
+    this.pathLength = 0;
+    this.pathCost = 0;
+
+    int head = 0;
+    int tail = 0;
+    this.prev[source] = source;
+    this.frontier[tail] = source;
+    tail += 1;
+
+    while (head < tail) {
+      int next;
+      if (bfs) {
+        next = this.frontier[head];
+        head += 1;
+      }
+      else {
+        tail -= 1;
+        next = this.frontier[tail];
+      }
+
+      if (next == target) {
+        this.backtrack(target);
+        return true;
+      }
+      else if (this.seen.get(next)) {
+        // do nothing
+      }
+      else {
+        int count = graph.openNeighbors(next, this.neighbors, this.weights);
+        if (tail + count > this.frontier.length) {
+          this.frontier = Arrays.copyOf(this.frontier, 2 * (tail + count));
+        }
+
+        for (int k = 0; k < count; k += 1) {
+          int neighbor = this.neighbors[k];
+          if (!this.seen.get(neighbor)) {
+            this.frontier[tail] = neighbor;
+            tail += 1;
+            this.prev[neighbor] = next;
+          }
+        }
+
+        this.seen.set(next);
+        this.order[this.expanded] = next;
+        this.expanded += 1;
+        this.frontierMax = Math.max(this.frontierMax, tail - head);
+      }
+    }
+
+    return false;
+  }
+
+  // searches the given graph from the given source cell for the given target
+  // cell with Dijkstra's algorithm, or with A* if astar is true, which both find
+  // the path with the smallest total passage weight, and returns whether the
+  // target was reached; a target of -1 settles every cell the source reaches
+  // EFFECT: records the cells settled, in order, with their distances, the
+  // largest queue, the most cells settled at one distance, and, if the target
+  // was reached, the path to it and its cost
+  boolean runShortest(CellGraph graph, int source, int target, boolean astar) {
+    this.reserve(graph.cellCount(), graph.maxDegree());
+    this.seen.clear();
+    this.expanded = 0;
+    this.frontierMax = 1;
+    this.levelMax = 0;
+    this.pathLength = 0;
+    this.pathCost = 0;
+
+    // A* keys can run ahead of the smallest key by a passage weight plus the
+    // change in the estimate, which is no more than another passage weight
+    boolean guided = astar && target >= 0;
+    long span = (long) graph.maxWeight() * (guided ? 2 : 1);
+    IndexedQueue queue;
+    if (span <= BucketQueue.MAX_SPAN) {
+      this.buckets.reset(graph.cellCount(), (int) span);
+      queue = this.buckets;
+    }
+    else {
+      this.heap.reset(graph.cellCount());
+      queue = this.heap;
+    }
+
+    this.prev[source] = source;
+    queue.push(source, guided ? graph.estimate(source, target) : 0);
+    // Dijkstra's algorithm settles cells in order of distance, so the cells of
+    // one distance are settled one after another
+    long levelDistance = -1;
+    int levelSize = 0;
+
+    while (!queue.isEmpty()) {
+      // a polled item keeps its key, which is now its distance plus its estimate
+      int next = queue.poll();
+      long distance = queue.key(next);
+      if (guided) {
+        distance -= graph.estimate(next, target);
+      }
+      else {
+        levelSize = distance == levelDistance ? levelSize + 1 : 1;
+        levelDistance = distance;
+        this.levelMax = Math.max(this.levelMax, levelSize);
+      }
+      this.distances[next] = distance;
+      this.seen.set(next);
+
+      if (next == target) {
+        this.pathCost = distance;
+        this.backtrack(target);
+        return true;
+      }
+
+      int count = graph.openNeighbors(next, this.neighbors, this.weights);
+      for (int k = 0; k < count; k += 1) {
+        int neighbor = this.neighbors[k];
+        if (this.seen.get(neighbor)) {
+          continue;
+        }
+
+        long through = distance + this.weights[k];
+        if (guided) {
+          through += graph.estimate(neighbor, target);
+        }
+
+        if (!queue.contains(neighbor)) {
+          this.prev[neighbor] = next;
+          queue.push(neighbor, through);
+        }
+        else if (through < queue.key(neighbor)) {
+          this.prev[neighbor] = next;
+          queue.decrease(neighbor, through);
+        }
+      }
+
+      this.order[this.expanded] = next;
+      this.expanded += 1;
+      this.frontierMax = Math.max(this.frontierMax, queue.size());
+    }
+
+    return false;
+  }
+
+  // records the path from the source to the given cell
+  // EFFECT: sets path and pathLength by following prev back to the source
+  void backtrack(int cell) {
+    for (; ; cell = this.prev[cell]) {
+      this.path[this.pathLength] = cell;
+      this.pathLength += 1;
+      if (this.prev[cell] == cell) {
+        return;
+      }
+    }
+  }
+
+  // makes room for a search over the given number of cells
+  // EFFECT: grows the buffers geometrically if they are too small
+  void reserve(int cells, int degree) {
+    if (cells > this.prev.length) {
+      int capacity = Math.max(cells, 2 * this.prev.length);
+      this.prev = new int[capacity];
+      this.distances = new long[capacity];
+      this.order = new int[capacity];
+      this.path = new int[capacity];
+      this.frontier = new int[capacity + 1];
+    }
+
+    if (degree > this.neighbors.length) {
+      this.neighbors = new int[degree];
+      this.weights = new int[degree];
+    }
+  }
+
+  // records a search that gave up without expanding any cell, such as one whose
+  // target is known to be out of reach
+  // EFFECT: clears the counts and the path of the last search
+  void skip() {
+    this.expanded = 0;
+    this.frontierMax = 0;
+    this.levelMax = 0;
+    this.pathLength = 0;
+    this.pathCost = 0;
+  }
+
+  // returns the number of cells the last search expanded
+  int expanded() {
+    return this.expanded;
+  }
+
+  // returns the i-th cell the last search expanded
+  int expandedCell(int i) {
+    return this.order[i];
+  }
+
+  // returns the largest frontier of the last search
+  int frontierMax() {
+    return this.frontierMax;
+  }
+
+  // returns the most cells the last Dijkstra search settled at a single
+  // distance, or 0 for other searches
+  int levelMax() {
+    return this.levelMax;
+  }
+
+  // returns the number of cells on the path the last search found, or 0 if it
+  // found none
+  int pathLength() {
+    return this.pathLength;
+  }
+
+  // returns the i-th cell on the path the last search found, where 0 is the
+  // target
+  int pathCell(int i) {
+    return this.path[i];
+  }
+
+  // returns the total passage weight of the path the last Dijkstra or A* search
+  // found, or 0 for other searches
+  long pathCost() {
+    return this.pathCost;
+  }
+
+  // returns the total passage weight from the source of the last Dijkstra or A*
+  // search to the given cell, or -1 if that search did not settle it
+  long distance(int cell) {
+    if (this.seen.get(cell)) {
+      return this.distances[cell];
+    }
+    else {
+      return -1;
+    }
+  }
+}
+
+// to represent the cheapest distances from a source cell to every cell of a
+// CellGraph, with the tree of cheapest paths that produced them, kept up to date
+// as single passages open and close
+// parent[cell] is the cell before the given cell on its cheapest path, the cell
+// itself for the source, and -1 if the cell cannot be reached, in which case
+// distances[cell] is -1 too
+// closing a passage of the tree only reprices the subtree below it, and opening
+// a passage only reprices the cells it makes cheaper, so a repair costs about as
+// much as the region it changes rather than the whole graph
+class DistanceField {
+  private int source;
+  private long[] distances;
+  private int[] parent;
+  // the cells cut off by the last closed passage, in breadth-first order
+  private int[] subtree;
+  private final BitSet detached;
+  private final IndexedMinHeap heap;
+  private int[] neighbors;
+  private int[] weights;
+  private int[] backNeighbors;
+  private int[] backWeights;
+  private int touched;
+  // the cells whose parent the last repair changed, other than cells it reached
+  // for the first time: the subtree below a closed passage, or the cells a new
+  // passage made cheaper to reach
+  private int[] repriced;
+  private int repricedCount;
+
+  DistanceField() {
+    this.distances = new long[0];
+    this.parent = new int[0];
+    this.subtree = new int[0];
+    this.detached = new BitSet();
+    this.heap = new IndexedMinHeap();
+    this.neighbors = new int[0];
+    this.weights = new int[0];
+    this.backNeighbors = new int[0];
+    this.backWeights = new int[0];
+    this.repriced = new int[0];
+  }
+
+  // prices every cell of the given graph from the given source with Dijkstra's
+  // algorithm
+  // EFFECT: sets source, distances and parent, growing the buffers if they are
+  // too small
+  void compute(CellGraph graph, int source) {
+    int cells = graph.cellCount();
+    if (cells > this.parent.length) {
+      int capacity = Math.max(cells, 2 * this.parent.length);
+      this.distances = new long[capacity];
+      this.parent = new int[capacity];
+      this.subtree = new int[capacity];
+      this.repriced = new int[capacity];
+    }
+    if (graph.maxDegree() > this.neighbors.length) {
+      this.neighbors = new int[graph.maxDegree()];
+      this.weights = new int[graph.maxDegree()];
+      this.backNeighbors = new int[graph.maxDegree()];
+      this.backWeights = new int[graph.maxDegree()];
+    }
+
+    Arrays.fill(this.distances, 0, cells, -1);
+    Arrays.fill(this.parent, 0, cells, -1);
+    this.heap.reset(cells);
+    this.repricedCount = 0;
+    this.source = source;
+    this.distances[source] = 0;
+    this.parent[source] = source;
+    this.heap.push(source, 0);
+    this.touched = this.settle(graph);
+  }
+
+  // repairs this field after the passage between the given cells was closed in
+  // the given graph
+  // EFFECT: reprices the subtree below the closed passage, if it was part of the
+  // tree of cheapest paths
+  void cut(CellGraph graph, int first, int second) {
+    int child;
+    if (this.parent[second] == first) {
+      child = second;
+    }
+    else if (this.parent[first] == second) {
+      child = first;
+    }
+    else {
+      this.touched = 0;
+      this.repricedCount = 0;
+      return;
+    }
+
+    // the rest of the tree still reaches the subtree through its open passages
+    int size = 1;
+    this.subtree[0] = child;
+    this.detached.set(child);
+    for (int i = 0; i < size; i += 1) {
+      int cell = this.subtree[i];
+      int count = graph.openNeighbors(cell, this.neighbors, this.weights);
+      for (int k = 0; k < count; k += 1) {
+        int next = this.neighbors[k];
+        if (this.parent[next] == cell && !this.detached.get(next)) {
+          this.detached.set(next);
+          this.subtree[size] = next;
+          size += 1;
+        }
+      }
+    }
+
+    for (int i = 0; i < size; i += 1) {
+      this.distances[this.subtree[i]] = -1;
+      this.parent[this.subtree[i]] = -1;
+    }
+    System.arraycopy(this.subtree, 0, this.repriced, 0, size);
+    this.repricedCount = size;
+
+    // every cell of the subtree starts from its cheapest way in from outside it
+    for (int i = 0; i < size; i += 1) {
+      int cell = this.subtree[i];
+      int count = graph.openNeighbors(cell, this.neighbors, this.weights);
+      for (int k = 0; k < count; k += 1) {
+        int outside = this.neighbors[k];
+        if (!this.detached.get(outside) && this.distances[outside] >= 0) {
+          this.relax(graph, outside, cell);
+        }
+      }
+    }
+
+    for (int i = 0; i < size; i += 1) {
+      this.detached.clear(this.subtree[i]);
+    }
+    this.touched = size + this.settle(graph);
+  }
+
+  // repairs this field after the passage between the given cells was opened in
+  // the given graph
+  // EFFECT: reprices the cells the new passage makes cheaper to reach
+  void join(CellGraph graph, int first, int second) {
+    this.repricedCount = 0;
+    if (this.distances[first] >= 0) {
+      this.relax(graph, first, second);
+    }
+    if (this.distances[second] >= 0) {
+      this.relax(graph, second, first);
+    }
+    this.touched = this.settle(graph);
+  }
+
+  // queues the second given cell if the passage from the first given cell, whose
+  // distance is known, is a cheaper way to reach it
+  // EFFECT: lowers the second cell's distance and sets its parent, and queues it
+  void relax(CellGraph graph, int from, int to) {
+    int count = graph.openNeighbors(from, this.backNeighbors, this.backWeights);
+    for (int k = 0; k < count; k += 1) {
+      if (this.backNeighbors[k] == to) {
+        this.lower(from, to, this.distances[from] + this.backWeights[k]);
+      }
+    }
+  }
+
+  // sets the distance of the given cell to the given distance through the given
+  // parent, if that is cheaper than what it has
+  // EFFECT: modifies distances, parent and heap, and records the cell as
+  // repriced the first time a reached cell is lowered
+  void lower(int from, int to, long distance) {
+    if (this.distances[to] >= 0 && this.distances[to] <= distance) {
+      return;
+    }
+
+    // a queued cell cannot be settled yet, and settled cells never get cheaper,
+    // so each cell is recorded once
+    if (this.distances[to] >= 0 && !this.heap.contains(to)) {
+      this.repriced[this.repricedCount] = to;
+      this.repricedCount += 1;
+    }
+
+    this.distances[to] = distance;
+    this.parent[to] = from;
+    if (this.heap.contains(to)) {
+      this.heap.decrease(to, distance);
+    }
+    else {
+      this.heap.push(to, distance);
+    }
+  }
+
+  // runs Dijkstra's algorithm from the queued cells until the queue is empty, and
+  // returns the number of cells it settled
+  // EFFECT: lowers the distances of every cell a queued cell makes cheaper
+  int settle(CellGraph graph) {
+    int settled = 0;
+    while (!this.heap.isEmpty()) {
+      int cell = this.heap.poll();
+      settled += 1;
+      int count = graph.openNeighbors(cell, this.neighbors, this.weights);
+      for (int k = 0; k < count; k += 1) {
+        this.lower(cell, this.neighbors[k], this.distances[cell] + this.weights[k]);
+      }
+    }
+    return settled;
+  }
+
+  // returns the source of this field
+  int source() {
+    return this.source;
+  }
+
+  // returns the total passage weight from the source to the given cell, or -1 if
+  // it cannot be reached
+  long distance(int cell) {
+    return this.distances[cell];
+  }
+
+  // returns the cell before the given cell on its cheapest path from the source,
+  // the cell itself for the source, or -1 if it cannot be reached
+  int parent(int cell) {
+    return this.parent[cell];
+  }
+
+  // returns the number of cells the last computation or repair visited
+  int touched() {
+    return this.touched;
+  }
+
+  // returns the number of cells whose parent the last repair changed, other
+  // than cells it reached for the first time; none after a computation
+  int repricedCount() {
+    return this.repricedCount;
+  }
+
+  // returns the i-th cell whose parent the last repair changed
+  int repriced(int i) {
+    return this.repriced[i];
+  }
+}
+
+// to represent the cheapest distances from one or more sources in a CellGraph
+// to every cell, and which source is nearest to each, computed level by level
+// on a ForkJoinPool
+// passages weigh small positive integers, so once every cell closer than d has
+// been expanded, the cells at distance d are final and can be expanded at once;
+// on a graph whose passages all weigh 1 this is a level-synchronous
+// breadth-first search
+// each level is split into FrontierChunks that run in parallel: a cell is
+// claimed for expansion by setting its bit in an atomic visited bitset, and
+// labels only ever fall, by compare-and-set; a chunk writes the cells it
+// reaches into buffers of its own, one per level ahead, and these are gathered
+// into a ring of upcoming levels once the whole level is done
+// a label packs a cell's distance above the index of its source, so the
+// smallest label names the nearest source and, among sources equally near, the
+// first; the result is the same whatever order the chunks run in
+class ParallelDistances {
+  // the fewest cells of a level worth handing to a chunk of their own
+  static final int MIN_CHUNK = 256;
+  // the label of a cell no source reaches
+  static final long UNREACHED = Long.MAX_VALUE;
+
+  private final ForkJoinPool pool;
+  private final int minChunk;
+  private AtomicLongArray labels;
+  private AtomicLongArray visited;
+  // levels[d % levels.length] holds the cells that may be at distance d
+  private int[][] levels;
+  private int[] levelSizes;
+  private final ArrayList<FrontierChunk> chunks;
+  private int cells;
+  private int expanded;
+  private int widestLevel;
+  private int mostParts;
+
+  ParallelDistances(ForkJoinPool pool, int minChunk) {
+    if (minChunk < 1) {
+      throw new IllegalArgumentException("a chunk must hold at least one cell");
+    }
+    this.pool = pool;
+    this.minChunk = minChunk;
+    this.labels = new AtomicLongArray(0);
+    this.visited = new AtomicLongArray(0);
+    this.levels = new int[0][];
+    this.levelSizes = new int[0];
+    this.chunks = new ArrayList<FrontierChunk>();
+  }
+
+  ParallelDistances(ForkJoinPool pool) {
+    this(pool, MIN_CHUNK);
+  }
+
+  // returns the number of chunks a level of the given number of cells is split
+  // into on a pool of the given parallelism: one for each minChunk cells, but
+  // at most a few per worker, and only one unless the level fills more than one
+  // chunk for every worker
+  static int partsFor(int size, int parallelism, int minChunk) {
+    if (parallelism < 2 || size / minChunk <= parallelism) {
+      return 1;
+    }
+    else {
+      return Math.min(4 * parallelism, size / minChunk);
+    }
+  }
+
+  // returns whether this would split a level of the given number of cells
+  // across more than one worker
+  boolean splits(int size) {
+    return partsFor(size, this.pool.getParallelism(), this.minChunk) > 1;
+  }
+
+  // prices every cell of the given graph from the given source
+  // throws an IllegalArgumentException if the source is not a cell of the graph
+  // EFFECT: replaces the labels, growing the buffers if they are too small
+  void compute(CellGraph graph, int source) {
+    if (source < 0 || source >= graph.cellCount()) {
+      throw new IllegalArgumentException("source must be a cell of the graph");
+    }
+    this.compute(graph, new int[] { source }, 1);
+  }
+
+  // prices every cell of the given graph from the nearest of the first given
+  // number of sources, in a single pass over the graph
+  // throws an IllegalArgumentException if there are no sources, or one of them
+  // is not a cell of the graph
+  // EFFECT: replaces the labels, growing the buffers if they are too small
+  void compute(CellGraph graph, int[] sources, int count) {
+    int cells = graph.cellCount();
+    if (count < 1 || count > sources.length) {
+      throw new IllegalArgumentException("there must be between 1 and " + sources.length
+          + " sources");
+    }
+    for (int k = 0; k < count; k += 1) {
+      if (sources[k] < 0 || sources[k] >= cells) {
+        throw new IllegalArgumentException("sources must be cells of the graph");
+      }
+    }
+    this.reset(cells, graph.maxWeight() + 1);
+
+    for (int k = 0; k < count; k += 1) {
+      this.lower(sources[k], 0, k);
+      this.push(0, sources[k]);
+    }
+    int pending = count;
+    int parallelism = this.pool.getParallelism();
+    for (int level = 0; pending > 0; level += 1) {
+      int slot = level % this.levels.length;
+      int size = this.levelSizes[slot];
+      if (size == 0) {
+        continue;
+      }
+      pending -= size;
+      this.levelSizes[slot] = 0;
+
+      // a few chunks per worker balance the load without swamping the pool
+      int parts = partsFor(size, parallelism, this.minChunk);
+      this.widestLevel = Math.max(this.widestLevel, size);
+      this.mostParts = Math.max(this.mostParts, parts);
+      while (this.chunks.size() < parts) {
+        this.chunks.add(new FrontierChunk(this));
+      }
+      for (int k = 0; k < parts; k += 1) {
+        this.chunks.get(k).assign(graph, this.levels[slot], (int) ((long) size * k / parts),
+            (int) ((long) size * (k + 1) / parts), level);
+      }
+      if (parts == 1) {
+        this.chunks.get(0).call();
+      }
+      else {
+        this.pool.invokeAll(this.chunks.subList(0, parts));
+      }
+
+      for (int k = 0; k < parts; k += 1) {
+        FrontierChunk chunk = this.chunks.get(k);
+        this.expanded += chunk.expanded();
+        for (int ahead = 1; ahead <= graph.maxWeight(); ahead += 1) {
+          pending += chunk.drain(ahead, this, level + ahead);
+        }
+      }
+    }
+  }
+
+  // sizes these buffers to a graph of the given number of cells whose passages
+  // weigh less than the given number of levels, with no cell reached
+  // EFFECT: resets the labels, visited bits and levels
+  void reset(int cells, int ring) {
+    if (cells > this.labels.length()) {
+      this.labels = new AtomicLongArray(cells);
+      this.visited = new AtomicLongArray((cells + 63) >>> 6);
+    }
+    for (int cell = 0; cell < cells; cell += 1) {
+      this.labels.set(cell, UNREACHED);
+    }
+    for (int w = 0; w < (cells + 63) >>> 6; w += 1) {
+      this.visited.set(w, 0);
+    }
+    if (ring > this.levels.length) {
+      this.levels = Arrays.copyOf(this.levels, ring);
+      this.levelSizes = new int[ring];
+      for (int slot = 0; slot < ring; slot += 1) {
+        if (this.levels[slot] == null) {
+          this.levels[slot] = new int[16];
+        }
+      }
+    }
+    Arrays.fill(this.levelSizes, 0);
+    this.cells = cells;
+    this.expanded = 0;
+    this.widestLevel = 0;
+    this.mostParts = 0;
+  }
+
+  // adds the given cell to the given level
+  // EFFECT: appends to the level's buffer in the ring, growing it if it is full
+  void push(int level, int cell) {
+    int slot = level % this.levels.length;
+    if (this.levelSizes[slot] == this.levels[slot].length) {
+      this.levels[slot] = Arrays.copyOf(this.levels[slot], 2 * this.levels[slot].length);
+    }
+    this.levels[slot][this.levelSizes[slot]] = cell;
+    this.levelSizes[slot] += 1;
+  }
+
+  // claims the given cell for expansion, and returns whether no other chunk
+  // had claimed it first
+  // EFFECT: sets the cell's visited bit
+  boolean claim(int cell) {
+    int w = cell >>> 6;
+    long bit = 1L << cell;
+    long old = this.visited.get(w);
+    while ((old & bit) == 0) {
+      if (this.visited.compareAndSet(w, old, old | bit)) {
+        return true;
+      }
+      old = this.visited.get(w);
+    }
+    return false;
+  }
+
+  // returns whether the given cell has been claimed for expansion
+  boolean isClaimed(int cell) {
+    return (this.visited.get(cell >>> 6) & (1L << cell)) != 0;
+  }
+
+  // lowers the label of the given cell to the given distance from the given
+  // source, and returns whether that is nearer, or as near and from an earlier
+  // source, than any label the cell had
+  // EFFECT: sets the cell's label if it falls
+  boolean lower(int cell, int distance, int source) {
+    long label = (long) distance << 32 | source;
+    long old = this.labels.get(cell);
+    while (label < old) {
+      if (this.labels.compareAndSet(cell, old, label)) {
+        return true;
+      }
+      old = this.labels.get(cell);
+    }
+    return false;
+  }
+
+  // returns the cheapest distance from the nearest source to the given cell, or
+  // -1 if it cannot be reached
+  int distance(int cell) {
+    long label = this.labels.get(cell);
+    return label == UNREACHED ? -1 : (int) (label >>> 32);
+  }
+
+  // returns the index among the sources of the nearest one to the given cell,
+  // the first of them if several are as near, or -1 if it cannot be reached
+  int sourceOf(int cell) {
+    long label = this.labels.get(cell);
+    return label == UNREACHED ? -1 : (int) label;
+  }
+
+  // returns the distances of every cell, -1 for the cells that cannot be reached
+  int[] distances() {
+    int[] res = new int[this.cells];
+    for (int cell = 0; cell < this.cells; cell += 1) {
+      res[cell] = this.distance(cell);
+    }
+    return res;
+  }
+
+  // returns the nearest source of every cell, -1 for the cells that cannot be
+  // reached
+  int[] sources() {
+    int[] res = new int[this.cells];
+    for (int cell = 0; cell < this.cells; cell += 1) {
+      res[cell] = this.sourceOf(cell);
+    }
+    return res;
+  }
+
+  // returns the number of cells expanded by the last computation
+  int expanded() {
+    return this.expanded;
+  }
+
+  // returns the most cells any one level of the last computation held
+  int widestLevel() {
+    return this.widestLevel;
+  }
+
+  // returns the most chunks any one level of the last computation was split
+  // into
+  int mostParts() {
+    return this.mostParts;
+  }
+}
+
+// to represent a range of one level of a ParallelDistances computation, and
+// the buffers of cells it reaches on each later level; a chunk is reused from
+// level to level, so its buffers only grow
+class FrontierChunk implements Callable<FrontierChunk> {
+  private final ParallelDistances owner;
+  private CellGraph graph;
+  private int[] frontier;
+  private int from;
+  private int to;
+  private int level;
+  // ahead[w] holds the cells reached through passages of weight w
+  private int[][] ahead;
+  private int[] aheadSizes;
+  private int[] neighbors;
+  private int[] weights;
+  private int expanded;
+
+  FrontierChunk(ParallelDistances owner) {
+    this.owner = owner;
+    this.ahead = new int[0][];
+    this.aheadSizes = new int[0];
+    this.neighbors = new int[0];
+    this.weights = new int[0];
+  }
+
+  // points this chunk at the cells of the given frontier from the first given
+  // index up to the second, all tentatively at the given level
+  // EFFECT: sets the range and empties the buffers, growing them if the graph's
+  // passages are heavier or its cells have more neighbors than before
+  void assign(CellGraph graph, int[] frontier, int from, int to, int level) {
+    this.graph = graph;
+    this.frontier = frontier;
+    this.from = from;
+    this.to = to;
+    this.level = level;
+    this.expanded = 0;
+    if (graph.maxWeight() + 1 > this.ahead.length) {
+      this.ahead = Arrays.copyOf(this.ahead, graph.maxWeight() + 1);
+      this.aheadSizes = new int[graph.maxWeight() + 1];
+      for (int w = 0; w < this.ahead.length; w += 1) {
+        if (this.ahead[w] == null) {
+          this.ahead[w] = new int[16];
+        }
+      }
+    }
+    Arrays.fill(this.aheadSizes, 0);
+    if (graph.maxDegree() > this.neighbors.length) {
+      this.neighbors = new int[graph.maxDegree()];
+      this.weights = new int[graph.maxDegree()];
+    }
+  }
+
+  // expands every cell of this chunk's range that is still at its level and
+  // that no other chunk has claimed, lowering the labels of its neighbors to
+  // its own source and buffering the ones that fall
+  // EFFECT: modifies the owner's labels and visited bits, and this chunk's
+  // buffers
+  public FrontierChunk call() {
+    for (int k = this.from; k < this.to; k += 1) {
+      int cell = this.frontier[k];
+      if (this.owner.distance(cell) != this.level || !this.owner.claim(cell)) {
+        continue;
+      }
+      this.expanded += 1;
+
+      int source = this.owner.sourceOf(cell);
+      int count = this.graph.openNeighbors(cell, this.neighbors, this.weights);
+      for (int i = 0; i < count; i += 1) {
+        int next = this.neighbors[i];
+        int weight = this.weights[i];
+        if (!this.owner.isClaimed(next) && this.owner.lower(next, this.level + weight, source)) {
+          if (this.aheadSizes[weight] == this.ahead[weight].length) {
+            this.ahead[weight] = Arrays.copyOf(this.ahead[weight], 2 * this.aheadSizes[weight]);
+          }
+          this.ahead[weight][this.aheadSizes[weight]] = next;
+          this.aheadSizes[weight] += 1;
+        }
+      }
+    }
+    return this;
+  }
+
+  // returns the number of cells this chunk expanded
+  int expanded() {
+    return this.expanded;
+  }
+
+  // moves the cells this chunk reached through passages of the given weight to
+  // the given level of the given computation, and returns how many there were
+  // EFFECT: pushes the cells onto the level and empties the buffer
+  int drain(int weight, ParallelDistances target, int level) {
+    int count = this.aheadSizes[weight];
+    for (int k = 0; k < count; k += 1) {
+      target.push(level, this.ahead[weight][k]);
+    }
+    this.aheadSizes[weight] = 0;
+    return count;
+  }
+}
+
+// to represent the connected components of the active cells of a board, found
+// by flood filling the open passages of a CellGraph with an int stack
+// labels[cell] is the component of the given cell, counting from 0 in the order
+// their first cells appear in the mask, or -1 for masked cells; sizes and the
+// bounding boxes are kept per component
+class ComponentLabels {
+  private int[] labels;
+  private int[] stack;
+  private int[] neighbors;
+  private int[] weights;
+  private int[] sizes;
+  private int[] minRows;
+  private int[] minCols;
+  private int[] maxRows;
+  private int[] maxCols;
+  private int count;
+
+  ComponentLabels() {
+    this.labels = new int[0];
+    this.stack = new int[0];
+    this.neighbors = new int[0];
+    this.weights = new int[0];
+    this.sizes = new int[0];
+    this.minRows = new int[0];
+    this.minCols = new int[0];
+    this.maxRows = new int[0];
+    this.maxCols = new int[0];
+  }
+
+  // labels the components of the active cells of the given mask in the given
+  // graph, whose cells are numbered in row-major order over the mask's width
+  // EFFECT: sets labels and the per-component statistics, growing the buffers if
+  // they are too small
+  void label(CellGraph graph, MazeMask mask) {
+    int cells = graph.cellCount();
+    if (cells > this.labels.length) {
+      int capacity = Math.max(cells, 2 * this.labels.length);
+      this.labels = new int[capacity];
+      this.stack = new int[capacity];
+    }
+    if (graph.maxDegree() > this.neighbors.length) {
+      this.neighbors = new int[graph.maxDegree()];
+      this.weights = new int[graph.maxDegree()];
+    }
+
+    int width = mask.getWidth();
+    Arrays.fill(this.labels, 0, cells, -1);
+    this.count = 0;
+
+    for (int k = 0; k < mask.activeCount(); k += 1) {
+      int first = mask.activeCell(k);
+      if (this.labels[first] >= 0) {
+        continue;
+      }
+
+      int component = this.add(first / width, first % width);
+      this.labels[first] = component;
+      int top = 0;
+      this.stack[top] = first;
+      top += 1;
+
+      while (top > 0) {
+        top -= 1;
+        int cell = this.stack[top];
+        this.grow(component, cell / width, cell % width);
+
+        int degree = graph.openNeighbors(cell, this.neighbors, this.weights);
+        for (int i = 0; i < degree; i += 1) {
+          int next = this.neighbors[i];
+          if (this.labels[next] < 0) {
+            this.labels[next] = component;
+            this.stack[top] = next;
+            top += 1;
+          }
+        }
+      }
+    }
+  }
+
+  // starts a new, empty component whose bounding box is the given cell, and
+  // returns its label
+  // EFFECT: grows the per-component arrays geometrically if they are full
+  int add(int row, int col) {
+    if (this.count == this.sizes.length) {
+      int capacity = Math.max(4, 2 * this.count);
+      this.sizes = Arrays.copyOf(this.sizes, capacity);
+      this.minRows = Arrays.copyOf(this.minRows, capacity);
+      this.minCols = Arrays.copyOf(this.minCols, capacity);
+      this.maxRows = Arrays.copyOf(this.maxRows, capacity);
+      this.maxCols = Arrays.copyOf(this.maxCols, capacity);
+    }
+
+    this.sizes[this.count] = 0;
+    this.minRows[this.count] = row;
+    this.minCols[this.count] = col;
+    this.maxRows[this.count] = row;
+    this.maxCols[this.count] = col;
+    this.count += 1;
+    return this.count - 1;
+  }
+
+  // adds the cell at the given row and column to the given component
+  // EFFECT: increments the component's size and stretches its bounding box
+  void grow(int component, int row, int col) {
+    this.sizes[component] += 1;
+    this.minRows[component] = Math.min(this.minRows[component], row);
+    this.minCols[component] = Math.min(this.minCols[component], col);
+    this.maxRows[component] = Math.max(this.maxRows[component], row);
+    this.maxCols[component] = Math.max(this.maxCols[component], col);
+  }
+
+  // returns the number of components
+  int componentCount() {
+    return this.count;
+  }
+
+  // returns the component of the given cell, or -1 if it is masked
+  int labelOf(int cell) {
+    return this.labels[cell];
+  }
+
+  // returns whether the given cells are active and in the same component
+  boolean connected(int cell, int other) {
+    return this.labels[cell] >= 0 && this.labels[cell] == this.labels[other];
+  }
+
+  // returns the number of cells in the given component
+  int size(int component) {
+    return this.sizes[component];
+  }
+
+  // returns the topmost row of the given component
+  int minRow(int component) {
+    return this.minRows[component];
+  }
+
+  // returns the leftmost column of the given component
+  int minCol(int component) {
+    return this.minCols[component];
+  }
+
+  // returns the bottommost row of the given component
+  int maxRow(int component) {
+    return this.maxRows[component];
+  }
+
+  // returns the rightmost column of the given component
+  int maxCol(int component) {
+    return this.maxCols[component];
+  }
+
+  // returns a line per component with its size and bounding box, preceded by a
+  // line saying whether the given start and end cells connect
+  String report(int start, int end) {
+    StringBuilder res = new StringBuilder();
+    res.append(this.count).append(" components, start and end ")
+        .append(this.connected(start, end) ? "connected" : "not connected").append("\n");
+    for (int c = 0; c < this.count; c += 1) {
+      res.append("component ").append(c).append(": ").append(this.sizes[c])
+          .append(" cells, rows ").append(this.minRows[c]).append("-").append(this.maxRows[c])
+          .append(", columns ").append(this.minCols[c]).append("-").append(this.maxCols[c])
+          .append("\n");
+    }
+    return res.toString();
+  }
+}
+
+// to represent the corridor bias of a board, from -1 for vertical corridors
+// through 0 for none to 1 for horizontal corridors, given per region of a grid
+// stretched over the board
+// a bias b > 0 multiplies the keys of passages between rows by STRENGTH^b, and
+// b < 0 the keys of passages within a row by STRENGTH^-b, so the other passages
+// are taken first; both multipliers are computed once per region, so drawing a
+// key costs a lookup and a multiply, and keys stay below 100 * STRENGTH
+class BiasMap {
+  // the multiplier a bias of 1 or -1 gives the passages it works against
+  static final double STRENGTH = 50;
+
+  static final BiasMap NONE = BiasMap.uniform(0);
+  static final BiasMap HORIZONTAL = BiasMap.uniform(1);
+  static final BiasMap VERTICAL = BiasMap.uniform(-1);
+
+  private final int rows;
+  private final int cols;
+  private final double[] biases;
+  // acrossScales[region] multiplies passages within a row, downScales[region]
+  // passages between rows
+  private final double[] acrossScales;
+  private final double[] downScales;
+
+  // throws an IllegalArgumentException if there is not one bias per region, or
+  // a bias is not between -1 and 1
+  BiasMap(int rows, int cols, double[] biases) {
+    if (rows < 1 || cols < 1 || biases.length != rows * cols) {
+      throw new IllegalArgumentException("a bias map needs one bias per region");
+    }
+
+    this.rows = rows;
+    this.cols = cols;
+    this.biases = Arrays.copyOf(biases, biases.length);
+    this.acrossScales = new double[biases.length];
+    this.downScales = new double[biases.length];
+    for (int k = 0; k < biases.length; k += 1) {
+      if (!(biases[k] >= -1 && biases[k] <= 1)) {
+        throw new IllegalArgumentException("bias must be between -1 and 1");
+      }
+      this.acrossScales[k] = Math.pow(STRENGTH, Math.max(0, -biases[k]));
+      this.downScales[k] = Math.pow(STRENGTH, Math.max(0, biases[k]));
+    }
+  }
+
+  // returns a map with the given bias everywhere
+  static BiasMap uniform(double bias) {
+    return new BiasMap(1, 1, new double[] { bias });
+  }
+
+  // returns the region of the cell at the given row and column of a board of the
+  // given size
+  int regionOf(int row, int col, int width, int height) {
+    return (row * this.rows / height) * this.cols + col * this.cols / width;
+  }
+
+  // returns the bias of the given region
+  double biasOf(int region) {
+    return this.biases[region];
+  }
+
+  // returns the key of a passage in the given region, within a row if across is
+  // true and between rows otherwise, for the given draw from 0 to 99
+  int key(int draw, boolean across, int region) {
+    if (across) {
+      return (int) (draw * this.acrossScales[region]);
+    }
+    else {
+      return (int) (draw * this.downScales[region]);
+    }
+  }
+
+  // returns the name of this map's bias: none, horizontal or vertical for those
+  // presets, the bias itself for other uniform maps, and map otherwise
+  String describe() {
+    if (this.biases.length > 1) {
+      return "map";
+    }
+    else if (this.biases[0] == 0) {
+      return "none";
+    }
+    else if (this.biases[0] == 1) {
+      return "horizontal";
+    }
+    else if (this.biases[0] == -1) {
+      return "vertical";
+    }
+    else {
+      return String.valueOf(this.biases[0]);
+    }
+  }
+}
+
+// to represent reusable storage for a Maze's Nodes and Edges
+// the grid is sized to a capacity that grows geometrically, so resizing the maze
+// reuses the existing Nodes and Edges instead of allocating new ones
+class NodeArena {
+  private final ArrayList<ArrayList<Node>> nodes;
+  // links.get(i).get(j)[s] connects the Node at (i, j) to the neighbor after it
+  // in row-major order at forward slot s: right, down left, down or down right
+  // Edges are made the first time a topology connects the two Nodes
+  private final ArrayList<ArrayList<Edge[]>> links;
+  private int rowCapacity;
+  private int colCapacity;
+
+  NodeArena() {
+    this.nodes = new ArrayList<ArrayList<Node>>();
+    this.links = new ArrayList<ArrayList<Edge[]>>();
+    this.rowCapacity = 0;
+    this.colCapacity = 0;
+  }
+
+  // makes room for a grid of at least the given width and height
+  // EFFECT: adds Nodes to this arena, at least doubling its capacity in any
+  // dimension that is too small
+  void reserve(int width, int height) {
+    if (width <= this.colCapacity && height <= this.rowCapacity) {
+      return;
+    }
+
+    int cols = this.colCapacity;
+    if (width > cols) {
+      cols = Math.max(width, 2 * cols);
+    }
+
+    int rows = this.rowCapacity;
+    if (height > rows) {
+      rows = Math.max(height, 2 * rows);
+    }
+
+    for (int i = 0; i < rows; i += 1) {
+      if (i == this.nodes.size()) {
+        this.nodes.add(new ArrayList<Node>(cols));
+        this.links.add(new ArrayList<Edge[]>(cols));
+      }
+
+      ArrayList<Node> row = this.nodes.get(i);
+      for (int j = row.size(); j < cols; j += 1) {
+        row.add(new Node(i, j));
+        this.links.get(i).add(new Edge[4]);
+      }
+    }
+
+    this.rowCapacity = rows;
+    this.colCapacity = cols;
+  }
+
+  // returns the Edge from the Node at the given row and column to its neighbor
+  // at the given forward offset, making it if this is the first time they are
+  // connected
+  Edge link(int row, int col, int rowStep, int colStep) {
+    Edge[] slots = this.links.get(row).get(col);
+    int slot = rowStep == 0 ? 0 : colStep + 2;
+    if (slots[slot] == null) {
+      slots[slot] = new Edge(this.nodes.get(row).get(col),
+          this.nodes.get(row + rowStep).get(col + colStep), 0);
+    }
+    return slots[slot];
+  }
+
+  // returns this arena's grid with the active Nodes of the given mask connected
+  // to their active neighbors in the given topology
+  // Nodes outside the mask are kept for later use and must be ignored; Edges are
+  // not weighed here, since Kruskal's algorithm keys passages by id
+  // EFFECT: clears and reconnects the active Nodes of the given mask
+  ArrayList<ArrayList<Node>> prepare(int width, int height, MazeMask mask,
+      Topology topology) {
+    this.reserve(width, height);
+
+    for (int k = 0; k < mask.activeCount(); k += 1) {
+      int cell = mask.activeCell(k);
+      this.nodes.get(cell / width).get(cell % width).clearEdges();
+    }
+
+    for (int k = 0; k < mask.activeCount(); k += 1) {
+      int cell = mask.activeCell(k);
+      int i = cell / width;
+      int j = cell % width;
+      Node node = this.nodes.get(i).get(j);
+      int[] dr = topology.rowOffsets(i, j);
+      int[] dc = topology.colOffsets(i, j);
+
+      // only neighbors after this Node in row-major order, so each pair of
+      // neighbors is connected once
+      for (int n = 0; n < dr.length; n += 1) {
+        int row = i + dr[n];
+        int col = j + dc[n];
+        if ((dr[n] > 0 || (dr[n] == 0 && dc[n] > 0)) && row < height && col >= 0
+            && col < width && mask.isActive(row * width + col)) {
+          node.addOutEdge(this.link(i, j, dr[n], dc[n]));
+        }
+      }
+    }
+
+    return this.nodes;
+  }
+}
+
+// to represent the timeline of a search animation: first the cells the search
+// visited, in order, then the cells of the path it found, in the order they are
+// revealed, with positions from 0 to length()
+// a cell's color at any position follows from its first visit and its first
+// place on the path, so moving between positions only repaints the cells in
+// between; a snapshot of the colors every interval positions bounds the cost
+// of long jumps, and prefix sums give the counters at any position
+// the interval is tied to the number of cells, so a jump costs at most a copy
+// of the board and a quarter of the board's repaints however long the search
+class SearchTimeline {
+  private int[] visits;
+  private int visitCount;
+  private int[] path;
+  private int pathCount;
+  // wrongBefore[k] is the number of the first k visits that are off the path,
+  // shared with the search the timeline was loaded from
+  private int[] wrongBefore;
+  // the first position each cell is visited at and revealed on the path at,
+  // counting path positions from 0, or Integer.MAX_VALUE if it never is
+  private int[] visitRank;
+  private int[] pathRank;
+  private byte[] base;
+  private int cells;
+  private int interval;
+  // checkpoints.get(k) holds the colors at position k * interval
+  private final ArrayList<byte[]> checkpoints;
+
+  SearchTimeline() {
+    this.visits = new int[0];
+    this.path = new int[0];
+    this.wrongBefore = new int[1];
+    this.visitRank = new int[0];
+    this.pathRank = new int[0];
+    this.base = new byte[0];
+    this.checkpoints = new ArrayList<byte[]>();
+  }
+
+  // loads a search of a board of the given width and number of cells: the
+  // Nodes it visited, the Nodes of its path in the order they are revealed,
+  // the number of wrong moves before each visit, and the colors of the board
+  // before it started
+  // EFFECT: replaces this timeline, reusing its arrays where they are big
+  // enough, and takes a snapshot of the colors every interval positions
+  void load(int width, int cells, ArrayList<Node> visited, ArrayList<Node> revealed,
+      int[] wrongBefore, byte[] colors) {
+    this.cells = cells;
+    this.wrongBefore = wrongBefore;
+    this.visitCount = visited.size();
+    this.pathCount = revealed.size();
+    if (this.visitCount > this.visits.length) {
+      this.visits = new int[Math.max(this.visitCount, 2 * this.visits.length)];
+    }
+    if (this.pathCount > this.path.length) {
+      this.path = new int[Math.max(this.pathCount, 2 * this.path.length)];
+    }
+    if (cells > this.visitRank.length) {
+      int capacity = Math.max(cells, 2 * this.visitRank.length);
+      this.visitRank = new int[capacity];
+      this.pathRank = new int[capacity];
+      this.base = new byte[capacity];
+    }
+
+    Arrays.fill(this.visitRank, 0, cells, Integer.MAX_VALUE);
+    Arrays.fill(this.pathRank, 0, cells, Integer.MAX_VALUE);
+    System.arraycopy(colors, 0, this.base, 0, cells);
+    for (int k = 0; k < this.visitCount; k += 1) {
+      int cell = visited.get(k).index(width);
+      this.visits[k] = cell;
+      this.visitRank[cell] = Math.min(this.visitRank[cell], k);
+    }
+    for (int k = 0; k < this.pathCount; k += 1) {
+      int cell = revealed.get(k).index(width);
+      this.path[k] = cell;
+      this.pathRank[cell] = Math.min(this.pathRank[cell], k);
+    }
+
+    // a snapshot every quarter as many positions as there are cells, and at
+    // most one every 256 positions, so they take about four bytes per position
+    this.interval = Math.max(256, cells / 4);
+    this.checkpoints.clear();
+    byte[] snapshot = Arrays.copyOf(this.base, cells);
+    for (int position = 0; position <= this.length(); position += 1) {
+      if (position % this.interval == 0) {
+        this.checkpoints.add(Arrays.copyOf(snapshot, cells));
+      }
+      if (position < this.length()) {
+        int cell = this.cellAt(position);
+        snapshot[cell] = this.colorAt(cell, position + 1);
+      }
+    }
+  }
+
+  // returns the number of positions after the first
+  int length() {
+    return this.visitCount + this.pathCount;
+  }
+
+  // returns the number of cells visited before the path is revealed
+  int visitCount() {
+    return this.visitCount;
+  }
+
+  // returns the number of positions between snapshots
+  int interval() {
+    return this.interval;
+  }
+
+  // returns the cell that changes color when the timeline moves from the given
+  // position to the next
+  int cellAt(int position) {
+    if (position < this.visitCount) {
+      return this.visits[position];
+    }
+    else {
+      return this.path[position - this.visitCount];
+    }
+  }
+
+  // returns the color of the given cell at the given position
+  byte colorAt(int cell, int position) {
+    if (this.pathRank[cell] < position - this.visitCount) {
+      return Palette.PATH;
+    }
+    else if (this.visitRank[cell] < position) {
+      return Palette.VISITED;
+    }
+    else {
+      return this.base[cell];
+    }
+  }
+
+  // returns the number of steps counted at the given position
+  int steps(int position) {
+    return Math.min(position, this.visitCount);
+  }
+
+  // returns the number of wrong moves counted at the given position
+  int wrongMoves(int position) {
+    return this.wrongBefore[this.steps(position)];
+  }
+
+  // moves the given colors, which show the given position, to show the other
+  // given position, repainting the cells between them or, if that is further
+  // than the last snapshot at or before the target, copying the snapshot and
+  // repainting from it
+  // throws an IllegalArgumentException if the target is not between 0 and the
+  // length of this timeline
+  // EFFECT: modifies the given colors
+  void seek(int from, int to, byte[] colors) {
+    if (to < 0 || to > this.length()) {
+      throw new IllegalArgumentException("position must be between 0 and " + this.length());
+    }
+
+    int snapshot = to / this.interval * this.interval;
+    if (Math.abs(to - from) > to - snapshot) {
+      System.arraycopy(this.checkpoints.get(to / this.interval), 0, colors, 0, this.cells);
+      from = snapshot;
+    }
+
+    for (int position = Math.min(from, to); position < Math.max(from, to); position += 1) {
+      int cell = this.cellAt(position);
+      colors[cell] = this.colorAt(cell, to);
+    }
+  }
+}
+
+// to represent the colors a Maze's cells can be drawn in
+// cell colors are stored as one byte per cell holding an index into COLORS
+class Palette {
+  static final byte UNVISITED = 0;
+  static final byte VISITED = 1;
+  static final byte PATH = 2;
+  static final byte USER = 3;
+  static final byte START = 4;
+  static final byte END = 5;
+  // gradient buckets, from closest to farthest
+  static final byte GRADIENT_RED = 6;
+  static final byte GRADIENT_ORANGE = 7;
+  static final byte GRADIENT_YELLOW = 8;
+  static final byte GRADIENT_GREEN = 9;
+  static final byte GRADIENT_BLUE = 10;
+  // unvisited cells that cost more to enter
+  static final byte MUD = 11;
+  static final byte WATER = 12;
+  // the first of the colors of the regions around several sources
+  static final byte REGION = 13;
+  static final int REGION_COUNT = 8;
+
+  static final Color[] COLORS = new Color[] { Color.LIGHT_GRAY, Maze.VISITED_COLOR, Color.BLUE,
+      Color.YELLOW, Color.GREEN, Color.MAGENTA, Color.RED, Color.ORANGE, Color.YELLOW,
+      Color.GREEN, Color.BLUE, new Color(156, 118, 72), new Color(120, 180, 220),
+      new Color(240, 163, 163), new Color(163, 201, 240), new Color(170, 222, 160),
+      new Color(240, 214, 150), new Color(200, 170, 230), new Color(150, 220, 214),
+      new Color(240, 180, 120), new Color(190, 190, 140) };
+
+  // returns the color of the given palette index
+  static Color color(byte index) {
+    return COLORS[index];
+  }
+
+  // returns the palette index of an unvisited cell with the given terrain cost
+  static byte ground(short cost) {
+    if (cost >= TerrainMap.WATER) {
+      return WATER;
+    }
+    else if (cost >= TerrainMap.MUD) {
+      return MUD;
+    }
+    else {
+      return UNVISITED;
+    }
+  }
+
+  // returns the color of the region around the source of the given index; the
+  // colors repeat after REGION_COUNT sources
+  static byte region(int source) {
+    return (byte) (REGION + source % REGION_COUNT);
+  }
+
+  // returns the gradient bucket for a cell the given distance away, where max is
+  // the distance that counts as 100 percent
+  static byte gradient(double distance, double max) {
+    double percentageOfMax = (distance / max) * 100;
+    if (percentageOfMax <= 20) {
+      return GRADIENT_RED;
+    }
+    else if (percentageOfMax <= 40) {
+      return GRADIENT_ORANGE;
+    }
+    else if (percentageOfMax <= 60) {
+      return GRADIENT_YELLOW;
+    }
+    else if (percentageOfMax <= 80) {
+      return GRADIENT_GREEN;
+    }
+    else {
+      return GRADIENT_BLUE;
+    }
+  }
+}
+
+// to represent the Maze
+class Maze extends World implements CellGraph {
+  // color of Nodes that have been visited by a search or by the user
+  static final Color VISITED_COLOR = new Color(145, 184, 242, 255);
+
+  // seconds between ticks, and the longest any animation should take
+  static final double TICK_SECONDS = 0.01;
+  static final double ANIMATION_SECONDS = 10;
+
+  // the number of sources the regions view spreads through the maze
+  static final int REGION_SOURCES = 6;
+
+  // ArrayList representing all the nodes in the Maze
+  // not final since nodes can be reinitialized to create a different maze
+  private ArrayList<ArrayList<Node>> nodes;
+
+  // ArrayList of Edge representing all edges that can be traversed (connections
+  // between Nodes that aren't walls)
+  // validPaths must be reinitialized for knocking down walls, or constructing the
+  // maze
+  private ArrayList<Edge> validPaths;
+
+  // buffers reused every time the maze is regenerated: the arena holds the Nodes
+  // and Edges, treeEdges holds the result of Kruskal's algorithm (empty until it
+  // first runs on this maze, which is also the construction animation's order),
+  // passages the
+  // walls knocked down so far by the construction animation, and passageKeys
+  // and unionFind the working state of Kruskal's algorithm
+  private final NodeArena arena;
+  private final ArrayList<Edge> treeEdges;
+  private final ArrayList<Edge> passages;
+  private final PassageKeys passageKeys;
+  private final IndexUnionFind unionFind;
+
+  // the seed every passage's Kruskal key is hashed from, drawn once per maze, so
+  // every rerun of findValidPaths builds the same tree
+  private long edgeSeed;
+
+  // width and height of the maze
+  // dimensions of nodes of the maze can be reinitialized since width and height
+  // can be changed
+  private int width;
+  private int height;
+  private int sceneWidth;
+  private int sceneHeight;
+  private int nodeDim;
+  private Node topLeft;
+  private Node bottomRight;
+
+  // searchPath and visitedNodes change based on BFS or DFS
+  // onPath marks the index of every Node on searchPath, so membership checks
+  // while animating are constant time
+  private ArrayList<Node> searchPath;
+  private ArrayList<Node> visitedNodes;
+  private final BitSet onPath;
+  // the number of times searchPath has been edited in place
+  private int pathEdits;
+  // the searchPath followField last built from the distance field, null once the
+  // field is recomputed; while it is searchPath, pathDepth[cell] is the number of
+  // cells after each of its cells, and a repair only re-walks the cells before
+  // the first one it repriced
+  private ArrayList<Node> fieldPath;
+  private int[] pathDepth;
+  // wrongBefore[k] is the number of the first k visitedNodes of a search that
+  // are off searchPath, so the counters at any animation index are one lookup
+  // it holds the first wrongCounted visits of wrongVisits, and firstVisit[cell]
+  // is the index of the first of them that visits each cell; a path edit only
+  // lowers wrongCounted to the first visit of a cell that joined or left the
+  // path, and the rest is recounted when the counts are next read
+  private int[] wrongBefore;
+  private ArrayList<Node> wrongVisits;
+  private int wrongCounted;
+  private int[] firstVisit;
+  // the search animation as a seekable timeline, rebuilt when it is first sought
+  // after searchPath or visitedNodes change
+  private final SearchTimeline timeline;
+  private ArrayList<Node> timelineVisits;
+  private ArrayList<Node> timelinePath;
+  private int timelineVisitCount;
+  private int timelinePathEdits;
+
+  // the palette index of every cell, in row-major order; only the first
+  // width * height entries are in use, the rest is room to grow
+  private byte[] cellColors;
+
+  // decides how many animation steps each tick runs
+  private final AnimationScheduler scheduler;
+
+  // the cells of the board that are part of the maze; masked cells are left out
+  // of generation, search and rendering
+  private MazeMask mask;
+
+  // how the cells of the board neighbor each other
+  private Topology topology;
+
+  // what it costs to enter each cell of the board; searches that weigh their
+  // paths add up the costs of the cells they enter
+  private TerrainMap terrain;
+
+  // the mask and terrain as they were last set; a board of any other size is
+  // sampled from them, so resizing back and forth does not compound the
+  // sampling errors
+  private MazeMask sourceMask;
+  private TerrainMap sourceTerrain;
+
+  // bit k of openings[cell] is set when the passage to the cell's k-th neighbor
+  // in the topology is open; it mirrors the first openedCount Edges of
+  // openedPaths, and is rebuilt whenever validPaths is replaced or refilled
+  // pathIndex[bit] is the index in validPaths of the Edge of the open passage
+  // with the given bit in walls, so a wall closes without searching validPaths
+  private byte[] openings;
+  private int[] pathIndex;
+  private ArrayList<Edge> openedPaths;
+  private int openedCount;
+
+  // the same passages as openings, one bit each, for queries over whole rows
+  // of cells at a time
+  private final WallPlanes walls;
+
+  // the search findPath runs, reused by every search
+  private final CellSearch search;
+
+  // the cheapest distances from the start to every cell, which openWall and
+  // closeWall repair in place; it is valid only while fieldValid is set, and any
+  // other change to the openings or the terrain clears it
+  private final DistanceField field;
+  private boolean fieldValid;
+
+  // the distances of the gradients of boards with wide levels and of gradients
+  // and regions around several sources, computed on the common pool
+  private ParallelDistances gradientField;
+  // the most cells at one distance in the last gradient of this board, which
+  // decides whether the next is priced in parallel; a new maze or terrain
+  // forgets it, and other edits barely change it
+  private int gradientLevel;
+  // the cells of the sources gradientField was last computed from
+  private int[] gradientSources;
+
+  // the connected components of the active cells, relabelled on demand whenever
+  // a passage has opened or closed since labelsValid was set
+  private final ComponentLabels labels;
+  private boolean labelsValid;
+
+  // the share of dead ends whose walls are re-opened after Kruskal's algorithm,
+  // from 0 for a perfect maze to 1; braidRandom is reseeded with braidSeed, drawn
+  // once per maze, so every rerun of findValidPaths braids the same walls
+  private double braidFactor;
+  private long braidSeed;
+  private final Random braidRandom;
+
+  private final Random rand;
+
+  // states of the Maze
+  // states are mutated to allow for functionality of the program
+  private boolean bfs;
+  private boolean mazeConstructionControl;
+  private boolean userControl;
+  private boolean searchControl;
+  private boolean pathAnimationControl;
+  private boolean finishedPathAnimation;
+  private boolean viewVisitedPaths;
+  private boolean viewColorGradient;
+  private int pathAnimationIndex;
+  private int searchAnimationIndex;
+  // the corridor bias of every maze generated until it is changed
+  private BiasMap bias;
+  private int mazeAnimationIndex;
+  private int userRow;
+  private int userCol;
+  // the column step of the last left or right key, which up and down lean
+  // toward on boards with two neighbors in the row above or below
+  private int userHeading;
+  private String title;
+  private int wrongMoves;
+  private int steps;
+
+  Maze(int width, int height, Random rand) {
+    this(width, height, rand, MazeMask.full(width, height));
+  }
+
+  Maze(int width, int height, Random rand, MazeMask mask) {
+    this(width, height, rand, mask, Topology.SQUARE);
+  }
+
+  Maze(int width, int height, Random rand, MazeMask mask, Topology topology) {
+    this.nodes = new ArrayList<ArrayList<Node>>();
+    this.mask = mask;
+    this.sourceMask = mask;
+    this.topology = topology;
+    this.terrain = TerrainMap.flat(width, height);
+    this.sourceTerrain = this.terrain;
+    this.bias = BiasMap.NONE;
+    this.rand = rand;
+    this.nodeDim = 20;
+    this.arena = new NodeArena();
+    this.treeEdges = new ArrayList<Edge>();
+    this.passages = new ArrayList<Edge>();
+    this.passageKeys = new PassageKeys();
+    this.unionFind = new IndexUnionFind();
+    this.onPath = new BitSet();
+    this.pathDepth = new int[0];
+    this.wrongBefore = new int[1];
+    this.firstVisit = new int[0];
+    this.timeline = new SearchTimeline();
+    this.cellColors = new byte[0];
+    this.openings = new byte[0];
+    this.pathIndex = new int[0];
+    this.walls = new WallPlanes();
+    this.search = new CellSearch();
+    this.field = new DistanceField();
+    this.gradientField = new ParallelDistances(ForkJoinPool.commonPool());
+    this.gradientSources = new int[0];
+    this.labels = new ComponentLabels();
+    this.braidRandom = new Random();
+    this.scheduler = new AnimationScheduler(TICK_SECONDS, ANIMATION_SECONDS, 0.5);
+
+    this.genNewMaze(width, height);
+  }
+
+  Maze(int width, int height) {
+    this(width, height, new Random());
+  }
+
+  // test constructor
+  Maze(ArrayList<ArrayList<Node>> nodes, ArrayList<Edge> validPaths, int width, int height,
+      Random rand) {
+    this.width = width;
+    this.height = height;
+    this.rand = rand;
+    this.nodeDim = 20;
+    this.arena = new NodeArena();
+    this.treeEdges = new ArrayList<Edge>();
+    this.passages = new ArrayList<Edge>();
+    this.passageKeys = new PassageKeys();
+    this.unionFind = new IndexUnionFind();
+    this.onPath = new BitSet();
+    this.pathDepth = new int[0];
+    this.wrongBefore = new int[1];
+    this.firstVisit = new int[0];
+    this.timeline = new SearchTimeline();
+    this.cellColors = new byte[0];
+    this.openings = new byte[0];
+    this.pathIndex = new int[0];
+    this.walls = new WallPlanes();
+    this.search = new CellSearch();
+    this.field = new DistanceField();
+    this.gradientField = new ParallelDistances(ForkJoinPool.commonPool());
+    this.gradientSources = new int[0];
+    this.labels = new ComponentLabels();
+    this.braidRandom = new Random();
+    this.scheduler = new AnimationScheduler(TICK_SECONDS, ANIMATION_SECONDS, 0.5);
+    this.sceneWidth = this.width * (this.nodeDim + 10);
+    this.sceneHeight = this.height * (this.nodeDim + 10);
+
+    this.nodes = nodes;
+    this.validPaths = validPaths;
+    this.mask = MazeMask.full(width, height);
+    this.sourceMask = this.mask;
+    this.topology = Topology.SQUARE;
+    this.terrain = TerrainMap.flat(width, height);
+    this.sourceTerrain = this.terrain;
+    this.bias = BiasMap.NONE;
+
+    this.topLeft = this.nodes.get(0).get(0);
+    this.bottomRight = this.nodes.get(this.height - 1).get(this.width - 1);
+
+    this.searchPath = new ArrayList<Node>();
+    this.visitedNodes = new ArrayList<Node>();
+
+    this.findPath(this.topLeft, this.bottomRight, false);
+
+    this.reserveCells();
+    this.resetBoardColor();
+    this.resetStates();
+
+    this.viewVisitedPaths = true;
+  }
+
+  // resets the states for this Maze
+  // EFFECT: sets every state variable for this Maze world to false
+  void resetStates() {
+    this.bfs = false;
+    this.userControl = false;
+    this.searchControl = false;
+    this.pathAnimationControl = false;
+    this.finishedPathAnimation = false;
+    this.viewColorGradient = false;
+    this.userCol = this.topLeft.index(this.width) % this.width;
+    this.userRow = this.topLeft.index(this.width) / this.width;
+    this.userHeading = 1;
+    this.pathAnimationIndex = 0;
+    this.searchAnimationIndex = 0;
+    this.mazeAnimationIndex = 0;
+    this.paint(this.topLeft, Palette.START);
+    this.paint(this.bottomRight, Palette.END);
+    this.visitedNodes = new ArrayList<Node>();
+    this.wrongMoves = 0;
+    this.steps = 0;
+  }
+
+  // reinitializes the board color
+  // EFFECT: sets all cells to the unvisited color of their terrain except the top
+  // left, which is the start
+  void resetBoardColor() {
+    if (this.terrain.isFlat()) {
+      Arrays.fill(this.cellColors, 0, this.width * this.height, Palette.UNVISITED);
+    }
+    else {
+      for (int cell = 0; cell < this.width * this.height; cell += 1) {
+        this.cellColors[cell] = Palette.ground(this.terrain.cost(cell));
+      }
+    }
+    this.cellColors[this.topLeft.index(this.width)] = Palette.START;
+  }
+
+  // makes sure there is a color and an openings entry for every cell of this
+  // Maze
+  // EFFECT: grows cellColors and openings geometrically if they are too small
+  void reserveCells() {
+    int cells = this.width * this.height;
+    if (cells > this.cellColors.length) {
+      int capacity = Math.max(cells, 2 * this.cellColors.length);
+      this.cellColors = new byte[capacity];
+      this.openings = new byte[capacity];
+      this.pathIndex = new int[4 * capacity];
+      this.pathDepth = new int[capacity];
+      this.firstVisit = new int[capacity];
+      this.openedPaths = null;
+    }
+  }
+
+  // returns the Node of the cell with the given row-major index
+  Node nodeAt(int cell) {
+    return this.nodes.get(cell / this.width).get(cell % this.width);
+  }
+
+  // brings openings up to date with validPaths
+  // EFFECT: opens the passages of the Edges added to validPaths since the last
+  // call, or rebuilds openings if validPaths was replaced or refilled
+  void syncOpenings() {
+    if (this.openedPaths != this.validPaths || this.validPaths.size() < this.openedCount) {
+      Arrays.fill(this.openings, 0, this.width * this.height, (byte) 0);
+      this.walls.reset(this.width, this.height);
+      this.openedPaths = this.validPaths;
+      this.openedCount = 0;
+      this.fieldValid = false;
+      this.labelsValid = false;
+    }
+
+    for (; this.openedCount < this.validPaths.size(); this.openedCount += 1) {
+      Edge edge = this.validPaths.get(this.openedCount);
+      this.pathIndex[this.passageOf(edge)] = this.openedCount;
+      this.open(edge);
+      this.fieldValid = false;
+      this.labelsValid = false;
+    }
+  }
+
+  // returns the connected components of this Maze's active cells
+  // EFFECT: labels the components if a passage has changed since they were last
+  // labelled
+  ComponentLabels components() {
+    this.reserveCells();
+    this.syncOpenings();
+    if (!this.labelsValid) {
+      this.labels.label(this, this.mask);
+      this.labelsValid = true;
+    }
+    return this.labels;
+  }
+
+  // measures the shape of this Maze into the given statistics
+  // EFFECT: sets every statistic of the given MazeStats
+  void analyze(MazeStats stats) {
+    this.reserveCells();
+    this.syncOpenings();
+    stats.analyze(this, this.mask, this.topLeft.index(this.width),
+        this.bottomRight.index(this.width));
+  }
+
+  // returns a report of this Maze's connected components: whether the start and
+  // end connect, and the size and bounding box of every component
+  String reachabilityReport() {
+    return this.components().report(this.topLeft.index(this.width),
+        this.bottomRight.index(this.width));
+  }
+
+  // brings the distance field up to date with this Maze's passages and terrain
+  // EFFECT: recomputes the field from the start if it is not valid
+  void syncField() {
+    this.reserveCells();
+    this.syncOpenings();
+    if (!this.fieldValid || this.field.source() != this.topLeft.index(this.width)) {
+      this.field.compute(this, this.topLeft.index(this.width));
+      this.fieldValid = true;
+      this.fieldPath = null;
+    }
+  }
+
+  // returns the total cost of the cells entered on the cheapest path from the
+  // start to the given cell, or -1 if the cell cannot be reached
+  long distanceTo(int cell) {
+    this.syncField();
+    return this.field.distance(cell);
+  }
+
+  // returns the number of cells the last opened or closed wall repriced
+  int lastRepairSize() {
+    return this.field.touched();
+  }
+
+  // knocks down the wall between the given neighboring cells, and returns
+  // whether there was one; the distance field and the cheapest path from start
+  // to end are repaired rather than recomputed
+  // throws an IllegalArgumentException if the cells are not active neighbors
+  // EFFECT: adds the wall's Edge to validPaths and opens it in openings
+  boolean openWall(int cell, int neighbor) {
+    Edge edge = this.wallBetween(cell, neighbor);
+    this.syncField();
+    if ((this.openings[cell] & (1 << this.slotOf(cell, neighbor))) != 0) {
+      return false;
+    }
+
+    this.addPassage(edge);
+    this.field.join(this, cell, neighbor);
+    this.followField();
+    return true;
+  }
+
+  // puts up the wall between the given neighboring cells, and returns whether
+  // there was a passage; the distance field and the cheapest path from start to
+  // end are repaired rather than recomputed
+  // throws an IllegalArgumentException if the cells are not active neighbors
+  // EFFECT: removes the wall's Edge from validPaths, moving the last Edge into
+  // its place, and closes it in openings
+  boolean closeWall(int cell, int neighbor) {
+    Edge edge = this.wallBetween(cell, neighbor);
+    this.syncField();
+    if ((this.openings[cell] & (1 << this.slotOf(cell, neighbor))) == 0) {
+      return false;
+    }
+
+    this.removePassage(edge);
+    this.field.cut(this, cell, neighbor);
+    this.followField();
+    return true;
+  }
+
+  // adds the given Edge of a closed passage to validPaths and opens it, without
+  // repairing the distance field
+  // EFFECT: adds the Edge to validPaths, records its index in pathIndex and
+  // opens it in openings
+  void addPassage(Edge edge) {
+    this.pathIndex[this.passageOf(edge)] = this.validPaths.size();
+    this.validPaths.add(edge);
+    this.open(edge);
+    this.openedCount += 1;
+    this.labelsValid = false;
+  }
+
+  // removes the given Edge of an open passage from validPaths and closes it,
+  // without repairing the distance field
+  // EFFECT: moves the last Edge of validPaths into the given Edge's place,
+  // updating its index in pathIndex, and closes the passage in openings
+  void removePassage(Edge edge) {
+    int first = edge.firstIndex(this.width);
+    int second = edge.secondIndex(this.width);
+    int index = this.pathIndex[this.passageOf(edge)];
+    int last = this.validPaths.size() - 1;
+    Edge moved = this.validPaths.get(last);
+    this.validPaths.set(index, moved);
+    this.pathIndex[this.passageOf(moved)] = index;
+    this.validPaths.remove(last);
+    this.openedCount -= 1;
+    this.labelsValid = false;
+    this.close(first, second);
+    this.close(second, first);
+  }
+
+  // returns the Edge between the given cells, finishing construction first
+  // throws an IllegalArgumentException if the cells are not active neighbors
+  Edge wallBetween(int cell, int neighbor) {
+    Edge edge = this.edgeBetween(cell, neighbor);
+    this.finishConstruction();
+    return edge;
+  }
+
+  // returns the Edge between the given cells
+  // throws an IllegalArgumentException if the cells are not active neighbors
+  Edge edgeBetween(int cell, int neighbor) {
+    int cells = this.width * this.height;
+    Edge edge = null;
+    if (cell >= 0 && cell < cells && neighbor >= 0 && neighbor < cells
+        && this.mask.isActive(cell) && this.mask.isActive(neighbor)) {
+      edge = this.nodeAt(cell).edgeTo(this.nodeAt(neighbor));
+    }
+    if (edge == null) {
+      throw new IllegalArgumentException("cells " + cell + " and " + neighbor
+          + " are not neighbors");
+    }
+    return edge;
+  }
+
+  // returns the bit of the given Edge's passage in walls
+  int passageOf(Edge edge) {
+    return this.walls.bitOf(edge.firstIndex(this.width), edge.secondIndex(this.width));
+  }
+
+  // closes the passage from the first given cell to the second
+  // EFFECT: clears the bit of the second cell's slot in the first cell's
+  // openings, and the passage's bit in walls
+  void close(int from, int to) {
+    int slot = this.slotOf(from, to);
+    this.openings[from] = (byte) (this.openings[from] & ~(1 << slot));
+    this.walls.set(from, to, false);
+  }
+
+  // makes this Maze's search path the cheapest path from start to end in the
+  // distance field, or no path if the end cannot be reached
+  // if the path was built from the field before its last repair, only the cells
+  // before the first cell whose parent the repair changed are walked again
+  // EFFECT: sets searchPath, onPath and pathDepth, and repaints the changed
+  // cells of the path if it is shown
+  void followField() {
+    int keep = 0;
+    if (this.fieldPath == this.searchPath && !this.searchPath.isEmpty()) {
+      // cells with fewer than keep cells after them still follow their parents
+      keep = this.searchPath.size();
+      for (int i = 0; i < this.field.repricedCount(); i += 1) {
+        int cell = this.field.repriced(i);
+        if (this.onPath.get(cell)) {
+          keep = Math.min(keep, this.pathDepth[cell]);
+        }
+      }
+      if (keep == this.searchPath.size()) {
+        return;
+      }
+    }
+    else {
+      // the whole path is walked again, and every wrong move recounted
+      for (Node node : this.searchPath) {
+        if (this.finishedPathAnimation) {
+          this.resetCell(node);
+        }
+      }
+      this.onPath.clear();
+      this.wrongCounted = 0;
+      this.searchPath = new ArrayList<Node>();
+      this.fieldPath = this.searchPath;
+    }
+
+    // the new cells up to the first one whose parents are kept, end first
+    ArrayList<Node> front = new ArrayList<Node>();
+    int cell = this.bottomRight.index(this.width);
+    int joined = -1;
+    while (this.field.parent(cell) >= 0) {
+      if (this.onPath.get(cell) && this.pathDepth[cell] < keep) {
+        joined = cell;
+        break;
+      }
+      front.add(this.nodeAt(cell));
+      if (this.field.parent(cell) == cell) {
+        break;
+      }
+      cell = this.field.parent(cell);
+    }
+
+    int cut = this.searchPath.size();
+    if (joined >= 0) {
+      cut -= this.pathDepth[joined] + 1;
+    }
+    for (int i = 0; i < cut; i += 1) {
+      this.leavePath(this.searchPath.get(i));
+    }
+    this.searchPath.subList(0, cut).clear();
+    this.searchPath.addAll(0, front);
+
+    int depth = this.searchPath.size() - 1;
+    for (int i = 0; i < front.size(); i += 1) {
+      Node node = front.get(i);
+      this.pathDepth[node.index(this.width)] = depth - i;
+      this.joinPath(node);
+    }
+    this.pathEdits += 1;
+  }
+
+  // takes the given Node off searchPath
+  // EFFECT: clears its cell in onPath, marks its wrong moves for recounting and
+  // resets its color if the path is shown
+  void leavePath(Node node) {
+    int cell = node.index(this.width);
+    this.onPath.clear(cell);
+    this.recountFrom(cell);
+    if (this.finishedPathAnimation) {
+      this.resetCell(node);
+    }
+  }
+
+  // puts the given Node on searchPath
+  // EFFECT: sets its cell in onPath, marks its wrong moves for recounting and
+  // paints it if the path is shown
+  void joinPath(Node node) {
+    int cell = node.index(this.width);
+    this.onPath.set(cell);
+    this.recountFrom(cell);
+    if (this.finishedPathAnimation) {
+      this.paint(node, Palette.PATH);
+    }
+  }
+
+  // marks the wrong moves from the first visit of the given cell for recounting,
+  // after the cell joined or left searchPath
+  // EFFECT: lowers wrongCounted to the index of the cell's first counted visit
+  void recountFrom(int cell) {
+    int first = this.firstVisit[cell];
+    if (this.wrongVisits == this.visitedNodes && first < this.wrongCounted
+        && this.visitedNodes.get(first).index(this.width) == cell) {
+      this.wrongCounted = first;
+    }
+  }
+
+  // counts the wrong moves of the search before each of its visits
+  // EFFECT: sets wrongBefore[k] to the number of the first k visitedNodes that
+  // are off searchPath, counting only the visits after wrongCounted if
+  // visitedNodes is still wrongVisits, and growing wrongBefore geometrically if
+  // it is too small
+  void countWrongMoves() {
+    if (this.wrongVisits != this.visitedNodes) {
+      this.wrongVisits = this.visitedNodes;
+      this.wrongCounted = 0;
+    }
+
+    int visited = this.visitedNodes.size();
+    if (visited + 1 > this.wrongBefore.length) {
+      this.wrongBefore = Arrays.copyOf(this.wrongBefore,
+          Math.max(visited + 1, 2 * this.wrongBefore.length));
+    }
+    for (int k = this.wrongCounted; k < visited; k += 1) {
+      int cell = this.visitedNodes.get(k).index(this.width);
+      int first = this.firstVisit[cell];
+      if (first >= k || this.visitedNodes.get(first).index(this.width) != cell) {
+        this.firstVisit[cell] = k;
+      }
+      this.wrongBefore[k + 1] = this.wrongBefore[k] + (this.onPath.get(cell) ? 0 : 1);
+    }
+    this.wrongCounted = visited;
+  }
+
+  // opens the passage of the given Edge in both directions
+  // EFFECT: sets the bits of the Edge's cells in openings
+  void open(Edge edge) {
+    int first = edge.firstIndex(this.width);
+    int second = edge.secondIndex(this.width);
+    this.open(first, second);
+    this.open(second, first);
+  }
+
+  // returns the number of cells of this Maze
+  public int cellCount() {
+    return this.width * this.height;
+  }
+
+  // returns the largest number of neighbors a cell of this Maze's topology has
+  public int maxDegree() {
+    return Topology.MAX_DEGREE;
+  }
+
+  // returns the highest cost of entering a cell of this Maze
+  public int maxWeight() {
+    return this.terrain.maxWeight();
+  }
+
+  // every move enters a cell, which costs at least a plain cell
+  public int estimate(int cell, int target) {
+    return TerrainMap.PLAIN * this.topology.steps(cell / this.width, cell % this.width,
+        target / this.width, target % this.width);
+  }
+
+  // writes the cells the given cell has open passages to, in the order of the
+  // topology's neighbor offsets, and the costs of entering them into the given
+  // arrays and returns how many there are
+  // EFFECT: modifies the given arrays
+  public int openNeighbors(int cell, int[] out, int[] weights) {
+    int row = cell / this.width;
+    int col = cell % this.width;
+    int[] dr = this.topology.rowOffsets(row, col);
+    int[] dc = this.topology.colOffsets(row, col);
+    int open = this.openings[cell];
+    int count = 0;
+
+    for (int k = 0; k < dr.length; k += 1) {
+      if ((open & (1 << k)) != 0) {
+        out[count] = (row + dr[k]) * this.width + col + dc[k];
+        weights[count] = this.terrain.cost(out[count]);
+        count += 1;
+      }
+    }
+    return count;
+  }
+
+  // opens the passage from the first given cell to the second
+  // EFFECT: sets the bit of the second cell's slot in the first cell's openings,
+  // and the passage's bit in walls
+  void open(int from, int to) {
+    int slot = this.slotOf(from, to);
+    if (slot >= 0) {
+      this.openings[from] = (byte) (this.openings[from] | (1 << slot));
+      this.walls.set(from, to, true);
+    }
+  }
+
+  // returns the slot of the second given cell among the neighbors of the first,
+  // or -1 if they are not neighbors
+  int slotOf(int from, int to) {
+    int row = from / this.width;
+    int col = from % this.width;
+    return this.topology.slot(row, col, to / this.width - row, to % this.width - col);
+  }
+
+  // colors the given Node
+  // EFFECT: sets the given Node's cell to the given palette index
+  void paint(Node node, byte color) {
+    this.cellColors[node.index(this.width)] = color;
+  }
+
+  // returns the palette index of the cell at the given row and column
+  byte colorAt(int row, int col) {
+    return this.cellColors[row * this.width + col];
+  }
+
+  // resets the color of the given Node
+  // EFFECT: sets the given Node's cell to the start color if it is the top left,
+  // and to the unvisited color of its terrain otherwise
+  void resetCell(Node node) {
+    int index = node.index(this.width);
+    if (node == this.topLeft) {
+      this.cellColors[index] = Palette.START;
+    }
+    else {
+      this.cellColors[index] = Palette.ground(this.terrain.cost(index));
+    }
+  }
+
+  // initializes this Maze's nodes with the given width and height
+  // EFFECT: sets nodes to the arena's grid, with the Nodes of this Maze's mask
+  // connected to their adjacent neighbors
+  void initNodes(int width, int height) {
+    this.nodes = this.arena.prepare(width, height, this.mask, this.topology);
+  }
+
+  // generates a new Maze
+  // EFFECT: connects new Nodes, sets topLeft and bottomRight, finds the valid
+  // paths, and sets the state as user controlled
+  void genNewMaze(int width, int height) {
+    long start = MazeMetrics.GENERATE.start();
+    MazeGeneratedEvent event = new MazeGeneratedEvent();
+    event.begin();
+    String bias = this.bias();
+    this.width = width;
+    this.height = height;
+    this.sceneWidth = this.width * (this.nodeDim + 10);
+    this.sceneHeight = this.height * (this.nodeDim + 10);
+    this.mask = this.sourceMask.resized(this.width, this.height);
+    this.terrain = this.sourceTerrain.resized(this.width, this.height);
+    this.gradientLevel = 0;
+
+    long initStart = MazeMetrics.INIT_NODES.start();
+    this.initNodes(this.width, this.height);
+    MazeMetrics.INIT_NODES.stop(initStart);
+    this.edgeSeed = this.rand.nextLong();
+    if (this.braidFactor > 0) {
+      this.braidSeed = this.rand.nextLong();
+    }
+
+    this.validPaths = this.findValidPaths();
+    this.placeEnds();
+
+    this.reserveCells();
+    this.resetBoardColor();
+
+    this.searchPath = new ArrayList<Node>();
+    this.visitedNodes = new ArrayList<Node>();
+
+    this.findPath(this.topLeft, this.bottomRight, false);
+
+    this.setMazeAnimationState();
+
+    this.viewVisitedPaths = true;
+    MazeMetrics.GENERATE.stop(start);
+
+    if (event.shouldCommit()) {
+      event.width = this.width;
+      event.height = this.height;
+      event.bias = bias;
+      event.algorithm = "kruskal";
+      event.passages = this.treeEdges.size();
+      event.commit();
+    }
+  }
+
+  // sets the corridor bias of the mazes generated from now on to the preset
+  // with the given name: none, horizontal or vertical
+  // throws an IllegalArgumentException if there is no such preset
+  // EFFECT: sets bias
+  void setBias(String bias) {
+    if (bias.equals("none")) {
+      this.bias = BiasMap.NONE;
+    }
+    else if (bias.equals("horizontal")) {
+      this.bias = BiasMap.HORIZONTAL;
+    }
+    else if (bias.equals("vertical")) {
+      this.bias = BiasMap.VERTICAL;
+    }
+    else {
+      throw new IllegalArgumentException("unknown bias " + bias);
+    }
+  }
+
+  // sets the corridor bias of the mazes generated from now on, from -1 for
+  // vertical corridors to 1 for horizontal ones
+  // throws an IllegalArgumentException if the bias is not between -1 and 1
+  // EFFECT: sets bias
+  void setBias(double bias) {
+    this.bias = BiasMap.uniform(bias);
+  }
+
+  // sets the corridor bias of every region of the mazes generated from now on
+  // EFFECT: sets bias
+  void setBiasMap(BiasMap bias) {
+    this.bias = bias;
+  }
+
+  // returns the name of the corridor bias new mazes are generated with
+  String bias() {
+    return this.bias.describe();
+  }
+
+  // picks the start and end of this Maze from the cells of its mask: the first
+  // active cell starts, and the last active cell connected to it ends
+  // EFFECT: sets topLeft and bottomRight
+  void placeEnds() {
+    int start = this.mask.activeCell(0);
+    int end = start;
+    for (int k = this.mask.activeCount() - 1; k > 0 && end == start; k -= 1) {
+      int cell = this.mask.activeCell(k);
+      if (this.unionFind.find(cell) == this.unionFind.find(start)) {
+        end = cell;
+      }
+    }
+
+    this.topLeft = this.nodeAt(start);
+    this.bottomRight = this.nodeAt(end);
+  }
+
+  // sets the mask of this Maze and generates a new maze in its shape
+  // EFFECT: sets mask and regenerates this Maze with the mask's size
+  void setMask(MazeMask mask) {
+    this.mask = mask;
+    this.sourceMask = mask;
+    this.genNewMaze(mask.getWidth(), mask.getHeight());
+  }
+
+  // sets the share of dead ends that are opened into loops and generates a new
+  // maze with it
+  // EFFECT: sets braidFactor and regenerates this Maze
+  void setBraid(double braidFactor) {
+    this.braidFactor = braidFactor;
+    this.genNewMaze(this.width, this.height);
+  }
+
+  // sets the terrain of this Maze, keeping its walls
+  // throws an IllegalArgumentException if the terrain is not the size of this
+  // Maze
+  // EFFECT: sets terrain and returns this Maze to user control
+  void setTerrain(TerrainMap terrain) {
+    if (terrain.getWidth() != this.width || terrain.getHeight() != this.height) {
+      throw new IllegalArgumentException("terrain must be " + this.width + "x" + this.height);
+    }
+    this.terrain = terrain;
+    this.sourceTerrain = terrain;
+    this.fieldValid = false;
+    this.gradientLevel = 0;
+    if (!this.mazeConstructionControl) {
+      this.setUserState();
+    }
+  }
+
+  // returns the cost of entering the cell at the given row and column
+  short costAt(int row, int col) {
+    return this.terrain.cost(row * this.width + col);
+  }
+
+  // sets the topology of this Maze and generates a new maze with it
+  // EFFECT: sets topology and regenerates this Maze
+  void setTopology(Topology topology) {
+    this.topology = topology;
+    this.genNewMaze(this.width, this.height);
+  }
+
+  // sets the state for maze construction animation
+  // EFFECT: sets the state variables appropriate for maze construction
+  void setMazeAnimationState() {
+    this.resetStates();
+    this.title = "Maze Construction";
+    this.mazeConstructionControl = true;
+
+    if (this.treeEdges.isEmpty()) {
+      this.findValidPaths();
+    }
+
+    this.passages.clear();
+    this.passages.ensureCapacity(this.treeEdges.size());
+    this.validPaths = this.passages;
+  }
+
+  // returns the order this Maze's construction knocks down its walls, as a log
+  // with about eight checkpoints, and at most one every 1024 steps
+  ConstructionLog constructionLog() {
+    if (this.treeEdges.isEmpty()) {
+      this.findValidPaths();
+    }
+
+    int steps = this.treeEdges.size();
+    ConstructionLog log = new ConstructionLog(this.width, this.height,
+        Math.max(1024, (steps + 7) / 8));
+    for (int i = 0; i < steps; i += 1) {
+      Edge edge = this.treeEdges.get(i);
+      int first = Math.min(edge.firstIndex(this.width), edge.secondIndex(this.width));
+      int second = Math.max(edge.firstIndex(this.width), edge.secondIndex(this.width));
+      log.append(PassageKeys.id(first, second / this.width - first / this.width,
+          second % this.width - first % this.width));
+    }
+    return log;
+  }
+
+  // replaces this Maze's passages with those of the given log, without
+  // running Kruskal's algorithm, and replays its construction
+  // throws an IllegalArgumentException if the log is for a board of another
+  // size, or opens a passage between cells that are not active neighbors
+  // EFFECT: refills treeEdges from the log, finds the path from start to end
+  // and sets the state for the construction animation
+  void replay(ConstructionLog log) {
+    if (log.getWidth() != this.width || log.getHeight() != this.height) {
+      throw new IllegalArgumentException("mazes must be the same size");
+    }
+
+    this.openedPaths = null;
+    this.treeEdges.clear();
+    int[] ids = new int[1024];
+    for (int step = 0; step < log.steps(); step += ids.length) {
+      int count = log.read(step, ids);
+      for (int k = 0; k < count; k += 1) {
+        this.treeEdges.add(this.edgeBetween(PassageKeys.cell(ids[k]), log.otherCell(ids[k])));
+      }
+    }
+
+    this.validPaths = this.treeEdges;
+    this.resetBoardColor();
+    this.findPath(this.topLeft, this.bottomRight, false);
+    this.setMazeAnimationState();
+  }
+
+  // sets the state for DFS animation
+  // EFFECT: sets the state variables appropriate for DFS
+  void setDFSState() {
+    this.resetBoardColor();
+    this.resetStates();
+    this.bfs = false;
+    this.searchControl = true;
+    this.title = "Depth-First Search";
+    this.findPath(this.topLeft, this.bottomRight, this.bfs);
+  }
+
+  // sets the state for BFS animation
+  // EFFECT: sets the state variables appropriate for BFS
+  void setBFSState() {
+    this.resetBoardColor();
+    this.resetStates();
+    this.bfs = true;
+    this.searchControl = true;
+    this.title = "Breadth-First Search";
+    this.findPath(this.topLeft, this.bottomRight, this.bfs);
+  }
+
+  // sets the state for the cheapest path animation, found with A* if astar is
+  // true and with Dijkstra's algorithm otherwise
+  // EFFECT: sets the state variables appropriate for the search
+  void setShortestPathState(boolean astar) {
+    this.resetBoardColor();
+    this.resetStates();
+    this.searchControl = true;
+    this.title = astar ? "A* Search" : "Shortest Path";
+    this.findShortestPath(this.topLeft, this.bottomRight, astar);
+  }
+
+  // completes the maze construction animation immediately
+  // EFFECT: sets validPaths to every edge of the spanning tree and sets the state
+  // as user controlled
+  void finishConstruction() {
+    if (this.mazeConstructionControl) {
+      // the animation replays treeEdges, so it already holds the finished maze
+      this.validPaths = this.treeEdges;
+      this.mazeConstructionControl = false;
+      this.setUserState();
+    }
+  }
+
+  // solves this Maze from the top left to the bottom right without animating
+  // EFFECT: finishes construction and sets this Maze's searchPath and
+  // visitedNodes to the result of the given search method
+  void solve(boolean bfs) {
+    this.finishConstruction();
+
+    if (bfs) {
+      this.setBFSState();
+    }
+    else {
+      this.setDFSState();
+    }
+  }
+
+  // solves this Maze from the top left to the bottom right with A* if astar is
+  // true and with Dijkstra's algorithm otherwise, without animating
+  // EFFECT: finishes construction and sets this Maze's searchPath and
+  // visitedNodes to the cheapest path and the Nodes settled
+  void solveShortest(boolean astar) {
+    this.finishConstruction();
+    this.setShortestPathState(astar);
+  }
+
+  // returns the total cost of the cells entered along this Maze's current search
+  // path, which leaves out the cell it starts from
+  long pathCost() {
+    long cost = 0;
+    for (int i = 0; i < this.searchPath.size() - 1; i += 1) {
+      cost += this.terrain.cost(this.searchPath.get(i).index(this.width));
+    }
+    return cost;
+  }
+
+  // returns the number of active cells with exactly one open passage
+  int deadEndCount() {
+    this.syncOpenings();
+    return this.walls.deadEndCount();
+  }
+
+  // returns this Maze's open passages as bit planes, which stay in step with the
+  // maze until the next call that changes it
+  WallPlanes wallPlanes() {
+    this.reserveCells();
+    this.syncOpenings();
+    return this.walls;
+  }
+
+  // returns the number of passages open in exactly one of this Maze and the
+  // given Maze
+  // throws an IllegalArgumentException if the mazes are not the same size
+  int wallDiff(Maze other) {
+    return this.wallPlanes().diffCount(other.wallPlanes());
+  }
+
+  // returns the passages that differ between the given base Maze and this Maze
+  // throws an IllegalArgumentException if the mazes are not the same size
+  WallDelta deltaFrom(Maze base) {
+    return WallDelta.between(base.wallPlanes(), this.wallPlanes());
+  }
+
+  // flips the walls of the given delta in this Maze, opening each of its
+  // passages that is closed and closing each that is open; every flip costs
+  // constant time through pathIndex, and the distance field and cheapest path
+  // are then recomputed once rather than repaired after each flip
+  // throws an IllegalArgumentException, before flipping anything, if the delta
+  // is for a board of another size, or flips a passage between cells that are
+  // not active neighbors
+  // EFFECT: opens and closes walls as openWall and closeWall do
+  void applyDelta(WallDelta delta) {
+    this.finishConstruction();
+    WallPlanes walls = this.wallPlanes();
+    delta.checkSize(this.width, this.height);
+    int cells = this.width * this.height;
+    Edge[] edges = new Edge[delta.size()];
+    for (int k = 0; k < delta.size(); k += 1) {
+      int bit = delta.flip(k);
+      int cell = bit % cells;
+      int neighbor = cell + walls.offset(bit / cells);
+      if (neighbor >= cells || walls.bitOf(cell, neighbor) != bit) {
+        throw new IllegalArgumentException("cells " + cell + " and " + neighbor
+            + " are not neighbors");
+      }
+      edges[k] = this.edgeBetween(cell, neighbor);
+    }
+
+    for (int k = 0; k < delta.size(); k += 1) {
+      if (walls.get(delta.flip(k))) {
+        this.removePassage(edges[k]);
+      }
+      else {
+        this.addPassage(edges[k]);
+      }
+    }
+
+    if (delta.size() > 0) {
+      this.fieldValid = false;
+      this.syncField();
+      this.followField();
+    }
+  }
+
+  // returns the number of Nodes on this Maze's current search path
+  int pathLength() {
+    return this.searchPath.size();
+  }
+
+  // returns the index of the given Node on this Maze's current search path, where
+  // 0 is the end of the path
+  int pathCell(int i) {
+    return this.searchPath.get(i).index(this.width);
+  }
+
+  // returns the number of Nodes visited by this Maze's current search
+  int visitedCount() {
+    return this.visitedNodes.size();
+  }
+
+  // returns the index of the i-th Node visited by this Maze's current search
+  int visitedCell(int i) {
+    return this.visitedNodes.get(i).index(this.width);
+  }
+
+  // returns the number of passages (knocked down walls) currently in this Maze
+  int passageCount() {
+    return this.validPaths.size();
+  }
+
+  // sets the state for path animation
+  // EFFECT: sets the state variables appropriate for path animation
+  void setPathAnimationState() {
+    this.pathAnimationControl = true;
+  }
+
+  // sets the state for user control
+  // EFFECT: sets the state variables appropriate for user control
+  void setUserState() {
+    this.resetBoardColor();
+    this.resetStates();
+    this.userControl = true;
+    this.title = "User";
+    this.paint(this.topLeft, Palette.USER);
+  }
+
+  // sets the state for viewing visited paths
+  // EFFECT: sets the state variables appropriate for viewing the visited paths
+  void setViewVisitedPathsState() {
+    this.viewVisitedPaths = !this.viewVisitedPaths;
+
+    for (Node mn : this.visitedNodes) {
+      if (this.viewVisitedPaths && mn != this.topLeft) {
+        this.paint(mn, Palette.VISITED);
+      }
+      else {
+        this.resetCell(mn);
+      }
+    }
+
+    if (this.userControl) {
+      this.paint(this.nodes.get(this.userRow).get(this.userCol), Palette.USER);
+    }
+
+    if (this.pathAnimationControl || this.finishedPathAnimation) {
+      for (Node mn : this.searchPath) {
+        this.paint(mn, Palette.PATH);
+      }
+    }
+  }
+
+  // colors every square with a gradient of colors indicating how costly the
+  // cheapest path from it to the given Node is
+  // a path costs the total terrain cost of all of its cells, which is the same in
+  // both directions, so one Dijkstra search from the given Node prices every
+  // cell; 100 percent is the cost of the cheapest path from start to end, which
+  // that search has already priced when the given Node is the start or the end
+  // a board whose last gradient had a level wide enough to split across the
+  // common pool's workers is priced by a ParallelDistances instead, which finds
+  // the same distances; a perfect maze's levels are rarely that wide
+  // EFFECT: sets each Node in the maze to a color representing how far it is from
+  // the given Node
+  void colorGradient(Node to) {
+    GradientComputedEvent event = new GradientComputedEvent();
+    event.begin();
+    this.setGradientState("Color Gradient");
+
+    int start = this.topLeft.index(this.width);
+    int end = this.bottomRight.index(this.width);
+    int target = to.index(this.width);
+    boolean fromEnd = target == start || target == end;
+    long maxCost = 0;
+    if (!fromEnd) {
+      this.search.runShortest(this, start, end, false);
+      maxCost = this.search.pathCost() + this.terrain.cost(start);
+    }
+
+    boolean parallel = this.gradientField.splits(this.gradientLevel);
+    if (parallel) {
+      this.gradientField.compute(this, target);
+      this.gradientLevel = this.gradientField.widestLevel();
+    }
+    else {
+      this.search.runShortest(this, target, -1, false);
+      this.gradientLevel = this.search.levelMax();
+    }
+    if (fromEnd) {
+      int other = target == start ? end : start;
+      long distance = parallel ? this.gradientField.distance(other) : this.search.distance(other);
+      maxCost = Math.max(distance, 0) + this.terrain.cost(target);
+    }
+
+    for (int k = 0; k < this.mask.activeCount(); k += 1) {
+      int cell = this.mask.activeCell(k);
+      long distance = parallel ? this.gradientField.distance(cell) : this.search.distance(cell);
+      if (distance < 0) {
+        this.cellColors[cell] = Palette.GRADIENT_BLUE;
+      }
+      else {
+        this.cellColors[cell] = Palette.gradient(distance + this.terrain.cost(target), maxCost);
+      }
+    }
+
+    if (event.shouldCommit()) {
+      event.width = this.width;
+      event.height = this.height;
+      event.algorithm = parallel ? "parallel" : "dijkstra";
+      event.target = target;
+      event.nodesVisited = parallel ? this.gradientField.expanded() : this.search.expanded();
+      event.commit();
+    }
+  }
+
+  // sets the state for a view that colors every cell by its distance from
+  // something
+  // EFFECT: clears the board and the other states, and sets the title
+  void setGradientState(String title) {
+    this.resetBoardColor();
+    this.resetStates();
+    this.viewColorGradient = true;
+    this.title = title;
+    this.reserveCells();
+    this.syncOpenings();
+  }
+
+  // colors every square with a gradient of colors indicating how costly the
+  // cheapest path from it to the nearest of the given Nodes is, pricing every
+  // cell in one pass from all of them at once; 100 percent is the cost of the
+  // costliest cell to reach
+  // throws an IllegalArgumentException if there are no Nodes
+  // EFFECT: sets each Node in the maze to a color representing how far it is from
+  // the nearest of the given Nodes
+  void colorGradient(ArrayList<Node> targets) {
+    this.setGradientState("Color Gradient");
+    this.priceFrom(targets);
+
+    long maxCost = 1;
+    for (int k = 0; k < this.mask.activeCount(); k += 1) {
+      maxCost = Math.max(maxCost, this.sourceCost(this.mask.activeCell(k)));
+    }
+    for (int k = 0; k < this.mask.activeCount(); k += 1) {
+      int cell = this.mask.activeCell(k);
+      long cost = this.sourceCost(cell);
+      if (cost < 0) {
+        this.cellColors[cell] = Palette.GRADIENT_BLUE;
+      }
+      else {
+        this.cellColors[cell] = Palette.gradient(cost, maxCost);
+      }
+    }
+  }
+
+  // colors every square by which of the given Nodes is the cheapest to reach
+  // from it, dividing the maze into a region around each of them; the Nodes
+  // themselves are marked as ends, and cells that reach none of them are left
+  // unvisited
+  // throws an IllegalArgumentException if there are no Nodes
+  // EFFECT: sets each Node in the maze to the color of its region
+  void colorRegions(ArrayList<Node> sources) {
+    this.setGradientState("Regions");
+    this.priceFrom(sources);
+
+    for (int k = 0; k < this.mask.activeCount(); k += 1) {
+      int cell = this.mask.activeCell(k);
+      int source = this.gradientField.sourceOf(cell);
+      if (source >= 0) {
+        this.cellColors[cell] = Palette.region(source);
+      }
+    }
+    for (Node source : sources) {
+      this.paint(source, Palette.END);
+    }
+  }
+
+  // prices every cell of this Maze from the nearest of the given Nodes
+  // throws an IllegalArgumentException if there are no Nodes
+  // EFFECT: recomputes gradientField and gradientSources
+  void priceFrom(ArrayList<Node> sources) {
+    if (sources.isEmpty()) {
+      throw new IllegalArgumentException("there must be at least one source");
+    }
+    if (sources.size() > this.gradientSources.length) {
+      this.gradientSources = new int[Math.max(sources.size(), 2 * this.gradientSources.length)];
+    }
+    for (int k = 0; k < sources.size(); k += 1) {
+      this.gradientSources[k] = sources.get(k).index(this.width);
+    }
+    this.gradientField.compute(this, this.gradientSources, sources.size());
+  }
+
+  // returns the cost of the cheapest path from the given cell to its nearest
+  // source, counting the source's own cell as the single-source gradient does,
+  // or -1 if no source can be reached
+  long sourceCost(int cell) {
+    int source = this.gradientField.sourceOf(cell);
+    if (source < 0) {
+      return -1;
+    }
+    else {
+      return this.gradientField.distance(cell) + this.terrain.cost(this.gradientSources[source]);
+    }
+  }
+
+  // returns the index among the sources of the last gradient or regions view of
+  // the source nearest to the cell at the given row and column, or -1 if it
+  // reaches none
+  int nearestSource(int row, int col) {
+    return this.gradientField.sourceOf(row * this.width + col);
+  }
+
+  // returns the distance from the cell at the given row and column to its
+  // nearest source in the last gradient or regions view, or -1 if it reaches
+  // none
+  int sourceDistance(int row, int col) {
+    return this.gradientField.distance(row * this.width + col);
+  }
+
+  // prices the gradients and regions of this Maze on the given pool from now on,
+  // handing each chunk of a level at least the given number of cells
+  // throws an IllegalArgumentException if a chunk would hold no cells
+  // EFFECT: replaces gradientField
+  void setGradientPool(ForkJoinPool pool, int minChunk) {
+    this.gradientField = new ParallelDistances(pool, minChunk);
+  }
+
+  // returns the most chunks a level of the last parallel pricing of this Maze was
+  // split into
+  int gradientParts() {
+    return this.gradientField.mostParts();
+  }
+
+  // returns the given number of active cells spread evenly through this Maze's
+  // mask in row-major order, from its first cell to its last
+  ArrayList<Node> spreadSources(int count) {
+    ArrayList<Node> sources = new ArrayList<Node>();
+    int active = this.mask.activeCount();
+    for (int k = 0; k < count && k < active; k += 1) {
+      int rank = count == 1 ? 0 : (int) ((long) k * (active - 1) / (count - 1));
+      sources.add(this.nodeAt(this.mask.activeCell(rank)));
+    }
+    return sources;
+  }
+
+  // finds the cheapest path in this Maze that would connect all the MazeNodes
+  // the result is a buffer that is refilled by every call
+  ArrayList<Edge> findValidPaths() {
+    this.openedPaths = null;
+    this.treeEdges.clear();
+    this.unionFind.reset(this.width * this.height);
+    this.passageKeys.build(this.width, this.height, this.edgeSeed, this.bias, this.mask,
+        this.topology);
+
+    long sortStart = MazeMetrics.SORT.start();
+    this.passageKeys.sort();
+    MazeMetrics.SORT.stop(sortStart);
+
+    // masked cells stay trees of their own, so the active cells are spanned once
+    // only one more tree than there are masked cells remains
+    // an Edge is only looked up for the passages the tree keeps
+    long kruskalStart = MazeMetrics.KRUSKAL.start();
+    int spanned = this.width * this.height - this.mask.activeCount() + 1;
+    int next = 0;
+    while (this.unionFind.treeCount() > spanned && next < this.passageKeys.size()) {
+      int id = this.passageKeys.id(next);
+      int cell = PassageKeys.cell(id);
+      int other = cell + PassageKeys.rowStep(id) * this.width + PassageKeys.colStep(id);
+      if (this.unionFind.find(cell) == this.unionFind.find(other)) {
+        // do nothing
+      }
+      else {
+        Edge edge = this.nodeAt(cell).edgeTo(this.nodeAt(other));
+        edge.reweigh(this.passageKeys.key(next));
+        this.treeEdges.add(edge);
+        this.unionFind.union(cell, other);
+      }
+      next += 1;
+    }
+    MazeMetrics.KRUSKAL.stop(kruskalStart);
+
+    if (this.braidFactor > 0) {
+      this.braidDeadEnds();
+    }
+
+    return this.treeEdges;
+  }
+
+  // re-opens one wall of a braidFactor share of the dead ends left by Kruskal's
+  // algorithm, preferring walls to other dead ends, so the maze gets loops
+  // EFFECT: adds the re-opened Edges to the end of treeEdges
+  void braidDeadEnds() {
+    this.reserveCells();
+    this.braidRandom.setSeed(this.braidSeed);
+    Arrays.fill(this.openings, 0, this.width * this.height, (byte) 0);
+    this.walls.reset(this.width, this.height);
+    for (int i = 0; i < this.treeEdges.size(); i += 1) {
+      this.open(this.treeEdges.get(i));
+    }
+
+    int[] candidates = new int[Topology.MAX_DEGREE];
+    for (int k = 0; k < this.mask.activeCount(); k += 1) {
+      int cell = this.mask.activeCell(k);
+      if (Integer.bitCount(this.openings[cell] & 0xff) != 1
+          || this.braidRandom.nextDouble() >= this.braidFactor) {
+        continue;
+      }
+
+      int count = this.closedNeighbors(cell, true, candidates);
+      if (count == 0) {
+        count = this.closedNeighbors(cell, false, candidates);
+      }
+
+      if (count > 0) {
+        int neighbor = candidates[this.braidRandom.nextInt(count)];
+        Edge edge = this.nodeAt(cell).edgeTo(this.nodeAt(neighbor));
+        this.treeEdges.add(edge);
+        this.open(edge);
+      }
+    }
+
+    // openings now holds treeEdges, not validPaths
+    this.openedPaths = null;
+  }
+
+  // writes the active neighbors of the given cell whose walls are standing into
+  // the given array, only those that are dead ends if deadEndsOnly is true, and
+  // returns how many there are
+  // EFFECT: modifies the given array
+  int closedNeighbors(int cell, boolean deadEndsOnly, int[] out) {
+    int row = cell / this.width;
+    int col = cell % this.width;
+    int[] dr = this.topology.rowOffsets(row, col);
+    int[] dc = this.topology.colOffsets(row, col);
+    int count = 0;
+
+    for (int k = 0; k < dr.length; k += 1) {
+      int r = row + dr[k];
+      int c = col + dc[k];
+      if (r >= 0 && r < this.height && c >= 0 && c < this.width
+          && (this.openings[cell] & (1 << k)) == 0 && this.mask.isActive(r * this.width + c)
+          && (!deadEndsOnly || Integer.bitCount(this.openings[r * this.width + c] & 0xff) == 1)) {
+        out[count] = r * this.width + c;
+        count += 1;
+      }
+    }
+    return count;
+  }
+
+  // find the path from the first given MazeNode to the second given MazeNode
+  // using BFS if bfs is true, and DFS otherwise
+  // the search walks cell ids through the topology's neighbor offsets and the
+  // openings plane, so it works the same on any topology
+  // EFFECT: sets this Maze's searchPath and visitedNodes to the path generated
+  // from the given from Node to the given to Node using the given search method
+  // and the total Nodes visited, respectively
+  void findPath(Node from, Node to, boolean bfs) {
+    long start = MazeMetrics.SEARCH.start();
+    SearchCompletedEvent event = new SearchCompletedEvent();
+    event.begin();
+    this.reserveCells();
+    this.syncOpenings();
+
+    boolean found = this.reachable(from, to)
+        && this.search.run(this, from.index(this.width), to.index(this.width), bfs);
+    this.collectSearch(start, event, bfs ? "bfs" : "dfs", found);
+  }
+
+  // find the path from the first given Node to the second given Node whose cells
+  // cost the least to enter, using A* if astar is true and Dijkstra's algorithm
+  // otherwise
+  // EFFECT: sets this Maze's searchPath and visitedNodes to the path found and
+  // the Nodes settled, respectively
+  void findShortestPath(Node from, Node to, boolean astar) {
+    long start = MazeMetrics.SEARCH.start();
+    SearchCompletedEvent event = new SearchCompletedEvent();
+    event.begin();
+    this.reserveCells();
+    this.syncOpenings();
+
+    boolean found = this.reachable(from, to) && this.search.runShortest(this,
+        from.index(this.width), to.index(this.width), astar);
+    this.collectSearch(start, event, astar ? "astar" : "dijkstra", found);
+  }
+
+  // returns whether the given Nodes are in the same component, so a search
+  // between them can succeed
+  // EFFECT: resets the search's counts if they are not
+  boolean reachable(Node from, Node to) {
+    if (this.components().connected(from.index(this.width), to.index(this.width))) {
+      return true;
+    }
+    else {
+      this.search.skip();
+      return false;
+    }
+  }
+
+  // copies the result of the search that just ran into this Maze's Nodes, and
+  // records its metrics
+  // EFFECT: sets searchPath and onPath and adds to visitedNodes if the search
+  // found its target, and records and commits the search's metrics and event
+  void collectSearch(long start, SearchCompletedEvent event, String algorithm, boolean found) {
+    int expanded = this.search.expanded();
+
+    if (found) {
+      this.searchPath = new ArrayList<Node>();
+      this.onPath.clear();
+      this.wrongCounted = 0;
+      for (int i = 0; i < this.search.pathLength(); i += 1) {
+        int cell = this.search.pathCell(i);
+        this.searchPath.add(this.nodeAt(cell));
+        this.onPath.set(cell);
+      }
+
+      for (int i = 0; i < expanded; i += 1) {
+        this.visitedNodes.add(this.nodeAt(this.search.expandedCell(i)));
+      }
+      this.countWrongMoves();
+    }
+
+    this.recordSearch(start, expanded, this.search.frontierMax());
+    this.commitSearch(event, algorithm, expanded, this.search.pathLength(), found);
+  }
+
+  // commits the given search event, if JFR is recording it
+  // EFFECT: fills in and commits the given event
+  void commitSearch(SearchCompletedEvent event, String algorithm, int visited, int pathLength,
+      boolean found) {
+    if (event.shouldCommit()) {
+      event.width = this.width;
+      event.height = this.height;
+      event.algorithm = algorithm;
+      event.nodesVisited = visited;
+      event.pathLength = pathLength;
+      event.found = found;
+      event.commit();
+    }
+  }
+
+  // records the metrics of a search that started at the given time
+  // EFFECT: adds the search's duration, expanded Nodes and largest frontier to
+  // MazeMetrics
+  void recordSearch(long start, int expanded, int frontierMax) {
+    MazeMetrics.SEARCH.stop(start);
+    MazeMetrics.EXPANDED.add(expanded);
+    MazeMetrics.FRONTIER.record(frontierMax);
+  }
+
+  // renders this Maze with its topology's renderer, with masked cells left blank
+  WorldImage render() {
+    long start = MazeMetrics.RENDER.start();
+    WorldImage image;
+    if (this.topology == Topology.SQUARE) {
+      image = this.renderSquares();
+    }
+    else {
+      this.syncOpenings();
+      image = this.topology.render(this.width, this.height, this.nodeDim, this.mask,
+          this.cellColors, this.openings);
+    }
+    MazeMetrics.RENDER.stop(start);
+    return image;
+  }
+
+  // renders this square Maze as an image grid of its Nodes, with masked cells left
+  // blank
+  WorldImage renderSquares() {
+    WallPlanes walls = this.wallPlanes();
+    WorldImage blank = new RectangleImage(this.nodeDim, this.nodeDim, OutlineMode.SOLID,
+        Color.WHITE);
+    WorldImage rows = new EmptyImage();
+    for (int i = 0; i < this.height; i += 1) {
+      WorldImage row = new EmptyImage();
+      for (int j = 0; j < this.width; j += 1) {
+        int cell = i * this.width + j;
+        if (this.mask.isActive(cell)) {
+          row = new BesideImage(row, this.nodes.get(i).get(j).render(walls, this.nodeDim,
+              Palette.color(this.cellColors[cell])));
+        }
+        else {
+          row = new BesideImage(row, blank);
+        }
+      }
+      rows = new AboveImage(rows, row);
+    }
+    return rows;
+  }
+
+  // animates the maze construction, search, or path animation based on state,
+  // running as many steps as the scheduler allows this tick
+  // EFFECT: animates the state and incremenets animation indexes based on state
+  public void onTick() {
+    long tickStart = MazeMetrics.TICK.start();
+    long start = System.nanoTime();
+    int steps = this.scheduler.stepsPerTick(this.animationLength(), start);
+
+    for (int i = 0; i < steps; i += 1) {
+      this.animateStep();
+    }
+
+    this.scheduler.recordSteps(steps, System.nanoTime() - start);
+    MazeMetrics.TICK.stop(tickStart);
+  }
+
+  // returns the number of steps in the animation currently playing, or 0 if
+  // nothing is animating
+  int animationLength() {
+    if (this.mazeConstructionControl) {
+      return this.treeEdges.size();
+    }
+    else if (this.searchControl) {
+      return this.visitedNodes.size();
+    }
+    else if (this.pathAnimationControl) {
+      return this.searchPath.size();
+    }
+    else {
+      return 0;
+    }
+  }
+
+  // animates a single step of the maze construction, search, or path animation
+  // EFFECT: animates the state and incremenets animation indexes based on state
+  void animateStep() {
+    if (this.mazeConstructionControl) {
+      if (this.mazeAnimationIndex > this.treeEdges.size() - 1) {
+        this.mazeConstructionControl = false;
+        this.setUserState();
+      }
+      // setUserState resets mazeAnimationIndex, so this must not run after it
+      else {
+        this.validPaths.add(this.treeEdges.get(mazeAnimationIndex));
+        mazeAnimationIndex += 1;
+      }
+    }
+
+    else if (this.searchControl) {
+      // when visited cells are hidden, the search skips straight to its end
+      if (!this.viewVisitedPaths) {
+        this.searchAnimationIndex = this.visitedNodes.size();
+      }
+
+      if (this.searchAnimationIndex > this.visitedNodes.size() - 1) {
+        this.searchControl = false;
+        this.setPathAnimationState();
+      }
+      else {
+        this.paint(this.visitedNodes.get(this.searchAnimationIndex), Palette.VISITED);
+        this.searchAnimationIndex += 1;
+      }
+      this.steps = this.searchAnimationIndex;
+      this.countWrongMoves();
+      this.wrongMoves = this.wrongBefore[this.searchAnimationIndex];
+    }
+    else if (this.pathAnimationControl) {
+      if (this.pathAnimationIndex > this.searchPath.size() - 1) {
+        this.pathAnimationControl = false;
+        this.finishedPathAnimation = true;
+      }
+      if (this.pathAnimationIndex <= this.searchPath.size() - 1) {
+        this.paint(this.searchPath.get(this.pathAnimationIndex), Palette.PATH);
+        this.pathAnimationIndex += 1;
+      }
+    }
+  }
+
+  // returns whether a search has run whose animation can be sought, that is
+  // whether the search or path animation is running or has finished
+  boolean canSeekSearch() {
+    return (this.searchControl || this.pathAnimationControl || this.finishedPathAnimation)
+        && this.viewVisitedPaths && !this.viewColorGradient && !this.searchPath.isEmpty();
+  }
+
+  // returns the position of the search animation on its timeline: the number
+  // of cells visited so far, plus the number of path cells shown once the path
+  // animation starts
+  int timelinePosition() {
+    if (this.searchControl) {
+      return Math.min(this.searchAnimationIndex, this.visitedNodes.size());
+    }
+    else if (this.finishedPathAnimation) {
+      return this.visitedNodes.size() + this.searchPath.size();
+    }
+    else {
+      return this.visitedNodes.size()
+          + Math.min(this.pathAnimationIndex, this.searchPath.size());
+    }
+  }
+
+  // returns the number of positions on the timeline of the search animation
+  int timelineLength() {
+    return this.visitedNodes.size() + this.searchPath.size();
+  }
+
+  // returns the steps counter shown below the board
+  int stepCount() {
+    return this.steps;
+  }
+
+  // returns the wrong moves counter shown below the board
+  int wrongMoveCount() {
+    return this.wrongMoves;
+  }
+
+  // moves the search animation to the given position on its timeline, as if
+  // it had been played from the start up to it, without replaying it
+  // throws an IllegalArgumentException if the position is not between 0 and
+  // the timeline's length
+  // EFFECT: repaints the cells that differ between the two positions, and sets
+  // the animation state, its indexes and the counters to match the position
+  void seekSearch(int position) {
+    this.syncTimeline();
+    this.timeline.seek(this.timelinePosition(), position, this.cellColors);
+
+    int visited = this.visitedNodes.size();
+    this.searchControl = position < visited;
+    this.pathAnimationControl = position >= visited && position < this.timeline.length();
+    this.finishedPathAnimation = position == this.timeline.length();
+    this.searchAnimationIndex = Math.min(position, visited);
+    this.pathAnimationIndex = Math.max(0, position - visited);
+    this.steps = this.timeline.steps(position);
+    this.wrongMoves = this.timeline.wrongMoves(position);
+  }
+
+  // makes sure the timeline holds the current search
+  // EFFECT: reloads the timeline from the board before the search started if
+  // visitedNodes or searchPath have changed since it was last loaded
+  void syncTimeline() {
+    if (this.timelineVisits == this.visitedNodes && this.timelinePath == this.searchPath
+        && this.timelineVisitCount == this.visitedNodes.size()
+        && this.timelinePathEdits == this.pathEdits) {
+      return;
+    }
+
+    int cells = this.width * this.height;
+    byte[] before = new byte[cells];
+    for (int cell = 0; cell < cells; cell += 1) {
+      before[cell] = Palette.ground(this.terrain.cost(cell));
+    }
+    before[this.topLeft.index(this.width)] = Palette.START;
+    before[this.bottomRight.index(this.width)] = Palette.END;
+    this.countWrongMoves();
+    this.timeline.load(this.width, cells, this.visitedNodes, this.searchPath,
+        this.wrongBefore, before);
+    this.timelineVisits = this.visitedNodes;
+    this.timelinePath = this.searchPath;
+    this.timelineVisitCount = this.visitedNodes.size();
+    this.timelinePathEdits = this.pathEdits;
+  }
+
+  // returns the cell reached by moving from the given cell through an open
+  // passage one row in the direction of the given row step, or, when the row step
+  // is 0, one column in the direction of the given column step; returns -1 if
+  // every such passage is walled
+  // on boards where a cell has two neighbors in the row above or below, the open
+  // one further in the direction of the given column step is taken, and the
+  // first open one in the topology's order when the column step is 0
+  int step(int cell, int rowStep, int colStep) {
+    this.syncOpenings();
+    int row = cell / this.width;
+    int col = cell % this.width;
+    int[] dr = this.topology.rowOffsets(row, col);
+    int[] dc = this.topology.colOffsets(row, col);
+
+    int best = -1;
+    for (int k = 0; k < dr.length; k += 1) {
+      if (dr[k] == rowStep && (rowStep != 0 || dc[k] == colStep)
+          && (this.openings[cell] & (1 << k)) != 0
+          && (best < 0 || dc[k] * colStep > dc[best] * colStep)) {
+        best = k;
+      }
+    }
+
+    if (best < 0) {
+      return -1;
+    }
+    else {
+      return (row + dr[best]) * this.width + col + dc[best];
+    }
+  }
+
+  // handles key input to change states for this Maze
+  // EFFECT: sets the state 
+  public void onKeyEvent(String key) {
+    if (this.mazeConstructionControl) {
+      return;
+    }
+
+    if (key.equals("d")) {
+      this.setDFSState();
+    }
+
+    if (key.equals("b")) {
+      this.setBFSState();
+    }
+
+    if (key.equals("u")) {
+      this.setUserState();
+    }
+
+    if (key.equals("p") && !this.searchControl && !this.viewColorGradient) {
+      this.setViewVisitedPathsState();
+    }
+
+    if (key.equals("v")) {
+      this.bias = BiasMap.VERTICAL;
+      this.genNewMaze(this.width, this.height);
+    }
+
+    if (key.equals("h")) {
+      this.bias = BiasMap.HORIZONTAL;
+      this.genNewMaze(this.width, this.height);
+    }
+
+    if (key.equals("r")) {
+      this.bias = BiasMap.NONE;
+      this.genNewMaze(this.width, this.height);
+    }
+
+    if (key.equals("c")) {
+      if (this.mask.isFull()) {
+        this.setMask(MazeMask.circle(this.width, this.height));
+      }
+      else {
+        this.setMask(MazeMask.full(this.width, this.height));
+      }
+    }
+
+    if (key.equals("w")) {
+      this.setShortestPathState(false);
+    }
+
+    if (key.equals("a")) {
+      this.setShortestPathState(true);
+    }
+
+    if (key.equals("m")) {
+      if (this.terrain.isFlat()) {
+        this.setTerrain(TerrainMap.random(this.width, this.height, this.rand, 0.3));
+      }
+      else {
+        this.setTerrain(TerrainMap.flat(this.width, this.height));
+      }
+    }
+
+    if (key.equals("o")) {
+      if (this.braidFactor > 0) {
+        this.setBraid(0);
+      }
+      else {
+        this.setBraid(0.5);
+      }
+    }
+
+    if (key.equals("t")) {
+      if (this.topology == Topology.SQUARE) {
+        this.setTopology(Topology.HEX);
+      }
+      else if (this.topology == Topology.HEX) {
+        this.setTopology(Topology.TRIANGLE);
+      }
+      else {
+        this.setTopology(Topology.SQUARE);
+      }
+    }
+
+    if (key.equals("s")) {
+      this.colorGradient(this.topLeft);
+    }
+
+    if (key.equals("e")) {
+      this.colorGradient(this.bottomRight);
+    }
+
+    if (key.equals("g")) {
+      this.colorRegions(this.spreadSources(REGION_SOURCES));
+    }
+
+    if (this.canSeekSearch()) {
+      int position = this.timelinePosition();
+      int jump = Math.max(1, this.timelineLength() / 10);
+      if (key.equals(",")) {
+        this.seekSearch(Math.max(0, position - 1));
+      }
+      if (key.equals(".")) {
+        this.seekSearch(Math.min(this.timelineLength(), position + 1));
+      }
+      if (key.equals("[")) {
+        this.seekSearch(Math.max(0, position - jump));
+      }
+      if (key.equals("]")) {
+        this.seekSearch(Math.min(this.timelineLength(), position + jump));
+      }
+    }
+
+    if (this.userControl) {
+      Node currNode = this.nodes.get(this.userRow).get(this.userCol);
+      boolean validMove = false;
+
+      int cell = currNode.index(this.width);
+      int reached = -1;
+
+      if (key.equals("left")) {
+        this.userHeading = -1;
+        reached = this.step(cell, 0, -1);
+      }
+
+      if (key.equals("right")) {
+        this.userHeading = 1;
+        reached = this.step(cell, 0, 1);
+      }
+
+      if (key.equals("up")) {
+        reached = this.step(cell, -1, this.userHeading);
+      }
+
+      if (key.equals("down")) {
+        reached = this.step(cell, 1, this.userHeading);
+      }
+
+      if (reached >= 0) {
+        this.userRow = reached / this.width;
+        this.userCol = reached % this.width;
+        validMove = true;
+      }
+
+      if (validMove) {
+        Node newNode = this.nodes.get(this.userRow).get(this.userCol);
+        this.paint(newNode, Palette.USER);
+
+        if (this.viewVisitedPaths) {
+          this.paint(currNode, Palette.VISITED);
+        }
+        else {
+          this.resetCell(currNode);
+        }
+
+        this.visitedNodes.add(newNode);
+
+        if (!this.onPath.get(newNode.index(this.width))) {
+          wrongMoves += 1;
+        }
+
+        this.steps += 1;
+
+        if (this.bottomRight == newNode) {
+          this.setPathAnimationState();
+        }
+      }
+
+      UserMoveEvent event = new UserMoveEvent();
+      if (event.shouldCommit() && (key.equals("left") || key.equals("right")
+          || key.equals("up") || key.equals("down"))) {
+        event.key = key;
+        event.valid = validMove;
+        event.row = this.userRow;
+        event.col = this.userCol;
+        event.steps = this.steps;
+        event.wrongMoves = this.wrongMoves;
+        event.commit();
+      }
+
+    }
+  }
+
+  // handles mosue click
+  // EFFECT: adds or subtracts width and height based on click location
+  // not tested since not part of regular
+  public void onMouseClicked(Posn pos) {
+    // increase width
+    if (pos.x >= this.sceneWidth / 8 - 5 && pos.x <= this.sceneWidth / 8 + 5
+        && pos.y >= (27 * this.sceneHeight / 30) - 5 && pos.y <= (27 * this.sceneHeight / 30) + 5) {
+      this.width += 1;
+      this.genNewMaze(this.width, this.height);
+    }
+
+    // decrease width
+    if (pos.x >= this.sceneWidth / 8 - 5 && pos.x <= this.sceneWidth / 8 + 5
+        && pos.y >= (29 * this.sceneHeight / 30) - 5 && pos.y <= (29 * this.sceneHeight / 30) + 5) {
+      this.width -= 1;
+
+      if (this.width < 5) {
+        this.width = 5;
+      }
+      this.genNewMaze(this.width, this.height);
+    }
+
+    // increase height
+    if (pos.x >= (7 * this.sceneWidth / 8) - 5 && pos.x <= (7 * this.sceneWidth / 8) + 5
+        && pos.y >= (27 * this.sceneHeight / 30 - 5) && pos.y <= (27 * this.sceneHeight / 30 + 5)) {
+      this.height += 1;
+      this.genNewMaze(this.width, this.height);
+    }
+
+    // decrease height
+    if (pos.x >= (7 * this.sceneWidth / 8) - 5 && pos.x <= (7 * this.sceneWidth / 8) + 5
+        && pos.y >= (29 * this.sceneHeight / 30 - 5) && pos.y <= (29 * this.sceneHeight / 30 + 5)) {
+      this.height -= 1;
+
+      if (this.width < 5) {
+        this.height = 5;
+      }
+      this.genNewMaze(this.width, this.height);
+    }
+  }
+
+  public WorldScene makeScene() {
+    long start = MazeMetrics.SCENE.start();
+    FrameRenderedEvent event = new FrameRenderedEvent();
+    event.begin();
+    WorldScene scene = new WorldScene(this.sceneWidth, this.sceneHeight);
+
+    scene.placeImageXY(new TextImage(this.title, Color.black), this.sceneWidth / 2,
+        this.sceneHeight / 14);
+
+    if (!this.mazeConstructionControl) {
+      scene.placeImageXY(new TextImage("Steps: " + this.steps, Color.black), this.sceneWidth / 2,
+          this.sceneHeight / 8);
+      scene.placeImageXY(new TextImage("Wrong moves: " + this.wrongMoves, Color.black),
+          this.sceneWidth / 2, (7 * this.sceneHeight) / 8);
+    }
+
+    scene.placeImageXY(new TextImage("^", Color.black), this.sceneWidth / 8,
+        (27 * this.sceneHeight) / 30);
+    scene.placeImageXY(new TextImage("Width: " + this.width, Color.black), this.sceneWidth / 8,
+        (28 * this.sceneHeight) / 30);
+    scene.placeImageXY(new TextImage("v ", Color.black), this.sceneWidth / 8,
+        (29 * this.sceneHeight) / 30);
+
+    scene.placeImageXY(new TextImage("^", Color.black), (7 * sceneWidth / 8),
+        (27 * sceneHeight) / 30);
+    scene.placeImageXY(new TextImage("Height: " + this.height, Color.black),
+        (7 * this.sceneWidth) / 8, (28 * this.sceneHeight) / 30);
+    scene.placeImageXY(new TextImage("v ", Color.black), (7 * this.sceneWidth / 8),
+        (29 * this.sceneHeight) / 30);
+
+    scene.placeImageXY(this.render(), this.sceneWidth / 2, this.sceneHeight / 2);
+
+    MazeMetrics.SCENE.stop(start);
+
+    if (event.shouldCommit()) {
+      event.width = this.width;
+      event.height = this.height;
+      event.mode = this.title;
+      event.commit();
+    }
+    return scene;
+  }
+}
+
+// to represent a flat plane of one byte per cell, such as the walls or the
+// colors of a MazeVolume, wherever its bytes are stored
+// the bytes can also be read as little-endian long words of eight cells each,
+// where the bytes past the end of the plane read as 0
+interface BytePlane {
+  // returns the number of bytes in this plane
+  int size();
+
+  // returns the byte at the given index
+  byte get(int index);
+
+  // sets the byte at the given index
+  // EFFECT: modifies this plane
+  void set(int index, byte value);
+
+  // returns the number of words covering this plane
+  int words();
+
+  // returns the k-th word of this plane, holding bytes 8k to 8k + 7
+  long word(int k);
+
+  // sets every byte of this plane to the given value
+  // EFFECT: modifies this plane
+  void fill(byte value);
+}
+
+// to represent a BytePlane held in a byte array on the heap
+class HeapPlane implements BytePlane {
+  private static final VarHandle WORDS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  // rounded up to whole words, so the bytes past the plane are always 0
+  private final byte[] bytes;
+  private final int size;
+
+  HeapPlane(int size) {
+    this.bytes = new byte[(size + 7) & ~7];
+    this.size = size;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public byte get(int index) {
+    return this.bytes[index];
+  }
+
+  public void set(int index, byte value) {
+    this.bytes[index] = value;
+  }
+
+  public int words() {
+    return this.bytes.length >>> 3;
+  }
+
+  public long word(int k) {
+    return (long) WORDS.get(this.bytes, k << 3);
+  }
+
+  public void fill(byte value) {
+    Arrays.fill(this.bytes, 0, this.size, value);
+  }
+}
+
+// to represent a BytePlane held outside the heap in a direct buffer, or in a
+// buffer mapped from a file, so the heap holds only this small object however
+// big the plane is and the garbage collector never scans or copies its bytes
+// whole words are read and written through a VarHandle viewing the buffer as
+// longs
+class OffHeapPlane implements BytePlane {
+  private static final VarHandle WORDS =
+      MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  private final ByteBuffer buffer;
+  private final int size;
+
+  // throws an IllegalArgumentException if the buffer is on the heap or does not
+  // hold the given number of bytes rounded up to whole words
+  OffHeapPlane(ByteBuffer buffer, int size) {
+    if (!buffer.isDirect()) {
+      throw new IllegalArgumentException("an off-heap plane needs a direct buffer");
+    }
+    if (size < 0 || buffer.capacity() != capacity(size)) {
+      throw new IllegalArgumentException("the buffer must hold " + size
+          + " bytes rounded up to whole words");
+    }
+    this.buffer = buffer;
+    this.size = size;
+  }
+
+  // returns an off-heap plane of the given number of bytes, all 0
+  static OffHeapPlane allocate(int size) {
+    return new OffHeapPlane(ByteBuffer.allocateDirect(capacity(size)), size);
+  }
+
+  // returns an off-heap plane of the given number of bytes mapped from the given
+  // file, which keeps the bytes after the plane is gone; a new file starts with
+  // every byte 0, and an existing one with the bytes it was left with
+  // throws an IOException if the file cannot be opened or mapped
+  static OffHeapPlane map(Path file, int size) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // the mapping stays valid after the channel is closed
+      return new OffHeapPlane(channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity(size)),
+          size);
+    }
+  }
+
+  // returns the number of bytes a plane of the given size takes up, rounded up to
+  // whole words
+  static int capacity(int size) {
+    return (size + 7) & ~7;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public byte get(int index) {
+    return this.buffer.get(index);
+  }
+
+  public void set(int index, byte value) {
+    this.buffer.put(index, value);
+  }
+
+  public int words() {
+    return this.buffer.capacity() >>> 3;
+  }
+
+  public long word(int k) {
+    return (long) WORDS.get(this.buffer, k << 3);
+  }
+
+  // fills whole words through the VarHandle and the last few bytes one by one
+  public void fill(byte value) {
+    long pattern = (value & 0xFFL) * 0x0101010101010101L;
+    int words = this.size >>> 3;
+    for (int k = 0; k < words; k += 1) {
+      WORDS.set(this.buffer, k << 3, pattern);
+    }
+    for (int index = words << 3; index < this.size; index += 1) {
+      this.buffer.put(index, value);
+    }
+  }
+}
+
+// to represent a maze of width x height x depth cells stacked in levels, stored
+// as a flat volume of wall bits, three per cell: east, south and up
+// cells are int ids ordered by level, then row, then column; the walls facing
+// west, north and down are the east, south and up walls of the neighbor
+// the wall bits live in a BytePlane, which may be off the heap; generating and
+// solving a volume still take heap scratch in proportion to its cells
+class MazeVolume implements CellGraph {
+  static final byte EAST = 1;
+  static final byte SOUTH = 2;
+  static final byte UP = 4;
+  static final byte ALL_WALLS = EAST | SOUTH | UP;
+
+  private final int width;
+  private final int height;
+  private final int depth;
+  private final BytePlane walls;
+  // the bits of ALL_WALLS in every byte of a word
+  private static final long WALL_BITS = 0x0707070707070707L;
+
+  MazeVolume(int width, int height, int depth) {
+    this(width, height, depth, new HeapPlane(width * height * depth));
+    this.walls.fill(ALL_WALLS);
+  }
+
+  // keeps the walls the given plane already holds, so a volume over a plane
+  // mapped from a file comes back with the maze it was left with
+  // throws an IllegalArgumentException if the plane does not hold one byte per
+  // cell
+  MazeVolume(int width, int height, int depth, BytePlane walls) {
+    if (walls.size() != width * height * depth) {
+      throw new IllegalArgumentException("the wall plane must hold one byte per cell");
+    }
+    this.width = width;
+    this.height = height;
+    this.depth = depth;
+    this.walls = walls;
+  }
+
+  // returns the width of each level
+  int getWidth() {
+    return this.width;
+  }
+
+  // returns the height of each level
+  int getHeight() {
+    return this.height;
+  }
+
+  // returns the number of levels
+  int getDepth() {
+    return this.depth;
+  }
+
+  // returns the id of the cell at the given level, row and column
+  int cell(int level, int row, int col) {
+    return (level * this.height + row) * this.width + col;
+  }
+
+  // returns the level of the given cell
+  int levelOf(int cell) {
+    return cell / (this.width * this.height);
+  }
+
+  // returns the row of the given cell
+  int rowOf(int cell) {
+    return cell / this.width % this.height;
+  }
+
+  // returns the column of the given cell
+  int colOf(int cell) {
+    return cell % this.width;
+  }
+
+  // returns whether the given wall of the given cell is standing
+  boolean hasWall(int cell, byte wall) {
+    return (this.walls.get(cell) & wall) != 0;
+  }
+
+  // returns the number of walls knocked down, counting eight cells per word of
+  // the plane; the zero bytes past its end would count as three passages each
+  int passageCount() {
+    int words = this.walls.words();
+    int count = 0;
+    for (int k = 0; k < words; k += 1) {
+      count += Long.bitCount(WALL_BITS & ~this.walls.word(k));
+    }
+    return count - 3 * (8 * words - this.walls.size());
+  }
+
+  // generates a perfect maze in this volume with Kruskal's algorithm, giving
+  // every inner wall a random weight and knocking walls down from the lightest
+  // the walls are sorted by a counting sort over their small integer weights,
+  // and trees are tracked by the given IndexUnionFind
+  // EFFECT: raises every wall, then knocks down the walls of a spanning tree
+  void generate(Random rand, IndexUnionFind unionFind) {
+    int cells = this.walls.size();
+    this.walls.fill(ALL_WALLS);
+
+    // wall ids are cell * 3 + direction, with -1 weights for walls on the border
+    byte[] weights = new byte[cells * 3];
+    int[] counts = new int[101];
+    for (int cell = 0; cell < cells; cell += 1) {
+      int base = cell * 3;
+      weights[base] = this.colOf(cell) < this.width - 1 ? (byte) rand.nextInt(100) : -1;
+      weights[base + 1] = this.rowOf(cell) < this.height - 1 ? (byte) rand.nextInt(100) : -1;
+      weights[base + 2] = this.levelOf(cell) < this.depth - 1 ? (byte) rand.nextInt(100) : -1;
+      for (int d = 0; d < 3; d += 1) {
+        counts[weights[base + d] + 1] += 1;
+      }
+    }
+
+    int[] starts = new int[101];
+    for (int w = 1; w < 101; w += 1) {
+      starts[w] = starts[w - 1] + counts[w - 1];
+    }
+    int[] sorted = new int[cells * 3 - counts[0]];
+    for (int id = 0; id < weights.length; id += 1) {
+      if (weights[id] >= 0) {
+        sorted[starts[weights[id] + 1] - counts[0]] = id;
+        starts[weights[id] + 1] += 1;
+      }
+    }
+
+    unionFind.reset(cells);
+    for (int i = 0; i < sorted.length && unionFind.treeCount() > 1; i += 1) {
+      int id = sorted[i];
+      int cell = id / 3;
+      int direction = id % 3;
+      int other = this.neighbor(cell, direction);
+      if (unionFind.find(cell) != unionFind.find(other)) {
+        unionFind.union(cell, other);
+        this.walls.set(cell, (byte) (this.walls.get(cell) & ~(1 << direction)));
+      }
+    }
+  }
+
+  // returns the cell past the given cell's wall in the given direction: 0 for
+  // east, 1 for south and 2 for up
+  int neighbor(int cell, int direction) {
+    if (direction == 0) {
+      return cell + 1;
+    }
+    else if (direction == 1) {
+      return cell + this.width;
+    }
+    else {
+      return cell + this.width * this.height;
+    }
+  }
+
+  public int cellCount() {
+    return this.walls.size();
+  }
+
+  // cells open to at most the six cells around them
+  public int maxDegree() {
+    return 6;
+  }
+
+  // every passage of a volume weighs 1
+  public int maxWeight() {
+    return 1;
+  }
+
+  // every move changes the level, row or column by one
+  public int estimate(int cell, int target) {
+    return Math.abs(this.levelOf(target) - this.levelOf(cell))
+        + Math.abs(this.rowOf(target) - this.rowOf(cell))
+        + Math.abs(this.colOf(target) - this.colOf(cell));
+  }
+
+  // writes the open neighbors of the given cell into the first given array, in
+  // the order north, west, south, east, down, up, and returns how many there
+  // are; every passage of a volume weighs 1
+  // EFFECT: modifies the given arrays
+  public int openNeighbors(int cell, int[] out, int[] weights) {
+    int count = 0;
+    int level = this.width * this.height;
+
+    if (this.rowOf(cell) > 0 && !this.hasWall(cell - this.width, SOUTH)) {
+      weights[count] = 1;
+      out[count] = cell - this.width;
+      count += 1;
+    }
+    if (this.colOf(cell) > 0 && !this.hasWall(cell - 1, EAST)) {
+      weights[count] = 1;
+      out[count] = cell - 1;
+      count += 1;
+    }
+    if (!this.hasWall(cell, SOUTH)) {
+      weights[count] = 1;
+      out[count] = cell + this.width;
+      count += 1;
+    }
+    if (!this.hasWall(cell, EAST)) {
+      weights[count] = 1;
+      out[count] = cell + 1;
+      count += 1;
+    }
+    if (cell >= level && !this.hasWall(cell - level, UP)) {
+      weights[count] = 1;
+      out[count] = cell - level;
+      count += 1;
+    }
+    if (!this.hasWall(cell, UP)) {
+      weights[count] = 1;
+      out[count] = cell + level;
+      count += 1;
+    }
+    return count;
+  }
+
+  // renders the given level of this volume with cells of the given size in the
+  // palette colors of the given plane, which holds a color for every cell of the
+  // volume; stairs up are marked in the top left of a cell and stairs down in its
+  // bottom right
+  WorldImage renderLevel(int level, int cellDim, BytePlane cellColors) {
+    ComputedPixelImage image = new ComputedPixelImage(this.width * cellDim + 1,
+        this.height * cellDim + 1);
+    int mark = Math.max(1, cellDim / 4);
+
+    for (int row = 0; row < this.height; row += 1) {
+      for (int col = 0; col < this.width; col += 1) {
+        int cell = this.cell(level, row, col);
+        int x = col * cellDim;
+        int y = row * cellDim;
+        image.setPixels(x, y, cellDim, cellDim, Palette.color(cellColors.get(cell)));
+
+        if (!this.hasWall(cell, UP)) {
+          image.setPixels(x + 1, y + 1, mark, mark, Color.ORANGE);
+        }
+        if (level > 0 && !this.hasWall(this.cell(level - 1, row, col), UP)) {
+          image.setPixels(x + cellDim - mark - 1, y + cellDim - mark - 1, mark, mark,
+              Color.CYAN);
+        }
+      }
+    }
+
+    for (int row = 0; row < this.height; row += 1) {
+      for (int col = 0; col < this.width; col += 1) {
+        int cell = this.cell(level, row, col);
+        int x = col * cellDim;
+        int y = row * cellDim;
+
+        if (row == 0) {
+          image.setPixels(x, y, cellDim + 1, 1, Color.GRAY);
+        }
+        if (col == 0) {
+          image.setPixels(x, y, 1, cellDim + 1, Color.GRAY);
+        }
+        if (this.hasWall(cell, SOUTH)) {
+          image.setPixels(x, y + cellDim, cellDim + 1, 1, Color.GRAY);
+        }
+        if (this.hasWall(cell, EAST)) {
+          image.setPixels(x + cellDim, y, 1, cellDim + 1, Color.GRAY);
+        }
+      }
+    }
+
+    return image;
+  }
+}
+
+// to represent a World showing one level of a MazeVolume at a time
+class MazeVolumeWorld extends World {
+  private final MazeVolume volume;
+  private final Random rand;
+  private final IndexUnionFind unionFind;
+  private final CellSearch search;
+  // the palette index of every cell of the volume
+  private final BytePlane cellColors;
+  private final int cellDim;
+  private int level;
+  private String title;
+
+  MazeVolumeWorld(int width, int height, int depth, Random rand) {
+    this(new MazeVolume(width, height, depth), new HeapPlane(width * height * depth), rand);
+  }
+
+  // shows the given volume in the given colors, which may be kept off the heap
+  // along with the volume's walls
+  // throws an IllegalArgumentException if the colors do not hold one byte per
+  // cell of the volume
+  MazeVolumeWorld(MazeVolume volume, BytePlane cellColors, Random rand) {
+    if (cellColors.size() != volume.cellCount()) {
+      throw new IllegalArgumentException("the color plane must hold one byte per cell");
+    }
+    this.volume = volume;
+    this.rand = rand;
+    this.unionFind = new IndexUnionFind();
+    this.search = new CellSearch();
+    this.cellColors = cellColors;
+    this.cellDim = Math.max(4, 600 / Math.max(volume.getWidth(), volume.getHeight()));
+    this.regenerate();
+  }
+
+  // generates a new maze in the volume
+  // EFFECT: regenerates the volume, resets the colors and shows the first level
+  void regenerate() {
+    this.volume.generate(this.rand, this.unionFind);
+    this.cellColors.fill(Palette.UNVISITED);
+    this.cellColors.set(0, Palette.START);
+    this.cellColors.set(this.cellColors.size() - 1, Palette.END);
+    this.level = 0;
+    this.title = "Maze Volume";
+  }
+
+  // solves the maze from the first cell of the first level to the last cell of
+  // the last level
+  // EFFECT: colors the visited cells and the path found
+  void solve(boolean bfs) {
+    this.cellColors.fill(Palette.UNVISITED);
+    this.search.run(this.volume, 0, this.cellColors.size() - 1, bfs);
+
+    for (int i = 0; i < this.search.expanded(); i += 1) {
+      this.cellColors.set(this.search.expandedCell(i), Palette.VISITED);
+    }
+    for (int i = 0; i < this.search.pathLength(); i += 1) {
+      this.cellColors.set(this.search.pathCell(i), Palette.PATH);
+    }
+    this.cellColors.set(0, Palette.START);
+    this.cellColors.set(this.cellColors.size() - 1, Palette.END);
+    this.title = (bfs ? "Breadth-First Search" : "Depth-First Search") + ": "
+        + this.search.pathLength() + " cells";
+  }
+
+  // returns the level shown
+  int getLevel() {
+    return this.level;
+  }
+
+  // handles key input: up and down switch levels, b and d solve, r regenerates
+  // EFFECT: changes the level shown, solves or regenerates the maze
+  public void onKeyEvent(String key) {
+    if (key.equals("up") && this.level < this.volume.getDepth() - 1) {
+      this.level += 1;
+    }
+
+    if (key.equals("down") && this.level > 0) {
+      this.level -= 1;
+    }
+
+    if (key.equals("b")) {
+      this.solve(true);
+    }
+
+    if (key.equals("d")) {
+      this.solve(false);
+    }
+
+    if (key.equals("r")) {
+      this.regenerate();
+    }
+  }
+
+  public WorldScene makeScene() {
+    int sceneWidth = this.volume.getWidth() * this.cellDim + 40;
+    int sceneHeight = this.volume.getHeight() * this.cellDim + 80;
+    WorldScene scene = new WorldScene(sceneWidth, sceneHeight);
+
+    scene.placeImageXY(new TextImage(this.title, Color.black), sceneWidth / 2, 15);
+    scene.placeImageXY(
+        new TextImage("Level " + (this.level + 1) + " of " + this.volume.getDepth(),
+            Color.black),
+        sceneWidth / 2, sceneHeight - 20);
+    scene.placeImageXY(this.volume.renderLevel(this.level, this.cellDim, this.cellColors),
+        sceneWidth / 2, sceneHeight / 2);
+    return scene;
+  }
+}
+
+// to represent a single flat JSON object read from one line of a request stream
+// values are strings, numbers or booleans; strings may not contain escaped quotes
+class JsonLine {
+  private final HashMap<String, String> fields;
+
+  JsonLine(HashMap<String, String> fields) {
+    this.fields = fields;
+  }
+
+  // parses the given line as a flat JSON object
+  // throws an IllegalArgumentException if the line is not a flat JSON object
+  static JsonLine parse(String line) {
+    HashMap<String, String> fields = new HashMap<String, String>();
+    String s = line.trim();
+
+    if (!s.startsWith("{") || !s.endsWith("}")) {
+      throw new IllegalArgumentException("expected a JSON object");
+    }
+
+    int end = s.length() - 1;
+    int i = JsonLine.skipSpace(s, 1, end);
+
+    while (i < end) {
+      if (s.charAt(i) != '"') {
+        throw new IllegalArgumentException("expected a key at " + i);
+      }
+
+      int keyEnd = s.indexOf('"', i + 1);
+      if (keyEnd < 0 || keyEnd >= end) {
+        throw new IllegalArgumentException("unterminated key at " + i);
+      }
+      String key = s.substring(i + 1, keyEnd);
+
+      i = JsonLine.skipSpace(s, keyEnd + 1, end);
+      if (i >= end || s.charAt(i) != ':') {
+        throw new IllegalArgumentException("expected ':' after " + key);
+      }
+      i = JsonLine.skipSpace(s, i + 1, end);
+
+      String value;
+      if (i < end && s.charAt(i) == '"') {
+        int valueEnd = s.indexOf('"', i + 1);
+        if (valueEnd < 0 || valueEnd >= end) {
+          throw new IllegalArgumentException("unterminated value for " + key);
+        }
+        value = s.substring(i + 1, valueEnd);
+        i = valueEnd + 1;
+      }
+      else {
+        int valueEnd = i;
+        while (valueEnd < end && s.charAt(valueEnd) != ',') {
+          valueEnd += 1;
+        }
+        value = s.substring(i, valueEnd).trim();
+        i = valueEnd;
+      }
+
+      fields.put(key, value);
+
+      i = JsonLine.skipSpace(s, i, end);
+      if (i < end) {
+        if (s.charAt(i) != ',') {
+          throw new IllegalArgumentException("expected ',' after " + key);
+        }
+        i = JsonLine.skipSpace(s, i + 1, end);
+      }
+    }
+
+    return new JsonLine(fields);
+  }
+
+  // returns the index of the first non whitespace character of s at or after i
+  static int skipSpace(String s, int i, int end) {
+    while (i < end && Character.isWhitespace(s.charAt(i))) {
+      i += 1;
+    }
+    return i;
+  }
+
+  // returns whether this object has a value for the given key
+  boolean has(String key) {
+    return this.fields.containsKey(key);
+  }
+
+  // returns the value of the given key, or the given default if it is absent
+  String getString(String key, String otherwise) {
+    String value = this.fields.get(key);
+    if (value == null) {
+      return otherwise;
+    }
+    else {
+      return value;
+    }
+  }
+
+  // returns the value of the given key as an int, or the given default if it is
+  // absent
+  // throws an IllegalArgumentException if the value is not a number or does not
+  // fit in an int
+  int getInt(String key, int otherwise) {
+    long value = this.getLong(key, otherwise);
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("number out of range for " + key);
+    }
+    return (int) value;
+  }
+
+  // returns the value of the given key as a long, or the given default if it is
+  // absent
+  long getLong(String key, long otherwise) {
+    String value = this.fields.get(key);
+    if (value == null) {
+      return otherwise;
+    }
+
+    try {
+      return Long.parseLong(value);
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("expected a number for " + key);
+    }
+  }
+
+  // returns the value of the given key as a double, or the given default if it
+  // is absent
+  double getDouble(String key, double otherwise) {
+    String value = this.fields.get(key);
+    if (value == null) {
+      return otherwise;
+    }
+
+    try {
+      return Double.parseDouble(value);
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("expected a number for " + key);
+    }
+  }
+
+  // returns the value of the given key as a boolean, or the given default if it
+  // is absent
+  // throws an IllegalArgumentException if the value is neither true nor false
+  boolean getBoolean(String key, boolean otherwise) {
+    String value = this.fields.get(key);
+    if (value == null) {
+      return otherwise;
+    }
+    else if (value.equals("true") || value.equals("false")) {
+      return value.equals("true");
+    }
+    else {
+      throw new IllegalArgumentException("expected true or false for " + key);
+    }
+  }
+}
+
+// to represent one generate or solve request handled by the MazeServer
+class MazeJob {
+  // largest width or height a single job may ask for
+  static final int MAX_DIMENSION = 64;
+
+  private final String id;
+  private final String op;
+  private final int width;
+  private final int height;
+  private final long seed;
+  // bfs, dfs, dijkstra or astar
+  private final String algorithm;
+  // the shape of the maze, as a MazeMask spec
+  private final String mask;
+  private final Topology topology;
+  private final double braid;
+  // the share of cells covered in mud or water
+  private final double terrain;
+
+  MazeJob(String id, String op, int width, int height, long seed, boolean bfs) {
+    this(id, op, width, height, seed, bfs, "full");
+  }
+
+  MazeJob(String id, String op, int width, int height, long seed, boolean bfs, String mask) {
+    this(id, op, width, height, seed, bfs, mask, Topology.SQUARE);
+  }
+
+  MazeJob(String id, String op, int width, int height, long seed, boolean bfs, String mask,
+      Topology topology) {
+    this(id, op, width, height, seed, bfs ? "bfs" : "dfs", mask, topology, 0);
+  }
+
+  MazeJob(String id, String op, int width, int height, long seed, String algorithm,
+      String mask, Topology topology, double braid) {
+    this(id, op, width, height, seed, algorithm, mask, topology, braid, 0);
+  }
+
+  MazeJob(String id, String op, int width, int height, long seed, String algorithm,
+      String mask, Topology topology, double braid, double terrain) {
+    this.id = id;
+    this.op = op;
+    this.width = width;
+    this.height = height;
+    this.seed = seed;
+    this.algorithm = algorithm;
+    this.mask = mask;
+    this.topology = topology;
+    this.braid = braid;
+    this.terrain = terrain;
+  }
+
+  // reads a job from the given JSON object; a client may only shape its maze
+  // with a mask drawn in memory, never one read from a file on this host
+  // throws an IllegalArgumentException if the job is not valid
+  static MazeJob fromJson(JsonLine json, Random seeds) {
+    String op = json.getString("op", "solve");
+    if (!op.equals("generate") && !op.equals("solve")) {
+      throw new IllegalArgumentException("unknown op " + op);
+    }
+
+    int width = json.getInt("width", 10);
+    int height = json.getInt("height", 10);
+    if (width < 2 || height < 2 || width > MAX_DIMENSION || height > MAX_DIMENSION) {
+      throw new IllegalArgumentException(
+          "width and height must be between 2 and " + MAX_DIMENSION);
+    }
+
+    long seed;
+    if (json.has("seed")) {
+      seed = json.getLong("seed", 0);
+    }
+    else {
+      seed = seeds.nextLong();
+    }
+
+    String algorithm = json.getString("algorithm", "bfs");
+    if (!algorithm.equals("bfs") && !algorithm.equals("dfs") && !algorithm.equals("dijkstra")
+        && !algorithm.equals("astar")) {
+      throw new IllegalArgumentException("unknown algorithm " + algorithm);
+    }
+
+    double braid = json.getDouble("braid", 0);
+    if (braid < 0 || braid > 1) {
+      throw new IllegalArgumentException("braid must be between 0 and 1");
+    }
+
+    double terrain = json.getDouble("terrain", 0);
+    if (terrain < 0 || terrain > 1) {
+      throw new IllegalArgumentException("terrain must be between 0 and 1");
+    }
+
+    String mask = json.getString("mask", "full");
+    if (!mask.equals("full") && !mask.equals("circle") && !mask.startsWith("text:")) {
+      throw new IllegalArgumentException("mask must be full, circle or text:WORDS");
+    }
+
+    return new MazeJob(json.getString("id", ""), op, width, height, seed, algorithm, mask,
+        Topology.named(json.getString("topology", "square")), braid, terrain);
+  }
+
+  // returns the id the client gave this job
+  String id() {
+    return this.id;
+  }
+
+  // generates this job's maze, solves it if asked to, and returns the result as
+  // a JSON line
+  String run() {
+    long start = System.nanoTime();
+
+    MazeMask shape;
+    try {
+      shape = MazeMask.fromSpec(this.mask, this.width, this.height);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    Maze maze = new Maze(this.width, this.height, new Random(this.seed), shape, this.topology);
+    if (this.braid > 0) {
+      maze.setBraid(this.braid);
+    }
+    if (this.terrain > 0) {
+      maze.setTerrain(TerrainMap.random(this.width, this.height, new Random(this.seed),
+          this.terrain));
+    }
+    boolean weighted = this.algorithm.equals("dijkstra") || this.algorithm.equals("astar");
+
+    if (this.op.equals("solve") && weighted) {
+      maze.solveShortest(this.algorithm.equals("astar"));
+    }
+    else if (this.op.equals("solve")) {
+      maze.solve(this.algorithm.equals("bfs"));
+    }
+    else {
+      maze.finishConstruction();
+    }
+
+    long micros = (System.nanoTime() - start) / 1000;
+
+    StringBuilder res = new StringBuilder();
+    res.append("{\"id\":\"").append(this.id).append("\",\"op\":\"").append(this.op)
+        .append("\",\"ok\":true,\"width\":").append(this.width).append(",\"height\":")
+        .append(this.height).append(",\"seed\":").append(this.seed).append(",\"passages\":")
+        .append(maze.passageCount());
+
+    if (this.op.equals("solve")) {
+      res.append(",\"algorithm\":\"").append(this.algorithm)
+          .append("\",\"pathLength\":").append(maze.pathLength()).append(",\"visited\":")
+          .append(maze.visitedCount());
+      if (weighted) {
+        res.append(",\"cost\":").append(maze.pathCost());
+      }
+    }
+
+    return res.append(",\"micros\":").append(micros).append("}").toString();
+  }
+
+  // returns a JSON line reporting the given failure for the job with the given id
+  static String failure(String id, String message) {
+    return "{\"id\":\"" + id + "\",\"ok\":false,\"error\":\"" + message.replace('"', '\'')
+        + "\"}";
+  }
+}
+
+// to represent a lock-free histogram of non-negative values with logarithmic
+// buckets, accurate to within 1/16 of the recorded value
+class LatencyHistogram {
+  // every power of two is split into this many linear sub-buckets
+  private static final int SUB_BUCKETS = 16;
+
+  private final AtomicLongArray counts;
+  private final AtomicLong count;
+  private final AtomicLong max;
+
+  LatencyHistogram() {
+    this.counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    this.count = new AtomicLong();
+    this.max = new AtomicLong();
+  }
+
+  // records the given value
+  // EFFECT: increments the bucket holding the given value
+  void record(long value) {
+    long v = Math.max(0, value);
+    this.counts.incrementAndGet(LatencyHistogram.bucketOf(v));
+    this.count.incrementAndGet();
+
+    long seen = this.max.get();
+    while (v > seen && !this.max.compareAndSet(seen, v)) {
+      seen = this.max.get();
+    }
+  }
+
+  // returns the bucket the given non-negative value falls into
+  static int bucketOf(long v) {
+    if (v < SUB_BUCKETS) {
+      return (int) v;
+    }
+
+    int exp = 63 - Long.numberOfLeadingZeros(v);
+    int sub = (int) (v >>> (exp - 4)) & (SUB_BUCKETS - 1);
+    return (exp - 3) * SUB_BUCKETS + sub;
+  }
+
+  // returns the smallest value that falls into the given bucket
+  static long lowerBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+
+    int exp = bucket / SUB_BUCKETS + 3;
+    return ((long) SUB_BUCKETS + bucket % SUB_BUCKETS) << (exp - 4);
+  }
+
+  // returns the number of values recorded
+  long count() {
+    return this.count.get();
+  }
+
+  // returns the largest value recorded
+  long max() {
+    return this.max.get();
+  }
+
+  // returns the value below which the given fraction of recorded values fall
+  long percentile(double fraction) {
+    long total = this.count.get();
+    if (total == 0) {
+      return 0;
+    }
+
+    long target = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int i = 0; i < this.counts.length(); i += 1) {
+      seen += this.counts.get(i);
+      if (seen >= target) {
+        return Math.min(LatencyHistogram.lowerBound(i), this.max.get());
+      }
+    }
+
+    return this.max.get();
+  }
+}
+
+// to represent the queue depth, latency and throughput of a MazeServer
+class ServerMetrics {
+  private final LatencyHistogram latencyMicros;
+  private final AtomicInteger queued;
+  private final AtomicInteger maxQueued;
+  private final AtomicInteger running;
+  private final AtomicLong completed;
+  private final AtomicLong failed;
+  private final long startNanos;
+
+  ServerMetrics() {
+    this.latencyMicros = new LatencyHistogram();
+    this.queued = new AtomicInteger();
+    this.maxQueued = new AtomicInteger();
+    this.running = new AtomicInteger();
+    this.completed = new AtomicLong();
+    this.failed = new AtomicLong();
+    this.startNanos = System.nanoTime();
+  }
+
+  // EFFECT: counts a job as waiting in the queue
+  void enqueued() {
+    int depth = this.queued.incrementAndGet();
+    int seen = this.maxQueued.get();
+    while (depth > seen && !this.maxQueued.compareAndSet(seen, depth)) {
+      seen = this.maxQueued.get();
+    }
+  }
+
+  // EFFECT: moves a job from the queue to running
+  void started() {
+    this.queued.decrementAndGet();
+    this.running.incrementAndGet();
+  }
+
+  // EFFECT: records a finished job that was accepted at the given time
+  void finished(long acceptedNanos, boolean ok) {
+    this.running.decrementAndGet();
+    this.latencyMicros.record((System.nanoTime() - acceptedNanos) / 1000);
+    this.completed.incrementAndGet();
+    if (!ok) {
+      this.failed.incrementAndGet();
+    }
+  }
+
+  // returns the number of jobs waiting for a worker
+  int queueDepth() {
+    return this.queued.get();
+  }
+
+  // returns the number of jobs finished so far
+  long completed() {
+    return this.completed.get();
+  }
+
+  // returns the latency below which the given fraction of jobs finished, in
+  // microseconds
+  long latencyPercentile(double fraction) {
+    return this.latencyMicros.percentile(fraction);
+  }
+
+  // returns the number of jobs finished per second since these metrics were
+  // created
+  double throughput() {
+    double seconds = (System.nanoTime() - this.startNanos) / 1e9;
+    return this.completed.get() / Math.max(seconds, 1e-9);
+  }
+
+  // returns these metrics as a JSON line
+  String snapshot() {
+    return "{\"op\":\"metrics\",\"queueDepth\":" + this.queued.get() + ",\"maxQueueDepth\":"
+        + this.maxQueued.get() + ",\"running\":" + this.running.get() + ",\"completed\":"
+        + this.completed.get() + ",\"failed\":" + this.failed.get() + ",\"throughput\":"
+        + String.format("%.1f", this.throughput()) + ",\"p50Micros\":"
+        + this.latencyMicros.percentile(0.5) + ",\"p99Micros\":"
+        + this.latencyMicros.percentile(0.99) + ",\"maxMicros\":" + this.latencyMicros.max()
+        + "}";
+  }
+}
+
+// to represent a named value that can be read as a set of long attributes,
+// kept by a MetricsRegistry
+interface Metric {
+  // returns the name of this metric
+  String name();
+
+  // returns the kind of this metric, such as counter or timer
+  String kind();
+
+  // returns the names of the attributes of this metric
+  String[] attributes();
+
+  // returns the current value of the given attribute of this metric
+  long attribute(String attribute);
+
+  // returns this metric as one line of text
+  String describe();
+}
+
+// to represent a count that only goes up
+class MetricCounter implements Metric {
+  private final String name;
+  private final MetricsRegistry registry;
+  private final LongAdder count;
+
+  MetricCounter(String name, MetricsRegistry registry) {
+    this.name = name;
+    this.registry = registry;
+    this.count = new LongAdder();
+  }
+
+  // EFFECT: adds the given amount to this counter if its registry is enabled
+  void add(long amount) {
+    if (this.registry.isEnabled()) {
+      this.count.add(amount);
+    }
+  }
+
+  // returns the current count
+  long get() {
+    return this.count.sum();
+  }
+
+  public String name() {
+    return this.name;
+  }
+
+  public String kind() {
+    return "counter";
+  }
+
+  public String[] attributes() {
+    return new String[] { "Count" };
+  }
+
+  public long attribute(String attribute) {
+    return this.get();
+  }
+
+  public String describe() {
+    return "counter " + this.name + " " + this.get();
+  }
+}
+
+// to represent the distribution of a recorded value
+class MetricHistogram implements Metric {
+  private final String name;
+  private final MetricsRegistry registry;
+  private final LatencyHistogram values;
+
+  MetricHistogram(String name, MetricsRegistry registry) {
+    this.name = name;
+    this.registry = registry;
+    this.values = new LatencyHistogram();
+  }
+
+  // EFFECT: records the given value if this histogram's registry is enabled
+  void record(long value) {
+    if (this.registry.isEnabled()) {
+      this.values.record(value);
+    }
+  }
+
+  // returns the recorded values
+  LatencyHistogram values() {
+    return this.values;
+  }
+
+  public String name() {
+    return this.name;
+  }
+
+  public String kind() {
+    return "histogram";
+  }
+
+  public String[] attributes() {
+    return new String[] { "Count", "P50", "P99", "Max" };
+  }
+
+  public long attribute(String attribute) {
+    if (attribute.equals("Count")) {
+      return this.values.count();
+    }
+    else if (attribute.equals("P50")) {
+      return this.values.percentile(0.5);
+    }
+    else if (attribute.equals("P99")) {
+      return this.values.percentile(0.99);
+    }
+    else {
+      return this.values.max();
+    }
+  }
+
+  public String describe() {
+    return "histogram " + this.name + " count=" + this.values.count() + " p50="
+        + this.values.percentile(0.5) + " p99=" + this.values.percentile(0.99) + " max="
+        + this.values.max();
+  }
+}
+
+// to represent the distribution of the durations of an operation, in
+// nanoseconds
+class MetricTimer implements Metric {
+  // returned by start when the registry is disabled, so stop records nothing
+  static final long NOT_STARTED = Long.MIN_VALUE;
+
+  private final String name;
+  private final MetricsRegistry registry;
+  private final LatencyHistogram nanos;
+  private final LongAdder totalNanos;
+
+  MetricTimer(String name, MetricsRegistry registry) {
+    this.name = name;
+    this.registry = registry;
+    this.nanos = new LatencyHistogram();
+    this.totalNanos = new LongAdder();
+  }
+
+  // returns the time an operation starts at, to be passed to stop
+  long start() {
+    if (this.registry.isEnabled()) {
+      return System.nanoTime();
+    }
+    else {
+      return NOT_STARTED;
+    }
+  }
+
+  // EFFECT: records the duration of an operation that started at the given time
+  void stop(long start) {
+    if (start != NOT_STARTED) {
+      long elapsed = System.nanoTime() - start;
+      this.nanos.record(elapsed);
+      this.totalNanos.add(elapsed);
+    }
+  }
+
+  // returns the recorded durations
+  LatencyHistogram nanos() {
+    return this.nanos;
+  }
+
+  public String name() {
+    return this.name;
+  }
+
+  public String kind() {
+    return "timer";
+  }
+
+  public String[] attributes() {
+    return new String[] { "Count", "P50Micros", "P99Micros", "MaxMicros", "TotalMillis" };
+  }
+
+  public long attribute(String attribute) {
+    if (attribute.equals("Count")) {
+      return this.nanos.count();
+    }
+    else if (attribute.equals("P50Micros")) {
+      return this.nanos.percentile(0.5) / 1000;
+    }
+    else if (attribute.equals("P99Micros")) {
+      return this.nanos.percentile(0.99) / 1000;
+    }
+    else if (attribute.equals("MaxMicros")) {
+      return this.nanos.max() / 1000;
+    }
+    else {
+      return this.totalNanos.sum() / 1000000;
+    }
+  }
+
+  public String describe() {
+    return "timer " + this.name + " count=" + this.nanos.count() + " p50="
+        + this.attribute("P50Micros") + "us p99=" + this.attribute("P99Micros") + "us max="
+        + this.attribute("MaxMicros") + "us total=" + this.attribute("TotalMillis") + "ms";
+  }
+}
+
+// to represent a Metric exposed as a JMX MBean with one read-only long
+// attribute per metric attribute
+class MetricMBean implements DynamicMBean {
+  private final Metric metric;
+
+  MetricMBean(Metric metric) {
+    this.metric = metric;
+  }
+
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    if (!Arrays.asList(this.metric.attributes()).contains(attribute)) {
+      throw new AttributeNotFoundException(attribute);
+    }
+    return this.metric.attribute(attribute);
+  }
+
+  public AttributeList getAttributes(String[] attributes) {
+    AttributeList res = new AttributeList();
+    for (String attribute : attributes) {
+      if (Arrays.asList(this.metric.attributes()).contains(attribute)) {
+        res.add(new Attribute(attribute, this.metric.attribute(attribute)));
+      }
+    }
+    return res;
+  }
+
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+  }
+
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  public Object invoke(String action, Object[] params, String[] signature)
+      throws ReflectionException {
+    throw new ReflectionException(new NoSuchMethodException(action));
+  }
+
+  public MBeanInfo getMBeanInfo() {
+    String[] names = this.metric.attributes();
+    MBeanAttributeInfo[] infos = new MBeanAttributeInfo[names.length];
+    for (int i = 0; i < names.length; i += 1) {
+      infos[i] = new MBeanAttributeInfo(names[i], "long", names[i], true, false, false);
+    }
+    return new MBeanInfo(MetricMBean.class.getName(), this.metric.kind() + " " + this.metric.name(),
+        infos, null, null, null);
+  }
+}
+
+// to represent a set of named metrics that record only while enabled, so that
+// disabled metrics cost a single field read
+class MetricsRegistry {
+  private final ArrayList<Metric> metrics;
+  private volatile boolean enabled;
+
+  MetricsRegistry() {
+    this.metrics = new ArrayList<Metric>();
+    this.enabled = false;
+  }
+
+  // returns whether this registry's metrics are recording
+  boolean isEnabled() {
+    return this.enabled;
+  }
+
+  // EFFECT: turns recording on or off for every metric in this registry
+  void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  // returns a new counter with the given name
+  // EFFECT: adds the counter to this registry
+  MetricCounter counter(String name) {
+    MetricCounter counter = new MetricCounter(name, this);
+    this.add(counter);
+    return counter;
+  }
+
+  // returns a new histogram with the given name
+  // EFFECT: adds the histogram to this registry
+  MetricHistogram histogram(String name) {
+    MetricHistogram histogram = new MetricHistogram(name, this);
+    this.add(histogram);
+    return histogram;
+  }
+
+  // returns a new timer with the given name
+  // EFFECT: adds the timer to this registry
+  MetricTimer timer(String name) {
+    MetricTimer timer = new MetricTimer(name, this);
+    this.add(timer);
+    return timer;
+  }
+
+  // EFFECT: adds the given metric to this registry
+  synchronized void add(Metric metric) {
+    this.metrics.add(metric);
+  }
+
+  // returns every metric in this registry as text, one metric per line
+  synchronized String dump() {
+    StringBuilder res = new StringBuilder();
+    for (Metric metric : this.metrics) {
+      res.append(metric.describe()).append('\n');
+    }
+    return res.toString();
+  }
+
+  // registers every metric in this registry with the given MBean server under
+  // the given domain, skipping metrics that are already registered
+  // EFFECT: adds one MBean per metric to the given server
+  synchronized void registerMBeans(MBeanServer server, String domain) throws JMException {
+    for (Metric metric : this.metrics) {
+      ObjectName name = new ObjectName(domain + ":type=" + metric.kind() + ",name="
+          + ObjectName.quote(metric.name()));
+      if (!server.isRegistered(name)) {
+        server.registerMBean(new MetricMBean(metric), name);
+      }
+    }
+  }
+
+  // returns an executor that prints a dump of this registry to the given stream
+  // every given number of seconds, until it is shut down
+  ScheduledExecutorService startDump(long periodSeconds, PrintStream out) {
+    ScheduledExecutorService dumper = Executors
+        .newSingleThreadScheduledExecutor(new DaemonThreadFactory("maze-metrics"));
+    dumper.scheduleAtFixedRate(new MetricsDump(this, out), periodSeconds, periodSeconds,
+        TimeUnit.SECONDS);
+    return dumper;
+  }
+}
+
+// to represent one periodic dump of a MetricsRegistry
+class MetricsDump implements Runnable {
+  private final MetricsRegistry registry;
+  private final PrintStream out;
+
+  MetricsDump(MetricsRegistry registry, PrintStream out) {
+    this.registry = registry;
+    this.out = out;
+  }
+
+  public void run() {
+    this.out.print(this.registry.dump());
+    this.out.flush();
+  }
+}
+
+// to represent the metrics recorded as mazes are generated, solved and drawn
+// nothing is recorded until REGISTRY is enabled
+class MazeMetrics {
+  static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+  static final MetricTimer GENERATE = REGISTRY.timer("generate.total");
+  static final MetricTimer INIT_NODES = REGISTRY.timer("generate.initNodes");
+  static final MetricTimer SORT = REGISTRY.timer("generate.sort");
+  static final MetricTimer KRUSKAL = REGISTRY.timer("generate.kruskal");
+  static final MetricTimer SEARCH = REGISTRY.timer("search.time");
+  static final MetricCounter EXPANDED = REGISTRY.counter("search.expanded");
+  static final MetricHistogram FRONTIER = REGISTRY.histogram("search.frontierMax");
+  static final MetricTimer RENDER = REGISTRY.timer("render.maze");
+  static final MetricTimer SCENE = REGISTRY.timer("render.scene");
+  static final MetricTimer TICK = REGISTRY.timer("tick");
+
+  // EFFECT: turns on recording, publishes every metric as an MBean on the
+  // platform MBean server, and, if the given period is positive, dumps them to
+  // the given stream every period seconds
+  static void enable(long dumpSeconds, PrintStream out) throws JMException {
+    REGISTRY.setEnabled(true);
+    REGISTRY.registerMBeans(ManagementFactory.getPlatformMBeanServer(), "maze");
+    if (dumpSeconds > 0) {
+      REGISTRY.startDump(dumpSeconds, out);
+    }
+  }
+}
+
+// to represent a JFR event for a maze generated by Kruskal's algorithm
+@Name("maze.MazeGenerated")
+@Label("Maze Generated")
+@Category("Maze")
+@Description("A maze was generated; the duration covers building, spanning and first solve")
+class MazeGeneratedEvent extends Event {
+  @Label("Width")
+  int width;
+
+  @Label("Height")
+  int height;
+
+  @Label("Bias")
+  String bias;
+
+  @Label("Algorithm")
+  String algorithm;
+
+  @Label("Passages")
+  int passages;
+}
+
+// to represent a JFR event for a search from one Node of a maze to another
+@Name("maze.SearchCompleted")
+@Label("Search Completed")
+@Category("Maze")
+@Description("A breadth- or depth-first search of a maze finished")
+class SearchCompletedEvent extends Event {
+  @Label("Width")
+  int width;
+
+  @Label("Height")
+  int height;
+
+  @Label("Algorithm")
+  String algorithm;
+
+  @Label("Nodes Visited")
+  int nodesVisited;
+
+  @Label("Path Length")
+  int pathLength;
+
+  @Label("Found")
+  boolean found;
+}
+
+// to represent a JFR event for coloring a maze by distance to a Node
+@Name("maze.GradientComputed")
+@Label("Gradient Computed")
+@Category("Maze")
+@Description("Every cell of a maze was colored by its distance to a target")
+class GradientComputedEvent extends Event {
+  @Label("Width")
+  int width;
+
+  @Label("Height")
+  int height;
+
+  @Label("Algorithm")
+  String algorithm;
+
+  @Label("Target Index")
+  int target;
+
+  @Label("Nodes Visited")
+  long nodesVisited;
+}
+
+// to represent a JFR event for drawing one frame of a maze
+@Name("maze.FrameRendered")
+@Label("Frame Rendered")
+@Category("Maze")
+@Description("A scene of a maze was built for drawing")
+class FrameRenderedEvent extends Event {
+  @Label("Width")
+  int width;
+
+  @Label("Height")
+  int height;
+
+  @Label("Mode")
+  String mode;
+}
+
+// to represent a JFR event for an arrow key pressed in User Mode
+@Name("maze.UserMove")
+@Label("User Move")
+@Category("Maze")
+@Description("The user tried to move through the maze")
+class UserMoveEvent extends Event {
+  @Label("Key")
+  String key;
+
+  @Label("Valid")
+  boolean valid;
+
+  @Label("Row")
+  int row;
+
+  @Label("Column")
+  int col;
+
+  @Label("Steps")
+  int steps;
+
+  @Label("Wrong Moves")
+  int wrongMoves;
+}
+
+// to represent a long-lived local service that generates and solves mazes for
+// JSON-line requests read from stdin or a loopback socket
+// Usage: java MazeServer [--workers N] [--queue N] [--port P] [--metrics SECONDS]
+// --metrics turns on MazeMetrics, publishes them over JMX and dumps them to
+// stderr every SECONDS seconds (0 for JMX only)
+class MazeServer {
+  private final ThreadPoolExecutor executor;
+  // bounds the jobs accepted but not yet finished; readers block on it, which
+  // stops them reading more requests until workers catch up
+  private final Semaphore permits;
+  private final ServerMetrics metrics;
+  private final Random seeds;
+
+  MazeServer(int workers, int maxQueued) {
+    this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("maze-worker"));
+    this.permits = new Semaphore(workers + maxQueued);
+    this.metrics = new ServerMetrics();
+    this.seeds = new Random();
+  }
+
+  public static void main(String[] args)
+      throws IOException, InterruptedException, JMException {
+    int workers = Runtime.getRuntime().availableProcessors();
+    int maxQueued = 4 * workers;
+    int port = -1;
+    long metricsSeconds = -1;
+
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      if (args[i].equals("--workers")) {
+        workers = Integer.parseInt(args[i + 1]);
+      }
+      else if (args[i].equals("--queue")) {
+        maxQueued = Integer.parseInt(args[i + 1]);
+      }
+      else if (args[i].equals("--port")) {
+        port = Integer.parseInt(args[i + 1]);
+      }
+      else if (args[i].equals("--metrics")) {
+        metricsSeconds = Long.parseLong(args[i + 1]);
+      }
+    }
+
+    if (metricsSeconds >= 0) {
+      MazeMetrics.enable(metricsSeconds, System.err);
+    }
+
+    MazeServer server = new MazeServer(workers, maxQueued);
+
+    if (port >= 0) {
+      server.listen(port);
+    }
+    else {
+      Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+      server.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+          out);
+      System.err.println(server.metrics().snapshot());
+      if (metricsSeconds >= 0) {
+        System.err.print(MazeMetrics.REGISTRY.dump());
+      }
+      server.shutdown();
+    }
+  }
+
+  // returns the metrics of this server
+  ServerMetrics metrics() {
+    return this.metrics;
+  }
+
+  // accepts connections on the given loopback port forever, serving each one on
+  // its own thread
+  void listen(int port) throws IOException {
+    ServerSocket socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    while (true) {
+      Thread connection = new Thread(new MazeConnection(this, socket.accept()), "maze-connection");
+      connection.setDaemon(true);
+      connection.start();
+    }
+  }
+
+  // reads one request per line from the given reader until it is exhausted,
+  // writing one result line per request to the given writer as jobs finish
+  // EFFECT: runs every job on this server's workers and waits for them to finish
+  void serve(BufferedReader in, Writer out) throws IOException, InterruptedException {
+    Phaser pending = new Phaser(1);
+    String line = in.readLine();
+
+    while (line != null) {
+      if (!line.trim().isEmpty()) {
+        this.accept(line, out, pending);
+      }
+      line = in.readLine();
+    }
+
+    pending.arriveAndAwaitAdvance();
+  }
+
+  // handles a single request line, answering metrics requests and malformed
+  // requests immediately and queueing the rest
+  // EFFECT: submits the job to this server's workers once a permit is free
+  void accept(String line, Writer out, Phaser pending) throws IOException, InterruptedException {
+    long accepted = System.nanoTime();
+    JsonLine json = null;
+    MazeJob job;
+
+    try {
+      json = JsonLine.parse(line);
+      if (json.getString("op", "").equals("metrics")) {
+        MazeServer.write(out, this.metrics.snapshot());
+        return;
+      }
+      job = MazeJob.fromJson(json, this.seeds);
+    }
+    catch (IllegalArgumentException e) {
+      // a request that parsed keeps its id, even if it is not a valid job
+      MazeServer.write(out, MazeJob.failure(json == null ? "" : json.getString("id", ""),
+          e.getMessage()));
+      return;
+    }
+
+    this.permits.acquire();
+    this.metrics.enqueued();
+    pending.register();
+    this.executor.execute(new MazeJobTask(this, job, out, pending, accepted));
+  }
+
+  // EFFECT: runs the given job and writes its result to the given writer
+  void run(MazeJob job, Writer out, Phaser pending, long accepted) {
+    this.metrics.started();
+    boolean ok = true;
+    String result;
+
+    try {
+      result = job.run();
+    }
+    catch (RuntimeException e) {
+      ok = false;
+      result = MazeJob.failure(job.id(), String.valueOf(e.getMessage()));
+    }
+
+    try {
+      MazeServer.write(out, result);
+    }
+    catch (IOException e) {
+      ok = false;
+    }
+    finally {
+      this.metrics.finished(accepted, ok);
+      this.permits.release();
+      pending.arriveAndDeregister();
+    }
+  }
+
+  // writes the given line to the given writer, one whole line at a time
+  static void write(Writer out, String line) throws IOException {
+    synchronized (out) {
+      out.write(line);
+      out.write('\n');
+      out.flush();
+    }
+  }
+
+  // EFFECT: stops this server's workers once queued jobs are finished
+  void shutdown() {
+    this.executor.shutdown();
+  }
+}
+
+// to represent a queued MazeJob waiting for a MazeServer worker
+class MazeJobTask implements Runnable {
+  private final MazeServer server;
+  private final MazeJob job;
+  private final Writer out;
+  private final Phaser pending;
+  private final long accepted;
+
+  MazeJobTask(MazeServer server, MazeJob job, Writer out, Phaser pending, long accepted) {
+    this.server = server;
+    this.job = job;
+    this.out = out;
+    this.pending = pending;
+    this.accepted = accepted;
+  }
+
+  public void run() {
+    this.server.run(this.job, this.out, this.pending, this.accepted);
+  }
+}
+
+// to represent one client connected to a MazeServer's socket
+class MazeConnection implements Runnable {
+  private final MazeServer server;
+  private final Socket socket;
+
+  MazeConnection(MazeServer server, Socket socket) {
+    this.server = server;
+    this.socket = socket;
+  }
+
+  public void run() {
+    try (Socket s = this.socket) {
+      this.server.serve(
+          new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8)),
+          new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+    }
+    catch (IOException e) {
+      // the client went away; its remaining results have nowhere to go
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
+
+// to represent a ThreadFactory making named daemon threads
+class DaemonThreadFactory implements ThreadFactory {
+  private final String name;
+  private final AtomicInteger made;
+
+  DaemonThreadFactory(String name) {
+    this.name = name;
+    this.made = new AtomicInteger();
+  }
+
+  public Thread newThread(Runnable r) {
+    Thread thread = new Thread(r, this.name + "-" + this.made.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
+
+// to represent a local load generator that feeds random jobs through a
+// MazeServer and reports its metrics
+// Usage: java MazeLoadGenerator [jobs] [size] [workers] [queue]
+class MazeLoadGenerator {
+  private final int jobs;
+  private final int size;
+  private final Random rand;
+
+  MazeLoadGenerator(int jobs, int size, Random rand) {
+    this.jobs = jobs;
+    this.size = size;
+    this.rand = rand;
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int jobs = MazeLoadGenerator.argOr(args, 0, 1000);
+    int size = MazeLoadGenerator.argOr(args, 1, 10);
+    int workers = MazeLoadGenerator.argOr(args, 2, Runtime.getRuntime().availableProcessors());
+    int queue = MazeLoadGenerator.argOr(args, 3, 4 * workers);
+
+    MazeServer server = new MazeServer(workers, queue);
+    StringWriter results = new StringWriter();
+    new MazeLoadGenerator(jobs, size, new Random()).drive(server, results);
+    System.out.println(server.metrics().snapshot());
+    server.shutdown();
+  }
+
+  // returns the given argument as an int, or the given default if it is absent
+  static int argOr(String[] args, int index, int otherwise) {
+    if (index < args.length) {
+      return Integer.parseInt(args[index]);
+    }
+    else {
+      return otherwise;
+    }
+  }
+
+  // returns this generator's requests, one JSON object per line
+  String requests() {
+    StringBuilder lines = new StringBuilder();
+    for (int i = 0; i < this.jobs; i += 1) {
+      int width = 2 + this.rand.nextInt(this.size - 1);
+      int height = 2 + this.rand.nextInt(this.size - 1);
+      String op = this.rand.nextBoolean() ? "solve" : "generate";
+      String algorithm = this.rand.nextBoolean() ? "bfs" : "dfs";
+      lines.append("{\"id\":\"").append(i).append("\",\"op\":\"").append(op)
+          .append("\",\"width\":").append(width).append(",\"height\":").append(height)
+          .append(",\"seed\":").append(this.rand.nextInt()).append(",\"algorithm\":\"")
+          .append(algorithm).append("\"}\n");
+    }
+    return lines.toString();
+  }
+
+  // runs this generator's requests through the given server
+  // EFFECT: writes every result line to the given writer
+  void drive(MazeServer server, Writer out) throws IOException, InterruptedException {
+    server.serve(new BufferedReader(new StringReader(this.requests())), out);
+  }
+}
+
+// to represent a comparison of BFS, Dijkstra's algorithm and A* solving the
+// same braided mazes over the same terrain
+class SearchBenchmark {
+  static final String[] ALGORITHMS = new String[] { "bfs", "dijkstra", "astar" };
 
-    if (key.equals("p") && !this.searchControl && !this.viewColorGradient) {
-      this.setViewVisitedPathsState();
-    }
+  private final int size;
+  private final double braid;
+  private final double terrain;
+  private final int mazes;
+  private final Random rand;
 
-    if (key.equals("v")) {
-      this.vertBias = true;
+  SearchBenchmark(int size, double braid, double terrain, int mazes, Random rand) {
+    this.size = size;
+    this.braid = braid;
+    this.terrain = terrain;
+    this.mazes = mazes;
+    this.rand = rand;
+  }
+
+  public static void main(String[] args) {
+    int size = MazeLoadGenerator.argOr(args, 0, 60);
+    int mazes = MazeLoadGenerator.argOr(args, 1, 50);
+    double braid = args.length > 2 ? Double.parseDouble(args[2]) : 0.5;
+    double terrain = args.length > 3 ? Double.parseDouble(args[3]) : 0.3;
+    System.out.print(new SearchBenchmark(size, braid, terrain, mazes, new Random()).run());
+  }
 
-      if (this.vertBias) {
-        this.horizBias = false;
+  // solves this benchmark's mazes with BFS, Dijkstra's algorithm and A*, and
+  // returns a line per algorithm with its mean solve time, cells visited, path
+  // length and path cost
+  String run() {
+    int n = ALGORITHMS.length;
+    long[] nanos = new long[n];
+    long[] visited = new long[n];
+    long[] lengths = new long[n];
+    long[] costs = new long[n];
+
+    for (int i = 0; i < this.mazes; i += 1) {
+      Maze maze = new Maze(this.size, this.size, new Random(this.rand.nextLong()));
+      maze.setBraid(this.braid);
+      maze.finishConstruction();
+      maze.setTerrain(TerrainMap.random(this.size, this.size, this.rand, this.terrain));
+
+      for (int a = 0; a < n; a += 1) {
+        long start = System.nanoTime();
+        if (a == 0) {
+          maze.solve(true);
+        }
+        else {
+          maze.solveShortest(a == 2);
+        }
+        nanos[a] += System.nanoTime() - start;
+        visited[a] += maze.visitedCount();
+        lengths[a] += maze.pathLength();
+        costs[a] += maze.pathCost();
       }
+    }
 
-      this.genNewMaze(this.width, this.height);
+    StringBuilder res = new StringBuilder();
+    for (int a = 0; a < n; a += 1) {
+      res.append(String.format("%-8s %dx%d braid %.2f: %.3f ms, %d visited, path %d, cost %d%n",
+          ALGORITHMS[a], this.size, this.size, this.braid, nanos[a] / 1e6 / this.mazes,
+          visited[a] / this.mazes, lengths[a] / this.mazes, costs[a] / this.mazes));
     }
+    return res.toString();
+  }
+}
 
-    if (key.equals("h")) {
-      this.horizBias = true;
+// to represent a benchmark of ParallelDistances on pools of growing size
+// against a single-threaded Dijkstra search, pricing every cell of a square
+// maze over random terrain from its first cell; with no braid the maze is the
+// perfect one the s and e keys shade, whose levels are rarely wide enough to
+// split
+class GradientBenchmark {
+  private final int size;
+  private final int rounds;
+  private final double terrain;
+  private final double braid;
+  private final int maxThreads;
+  private final Random rand;
 
-      if (this.horizBias) {
-        this.vertBias = false;
-      }
+  GradientBenchmark(int size, int rounds, double terrain, double braid, int maxThreads,
+      Random rand) {
+    this.size = size;
+    this.rounds = rounds;
+    this.terrain = terrain;
+    this.braid = braid;
+    this.maxThreads = maxThreads;
+    this.rand = rand;
+  }
 
-      this.genNewMaze(this.width, this.height);
+  public static void main(String[] args) {
+    int size = MazeLoadGenerator.argOr(args, 0, 2000);
+    int rounds = MazeLoadGenerator.argOr(args, 1, 5);
+    double terrain = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+    int maxThreads = MazeLoadGenerator.argOr(args, 3, Runtime.getRuntime().availableProcessors());
+    double braid = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+    System.out.print(new GradientBenchmark(size, rounds, terrain, braid, maxThreads,
+        new Random()).run());
+  }
+
+  // times the single-threaded search, then ParallelDistances on pools of 1, 2,
+  // 4 and so on up to the most threads, and returns a line for each with its
+  // mean time, its speedup over the single-threaded search, the most chunks it
+  // split a level into, and whether its distances agree with it
+  String run() {
+    Maze maze = new Maze(this.size, this.size, new Random(this.rand.nextLong()));
+    maze.setBraid(this.braid);
+    maze.finishConstruction();
+    maze.setTerrain(TerrainMap.random(this.size, this.size, this.rand, this.terrain));
+    maze.syncOpenings();
+    int cells = this.size * this.size;
+
+    CellSearch search = new CellSearch();
+    long sequential = 0;
+    for (int r = 0; r <= this.rounds; r += 1) {
+      long start = System.nanoTime();
+      search.runShortest(maze, 0, -1, false);
+      // the first round only warms up
+      sequential += r == 0 ? 0 : System.nanoTime() - start;
     }
 
-    if (key.equals("r")) {
-      this.horizBias = false;
-      this.vertBias = false;
+    StringBuilder res = new StringBuilder();
+    res.append(String.format("dijkstra   %dx%d braid %.2f: %.1f ms, widest level %d%n",
+        this.size, this.size, this.braid, sequential / 1e6 / this.rounds, search.levelMax()));
+    int most = this.maxThreads;
+    for (int threads = 1; threads <= most; threads = threads == most ? most + 1
+        : Math.min(2 * threads, most)) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      ParallelDistances distances = new ParallelDistances(pool);
+      long parallel = 0;
+      for (int r = 0; r <= this.rounds; r += 1) {
+        long start = System.nanoTime();
+        distances.compute(maze, 0);
+        parallel += r == 0 ? 0 : System.nanoTime() - start;
+      }
+      pool.shutdown();
 
-      this.genNewMaze(this.width, this.height);
+      boolean agree = true;
+      for (int cell = 0; cell < cells; cell += 1) {
+        agree = agree && distances.distance(cell) == search.distance(cell);
+      }
+      res.append(String.format("parallel %2d threads: %.1f ms, %.2fx, %d parts, %s%n", threads,
+          parallel / 1e6 / this.rounds, (double) sequential / parallel, distances.mostParts(),
+          agree ? "agree" : "DISAGREE"));
     }
+    return res.toString();
+  }
+}
 
-    if (key.equals("s")) {
-      this.colorGradient(this.topLeft);
-    }
+// to represent a benchmark of WallPlanes against the per-Node loops they
+// replace, on two mazes of the same square size: a walk over a maze's Nodes
+// row by row, as resetBoardColor once walked them, that checks each of a
+// Node's Edges one at a time, as Node.render does
+// every query runs untimed for some warmup rounds first, so both ways are
+// compiled before either is timed
+class WallBenchmark {
+  static final String[] QUERIES = new String[] { "dead ends", "open count", "diff" };
+
+  private final int size;
+  private final int rounds;
+  private final int warmup;
+  private final Random rand;
 
-    if (key.equals("e")) {
-      this.colorGradient(this.bottomRight);
-    }
+  WallBenchmark(int size, int rounds, int warmup, Random rand) {
+    this.size = size;
+    this.rounds = rounds;
+    this.warmup = warmup;
+    this.rand = rand;
+  }
 
-    if (this.userControl) {
-      Node currNode = this.nodes.get(this.userRow).get(this.userCol);
-      boolean validMove = false;
+  // a grid of Nodes and Edges takes a few hundred bytes per cell, so the
+  // default board is smaller than the planes alone could handle
+  public static void main(String[] args) {
+    int size = MazeLoadGenerator.argOr(args, 0, 1024);
+    int rounds = MazeLoadGenerator.argOr(args, 1, 10);
+    int warmup = MazeLoadGenerator.argOr(args, 2, 5);
+    System.out.print(new WallBenchmark(size, rounds, warmup, new Random()).run());
+  }
 
-      if (key.equals("left")) {
-        if (this.userCol > 0 && currNode
-            .connectsToNode(this.nodes.get(this.userRow).get(this.userCol - 1), this.validPaths)) {
-          this.userCol -= 1;
-          validMove = true;
+  // answers the given query over the Nodes of the given maze one Node at a
+  // time, checking its Edges against the given planes of that maze and, for
+  // the diff, the given planes of the other maze
+  int perNode(int query, Maze maze, WallPlanes walls, WallPlanes others) {
+    int count = 0;
+    for (int row = 0; row < this.size; row += 1) {
+      for (int col = 0; col < this.size; col += 1) {
+        Node node = maze.nodeAt(row * this.size + col);
+        if (query == 0) {
+          if (node.openEdgeCount(walls) == 1) {
+            count += 1;
+          }
         }
-      }
-
-      if (key.equals("right")) {
-        if (this.userCol < this.width - 1 && currNode
-            .connectsToNode(this.nodes.get(this.userRow).get(this.userCol + 1), this.validPaths)) {
-          this.userCol += 1;
-          validMove = true;
+        else if (query == 1) {
+          count += node.openEdgeCount(walls);
+        }
+        else {
+          count += node.changedEdgeCount(walls, others);
         }
       }
+    }
+    if (query == 0) {
+      return count;
+    }
+    else {
+      return count / 2;
+    }
+  }
 
-      if (key.equals("up")) {
-        if (this.userRow > 0 && currNode
-            .connectsToNode(this.nodes.get(this.userRow - 1).get(this.userCol), this.validPaths)) {
-          this.userRow -= 1;
-          validMove = true;
-        }
+  // answers the given query over the given planes a word at a time
+  int planes(int query, WallPlanes walls, WallPlanes others) {
+    if (query == 0) {
+      return walls.deadEndCount();
+    }
+    else if (query == 1) {
+      return walls.openCount();
+    }
+    else {
+      return walls.diffCount(others);
+    }
+  }
+
+  // times every query both ways over two random mazes after the warmup
+  // rounds, and returns a line per query with the mean time of each way, the
+  // speedup, and whether both ways agree in every round
+  String run() {
+    Maze maze = new Maze(this.size, this.size, this.rand);
+    maze.finishConstruction();
+    Maze other = new Maze(this.size, this.size, this.rand);
+    other.finishConstruction();
+    WallPlanes walls = maze.wallPlanes();
+    WallPlanes otherWalls = other.wallPlanes();
+
+    StringBuilder res = new StringBuilder();
+    for (int q = 0; q < QUERIES.length; q += 1) {
+      boolean agree = true;
+      for (int r = 0; r < this.warmup; r += 1) {
+        agree = agree
+            && this.perNode(q, maze, walls, otherWalls) == this.planes(q, walls, otherWalls);
       }
 
-      if (key.equals("down")) {
-        if (this.userRow < this.height - 1 && currNode
-            .connectsToNode(this.nodes.get(this.userRow + 1).get(this.userCol), this.validPaths)) {
-          this.userRow += 1;
-          validMove = true;
-        }
+      long nodeNanos = 0;
+      long planeNanos = 0;
+      for (int r = 0; r < this.rounds; r += 1) {
+        long start = System.nanoTime();
+        int expected = this.perNode(q, maze, walls, otherWalls);
+        long middle = System.nanoTime();
+        int actual = this.planes(q, walls, otherWalls);
+        planeNanos += System.nanoTime() - middle;
+        nodeNanos += middle - start;
+        agree = agree && expected == actual;
       }
+      res.append(String.format("%-10s %dx%d: per Node %.3f ms, planes %.3f ms, %.1fx, %s%n",
+          QUERIES[q], this.size, this.size, nodeNanos / 1e6 / this.rounds,
+          planeNanos / 1e6 / this.rounds, (double) nodeNanos / Math.max(1, planeNanos),
+          agree ? "agree" : "DISAGREE"));
+    }
+    return res.toString();
+  }
+}
 
-      if (validMove) {
-        Node newNode = this.nodes.get(this.userRow).get(this.userCol);
-        newNode.color(Color.YELLOW);
+// to represent the shape statistics of a maze, read from its open passages in
+// one pass over its cells, one walk along its corridors and two breadth-first
+// passes, with buffers that are reused by every analysis
+class MazeStats {
+  static final String CSV_HEADER = "cells,passages,dead_ends,junctions,longest_corridor,"
+      + "solution_length,diameter,river_factor,horizontal,vertical,corridor_ratio";
+
+  private int[] degrees;
+  private int[] distances;
+  private int[] queue;
+  private int[] neighbors;
+  private int[] weights;
+  private final BitSet walked;
+
+  private int cells;
+  private int passages;
+  private int deadEnds;
+  private int junctions;
+  private int longestCorridor;
+  private int solutionLength;
+  private int diameter;
+  private int horizontal;
+  private int vertical;
+
+  MazeStats() {
+    this.degrees = new int[0];
+    this.distances = new int[0];
+    this.queue = new int[0];
+    this.neighbors = new int[0];
+    this.weights = new int[0];
+    this.walked = new BitSet();
+  }
 
-        if (this.viewVisitedPaths) {
-          currNode.color(new Color(145, 184, 242, 255));
-        }
-        else {
-          currNode.resetColor();
-        }
+  // measures the active cells of the given mask in the given graph, whose cells
+  // are numbered in row-major order over the mask's width, solving from the
+  // given start cell to the given end cell
+  // EFFECT: sets every statistic of this MazeStats
+  void analyze(CellGraph graph, MazeMask mask, int start, int end) {
+    int total = graph.cellCount();
+    if (total > this.degrees.length) {
+      int capacity = Math.max(total, 2 * this.degrees.length);
+      this.degrees = new int[capacity];
+      this.distances = new int[capacity];
+      this.queue = new int[capacity];
+    }
+    if (graph.maxDegree() > this.neighbors.length) {
+      this.neighbors = new int[graph.maxDegree()];
+      this.weights = new int[graph.maxDegree()];
+    }
 
-        this.visitedNodes.add(newNode);
+    // every passage is counted from the lower of its two cells
+    int width = mask.getWidth();
+    this.cells = mask.activeCount();
+    this.passages = 0;
+    this.deadEnds = 0;
+    this.junctions = 0;
+    this.horizontal = 0;
+    this.vertical = 0;
+    for (int k = 0; k < this.cells; k += 1) {
+      int cell = mask.activeCell(k);
+      int degree = graph.openNeighbors(cell, this.neighbors, this.weights);
+      this.degrees[cell] = degree;
+      if (degree == 1) {
+        this.deadEnds += 1;
+      }
+      else if (degree >= 3) {
+        this.junctions += 1;
+      }
 
-        if (!this.searchPath.contains(newNode)) {
-          wrongMoves += 1;
+      for (int i = 0; i < degree; i += 1) {
+        int next = this.neighbors[i];
+        // each passage is counted once, from its earlier cell
+        if (next > cell) {
+          if (next / width == cell / width) {
+            this.horizontal += 1;
+          }
+          else {
+            this.vertical += 1;
+          }
         }
+      }
+    }
+    this.passages = this.horizontal + this.vertical;
 
-        this.steps += 1;
+    this.longestCorridor = this.walkCorridors(graph, mask);
 
-        if (this.nodes.get(this.height - 1).get(this.width - 1) == newNode) {
-          this.setPathAnimationState();
-        }
+    int far = this.breadthFirst(graph, mask, start);
+    if (this.distances[end] >= 0) {
+      this.solutionLength = this.distances[end] + 1;
+    }
+    else {
+      this.solutionLength = 0;
+    }
+    int other = this.breadthFirst(graph, mask, far);
+    this.diameter = this.distances[other];
+  }
+
+  // returns the most cells in any corridor, a run of cells with exactly two open
+  // passages each
+  // EFFECT: marks every corridor cell in walked, and clears it again
+  int walkCorridors(CellGraph graph, MazeMask mask) {
+    int longest = 0;
+    this.walked.clear();
+    for (int k = 0; k < this.cells; k += 1) {
+      int cell = mask.activeCell(k);
+      if (this.degrees[cell] != 2 || this.walked.get(cell)) {
+        continue;
       }
 
+      this.walked.set(cell);
+      graph.openNeighbors(cell, this.neighbors, this.weights);
+      int first = this.neighbors[0];
+      int second = this.neighbors[1];
+      int length = 1 + this.walk(graph, cell, first) + this.walk(graph, cell, second);
+      longest = Math.max(longest, length);
     }
+    this.walked.clear();
+    return longest;
   }
 
-  // handles mosue click
-  // EFFECT: adds or subtracts width and height based on click location
-  // not tested since not part of regular
-  public void onMouseClicked(Posn pos) {
-    // increase width
-    if (pos.x >= this.sceneWidth / 8 - 5 && pos.x <= this.sceneWidth / 8 + 5
-        && pos.y >= (27 * this.sceneHeight / 30) - 5 && pos.y <= (27 * this.sceneHeight / 30) + 5) {
-      this.width += 1;
-      this.genNewMaze(this.width, this.height);
+  // returns the number of corridor cells reached by walking from the given cell
+  // into the given neighbor and on through cells with two open passages
+  // EFFECT: marks the cells walked in walked
+  int walk(CellGraph graph, int from, int to) {
+    int length = 0;
+    while (this.degrees[to] == 2 && !this.walked.get(to)) {
+      this.walked.set(to);
+      length += 1;
+      graph.openNeighbors(to, this.neighbors, this.weights);
+      int next = this.neighbors[0] == from ? this.neighbors[1] : this.neighbors[0];
+      from = to;
+      to = next;
     }
+    return length;
+  }
 
-    // decrease width
-    if (pos.x >= this.sceneWidth / 8 - 5 && pos.x <= this.sceneWidth / 8 + 5
-        && pos.y >= (29 * this.sceneHeight / 30) - 5 && pos.y <= (29 * this.sceneHeight / 30) + 5) {
-      this.width -= 1;
+  // counts the passages from the given cell to every cell it reaches, and returns
+  // the reached cell farthest from it
+  // EFFECT: sets distances to the counts, and to -1 for cells out of reach
+  int breadthFirst(CellGraph graph, MazeMask mask, int source) {
+    for (int k = 0; k < this.cells; k += 1) {
+      this.distances[mask.activeCell(k)] = -1;
+    }
 
-      if (this.width < 5) {
-        this.width = 5;
+    int head = 0;
+    int tail = 0;
+    this.distances[source] = 0;
+    this.queue[tail] = source;
+    tail += 1;
+    int last = source;
+
+    while (head < tail) {
+      last = this.queue[head];
+      head += 1;
+      int degree = graph.openNeighbors(last, this.neighbors, this.weights);
+      for (int i = 0; i < degree; i += 1) {
+        int next = this.neighbors[i];
+        if (this.distances[next] < 0) {
+          this.distances[next] = this.distances[last] + 1;
+          this.queue[tail] = next;
+          tail += 1;
+        }
       }
-      this.genNewMaze(this.width, this.height);
     }
+    return last;
+  }
 
-    // increase height
-    if (pos.x >= (7 * this.sceneWidth / 8) - 5 && pos.x <= (7 * this.sceneWidth / 8) + 5
-        && pos.y >= (27 * this.sceneHeight / 30 - 5) && pos.y <= (27 * this.sceneHeight / 30 + 5)) {
-      this.height += 1;
-      this.genNewMaze(this.width, this.height);
-    }
+  // returns the number of active cells
+  int cells() {
+    return this.cells;
+  }
 
-    // decrease height
-    if (pos.x >= (7 * this.sceneWidth / 8) - 5 && pos.x <= (7 * this.sceneWidth / 8) + 5
-        && pos.y >= (29 * this.sceneHeight / 30 - 5) && pos.y <= (29 * this.sceneHeight / 30 + 5)) {
-      this.height -= 1;
+  // returns the number of open passages
+  int passages() {
+    return this.passages;
+  }
 
-      if (this.width < 5) {
-        this.height = 5;
-      }
-      this.genNewMaze(this.width, this.height);
-    }
+  // returns the number of cells with one open passage
+  int deadEnds() {
+    return this.deadEnds;
   }
 
-  public WorldScene makeScene() {
-    WorldScene scene = new WorldScene(this.sceneWidth, this.sceneHeight);
+  // returns the number of cells with three or more open passages
+  int junctions() {
+    return this.junctions;
+  }
 
-    scene.placeImageXY(new TextImage(this.title, Color.black), this.sceneWidth / 2,
-        this.sceneHeight / 14);
+  // returns the most cells in a corridor
+  int longestCorridor() {
+    return this.longestCorridor;
+  }
 
-    if (!this.mazeConstructionControl) {
-      scene.placeImageXY(new TextImage("Steps: " + this.steps, Color.black), this.sceneWidth / 2,
-          this.sceneHeight / 8);
-      scene.placeImageXY(new TextImage("Wrong moves: " + this.wrongMoves, Color.black),
-          this.sceneWidth / 2, (7 * this.sceneHeight) / 8);
+  // returns the number of cells on the shortest path from start to end, or 0 if
+  // the end cannot be reached
+  int solutionLength() {
+    return this.solutionLength;
+  }
+
+  // returns the most passages between two cells of the start's component,
+  // found by two breadth-first passes; it is exact for perfect mazes and a lower
+  // bound once loops are braided in
+  int diameter() {
+    return this.diameter;
+  }
+
+  // returns the mean number of cells off the solution per dead end, which is
+  // high when side branches are few, long and winding
+  double riverFactor() {
+    if (this.deadEnds == 0) {
+      return 0;
+    }
+    else {
+      return (double) (this.cells - this.solutionLength) / this.deadEnds;
     }
+  }
 
-    scene.placeImageXY(new TextImage("^", Color.black), this.sceneWidth / 8,
-        (27 * this.sceneHeight) / 30);
-    scene.placeImageXY(new TextImage("Width: " + this.width, Color.black), this.sceneWidth / 8,
-        (28 * this.sceneHeight) / 30);
-    scene.placeImageXY(new TextImage("v ", Color.black), this.sceneWidth / 8,
-        (29 * this.sceneHeight) / 30);
+  // returns the number of passages between cells of the same row
+  int horizontal() {
+    return this.horizontal;
+  }
 
-    scene.placeImageXY(new TextImage("^", Color.black), (7 * sceneWidth / 8),
-        (27 * sceneHeight) / 30);
-    scene.placeImageXY(new TextImage("Height: " + this.height, Color.black),
-        (7 * this.sceneWidth) / 8, (28 * this.sceneHeight) / 30);
-    scene.placeImageXY(new TextImage("v ", Color.black), (7 * this.sceneWidth / 8),
-        (29 * this.sceneHeight) / 30);
+  // returns the number of passages between cells of different rows
+  int vertical() {
+    return this.vertical;
+  }
 
-    scene.placeImageXY(this.render(), this.sceneWidth / 2, this.sceneHeight / 2);
+  // returns the number of horizontal passages per vertical passage
+  double corridorRatio() {
+    return (double) this.horizontal / Math.max(1, this.vertical);
+  }
 
-    return scene;
+  // returns these statistics as a CSV row in the order of CSV_HEADER
+  String csvRow() {
+    return this.cells + "," + this.passages + "," + this.deadEnds + "," + this.junctions + ","
+        + this.longestCorridor + "," + this.solutionLength + "," + this.diameter + ","
+        + String.format("%.3f", this.riverFactor()) + "," + this.horizontal + ","
+        + this.vertical + "," + String.format("%.3f", this.corridorRatio());
+  }
+}
+
+// to represent a headless batch that generates many mazes and writes their
+// statistics as CSV, one row per maze
+class MazeStatsBatch {
+  private final int mazes;
+  private final int size;
+  private final String bias;
+  private final double braid;
+  private final Random rand;
+
+  MazeStatsBatch(int mazes, int size, String bias, double braid, Random rand) {
+    this.mazes = mazes;
+    this.size = size;
+    this.bias = bias;
+    this.braid = braid;
+    this.rand = rand;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int mazes = MazeLoadGenerator.argOr(args, 0, 1000);
+    int size = MazeLoadGenerator.argOr(args, 1, 20);
+    String bias = args.length > 2 ? args[2] : "none";
+    double braid = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+    long start = System.nanoTime();
+    new MazeStatsBatch(mazes, size, bias, braid, new Random()).run(out);
+    out.flush();
+    System.err.printf("%d mazes in %.1f ms%n", mazes, (System.nanoTime() - start) / 1e6);
+  }
+
+  // generates this batch's mazes one after another in a single reused Maze, and
+  // writes a header and a row of statistics per maze
+  // EFFECT: writes the CSV to the given writer
+  void run(Writer out) throws IOException {
+    out.write("maze,width,height,bias,braid," + MazeStats.CSV_HEADER + "\n");
+    Maze maze = new Maze(this.size, this.size, this.rand);
+    maze.setBraid(this.braid);
+    MazeStats stats = new MazeStats();
+
+    for (int i = 0; i < this.mazes; i += 1) {
+      maze.setBias(this.bias);
+      maze.genNewMaze(this.size, this.size);
+      maze.finishConstruction();
+      maze.analyze(stats);
+      out.write(i + "," + this.size + "," + this.size + "," + this.bias + "," + this.braid + ","
+          + stats.csvRow() + "\n");
+    }
   }
 }
 
@@ -905,7 +8299,11 @@ class ExamplesMazeWorld {
   Maze maze = new Maze(10, 10);
 
   void testBigBang(Tester t) {
-    this.maze.bigBang(1000, 1000, 0.01);
+    this.maze.bigBang(1000, 1000, Maze.TICK_SECONDS);
+  }
+
+  void testBigBangVolume(Tester t) {
+    new MazeVolumeWorld(20, 20, 5, new Random()).bigBang(700, 700);
   }
 }
 
@@ -991,12 +8389,8 @@ class ExamplesMaze {
 
   ArrayList<Edge> validPaths;
 
-  HashMap<Node, Node> representatives;
-
   Random rand = new Random();
 
-  UnionFind unionFind;
-
   Maze maze = new Maze(5, 5);
 
   void initData() {
@@ -1054,24 +8448,6 @@ class ExamplesMaze {
 
     this.G = new Node(0, 6);
 
-    this.representatives = new HashMap<Node, Node>();
-
-    representatives.put(A, E);
-
-    representatives.put(B, A);
-
-    representatives.put(C, E);
-
-    representatives.put(D, E);
-
-    representatives.put(E, E);
-
-    representatives.put(F, E);
-
-    representatives.put(G, G);
-
-    this.unionFind = new UnionFind(representatives);
-
     this.AB = new Edge(this.A, this.B, 4);
 
     this.AG = new Edge(this.A, this.G, 4);
@@ -1084,9 +8460,9 @@ class ExamplesMaze {
 
     hasEdgeNull.add(edgeNull);
 
-    nodeEdgeNull = new Node(hasEdgeNull, 0, 0, Color.RED);
+    nodeEdgeNull = new Node(hasEdgeNull, 0, 0);
 
-    nodeNoEdge = new Node(empty, 0, 0, Color.RED);
+    nodeNoEdge = new Node(empty, 0, 0);
 
     node0 = new Node(0, 0);
 
@@ -1094,15 +8470,15 @@ class ExamplesMaze {
 
     node2 = new Node(0, 1);
 
-    this.top = new Node(this.empty, 1, 0, Color.RED);
+    this.top = new Node(this.empty, 1, 0);
 
-    this.middle = new Node(this.empty, 1, 1, Color.LIGHT_GRAY);
+    this.middle = new Node(this.empty, 1, 1);
 
-    this.right = new Node(this.empty, 2, 1, Color.RED);
+    this.right = new Node(this.empty, 2, 1);
 
-    this.bot = new Node(this.empty, 1, 2, Color.RED);
+    this.bot = new Node(this.empty, 1, 2);
 
-    this.left = new Node(this.empty, 0, 1, Color.RED);
+    this.left = new Node(this.empty, 0, 1);
 
     this.middleRight = new Edge(this.middle, this.right, 5);
 
@@ -1201,44 +8577,6 @@ class ExamplesMaze {
 
   }
 
-  void testSameRepresentatives(Tester t) {
-
-    this.initData();
-
-    t.checkExpect(this.AB.sameRepresentatives(this.unionFind), true);
-
-    t.checkExpect(this.AG.sameRepresentatives(this.unionFind), false);
-
-  }
-
-  void testUnion(Tester t) {
-
-    this.initData();
-
-    t.checkExpect(this.unionFind.find(this.A), this.E);
-
-    t.checkExpect(this.unionFind.find(this.G), this.G);
-
-    t.checkExpect(this.unionFind.treeCount(), 2);
-
-    this.AB.unionNodes(this.unionFind);
-
-    t.checkExpect(this.unionFind.find(this.A), this.E);
-
-    t.checkExpect(this.unionFind.find(this.G), this.G);
-
-    t.checkExpect(this.unionFind.treeCount(), 2);
-
-    this.AG.unionNodes(this.unionFind);
-
-    t.checkExpect(this.unionFind.find(this.A), this.G);
-
-    t.checkExpect(this.unionFind.find(this.G), this.G);
-
-    t.checkExpect(this.unionFind.treeCount(), 1);
-
-  }
-
   void testContainsNode(Tester t) {
 
     this.initData();
@@ -1261,26 +8599,6 @@ class ExamplesMaze {
 
   }
 
-  void testBacktrack(Tester t) {
-
-    this.initData();
-
-    ArrayList<Node> targetPath = new ArrayList<Node>();
-
-    ArrayList<Node> path = new ArrayList<Node>();
-
-    targetPath.add(this.B);
-
-    targetPath.add(this.A);
-
-    targetPath.add(this.E);
-
-    this.maze.backtrack(this.B, this.representatives, path);
-
-    t.checkExpect(path, targetPath);
-
-  }
-
   void testCompareTo(Tester t) {
 
     this.initData();
@@ -1315,60 +8633,24 @@ class ExamplesMaze {
 
   }
 
-  // Tests union/find methods
-
-  void testUF(Tester t) {
-
-    this.initData();
-
-    // test UF find all referring to E
-
-    t.checkExpect(this.unionFind.find(A), this.E);
-
-    t.checkExpect(this.unionFind.find(B), this.E);
-
-    t.checkExpect(this.unionFind.find(C), this.E);
-
-    t.checkExpect(this.unionFind.find(D), this.E);
-
-    t.checkExpect(this.unionFind.find(E), this.E);
-
-    t.checkExpect(this.unionFind.find(F), this.E);
-
-    // test UF numTrees - since there are two unique parents
-
-    t.checkExpect(this.unionFind.treeCount(), 2);
-
-    // test find Vertex referring to itself
-
-    t.checkExpect(this.unionFind.find(this.G), this.G);
-
-    // test union G with A
-
-    this.unionFind.union(this.G, this.A);
-
-    // test find Vertex G with new representative
-
-    t.checkExpect(this.unionFind.find(this.G), this.E);
-
-    // test numTrees after union
-
-    t.checkExpect(this.unionFind.treeCount(), 1);
-
-  }
-
   // test Node render
   void testNodeRender(Tester t) {
     this.initData();
 
-    t.checkExpect(this.topLeft.render(2, 2, this.validPathsTest, 20),
+    t.checkExpect(this.testMaze.colorAt(0, 0), Palette.START);
+    t.checkExpect(this.testMaze.colorAt(0, 1), Palette.UNVISITED);
+    t.checkExpect(this.testMaze.colorAt(1, 0), Palette.UNVISITED);
+    t.checkExpect(this.testMaze.colorAt(1, 1), Palette.END);
+
+    WallPlanes walls = this.testMaze.wallPlanes();
+    t.checkExpect(this.topLeft.render(walls, 20, Color.GREEN),
         new RectangleImage(20, 20, OutlineMode.SOLID, Color.GREEN));
-    t.checkExpect(this.topRight.render(2, 2, this.validPathsTest, 20),
+    t.checkExpect(this.topRight.render(walls, 20, Color.LIGHT_GRAY),
         new RectangleImage(20, 20, OutlineMode.SOLID, Color.LIGHT_GRAY));
-    t.checkExpect(this.botLeft.render(2, 2, this.validPathsTest, 20),
+    t.checkExpect(this.botLeft.render(walls, 20, Color.LIGHT_GRAY),
         new BesideImage(new RectangleImage(20, 20, OutlineMode.SOLID, Color.LIGHT_GRAY),
             new LineImage(new Posn(0, 20), Color.GRAY)));
-    t.checkExpect(this.botRight.render(2, 2, this.validPathsTest, 20),
+    t.checkExpect(this.botRight.render(walls, 20, Color.MAGENTA),
         new BesideImage(new LineImage(new Posn(0, 20), Color.GRAY),
             new RectangleImage(20, 20, OutlineMode.SOLID, Color.MAGENTA)));
   }
@@ -1391,24 +8673,25 @@ class ExamplesMaze {
   void testMazeRender(Tester t) {
     this.initData();
 
+    WallPlanes walls = this.testMaze.wallPlanes();
     t.checkExpect(this.testMaze.render(),
         new AboveImage(
             new AboveImage(new EmptyImage(),
                 new BesideImage(
                     new BesideImage(new EmptyImage(),
-                        this.topLeft.render(2, 2, this.validPathsTest, 20)),
-                    this.topRight.render(2, 2, this.validPathsTest, 20))),
+                        this.topLeft.render(walls, 20, Color.GREEN)),
+                    this.topRight.render(walls, 20, Color.LIGHT_GRAY))),
             new BesideImage(
                 new BesideImage(new EmptyImage(),
-                    this.botLeft.render(2, 2, this.validPathsTest, 20)),
-                this.botRight.render(2, 2, this.validPathsTest, 20))));
+                    this.botLeft.render(walls, 20, Color.LIGHT_GRAY)),
+                this.botRight.render(walls, 20, Color.MAGENTA))));
   }
 
   // test reset board color
   void testResetBoardColor(Tester t) {
     this.initData();
 
-    this.topRight.color(Color.BLUE);
+    this.testMaze.paint(this.topRight, Palette.PATH);
 
     t.checkExpect(this.testMaze.render(),
         new AboveImage(
@@ -1933,8 +9216,10 @@ class ExamplesMaze {
 
     ArrayList<Edge> validPathsExpectedRes = new ArrayList<>();
 
+    // passages are keyed by a hash of the maze's seed and their ids, not by the
+    // weights of their Edges
     validPathsExpectedRes.add(this.leftEdge);
-    validPathsExpectedRes.add(this.topEdge);
+    validPathsExpectedRes.add(this.botEdge);
     validPathsExpectedRes.add(this.rightEdge);
 
     t.checkExpect(this.testMaze.findValidPaths(), validPathsExpectedRes);
@@ -2044,19 +9329,20 @@ class ExamplesMaze {
     this.testMaze.onTick();
     this.testMaze.onTick();
 
+    // the passage keys hashed from the test maze's seed leave the top wall up
     t.checkExpect(this.testMaze.render(),
         new AboveImage(
             new AboveImage(new EmptyImage(),
                 new BesideImage(
-                    new BesideImage(new EmptyImage(),
-                        new RectangleImage(20, 20, OutlineMode.SOLID, Color.GREEN)),
-                    new RectangleImage(20, 20, OutlineMode.SOLID, Color.LIGHT_GRAY))),
+                    new BesideImage(new EmptyImage(),
+                        new BesideImage(new RectangleImage(20, 20, OutlineMode.SOLID, Color.GREEN),
+                            new LineImage(new Posn(0, 20), Color.GRAY))),
+                    new BesideImage(new LineImage(new Posn(0, 20), Color.GRAY),
+                        new RectangleImage(20, 20, OutlineMode.SOLID, Color.LIGHT_GRAY)))),
             new BesideImage(
                 new BesideImage(new EmptyImage(),
-                    new BesideImage(new RectangleImage(20, 20, OutlineMode.SOLID, Color.LIGHT_GRAY),
-                        new LineImage(new Posn(0, 20), Color.GRAY))),
-                new BesideImage(new LineImage(new Posn(0, 20), Color.GRAY),
-                    new RectangleImage(20, 20, OutlineMode.SOLID, Color.MAGENTA)))));
+                    new RectangleImage(20, 20, OutlineMode.SOLID, Color.LIGHT_GRAY)),
+                new RectangleImage(20, 20, OutlineMode.SOLID, Color.MAGENTA))));
 
   }
 
@@ -2072,19 +9358,20 @@ class ExamplesMaze {
     this.testMaze.onTick();
     this.testMaze.onTick();
 
+    // the passage keys hashed from the test maze's seed leave the top wall up
     t.checkExpect(this.testMaze.render(),
         new AboveImage(
             new AboveImage(new EmptyImage(),
                 new BesideImage(
                     new BesideImage(new EmptyImage(),
-                        new RectangleImage(20, 20, OutlineMode.SOLID, Color.GREEN)),
-                    new RectangleImage(20, 20, OutlineMode.SOLID, Color.LIGHT_GRAY))),
+                        new BesideImage(new RectangleImage(20, 20, OutlineMode.SOLID, Color.GREEN),
+                            new LineImage(new Posn(0, 20), Color.GRAY))),
+                    new BesideImage(new LineImage(new Posn(0, 20), Color.GRAY),
+                        new RectangleImage(20, 20, OutlineMode.SOLID, Color.LIGHT_GRAY)))),
             new BesideImage(
                 new BesideImage(new EmptyImage(),
-                    new BesideImage(new RectangleImage(20, 20, OutlineMode.SOLID, Color.LIGHT_GRAY),
-                        new LineImage(new Posn(0, 20), Color.GRAY))),
-                new BesideImage(new LineImage(new Posn(0, 20), Color.GRAY),
-                    new RectangleImage(20, 20, OutlineMode.SOLID, Color.MAGENTA)))));
+                    new RectangleImage(20, 20, OutlineMode.SOLID, Color.LIGHT_GRAY)),
+                new RectangleImage(20, 20, OutlineMode.SOLID, Color.MAGENTA))));
 
     // search control
     this.initData();
@@ -2196,6 +9483,42 @@ class ExamplesMaze {
                         new LineImage(new Posn(0, 20), Color.GRAY))),
                 new BesideImage(new LineImage(new Posn(0, 20), Color.GRAY),
                     new RectangleImage(20, 20, OutlineMode.SOLID, Color.BLUE)))));
+
+    // the counters follow the visits one tick at a time
+    this.initData();
+    this.testMaze.setBFSState();
+    this.testMaze.onTick();
+    t.checkExpect(this.testMaze.stepCount(), 1);
+    t.checkExpect(this.testMaze.wrongMoveCount(), 0);
+    this.testMaze.onTick();
+    this.testMaze.onTick();
+    t.checkExpect(this.testMaze.stepCount(), 3);
+    t.checkExpect(this.testMaze.wrongMoveCount(), 1);
+
+    // with visited cells hidden, one tick skips to the counters at the end of
+    // the search without painting any visit
+    Maze played = new Maze(30, 30, new Random(4));
+    played.finishConstruction();
+    played.onKeyEvent("b");
+    while (!played.canSeekSearch() || played.timelinePosition() < played.timelineLength()) {
+      played.onTick();
+    }
+    Maze skipped = new Maze(30, 30, new Random(4));
+    skipped.finishConstruction();
+    skipped.onKeyEvent("p");
+    skipped.onKeyEvent("b");
+    skipped.onTick();
+    t.checkExpect(skipped.stepCount(), played.stepCount());
+    t.checkExpect(skipped.wrongMoveCount(), played.wrongMoveCount());
+    t.checkExpect(played.stepCount() > played.wrongMoveCount(), true);
+    t.checkExpect(played.wrongMoveCount() > 0, true);
+    boolean unvisited = true;
+    for (int cell = 0; cell < 30 * 30; cell += 1) {
+      unvisited = unvisited && skipped.colorAt(cell / 30, cell % 30) != Palette.VISITED;
+    }
+    t.checkExpect(unvisited, true);
+    skipped.onTick();
+    t.checkExpect(skipped.stepCount(), played.stepCount());
   }
 
   // test onKeyEvent
@@ -2589,4 +9912,2204 @@ class ExamplesMaze {
                 new BesideImage(new LineImage(new Posn(0, 20), Color.GRAY),
                     new RectangleImage(20, 20, OutlineMode.SOLID, new Color(255, 200, 0))))));
   }
+
+  // test JsonLine parse
+  void testJsonLine(Tester t) {
+    JsonLine json = JsonLine.parse("{\"op\": \"solve\", \"width\":12,\"bfs\" : true }");
+
+    t.checkExpect(json.getString("op", ""), "solve");
+    t.checkExpect(json.getInt("width", 0), 12);
+    t.checkExpect(json.getInt("height", 7), 7);
+    t.checkExpect(json.getBoolean("bfs", false), true);
+    t.checkExpect(json.has("seed"), false);
+    t.checkExpect(JsonLine.parse("{}").has("op"), false);
+
+    t.checkException(new IllegalArgumentException("expected a JSON object"), json, "parse",
+        "[1, 2]");
+    t.checkException(new IllegalArgumentException("expected ':' after op"), json, "parse",
+        "{\"op\" \"solve\"}");
+    t.checkException(new IllegalArgumentException("expected a number for width"),
+        JsonLine.parse("{\"width\":\"wide\"}"), "getInt", "width", 0);
+    t.checkException(new IllegalArgumentException("number out of range for width"),
+        JsonLine.parse("{\"width\":4294967306}"), "getInt", "width", 0);
+    t.checkExpect(JsonLine.parse("{\"seed\":4294967306}").getLong("seed", 0), 4294967306L);
+    t.checkExpect(JsonLine.parse("{\"bfs\":false}").getBoolean("bfs", true), false);
+    t.checkException(new IllegalArgumentException("expected true or false for bfs"),
+        JsonLine.parse("{\"bfs\":\"yes\"}"), "getBoolean", "bfs", false);
+  }
+
+  // test LatencyHistogram percentiles
+  void testLatencyHistogram(Tester t) {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    t.checkExpect(histogram.percentile(0.5), 0L);
+
+    for (int i = 1; i <= 100; i += 1) {
+      histogram.record(i);
+    }
+
+    t.checkExpect(histogram.count(), 100L);
+    t.checkExpect(histogram.max(), 100L);
+    t.checkExpect(histogram.percentile(0.1), 10L);
+    t.checkExpect(histogram.percentile(0.5), 50L);
+    t.checkExpect(histogram.percentile(0.99), 96L);
+    t.checkExpect(LatencyHistogram.lowerBound(LatencyHistogram.bucketOf(1000003)), 983040L);
+  }
+
+  // test MazeServer with jobs from the load generator
+  void testMazeServer(Tester t) throws IOException, InterruptedException {
+    MazeServer server = new MazeServer(2, 1);
+    StringWriter out = new StringWriter();
+
+    new MazeLoadGenerator(20, 6, new Random(3)).drive(server, out);
+
+    String[] lines = out.toString().split("\n");
+    t.checkExpect(lines.length, 20);
+    t.checkExpect(server.metrics().completed(), 20L);
+    t.checkExpect(server.metrics().queueDepth(), 0);
+    t.checkExpect(server.metrics().latencyPercentile(0.5)
+        <= server.metrics().latencyPercentile(0.99), true);
+
+    out = new StringWriter();
+    server.serve(new BufferedReader(new StringReader(
+        "{\"id\":\"a\",\"op\":\"solve\",\"width\":2,\"height\":2,\"seed\":1,\"algorithm\":\"dfs\"}\n"
+            + "\n" + "{\"op\":\"fly\"}\n"
+            + "{\"id\":\"b\",\"op\":\"solve\",\"width\":1e3}\n")), out);
+    server.shutdown();
+
+    // results stream back as jobs finish, so order them before checking
+    lines = out.toString().split("\n");
+    Arrays.sort(lines);
+    t.checkExpect(lines.length, 3);
+    t.checkExpect(lines[0], "{\"id\":\"\",\"ok\":false,\"error\":\"unknown op fly\"}");
+    // a job that parses but is invalid is answered under its own id
+    t.checkExpect(lines[2],
+        "{\"id\":\"b\",\"ok\":false,\"error\":\"expected a number for width\"}");
+    t.checkExpect(lines[1].startsWith("{\"id\":\"a\",\"op\":\"solve\",\"ok\":true,\"width\":2,"
+        + "\"height\":2,\"seed\":1,\"passages\":3,\"algorithm\":\"dfs\",\"pathLength\":3"), true);
+  }
+
+
+  // test IndexUnionFind
+  void testIndexUnionFind(Tester t) {
+    IndexUnionFind uf = new IndexUnionFind();
+
+    uf.reset(4);
+    t.checkExpect(uf.treeCount(), 4);
+    t.checkExpect(uf.find(2), 2);
+
+    uf.union(0, 1);
+    uf.union(2, 3);
+    uf.union(1, 0);
+    t.checkExpect(uf.treeCount(), 2);
+    t.checkExpect(uf.find(1) == uf.find(0), true);
+    t.checkExpect(uf.find(1) == uf.find(2), false);
+
+    uf.union(3, 0);
+    t.checkExpect(uf.treeCount(), 1);
+    t.checkExpect(uf.find(1) == uf.find(2), true);
+
+    // resetting reuses the arrays and separates every index again
+    uf.reset(3);
+    t.checkExpect(uf.treeCount(), 3);
+    t.checkExpect(uf.find(1), 1);
+  }
+
+  // test NodeArena reuse on resize
+  void testNodeArena(Tester t) {
+    NodeArena arena = new NodeArena();
+
+    ArrayList<ArrayList<Node>> grid = arena.prepare(3, 2, MazeMask.full(3, 2),
+        Topology.SQUARE);
+    Node first = grid.get(0).get(0);
+    Node last = grid.get(1).get(2);
+    t.checkExpect(grid.size(), 2);
+    t.checkExpect(grid.get(0).size(), 3);
+
+    ArrayList<Edge> edges = new ArrayList<Edge>();
+    first.addEdgesToList(edges);
+    t.checkExpect(edges.size(), 2);
+    edges = new ArrayList<Edge>();
+    last.addEdgesToList(edges);
+    t.checkExpect(edges.size(), 2);
+
+    // growing keeps the existing Nodes and at least doubles the capacity
+    t.checkExpect(arena.prepare(4, 2, MazeMask.full(4, 2), Topology.SQUARE), grid);
+    t.checkExpect(grid.get(0).size(), 6);
+    t.checkExpect(grid.get(0).get(0) == first, true);
+    edges = new ArrayList<Edge>();
+    last.addEdgesToList(edges);
+    t.checkExpect(edges.size(), 3);
+
+    // shrinking back reconnects only the smaller region
+    arena.prepare(3, 2, MazeMask.full(3, 2), Topology.SQUARE);
+    t.checkExpect(grid.get(1).get(2) == last, true);
+    edges = new ArrayList<Edge>();
+    last.addEdgesToList(edges);
+    t.checkExpect(edges.size(), 2);
+
+    // resizing a Maze keeps generating spanning trees
+    Maze resized = new Maze(8, 8, new Random(11));
+    resized.finishConstruction();
+    t.checkExpect(resized.passageCount(), 63);
+    resized.genNewMaze(12, 5);
+    resized.solve(true);
+    t.checkExpect(resized.passageCount(), 59);
+    t.checkExpect(resized.pathLength() >= 16, true);
+    resized.genNewMaze(8, 8);
+    resized.finishConstruction();
+    t.checkExpect(resized.passageCount(), 63);
+  }
+
+
+  // returns the number of bytes the current thread has allocated so far
+  long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  // returns whether the given JFR event was recorded while Maze.onTick was
+  // running
+  boolean duringOnTick(RecordedEvent event) {
+    if (event.getStackTrace() == null) {
+      return false;
+    }
+
+    for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+      if (frame.getMethod().getName().equals("onTick")
+          && frame.getMethod().getType().getName().equals("Maze")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // test that construction and search animation ticks allocate nothing
+  void testOnTickAllocations(Tester t) throws IOException {
+    Maze big = new Maze(40, 40, new Random(5));
+
+    // warm up the tick path, then measure what reading the counter costs
+    // construction runs two steps per tick on this board, so these ticks stay
+    // within its 1599 steps
+    for (int i = 0; i < 100; i += 1) {
+      big.onTick();
+    }
+    this.allocatedBytes();
+    long overhead = -this.allocatedBytes() + this.allocatedBytes();
+
+    long before = this.allocatedBytes();
+    for (int i = 0; i < 250; i += 1) {
+      big.onTick();
+    }
+    long constructionBytes = this.allocatedBytes() - before - overhead;
+
+    Recording recording = new Recording();
+    recording.enable("jdk.ObjectAllocationInNewTLAB").withStackTrace();
+    recording.enable("jdk.ObjectAllocationOutsideTLAB").withStackTrace();
+    recording.start();
+
+    for (int i = 0; i < 250; i += 1) {
+      big.onTick();
+    }
+
+    big.finishConstruction();
+    big.setBFSState();
+    for (int i = 0; i < 50; i += 1) {
+      big.onTick();
+    }
+
+    before = this.allocatedBytes();
+    for (int i = 0; i < 500; i += 1) {
+      big.onTick();
+    }
+    long searchBytes = this.allocatedBytes() - before - overhead;
+
+    recording.stop();
+    Path dump = Files.createTempFile("maze-ontick", ".jfr");
+    recording.dump(dump);
+    recording.close();
+
+    int onTickAllocations = 0;
+    for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+      if (this.duringOnTick(event)) {
+        onTickAllocations += 1;
+      }
+    }
+    Files.delete(dump);
+
+    t.checkExpect(constructionBytes, 0L);
+    t.checkExpect(searchBytes, 0L);
+    t.checkExpect(onTickAllocations, 0);
+  }
+
+
+  // test AnimationScheduler
+  void testAnimationScheduler(Tester t) {
+    AnimationScheduler scheduler = new AnimationScheduler(0.01, 10, 0.5);
+
+    // short animations move one step per tick, long ones spread over 1000 ticks
+    t.checkExpect(scheduler.stepsPerTick(500, 0), 1);
+    t.checkExpect(scheduler.stepsPerTick(5000, 10000000L), 5);
+    t.checkExpect(scheduler.stepsPerTick(0, 20000000L), 1);
+
+    // steps that cost 1ms each only get half of each 10ms tick
+    scheduler.recordSteps(10, 10000000L);
+    t.checkExpect(scheduler.stepsPerTick(100000, 30000000L), 5);
+
+    // slower ticks, e.g. from expensive frames, run more steps per tick
+    AnimationScheduler slow = new AnimationScheduler(0.01, 10, 0.5);
+    slow.stepsPerTick(1000, 0);
+    t.checkExpect(slow.stepsPerTick(1000, 100000000L), 10);
+    slow.recordSteps(10, 10000000L);
+    t.checkExpect(slow.stepsPerTick(1000000, 200000000L), 50);
+
+    // a Maze's construction animation finishes in about 1000 ticks
+    Maze big = new Maze(50, 50, new Random(2));
+    int ticks = 0;
+    while (big.animationLength() > 0 && ticks < 5000) {
+      big.onTick();
+      ticks += 1;
+    }
+    t.checkExpect(big.passageCount(), 2499);
+    t.checkExpect(ticks > 800 && ticks <= 1000, true);
+  }
+
+
+  // test Palette colors and gradient buckets
+  void testPalette(Tester t) {
+    t.checkExpect(Palette.color(Palette.UNVISITED), Color.LIGHT_GRAY);
+    t.checkExpect(Palette.color(Palette.VISITED), new Color(145, 184, 242, 255));
+    t.checkExpect(Palette.color(Palette.GRADIENT_ORANGE), new Color(255, 200, 0));
+
+    t.checkExpect(Palette.gradient(0, 10), Palette.GRADIENT_RED);
+    t.checkExpect(Palette.gradient(2, 10), Palette.GRADIENT_RED);
+    t.checkExpect(Palette.gradient(3, 10), Palette.GRADIENT_ORANGE);
+    t.checkExpect(Palette.gradient(6, 10), Palette.GRADIENT_YELLOW);
+    t.checkExpect(Palette.gradient(8, 10), Palette.GRADIENT_GREEN);
+    t.checkExpect(Palette.gradient(10, 10), Palette.GRADIENT_BLUE);
+  }
+
+  // test paint and resetCell on the palette plane
+  void testPaintCells(Tester t) {
+    this.initData();
+
+    this.testMaze.paint(this.botLeft, Palette.VISITED);
+    this.testMaze.paint(this.topLeft, Palette.USER);
+    t.checkExpect(this.testMaze.colorAt(1, 0), Palette.VISITED);
+    t.checkExpect(this.testMaze.colorAt(0, 0), Palette.USER);
+
+    this.testMaze.resetCell(this.botLeft);
+    this.testMaze.resetCell(this.topLeft);
+    t.checkExpect(this.testMaze.colorAt(1, 0), Palette.UNVISITED);
+    t.checkExpect(this.testMaze.colorAt(0, 0), Palette.START);
+
+    // growing the maze grows the plane, and shrinking it keeps the plane
+    Maze resized = new Maze(4, 4, new Random(3));
+    resized.genNewMaze(9, 7);
+    t.checkExpect(resized.colorAt(6, 8), Palette.END);
+    t.checkExpect(resized.colorAt(3, 3), Palette.UNVISITED);
+    resized.genNewMaze(5, 5);
+    t.checkExpect(resized.colorAt(4, 4), Palette.END);
+  }
+
+
+  // test MetricsRegistry counters, histograms, timers and dumps
+  void testMetricsRegistry(Tester t) throws JMException {
+    MetricsRegistry registry = new MetricsRegistry();
+    MetricCounter counter = registry.counter("c");
+    MetricHistogram histogram = registry.histogram("h");
+    MetricTimer timer = registry.timer("t");
+
+    // nothing is recorded while the registry is disabled
+    counter.add(5);
+    histogram.record(7);
+    t.checkExpect(timer.start(), MetricTimer.NOT_STARTED);
+    timer.stop(timer.start());
+    t.checkExpect(counter.get(), 0L);
+    t.checkExpect(histogram.values().count(), 0L);
+    t.checkExpect(timer.nanos().count(), 0L);
+
+    registry.setEnabled(true);
+    counter.add(5);
+    counter.add(2);
+    histogram.record(7);
+    timer.stop(timer.start());
+    t.checkExpect(counter.get(), 7L);
+    t.checkExpect(histogram.attribute("P50"), 7L);
+    t.checkExpect(timer.nanos().count(), 1L);
+    t.checkExpect(registry.dump().startsWith("counter c 7\nhistogram h count=1 p50=7 p99=7 "
+        + "max=7\ntimer t count=1 "), true);
+
+    // each metric is published as an MBean
+    MBeanServer server = MBeanServerFactory.newMBeanServer();
+    registry.registerMBeans(server, "test");
+    registry.registerMBeans(server, "test");
+    t.checkExpect(server.getAttribute(new ObjectName("test:type=counter,name=\"c\""), "Count"),
+        7L);
+    t.checkExpect(server.getAttribute(new ObjectName("test:type=histogram,name=\"h\""), "Max"),
+        7L);
+    t.checkExpect(server.getAttribute(new ObjectName("test:type=timer,name=\"t\""), "Count"),
+        1L);
+  }
+
+  // test that Maze generation, search and rendering record MazeMetrics
+  void testMazeMetrics(Tester t) {
+    long generated = MazeMetrics.GENERATE.nanos().count();
+    long sorted = MazeMetrics.SORT.nanos().count();
+    long expanded = MazeMetrics.EXPANDED.get();
+    long scenes = MazeMetrics.SCENE.nanos().count();
+
+    // disabled by default
+    Maze quiet = new Maze(6, 6, new Random(1));
+    quiet.solve(true);
+    t.checkExpect(MazeMetrics.GENERATE.nanos().count(), generated);
+
+    MazeMetrics.REGISTRY.setEnabled(true);
+    Maze measured = new Maze(6, 6, new Random(1));
+    measured.solve(true);
+    measured.onTick();
+    measured.makeScene();
+    MazeMetrics.REGISTRY.setEnabled(false);
+
+    t.checkExpect(MazeMetrics.GENERATE.nanos().count(), generated + 1);
+    t.checkExpect(MazeMetrics.SORT.nanos().count() > sorted, true);
+    t.checkExpect(MazeMetrics.EXPANDED.get() - expanded >= measured.visitedCount(), true);
+    t.checkExpect(MazeMetrics.SCENE.nanos().count(), scenes + 1);
+    t.checkExpect(MazeMetrics.REGISTRY.dump().contains("timer generate.initNodes count="), true);
+  }
+
+
+  // test that the maze lifecycle JFR events appear in a recording
+  void testJfrEvents(Tester t) throws IOException {
+    Recording recording = new Recording();
+    recording.enable("maze.MazeGenerated");
+    recording.enable("maze.SearchCompleted");
+    recording.enable("maze.GradientComputed");
+    recording.enable("maze.FrameRendered");
+    recording.enable("maze.UserMove");
+    recording.start();
+
+    Maze recorded = new Maze(4, 3, new Random(8));
+    recorded.finishConstruction();
+    recorded.onKeyEvent("left");
+    recorded.solve(false);
+    recorded.colorGradient(recorded.nodeAt(0));
+    recorded.makeScene();
+
+    recording.stop();
+    Path dump = Files.createTempFile("maze-events", ".jfr");
+    recording.dump(dump);
+    recording.close();
+
+    HashMap<String, Integer> counts = new HashMap<String, Integer>();
+    RecordedEvent generated = null;
+    RecordedEvent move = null;
+    for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+      String name = event.getEventType().getName();
+      counts.put(name, counts.getOrDefault(name, 0) + 1);
+      if (name.equals("maze.MazeGenerated")) {
+        generated = event;
+      }
+      if (name.equals("maze.UserMove")) {
+        move = event;
+      }
+    }
+    Files.delete(dump);
+
+    t.checkExpect(counts.get("maze.MazeGenerated"), 1);
+    // the gradient prices every cell with one search of its own, not one per cell
+    t.checkExpect(counts.get("maze.SearchCompleted") >= 2, true);
+    t.checkExpect(counts.get("maze.GradientComputed"), 1);
+    t.checkExpect(counts.get("maze.FrameRendered"), 1);
+    t.checkExpect(counts.get("maze.UserMove"), 1);
+
+    t.checkExpect(generated.getInt("width"), 4);
+    t.checkExpect(generated.getInt("height"), 3);
+    t.checkExpect(generated.getString("bias"), "none");
+    t.checkExpect(generated.getInt("passages"), 11);
+    t.checkExpect(move.getString("key"), "left");
+    t.checkExpect(move.getBoolean("valid"), false);
+  }
+
+
+  // tests for MazeMask and masked mazes
+  void testMazeMask(Tester t) {
+    MazeMask full = MazeMask.full(3, 2);
+    t.checkExpect(full.isFull(), true);
+    t.checkExpect(full.activeCount(), 6);
+    t.checkExpect(full.activeCell(4), 4);
+    t.checkExpect(full.resized(3, 2), full);
+    t.checkExpect(full.resized(5, 4).activeCount(), 20);
+
+    BitSet ring = new BitSet();
+    ring.set(0, 9);
+    ring.clear(4);
+    MazeMask hole = new MazeMask(3, 3, ring);
+    t.checkExpect(hole.isFull(), false);
+    t.checkExpect(hole.isActive(4), false);
+    t.checkExpect(hole.activeCount(), 8);
+    t.checkExpect(hole.activeCell(4), 5);
+    t.checkExpect(hole.resized(6, 6).activeCount(), 32);
+    // a shrunk mask keeps a cell for every cell it covers, however sparse
+    BitSet dot = new BitSet();
+    dot.set(55);
+    t.checkExpect(new MazeMask(10, 10, dot).resized(3, 3).activeCount(), 1);
+    t.checkExpect(new MazeMask(10, 10, dot).resized(3, 3).isActive(4), true);
+    t.checkConstructorException(
+        new IllegalArgumentException("a mask needs at least one active cell"), "MazeMask", 2, 2,
+        new BitSet());
+
+    MazeMask circle = MazeMask.circle(20, 20);
+    t.checkExpect(circle.isActive(0), false);
+    t.checkExpect(circle.isActive(10 * 20 + 10), true);
+    t.checkExpect(circle.activeCount() > 250 && circle.activeCount() < 350, true);
+
+    BufferedImage image = new BufferedImage(4, 2, BufferedImage.TYPE_INT_ARGB);
+    image.setRGB(0, 0, Color.BLACK.getRGB());
+    image.setRGB(3, 1, Color.DARK_GRAY.getRGB());
+    image.setRGB(1, 1, Color.WHITE.getRGB());
+    MazeMask sampled = MazeMask.fromImage(image, 4, 2);
+    t.checkExpect(sampled.activeCount(), 2);
+    t.checkExpect(sampled.activeCell(0), 0);
+    t.checkExpect(sampled.activeCell(1), 7);
+
+    MazeMask word = MazeMask.text("HI", 32, 16);
+    t.checkExpect(word.activeCount() > 0 && !word.isFull(), true);
+    t.checkException(new IllegalArgumentException("unknown mask square"), full, "fromSpec",
+        "square", 4, 4);
+  }
+
+  // tests generating, solving and rendering mazes in the shape of a mask
+  void testMaskedMaze(Tester t) {
+    MazeMask circle = MazeMask.circle(20, 20);
+    Maze maze = new Maze(20, 20, new Random(5), circle);
+    maze.finishConstruction();
+    t.checkExpect(maze.passageCount(), circle.activeCount() - 1);
+    t.checkExpect(maze.colorAt(0, 0), Palette.UNVISITED);
+    // the user starts on the first active cell
+    t.checkExpect(maze.colorAt(circle.activeCell(0) / 20, circle.activeCell(0) % 20),
+        Palette.USER);
+
+    maze.solve(true);
+    t.checkExpect(maze.pathLength() > 0, true);
+    t.checkExpect(maze.visitedCount() <= circle.activeCount(), true);
+    t.checkExpect(maze.render() != null, true);
+
+    // letters are not connected to each other, so Kruskal's algorithm spans
+    // each letter with its own tree, and the trees are not joined
+    MazeMask word = MazeMask.text("II", 24, 12);
+    Maze spelled = new Maze(24, 12, new Random(5), word);
+    spelled.finishConstruction();
+    t.checkExpect(spelled.passageCount() < word.activeCount() - 1, true);
+    spelled.solve(false);
+    t.checkExpect(spelled.pathLength() > 0, true);
+
+    // resizing samples the mask as it was set, so shrinking and growing back
+    // restores the same letters, and a mask too sparse for a small board keeps
+    // a cell rather than vanishing
+    int spanned = spelled.passageCount();
+    spelled.genNewMaze(5, 5);
+    spelled.genNewMaze(24, 12);
+    spelled.finishConstruction();
+    t.checkExpect(spelled.passageCount(), spanned);
+    BitSet dot = new BitSet();
+    dot.set(55);
+    Maze speck = new Maze(10, 10, new Random(5), new MazeMask(10, 10, dot));
+    speck.genNewMaze(5, 5);
+    speck.finishConstruction();
+    t.checkExpect(speck.passageCount(), 0);
+    t.checkExpect(speck.colorAt(2, 2), Palette.USER);
+
+    Maze toggled = new Maze(10, 10, new Random(5));
+    toggled.finishConstruction();
+    toggled.onKeyEvent("c");
+    toggled.finishConstruction();
+    t.checkExpect(toggled.passageCount(), MazeMask.circle(10, 10).activeCount() - 1);
+    toggled.onKeyEvent("c");
+    toggled.finishConstruction();
+    t.checkExpect(toggled.passageCount(), 99);
+
+    t.checkExpect(new MazeJob("m", "generate", 20, 20, 5, true, "circle").run()
+        .contains("\"passages\":" + (circle.activeCount() - 1)), true);
+    // a client cannot make the server open a file
+    t.checkException(new IllegalArgumentException("mask must be full, circle or text:WORDS"),
+        new MazeJob("x", "solve", 2, 2, 1, true), "fromJson",
+        JsonLine.parse("{\"mask\":\"png:/etc/passwd\"}"), new Random());
+    t.checkExpect(MazeJob.fromJson(JsonLine.parse("{\"mask\":\"text:HI\",\"width\":20}"),
+        new Random(1)).run().contains("\"ok\":true"), true);
+    t.checkException(new IllegalArgumentException("a mask needs at least one active cell"),
+        circle, "fromSpec", "text:", 4, 4);
+  }
+
+
+  // tests for Topology
+  void testTopology(Tester t) {
+    t.checkExpect(Topology.named("hex"), Topology.HEX);
+    t.checkException(new IllegalArgumentException("unknown topology cube"), Topology.SQUARE,
+        "named", "cube");
+
+    t.checkExpect(Topology.SQUARE.degree(3, 4), 4);
+    t.checkExpect(Topology.SQUARE.slot(3, 4, 1, 0), 2);
+    t.checkExpect(Topology.SQUARE.slot(3, 4, 1, 1), -1);
+
+    // odd hex rows are shifted right, so their diagonal neighbors are too
+    t.checkExpect(Topology.HEX.degree(0, 0), 6);
+    t.checkExpect(Topology.HEX.slot(2, 2, 1, -1), 2);
+    t.checkExpect(Topology.HEX.slot(3, 2, 1, -1), -1);
+    t.checkExpect(Topology.HEX.slot(3, 2, 1, 1), 1);
+
+    // triangles alternate between pointing up and down
+    t.checkExpect(Topology.TRIANGLE.degree(0, 0), 3);
+    t.checkExpect(Topology.TRIANGLE.slot(0, 0, 1, 0), 2);
+    t.checkExpect(Topology.TRIANGLE.slot(0, 0, -1, 0), -1);
+    t.checkExpect(Topology.TRIANGLE.slot(0, 1, -1, 0), 2);
+
+    // the offset tables are shared, so iterating neighbors never allocates
+    t.checkExpect(Topology.HEX.rowOffsets(0, 0) == Topology.HEX.rowOffsets(4, 7), true);
+    t.checkExpect(Topology.HEX.colOffsets(1, 0) == Topology.HEX.colOffsets(3, 5), true);
+
+    // every neighbor lists the cell back, and shares the side facing it
+    Topology[] topologies = new Topology[] { Topology.SQUARE, Topology.HEX, Topology.TRIANGLE };
+    double[] xs = new double[Topology.MAX_DEGREE];
+    double[] ys = new double[Topology.MAX_DEGREE];
+    double[] otherXs = new double[Topology.MAX_DEGREE];
+    double[] otherYs = new double[Topology.MAX_DEGREE];
+    boolean symmetric = true;
+    for (Topology topology : topologies) {
+      for (int row = 2; row < 4; row += 1) {
+        for (int col = 2; col < 4; col += 1) {
+          int[] dr = topology.rowOffsets(row, col);
+          int[] dc = topology.colOffsets(row, col);
+          topology.corners(row, col, 20, xs, ys);
+          for (int k = 0; k < dr.length; k += 1) {
+            int back = topology.slot(row + dr[k], col + dc[k], -dr[k], -dc[k]);
+            topology.corners(row + dr[k], col + dc[k], 20, otherXs, otherYs);
+            int degree = topology.degree(row + dr[k], col + dc[k]);
+            int next = (k + 1) % dr.length;
+            int otherNext = (back + 1) % degree;
+            // neighboring triangles run their corners in opposite directions
+            boolean reversed = Math.abs(xs[k] - otherXs[otherNext]) < 1e-9
+                && Math.abs(ys[k] - otherYs[otherNext]) < 1e-9
+                && Math.abs(xs[next] - otherXs[back]) < 1e-9
+                && Math.abs(ys[next] - otherYs[back]) < 1e-9;
+            boolean same = Math.abs(xs[k] - otherXs[back]) < 1e-9
+                && Math.abs(ys[k] - otherYs[back]) < 1e-9
+                && Math.abs(xs[next] - otherXs[otherNext]) < 1e-9
+                && Math.abs(ys[next] - otherYs[otherNext]) < 1e-9;
+            symmetric = symmetric && back >= 0 && (reversed || same);
+          }
+        }
+      }
+    }
+    t.checkExpect(symmetric, true);
+  }
+
+  // tests generating, solving and rendering hexagonal and triangular mazes
+  void testTopologyMazes(Tester t) {
+    Topology[] topologies = new Topology[] { Topology.HEX, Topology.TRIANGLE };
+    for (Topology topology : topologies) {
+      Maze maze = new Maze(12, 9, new Random(3), MazeMask.full(12, 9), topology);
+      maze.finishConstruction();
+      t.checkExpect(maze.passageCount(), 12 * 9 - 1);
+
+      maze.solve(true);
+      int bfsLength = maze.pathLength();
+      t.checkExpect(bfsLength > 0, true);
+      t.checkExpect(maze.visitedCount() <= 12 * 9, true);
+
+      // the path through a spanning tree is unique
+      maze.solve(false);
+      t.checkExpect(maze.pathLength(), bfsLength);
+
+      WorldImage image = maze.render();
+      t.checkExpect(image.getWidth(), (double) topology.imageWidth(12, 20));
+      t.checkExpect(image.getHeight(), (double) topology.imageHeight(9, 20));
+
+      maze.colorGradient(maze.nodeAt(0));
+      t.checkExpect(maze.colorAt(0, 0), Palette.GRADIENT_RED);
+
+      Maze circle = new Maze(16, 16, new Random(3), MazeMask.circle(16, 16), topology);
+      circle.finishConstruction();
+      t.checkExpect(circle.passageCount() <= MazeMask.circle(16, 16).activeCount() - 1, true);
+      circle.solve(true);
+      t.checkExpect(circle.pathLength() > 0, true);
+    }
+
+    // the start of a hex maze is drawn in the user's color, walls in gray
+    Maze hex = new Maze(4, 4, new Random(3), MazeMask.full(4, 4), Topology.HEX);
+    hex.finishConstruction();
+    ComputedPixelImage image = (ComputedPixelImage) hex.render();
+    t.checkExpect(image.getColorAt(10, 11), Color.YELLOW);
+    t.checkExpect(image.getColorAt(10, 0), Color.GRAY);
+
+    // the user can walk the solution of a triangle maze with the arrow keys
+    Maze triangles = new Maze(6, 4, new Random(3), MazeMask.full(6, 4), Topology.TRIANGLE);
+    triangles.finishConstruction();
+    triangles.solve(true);
+    triangles.setUserState();
+    int moves = 0;
+    boolean walked = true;
+    for (int i = triangles.pathLength() - 1; i > 0; i -= 1) {
+      int from = triangles.pathCell(i);
+      int to = triangles.pathCell(i - 1);
+      int rowStep = to / 6 - from / 6;
+      int colStep = to % 6 - from % 6;
+      walked = walked && triangles.step(from, rowStep, colStep) == to;
+      moves += 1;
+    }
+    t.checkExpect(walked, true);
+    t.checkExpect(moves, triangles.pathLength() - 1);
+
+    // on hexagons up and down lean toward the last left or right key, and take
+    // the other diagonal when that one is walled
+    Maze walk = new Maze(4, 4, new Random(3), MazeMask.full(4, 4), Topology.HEX);
+    walk.finishConstruction();
+    walk.openWall(0, 1);
+    walk.openWall(1, 4);
+    walk.openWall(1, 5);
+    walk.closeWall(5, 2);
+    walk.setUserState();
+    walk.onKeyEvent("right");
+    walk.onKeyEvent("down");
+    t.checkExpect(walk.colorAt(1, 1), Palette.USER);
+    walk.onKeyEvent("up");
+    t.checkExpect(walk.colorAt(0, 1), Palette.USER);
+    walk.closeWall(0, 1);
+    walk.onKeyEvent("left");
+    t.checkExpect(walk.colorAt(0, 1), Palette.USER);
+    walk.onKeyEvent("down");
+    t.checkExpect(walk.colorAt(1, 0), Palette.USER);
+
+    // every step of a hex maze's solution is one arrow key with a heading
+    Maze hexes = new Maze(7, 6, new Random(5), MazeMask.full(7, 6), Topology.HEX);
+    hexes.finishConstruction();
+    hexes.solve(true);
+    boolean stepped = true;
+    for (int i = hexes.pathLength() - 1; i > 0; i -= 1) {
+      int from = hexes.pathCell(i);
+      int to = hexes.pathCell(i - 1);
+      int rowStep = to / 7 - from / 7;
+      int colStep = to % 7 - from % 7;
+      if (rowStep != 0) {
+        // the diagonal with the larger column step is the one to the right
+        colStep = 2 * colStep + ((from / 7) % 2 == 0 ? 1 : -1);
+      }
+      stepped = stepped && hexes.step(from, rowStep, colStep) == to;
+    }
+    t.checkExpect(stepped, true);
+
+    Maze cycled = new Maze(5, 5, new Random(3));
+    cycled.finishConstruction();
+    cycled.onKeyEvent("t");
+    cycled.finishConstruction();
+    cycled.solve(true);
+    t.checkExpect(cycled.render() instanceof ComputedPixelImage, true);
+    cycled.onKeyEvent("t");
+    cycled.finishConstruction();
+    cycled.onKeyEvent("t");
+    cycled.finishConstruction();
+    t.checkExpect(cycled.render() instanceof ComputedPixelImage, false);
+
+    t.checkExpect(new MazeJob("h", "solve", 10, 10, 5, true, "full", Topology.HEX).run()
+        .contains("\"passages\":99"), true);
+  }
+
+
+  // tests for MazeVolume
+  void testMazeVolume(Tester t) {
+    MazeVolume volume = new MazeVolume(6, 5, 3);
+    t.checkExpect(volume.cellCount(), 90);
+    t.checkExpect(volume.cell(2, 4, 5), 89);
+    t.checkExpect(volume.levelOf(89), 2);
+    t.checkExpect(volume.rowOf(89), 4);
+    t.checkExpect(volume.colOf(89), 5);
+    t.checkExpect(volume.passageCount(), 0);
+
+    volume.generate(new Random(7), new IndexUnionFind());
+    t.checkExpect(volume.passageCount(), 89);
+
+    CellSearch search = new CellSearch();
+    t.checkExpect(search.run(volume, 0, 89, true), true);
+    int bfsLength = search.pathLength();
+    t.checkExpect(search.pathCell(0), 89);
+    t.checkExpect(search.pathCell(bfsLength - 1), 0);
+
+    // every step of the path goes through an open wall, and the path climbs
+    // through every level
+    int[] neighbors = new int[volume.maxDegree()];
+    boolean connected = true;
+    int levels = 0;
+    for (int i = 0; i < bfsLength - 1; i += 1) {
+      int count = volume.openNeighbors(search.pathCell(i), neighbors,
+          new int[volume.maxDegree()]);
+      boolean open = false;
+      for (int k = 0; k < count; k += 1) {
+        open = open || neighbors[k] == search.pathCell(i + 1);
+      }
+      connected = connected && open;
+      levels = Math.max(levels, volume.levelOf(search.pathCell(i)));
+    }
+    t.checkExpect(connected, true);
+    t.checkExpect(levels, 2);
+
+    // a spanning tree has only one path
+    t.checkExpect(search.run(volume, 0, 89, false), true);
+    t.checkExpect(search.pathLength(), bfsLength);
+    t.checkExpect(search.expanded() <= 90, true);
+
+    WorldImage level = volume.renderLevel(1, 10, new HeapPlane(90));
+    t.checkExpect(level.getWidth(), 61.0);
+    t.checkExpect(level.getHeight(), 51.0);
+    t.checkExpect(((ComputedPixelImage) level).getColorAt(0, 0), Color.GRAY);
+    t.checkExpect(((ComputedPixelImage) level).getColorAt(5, 5), Color.LIGHT_GRAY);
+
+    MazeVolumeWorld world = new MazeVolumeWorld(6, 5, 3, new Random(7));
+    world.onKeyEvent("down");
+    t.checkExpect(world.getLevel(), 0);
+    world.onKeyEvent("up");
+    world.onKeyEvent("up");
+    world.onKeyEvent("up");
+    t.checkExpect(world.getLevel(), 2);
+    world.onKeyEvent("b");
+    t.checkExpect(world.makeScene() != null, true);
+  }
+
+  // tests that a 200 x 200 x 50 volume generates in under a second
+  void testMazeVolumeSpeed(Tester t) {
+    MazeVolume volume = new MazeVolume(200, 200, 50);
+    IndexUnionFind unionFind = new IndexUnionFind();
+    volume.generate(new Random(1), unionFind);
+
+    long start = System.nanoTime();
+    volume.generate(new Random(2), unionFind);
+    long millis = (System.nanoTime() - start) / 1000000;
+    t.checkExpect(volume.passageCount(), 200 * 200 * 50 - 1);
+    t.checkExpect(millis < 1000, true);
+  }
+
+
+  // tests for IndexedMinHeap
+  void testIndexedMinHeap(Tester t) {
+    IndexedMinHeap heap = new IndexedMinHeap();
+    heap.reset(8);
+    t.checkExpect(heap.isEmpty(), true);
+    heap.push(3, 30);
+    heap.push(5, 10);
+    heap.push(1, 20);
+    heap.push(7, 40);
+    t.checkExpect(heap.size(), 4);
+    t.checkExpect(heap.contains(5), true);
+    t.checkExpect(heap.contains(2), false);
+
+    heap.decrease(7, 5);
+    t.checkExpect(heap.poll(), 7);
+    t.checkExpect(heap.key(7), 5L);
+    t.checkExpect(heap.contains(7), false);
+    t.checkExpect(heap.poll(), 5);
+    t.checkExpect(heap.poll(), 1);
+    t.checkExpect(heap.poll(), 3);
+    t.checkExpect(heap.isEmpty(), true);
+
+    // many keys come out sorted
+    Random rand = new Random(4);
+    heap.reset(1000);
+    for (int i = 0; i < 1000; i += 1) {
+      heap.push(i, rand.nextInt(500));
+    }
+    long last = -1;
+    boolean sorted = true;
+    while (!heap.isEmpty()) {
+      long key = heap.key(heap.poll());
+      sorted = sorted && key >= last;
+      last = key;
+    }
+    t.checkExpect(sorted, true);
+  }
+
+  // tests braided mazes and Dijkstra's algorithm
+  void testBraidAndDijkstra(Tester t) {
+    Maze perfect = new Maze(20, 20, new Random(9));
+    perfect.finishConstruction();
+    t.checkExpect(perfect.passageCount(), 399);
+    int deadEnds = perfect.deadEndCount();
+    t.checkExpect(deadEnds > 0, true);
+
+    // on a perfect maze every search finds the one path
+    perfect.solve(true);
+    int length = perfect.pathLength();
+    long cost = perfect.pathCost();
+    perfect.solveShortest(false);
+    t.checkExpect(perfect.pathLength(), length);
+    t.checkExpect(perfect.pathCost(), cost);
+
+    Maze braided = new Maze(20, 20, new Random(9));
+    braided.setBraid(0.5);
+    braided.finishConstruction();
+    int passages = braided.passageCount();
+    t.checkExpect(passages > 399, true);
+    t.checkExpect(braided.deadEndCount() < deadEnds, true);
+
+    // rerunning Kruskal's algorithm braids the same walls
+    t.checkExpect(braided.findValidPaths().size(), passages);
+
+    // BFS finds the fewest steps, Dijkstra's algorithm the smallest weight
+    braided.solve(true);
+    int bfsLength = braided.pathLength();
+    long bfsCost = braided.pathCost();
+    braided.solveShortest(false);
+    t.checkExpect(braided.pathLength() >= bfsLength, true);
+    t.checkExpect(braided.pathCost() <= bfsCost, true);
+
+    Maze full = new Maze(20, 20, new Random(9));
+    full.setBraid(1);
+    full.finishConstruction();
+    t.checkExpect(full.deadEndCount(), 0);
+
+    Maze hex = new Maze(12, 12, new Random(9), MazeMask.circle(12, 12), Topology.HEX);
+    hex.setBraid(1);
+    hex.finishConstruction();
+    t.checkExpect(hex.deadEndCount(), 0);
+    hex.solveShortest(false);
+    t.checkExpect(hex.pathLength() > 0, true);
+
+    String result = new MazeJob("w", "solve", 10, 10, 3, "dijkstra", "full", Topology.SQUARE,
+        0.5).run();
+    t.checkExpect(result.contains("\"algorithm\":\"dijkstra\""), true);
+    t.checkExpect(result.contains("\"cost\":"), true);
+    t.checkException(new IllegalArgumentException("unknown algorithm greedy"), new MazeJob("x",
+        "solve", 2, 2, 1, true), "fromJson", JsonLine.parse("{\"algorithm\":\"greedy\"}"),
+        new Random());
+
+    String report = new SearchBenchmark(15, 0.5, 0.3, 3, new Random(1)).run();
+    t.checkExpect(report.startsWith("bfs"), true);
+    t.checkExpect(report.contains("dijkstra 15x15 braid 0.50"), true);
+  }
+
+
+  // tests for BucketQueue
+  void testBucketQueue(Tester t) {
+    BucketQueue queue = new BucketQueue();
+    queue.reset(10, 9);
+    t.checkExpect(queue.isEmpty(), true);
+    queue.push(4, 3);
+    queue.push(2, 12);
+    queue.push(6, 7);
+    queue.push(8, 3);
+    t.checkExpect(queue.size(), 4);
+    t.checkExpect(queue.contains(2), true);
+    t.checkExpect(queue.contains(3), false);
+
+    queue.decrease(2, 5);
+    t.checkExpect(queue.key(2), 5L);
+    int first = queue.poll();
+    int second = queue.poll();
+    t.checkExpect(first + second, 12);
+    t.checkExpect(queue.key(first), 3L);
+    t.checkExpect(queue.poll(), 2);
+    queue.push(1, 14);
+    t.checkExpect(queue.poll(), 6);
+    t.checkExpect(queue.poll(), 1);
+    t.checkExpect(queue.isEmpty(), true);
+    t.checkExpect(queue.contains(1), false);
+
+    // keys come out sorted as long as each push stays within the span
+    Random rand = new Random(6);
+    queue.reset(1000, 20);
+    queue.push(0, 0);
+    long last = 0;
+    boolean sorted = true;
+    int pushed = 1;
+    while (!queue.isEmpty()) {
+      long key = queue.key(queue.poll());
+      sorted = sorted && key >= last;
+      last = key;
+      for (int k = 0; k < 2 && pushed < 1000; k += 1) {
+        queue.push(pushed, key + rand.nextInt(21));
+        pushed += 1;
+      }
+    }
+    t.checkExpect(sorted, true);
+    t.checkExpect(pushed, 1000);
+
+    // a push after the queue empties may be followed by a smaller key
+    queue.reset(10, 9);
+    queue.push(0, 38);
+    queue.poll();
+    queue.push(1, 40);
+    queue.push(2, 38);
+    t.checkExpect(queue.poll(), 2);
+    t.checkExpect(queue.poll(), 1);
+
+    // so may a push into a queue that is not empty, as when a search starts from
+    // several cells; the cursor moves back so the smaller key still comes first
+    queue.reset(10, 9);
+    queue.push(0, 40);
+    queue.push(1, 38);
+    queue.push(2, 44);
+    t.checkExpect(queue.poll(), 1);
+    t.checkExpect(queue.poll(), 0);
+    t.checkExpect(queue.poll(), 2);
+  }
+
+  // tests for TerrainMap
+  void testTerrainMap(Tester t) {
+    TerrainMap flat = TerrainMap.flat(4, 3);
+    t.checkExpect(flat.isFlat(), true);
+    t.checkExpect(flat.cost(5), TerrainMap.PLAIN);
+    t.checkExpect(flat.maxWeight(), 1);
+    t.checkExpect(flat.resized(4, 3), flat);
+    t.checkException(new IllegalArgumentException("a cell costs at least 1"), flat, "setCost",
+        2, (short) 0);
+
+    flat.setCost(5, TerrainMap.WATER);
+    t.checkExpect(flat.isFlat(), false);
+    t.checkExpect(flat.maxWeight(), 9);
+    int[] out = new int[4];
+    int[] weights = new int[4];
+    t.checkExpect(flat.openNeighbors(1, out, weights), 3);
+    t.checkExpect(out[0], 0);
+    t.checkExpect(out[1], 5);
+    t.checkExpect(weights[1], 9);
+    t.checkExpect(flat.estimate(0, 11), 5);
+    t.checkExpect(flat.resized(8, 6).cost(2 * 8 + 2), TerrainMap.WATER);
+
+    TerrainMap rough = TerrainMap.random(30, 20, new Random(3), 0.4);
+    int covered = 0;
+    for (int cell = 0; cell < 600; cell += 1) {
+      if (rough.cost(cell) != TerrainMap.PLAIN) {
+        covered += 1;
+      }
+    }
+    t.checkExpect(covered, 240);
+    t.checkExpect(TerrainMap.random(30, 20, new Random(3), 0).isFlat(), true);
+    t.checkException(new IllegalArgumentException("terrain must be between 0 and 1"),
+        rough, "random", 2, 2, new Random(), 1.5);
+
+    t.checkExpect(Topology.HEX.steps(0, 0, 1, 0), 1);
+    t.checkExpect(Topology.HEX.steps(1, 0, 0, 1), 1);
+    t.checkExpect(Topology.HEX.steps(0, 0, 4, 0), 4);
+    t.checkExpect(Topology.HEX.steps(0, 0, 0, 3), 3);
+    t.checkExpect(Topology.TRIANGLE.steps(2, 1, 0, 3), 4);
+
+    // Dijkstra's algorithm and A* agree on the cheapest cost, and both queues do
+    CellSearch search = new CellSearch();
+    t.checkExpect(search.runShortest(rough, 0, 599, false), true);
+    long cost = search.pathCost();
+    int settled = search.expanded();
+    t.checkExpect(search.distance(599), cost);
+    t.checkExpect(cost >= 29 + 19, true);
+    t.checkExpect(search.runShortest(rough, 0, 599, true), true);
+    t.checkExpect(search.pathCost(), cost);
+    t.checkExpect(search.expanded() <= settled, true);
+
+    TerrainMap steep = TerrainMap.random(30, 20, new Random(3), 0.4);
+    steep.setCost(0, (short) 20000);
+    steep.setCost(0, rough.cost(0));
+    t.checkExpect(steep.maxWeight(), 20000);
+    t.checkExpect(search.runShortest(steep, 0, 599, false), true);
+    t.checkExpect(search.pathCost(), cost);
+    t.checkExpect(search.runShortest(steep, 0, 599, true), true);
+    t.checkExpect(search.pathCost(), cost);
+
+    // a target of -1 prices every cell
+    t.checkExpect(search.runShortest(rough, 0, -1, false), false);
+    t.checkExpect(search.expanded(), 600);
+    t.checkExpect(search.distance(599), cost);
+    t.checkExpect(search.distance(0), 0L);
+  }
+
+  // tests mazes over terrain
+  void testTerrainMaze(Tester t) {
+    Maze maze = new Maze(20, 20, new Random(12));
+    maze.setBraid(0.5);
+    maze.finishConstruction();
+    TerrainMap terrain = TerrainMap.random(20, 20, new Random(2), 0.5);
+    maze.setTerrain(terrain);
+    t.checkException(new IllegalArgumentException("terrain must be 20x20"), maze, "setTerrain",
+        TerrainMap.flat(5, 5));
+
+    int mud = -1;
+    for (int cell = 1; cell < 400 && mud < 0; cell += 1) {
+      if (terrain.cost(cell) == TerrainMap.MUD) {
+        mud = cell;
+      }
+    }
+    t.checkExpect(maze.colorAt(mud / 20, mud % 20), Palette.MUD);
+    t.checkExpect(maze.costAt(mud / 20, mud % 20), TerrainMap.MUD);
+    t.checkExpect(Palette.ground(TerrainMap.WATER), Palette.WATER);
+
+    maze.solve(true);
+    long bfsCost = maze.pathCost();
+    maze.solveShortest(false);
+    long cost = maze.pathCost();
+    int settled = maze.visitedCount();
+    t.checkExpect(cost <= bfsCost, true);
+    maze.solveShortest(true);
+    t.checkExpect(maze.pathCost(), cost);
+    t.checkExpect(maze.visitedCount() <= settled, true);
+
+    // the gradient measures cost, so the start is red and the priciest cells blue
+    maze.colorGradient(maze.nodeAt(0));
+    t.checkExpect(maze.colorAt(0, 0), Palette.GRADIENT_RED);
+    t.checkExpect(maze.colorAt(19, 19), Palette.GRADIENT_BLUE);
+
+    maze.onKeyEvent("m");
+    t.checkExpect(maze.colorAt(mud / 20, mud % 20), Palette.UNVISITED);
+    maze.onKeyEvent("m");
+    t.checkExpect(maze.maxWeight() > 1, true);
+    maze.onKeyEvent("a");
+    t.checkExpect(maze.pathLength() > 0, true);
+
+    Maze hex = new Maze(12, 10, new Random(4), MazeMask.full(12, 10), Topology.HEX);
+    hex.finishConstruction();
+    hex.setTerrain(TerrainMap.random(12, 10, new Random(4), 0.5));
+    hex.solveShortest(false);
+    long hexCost = hex.pathCost();
+    hex.solveShortest(true);
+    t.checkExpect(hex.pathCost(), hexCost);
+
+    String result = new MazeJob("t", "solve", 12, 12, 3, "astar", "full", Topology.SQUARE, 0.5,
+        0.3).run();
+    t.checkExpect(result.contains("\"algorithm\":\"astar\""), true);
+    t.checkExpect(result.contains("\"cost\":"), true);
+    t.checkException(new IllegalArgumentException("terrain must be between 0 and 1"),
+        new MazeJob("x", "solve", 2, 2, 1, true), "fromJson",
+        JsonLine.parse("{\"terrain\":2}"), new Random());
+  }
+
+  // test that a 2000x2000 weighted board is solved well under a second
+  void testTerrainSpeed(Tester t) {
+    CellSearch search = new CellSearch();
+    TerrainMap warmUp = TerrainMap.random(300, 300, new Random(1), 0.3);
+    for (int i = 0; i < 10; i += 1) {
+      search.runShortest(warmUp, 0, 300 * 300 - 1, false);
+    }
+
+    // the best of three runs, so a collection left over from other tests does
+    // not count against the search; the bound guards against a search that is
+    // no longer linear in the board, which would take minutes, and leaves room
+    // for a busy machine
+    TerrainMap board = TerrainMap.random(2000, 2000, new Random(2), 0.3);
+    long millis = Long.MAX_VALUE;
+    boolean found = true;
+    for (int i = 0; i < 3; i += 1) {
+      long start = System.nanoTime();
+      found = found && search.runShortest(board, 0, 2000 * 2000 - 1, false);
+      millis = Math.min(millis, (System.nanoTime() - start) / 1000000);
+    }
+    t.checkExpect(found, true);
+    t.checkExpect(search.expanded() <= 2000 * 2000, true);
+    t.checkExpect(millis < 5000, true);
+  }
+
+
+  // tests opening and closing walls of a finished maze
+  void testMazeMutation(Tester t) {
+    Maze maze = new Maze(15, 15, new Random(21));
+    maze.setBraid(0.3);
+    maze.finishConstruction();
+    maze.setTerrain(TerrainMap.random(15, 15, new Random(21), 0.4));
+    maze.solveShortest(false);
+    t.checkExpect(maze.visitedCount() > 0, true);
+    int passages = maze.passageCount();
+
+    t.checkException(new IllegalArgumentException("cells 0 and 2 are not neighbors"), maze,
+        "openWall", 0, 2);
+    t.checkException(new IllegalArgumentException("cells 0 and -15 are not neighbors"), maze,
+        "closeWall", 0, -15);
+
+    // after every change the repaired field matches one computed from scratch
+    Random rand = new Random(5);
+    DistanceField fresh = new DistanceField();
+    boolean matches = true;
+    for (int i = 0; i < 200; i += 1) {
+      int cell = rand.nextInt(225);
+      int neighbor = rand.nextBoolean() ? cell + 1 : cell + 15;
+      if (neighbor >= 225 || (neighbor == cell + 1 && neighbor % 15 == 0)) {
+        continue;
+      }
+
+      boolean changed;
+      if (rand.nextBoolean()) {
+        changed = maze.openWall(cell, neighbor);
+      }
+      else {
+        changed = maze.closeWall(cell, neighbor);
+      }
+
+      fresh.compute(maze, 0);
+      for (int k = 0; k < 225; k += 1) {
+        matches = matches && maze.distanceTo(k) == fresh.distance(k);
+      }
+      // the path is only repaired when a wall changes, and a repaired path is
+      // still a chain of open passages from the end back to the start
+      if (changed && fresh.distance(224) >= 0) {
+        long cost = 0;
+        for (int k = 0; k < maze.pathLength() - 1; k += 1) {
+          cost += maze.costAt(maze.pathCell(k) / 15, maze.pathCell(k) % 15);
+          matches = matches
+              && maze.wallPlanes().isOpen(maze.pathCell(k), maze.pathCell(k + 1));
+        }
+        matches = matches && cost == fresh.distance(224) && maze.pathCell(0) == 224
+            && maze.pathCell(maze.pathLength() - 1) == 0;
+      }
+      else if (changed) {
+        matches = matches && maze.pathLength() == 0;
+      }
+
+      // the wrong moves recounted after the edit match a count from scratch
+      boolean[] path = new boolean[225];
+      for (int k = 0; k < maze.pathLength(); k += 1) {
+        path[maze.pathCell(k)] = true;
+      }
+      int wrong = 0;
+      for (int k = 0; k < maze.visitedCount(); k += 1) {
+        wrong += path[maze.visitedCell(k)] ? 0 : 1;
+      }
+      maze.seekSearch(maze.visitedCount());
+      matches = matches && maze.wrongMoveCount() == wrong;
+    }
+    t.checkExpect(matches, true);
+
+    // every opened wall is a passage, and passages can be searched
+    t.checkExpect(maze.passageCount() != passages, true);
+    maze.solve(true);
+    t.checkExpect(maze.pathLength() > 0 || maze.distanceTo(224) < 0, true);
+  }
+
+  // tests that a closed or opened wall only reprices the cells it changes
+  void testMutationRepairSize(Tester t) {
+    Maze maze = new Maze(40, 40, new Random(8));
+    maze.finishConstruction();
+    t.checkExpect(maze.distanceTo(0), 0L);
+
+    // cutting off a dead end reprices just that cell
+    int deadEnd = -1;
+    int[] out = new int[Topology.MAX_DEGREE];
+    int[] weights = new int[Topology.MAX_DEGREE];
+    for (int cell = 1; cell < 1600 && deadEnd < 0; cell += 1) {
+      if (cell != 1599 && maze.openNeighbors(cell, out, weights) == 1) {
+        deadEnd = cell;
+      }
+    }
+    maze.openNeighbors(deadEnd, out, weights);
+    int exit = out[0];
+    long distance = maze.distanceTo(deadEnd);
+
+    t.checkExpect(maze.closeWall(exit, deadEnd), true);
+    t.checkExpect(maze.lastRepairSize(), 1);
+    t.checkExpect(maze.distanceTo(deadEnd), -1L);
+    t.checkExpect(maze.closeWall(exit, deadEnd), false);
+    t.checkExpect(maze.passageCount(), 1598);
+
+    t.checkExpect(maze.openWall(deadEnd, exit), true);
+    t.checkExpect(maze.lastRepairSize(), 1);
+    t.checkExpect(maze.distanceTo(deadEnd), distance);
+    t.checkExpect(maze.openWall(deadEnd, exit), false);
+    t.checkExpect(maze.passageCount(), 1599);
+
+    // cutting the solution path leaves the end out of reach until it is reopened
+    maze.solve(true);
+    int length = maze.pathLength();
+    int before = maze.pathCell(length - 2);
+    t.checkExpect(maze.closeWall(0, before), true);
+    t.checkExpect(maze.pathLength(), 0);
+    t.checkExpect(maze.distanceTo(1599), -1L);
+    t.checkExpect(maze.lastRepairSize() < 1600, true);
+    t.checkExpect(maze.openWall(0, before), true);
+    t.checkExpect(maze.pathLength(), length);
+    t.checkExpect(maze.pathCell(length - 2), before);
+  }
+
+
+  // tests for ComponentLabels and the reachability report
+  void testComponentLabels(Tester t) {
+    Maze maze = new Maze(12, 8, new Random(30));
+    maze.finishConstruction();
+    ComponentLabels labels = maze.components();
+    t.checkExpect(labels.componentCount(), 1);
+    t.checkExpect(labels.size(0), 96);
+    t.checkExpect(labels.maxRow(0), 7);
+    t.checkExpect(labels.maxCol(0), 11);
+    t.checkExpect(labels.connected(0, 95), true);
+    t.checkExpect(maze.reachabilityReport(),
+        "1 components, start and end connected\ncomponent 0: 96 cells, rows 0-7, columns 0-11\n");
+
+    // closing a wall on the solution splits the maze in two
+    maze.solve(true);
+    int before = maze.pathCell(maze.pathLength() - 2);
+    maze.closeWall(0, before);
+    labels = maze.components();
+    t.checkExpect(labels.componentCount(), 2);
+    t.checkExpect(labels.size(0) + labels.size(1), 96);
+    t.checkExpect(labels.labelOf(0), 0);
+    t.checkExpect(labels.labelOf(before), 1);
+    t.checkExpect(labels.connected(0, 95), false);
+    t.checkExpect(maze.reachabilityReport().startsWith("2 components, start and end not connected"),
+        true);
+
+    // a search between components gives up without expanding anything
+    maze.solve(false);
+    t.checkExpect(maze.pathLength(), 0);
+    t.checkExpect(maze.visitedCount(), 0);
+    maze.solveShortest(true);
+    t.checkExpect(maze.pathLength(), 0);
+
+    maze.openWall(before, 0);
+    t.checkExpect(maze.components().componentCount(), 1);
+    maze.solve(true);
+    t.checkExpect(maze.pathLength() > 0, true);
+
+    // masked cells belong to no component
+    BitSet active = new BitSet();
+    active.set(0, 3);
+    active.set(6, 9);
+    Maze split = new Maze(3, 3, new Random(2), new MazeMask(3, 3, active));
+    split.finishConstruction();
+    labels = split.components();
+    t.checkExpect(labels.componentCount(), 2);
+    t.checkExpect(labels.labelOf(4), -1);
+    t.checkExpect(labels.minRow(1), 2);
+    t.checkExpect(labels.size(1), 3);
+    t.checkExpect(labels.connected(4, 4), false);
+  }
+
+
+  // tests for MazeStats
+  void testMazeStats(Tester t) {
+    MazeStats stats = new MazeStats();
+    Maze corridor = new Maze(5, 1, new Random(1));
+    corridor.finishConstruction();
+    corridor.analyze(stats);
+    t.checkExpect(stats.cells(), 5);
+    t.checkExpect(stats.passages(), 4);
+    t.checkExpect(stats.deadEnds(), 2);
+    t.checkExpect(stats.junctions(), 0);
+    t.checkExpect(stats.longestCorridor(), 3);
+    t.checkExpect(stats.solutionLength(), 5);
+    t.checkExpect(stats.diameter(), 4);
+    t.checkExpect(stats.horizontal(), 4);
+    t.checkExpect(stats.vertical(), 0);
+    t.checkExpect(stats.riverFactor(), 0.0);
+    t.checkExpect(stats.csvRow(), "5,4,2,0,3,5,4,0.000,4,0,4.000");
+
+    Maze maze = new Maze(25, 25, new Random(14));
+    maze.finishConstruction();
+    maze.analyze(stats);
+    t.checkExpect(stats.passages(), 624);
+    t.checkExpect(stats.deadEnds(), maze.deadEndCount());
+    maze.solve(true);
+    t.checkExpect(stats.solutionLength(), maze.pathLength());
+    t.checkExpect(stats.diameter() >= stats.solutionLength() - 1, true);
+    t.checkExpect(stats.longestCorridor() > 1, true);
+    t.checkExpect(stats.junctions() > 0, true);
+
+    // the bias multipliers skew the corridors the way their names say
+    maze.setBias("horizontal");
+    maze.genNewMaze(25, 25);
+    maze.finishConstruction();
+    maze.analyze(stats);
+    double horizontal = stats.corridorRatio();
+    maze.setBias("vertical");
+    maze.genNewMaze(25, 25);
+    maze.finishConstruction();
+    maze.analyze(stats);
+    t.checkExpect(horizontal > 2, true);
+    t.checkExpect(stats.corridorRatio() < 0.5, true);
+    t.checkException(new IllegalArgumentException("unknown bias diagonal"), maze, "setBias",
+        "diagonal");
+
+    // braided mazes have loops and fewer dead ends
+    maze.setBraid(1);
+    maze.finishConstruction();
+    maze.analyze(stats);
+    t.checkExpect(stats.deadEnds(), 0);
+    t.checkExpect(stats.passages() > 624, true);
+  }
+
+  // tests the headless statistics batch
+  void testMazeStatsBatch(Tester t) throws IOException {
+    StringWriter out = new StringWriter();
+    new MazeStatsBatch(50, 12, "vertical", 0, new Random(3)).run(out);
+    String[] lines = out.toString().split("\n");
+    t.checkExpect(lines.length, 51);
+    t.checkExpect(lines[0], "maze,width,height,bias,braid," + MazeStats.CSV_HEADER);
+    t.checkExpect(lines[1].startsWith("0,12,12,vertical,0.0,144,143,"), true);
+    t.checkExpect(lines[50].split(",").length, 16);
+
+    // a thousand small mazes take at most a couple of seconds
+    new MazeStatsBatch(200, 20, "none", 0, new Random(4)).run(new StringWriter());
+    long start = System.nanoTime();
+    new MazeStatsBatch(1000, 20, "none", 0, new Random(5)).run(new StringWriter());
+    long millis = (System.nanoTime() - start) / 1000000;
+    t.checkExpect(millis < 2000, true);
+  }
+
+
+  // tests for BiasMap
+  void testBiasMap(Tester t) {
+    t.checkExpect(BiasMap.NONE.key(37, true, 0), 37);
+    t.checkExpect(BiasMap.NONE.key(37, false, 0), 37);
+    t.checkExpect(BiasMap.HORIZONTAL.key(37, true, 0), 37);
+    t.checkExpect(BiasMap.HORIZONTAL.key(37, false, 0), 1850);
+    t.checkExpect(BiasMap.VERTICAL.key(37, true, 0), 1850);
+    t.checkExpect(BiasMap.VERTICAL.key(99, false, 0), 99);
+    t.checkExpect(BiasMap.uniform(0.5).key(10, false, 0), 70);
+    t.checkExpect(BiasMap.uniform(-0.5).key(10, true, 0), 70);
+
+    t.checkExpect(BiasMap.NONE.describe(), "none");
+    t.checkExpect(BiasMap.HORIZONTAL.describe(), "horizontal");
+    t.checkExpect(BiasMap.VERTICAL.describe(), "vertical");
+    t.checkExpect(BiasMap.uniform(0.25).describe(), "0.25");
+
+    BiasMap halves = new BiasMap(1, 2, new double[] { 1, -1 });
+    t.checkExpect(halves.describe(), "map");
+    t.checkExpect(halves.regionOf(5, 3, 10, 10), 0);
+    t.checkExpect(halves.regionOf(5, 7, 10, 10), 1);
+    t.checkExpect(halves.biasOf(1), -1.0);
+    t.checkExpect(new BiasMap(2, 2, new double[4]).regionOf(9, 0, 10, 10), 2);
+
+    t.checkConstructorException(new IllegalArgumentException("bias must be between -1 and 1"),
+        "BiasMap", 1, 1, new double[] { 1.5 });
+    t.checkConstructorException(new IllegalArgumentException(
+        "a bias map needs one bias per region"), "BiasMap", 2, 1, new double[] { 0 });
+  }
+
+  // tests that a continuous bias skews the corridors in proportion
+  void testContinuousBias(Tester t) {
+    Maze maze = new Maze(30, 30, new Random(17));
+    MazeStats stats = new MazeStats();
+    double[] biases = new double[] { -1, -0.5, 0, 0.5, 1 };
+    double last = 0;
+    boolean rising = true;
+    for (int k = 0; k < biases.length; k += 1) {
+      maze.setBias(biases[k]);
+      maze.genNewMaze(30, 30);
+      maze.finishConstruction();
+      maze.analyze(stats);
+      rising = rising && stats.corridorRatio() > last;
+      last = stats.corridorRatio();
+    }
+    t.checkExpect(rising, true);
+    t.checkException(new IllegalArgumentException("bias must be between -1 and 1"), maze,
+        "setBias", -2.0);
+
+    // the bias stays until it is changed, and the keys map onto the presets
+    maze.onKeyEvent("h");
+    maze.finishConstruction();
+    t.checkExpect(maze.bias(), "horizontal");
+    maze.onKeyEvent("c");
+    t.checkExpect(maze.bias(), "horizontal");
+    maze.finishConstruction();
+    maze.onKeyEvent("r");
+    t.checkExpect(maze.bias(), "none");
+
+    // each half of a bias map gets its own corridors
+    maze.setMask(MazeMask.full(30, 30));
+    maze.setBiasMap(new BiasMap(1, 2, new double[] { 1, -1 }));
+    maze.genNewMaze(30, 30);
+    maze.finishConstruction();
+    int[] out = new int[Topology.MAX_DEGREE];
+    int[] weights = new int[Topology.MAX_DEGREE];
+    int[] across = new int[2];
+    int[] down = new int[2];
+    for (int cell = 0; cell < 900; cell += 1) {
+      int half = cell % 30 < 15 ? 0 : 1;
+      int count = maze.openNeighbors(cell, out, weights);
+      for (int k = 0; k < count; k += 1) {
+        if (out[k] / 30 == cell / 30) {
+          across[half] += 1;
+        }
+        else {
+          down[half] += 1;
+        }
+      }
+    }
+    t.checkExpect(across[0] > 3 * down[0], true);
+    t.checkExpect(down[1] > 3 * across[1], true);
+    t.checkExpect(maze.bias(), "map");
+  }
+
+
+  // tests for PassageKeys
+  void testPassageKeys(Tester t) {
+    t.checkExpect(PassageKeys.draw(7, 12), PassageKeys.draw(7, 12));
+    boolean inRange = true;
+    boolean varied = false;
+    for (int id = 0; id < 1000; id += 1) {
+      int draw = PassageKeys.draw(3, id);
+      inRange = inRange && draw >= 0 && draw < 100;
+      varied = varied || draw != PassageKeys.draw(4, id);
+    }
+    t.checkExpect(inRange, true);
+    t.checkExpect(varied, true);
+
+    int id = PassageKeys.id(9, 1, -1);
+    t.checkExpect(id, 37);
+    t.checkExpect(PassageKeys.cell(id), 9);
+    t.checkExpect(PassageKeys.rowStep(id), 1);
+    t.checkExpect(PassageKeys.colStep(id), -1);
+    t.checkExpect(PassageKeys.rowStep(PassageKeys.id(9, 0, 1)), 0);
+    t.checkExpect(PassageKeys.colStep(PassageKeys.id(9, 0, 1)), 1);
+
+    // a 3x2 grid has 4 passages within rows and 3 between them
+    PassageKeys keys = new PassageKeys();
+    keys.build(3, 2, 5, BiasMap.NONE, MazeMask.full(3, 2), Topology.SQUARE);
+    t.checkExpect(keys.size(), 7);
+    t.checkExpect(keys.key(0), PassageKeys.draw(5, keys.id(0)));
+    keys.sort();
+    boolean sorted = true;
+    for (int k = 1; k < keys.size(); k += 1) {
+      sorted = sorted && keys.key(k - 1) <= keys.key(k);
+    }
+    t.checkExpect(sorted, true);
+
+    // a vertical bias scales the keys of passages within a row
+    keys.build(3, 2, 5, BiasMap.VERTICAL, MazeMask.full(3, 2), Topology.SQUARE);
+    t.checkExpect(keys.id(1), 0);
+    t.checkExpect(keys.key(1), BiasMap.VERTICAL.key(PassageKeys.draw(5, 0), true, 0));
+
+    // rerunning Kruskal's algorithm rebuilds the same tree from the maze's seed
+    Maze maze = new Maze(30, 30, new Random(8));
+    ArrayList<Edge> tree = new ArrayList<Edge>(maze.findValidPaths());
+    t.checkExpect(tree.size(), 899);
+    t.checkExpect(maze.findValidPaths(), tree);
+  }
+
+
+  // tests for WallPlanes
+  void testWallPlanes(Tester t) {
+    WallPlanes walls = new WallPlanes();
+    walls.reset(5, 4);
+    walls.set(6, 7, true);
+    walls.set(12, 7, true);
+    walls.set(11, 6, true);
+    walls.set(0, 9, true);
+    t.checkExpect(walls.isOpen(7, 6), true);
+    t.checkExpect(walls.isOpen(7, 12), true);
+    t.checkExpect(walls.isOpen(6, 11), true);
+    t.checkExpect(walls.isOpen(6, 12), false);
+    t.checkExpect(walls.bitOf(0, 9), -1);
+    t.checkExpect(walls.bitOf(4, 5), -1);
+    t.checkExpect(walls.bitOf(9, 4), 40 + 4);
+    t.checkExpect(walls.openCount(), 3);
+    // 11, 12 and 7 each have one passage and 6 has two
+    t.checkExpect(walls.deadEndCount(), 2);
+    walls.set(7, 6, false);
+    t.checkExpect(walls.openCount(), 2);
+    t.checkExpect(walls.deadEndCount(), 4);
+
+    // passages with an end outside the mask are closed
+    BitSet active = new BitSet();
+    active.set(0, 20);
+    active.clear(12);
+    walls.retain(new MazeMask(5, 4, active));
+    t.checkExpect(walls.openCount(), 1);
+    t.checkExpect(walls.isOpen(6, 11), true);
+
+    WallPlanes other = new WallPlanes();
+    other.reset(5, 4);
+    other.set(6, 11, true);
+    other.set(18, 19, true);
+    t.checkExpect(walls.diffCount(other), 1);
+    WallPlanes out = new WallPlanes();
+    walls.diff(other, out);
+    t.checkExpect(out.openCount(), 1);
+    t.checkExpect(out.isOpen(18, 19), true);
+    other.reset(4, 5);
+    t.checkException(new IllegalArgumentException("mazes must be the same size"), walls,
+        "diffCount", other);
+
+    // resetting clears the planes, even across sizes and after diagonals
+    walls.reset(64, 3);
+    walls.set(0, 65, true);
+    walls.set(130, 131, true);
+    walls.reset(5, 4);
+    walls.reset(64, 3);
+    t.checkExpect(walls.openCount(), 0);
+    t.checkExpect(walls.deadEndCount(), 0);
+
+    // the bit planes count dead ends like the cells' own openings on every
+    // topology, including boards wider than a word
+    ArrayList<Maze> mazes = new ArrayList<Maze>();
+    mazes.add(new Maze(70, 9, new Random(1)));
+    mazes.add(new Maze(66, 7, new Random(2), MazeMask.circle(66, 7), Topology.HEX));
+    mazes.add(new Maze(65, 8, new Random(3), MazeMask.full(65, 8), Topology.TRIANGLE));
+    mazes.add(new Maze(64, 6, new Random(4)));
+    int[] out8 = new int[Topology.MAX_DEGREE];
+    int[] weights = new int[Topology.MAX_DEGREE];
+    for (Maze maze : mazes) {
+      maze.setBraid(0.3);
+      maze.finishConstruction();
+      int expected = 0;
+      for (int cell = 0; cell < maze.cellCount(); cell += 1) {
+        if (maze.openNeighbors(cell, out8, weights) == 1) {
+          expected += 1;
+        }
+      }
+      t.checkExpect(maze.deadEndCount(), expected);
+      t.checkExpect(maze.wallPlanes().openCount(), maze.passageCount());
+    }
+
+    // two mazes from the same seed differ only in the walls edited since
+    Maze first = new Maze(12, 12, new Random(9));
+    Maze second = new Maze(12, 12, new Random(9));
+    first.finishConstruction();
+    second.finishConstruction();
+    t.checkExpect(first.wallDiff(second), 0);
+    int cell = 0;
+    while (first.wallPlanes().isOpen(cell, cell + 1)) {
+      cell += 1;
+    }
+    int closed = cell + 1;
+    first.openWall(cell, closed);
+    t.checkExpect(first.wallDiff(second), 1);
+    t.checkException(new IllegalArgumentException("mazes must be the same size"), first,
+        "wallDiff", new Maze(3, 3, new Random(1)));
+
+    String report = new WallBenchmark(300, 2, 1, new Random(7)).run();
+    t.checkExpect(report.contains("DISAGREE"), false);
+    t.checkExpect(report.split("agree").length, 4);
+  }
+
+
+  // tests for WallDelta and WallVariant
+  void testWallDelta(Tester t) {
+    WallPlanes base = new WallPlanes();
+    base.reset(10, 8);
+    base.set(0, 1, true);
+    base.set(5, 15, true);
+    base.set(70, 71, true);
+    WallPlanes variant = new WallPlanes();
+    variant.copyFrom(base);
+    t.checkExpect(variant.diffCount(base), 0);
+    variant.set(5, 15, false);
+    variant.set(33, 42, true);
+    variant.set(78, 79, true);
+
+    WallDelta delta = WallDelta.between(base, variant);
+    t.checkExpect(delta.size(), 3);
+    t.checkExpect(delta.flip(0), 78);
+    t.checkExpect(delta.flip(1), 80 + 33);
+    t.checkExpect(delta.flip(2), 160 + 5);
+
+    byte[] bytes = delta.encode();
+    t.checkExpect(bytes.length, 6);
+    WallDelta decoded = WallDelta.decode(bytes);
+    t.checkExpect(decoded.size(), 3);
+    t.checkExpect(decoded.flip(1), delta.flip(1));
+
+    WallPlanes copy = new WallPlanes();
+    copy.copyFrom(base);
+    decoded.applyTo(copy);
+    t.checkExpect(copy.diffCount(variant), 0);
+    decoded.applyTo(copy);
+    t.checkExpect(copy.diffCount(base), 0);
+
+    t.checkException(new IllegalArgumentException("malformed wall delta"), delta, "decode",
+        Arrays.copyOf(bytes, 5));
+    t.checkException(new IllegalArgumentException("malformed wall delta"), delta, "decode",
+        new byte[] { 10, 8, 1, 0, 0 });
+    t.checkException(new IllegalArgumentException("malformed wall delta"), delta, "decode",
+        new byte[] { (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1 });
+    t.checkException(new IllegalArgumentException("flips must be increasing bits of the board"),
+        delta, "decode", new byte[] { 10, 8, 1, (byte) 0x80, 3 });
+    t.checkConstructorException(
+        new IllegalArgumentException("flips must be increasing bits of the board"), "WallDelta",
+        10, 8, new int[] { 4, 4 });
+    WallPlanes other = new WallPlanes();
+    other.reset(8, 10);
+    t.checkException(new IllegalArgumentException("mazes must be the same size"), delta,
+        "applyTo", other);
+
+    // a variant copies only the words it changes
+    WallVariant cow = new WallVariant(base);
+    delta.applyTo(cow);
+    t.checkExpect(cow.copiedWords(), 3);
+    t.checkExpect(cow.isOpen(33, 42), true);
+    t.checkExpect(cow.isOpen(5, 15), false);
+    t.checkExpect(cow.isOpen(0, 1), true);
+    t.checkExpect(base.isOpen(5, 15), true);
+    t.checkExpect(cow.openCount(), 4);
+    t.checkExpect(cow.materialize(new WallPlanes()).diffCount(variant), 0);
+    for (int bit = 0; bit < 320; bit += 3) {
+      cow.flip(bit);
+    }
+    t.checkExpect(cow.copiedWords(), 8);
+    t.checkExpect(cow.openCount(), cow.materialize(new WallPlanes()).openCount());
+
+    // a maze stores its edited variants as small deltas from the same seed
+    Maze original = new Maze(100, 100, new Random(14));
+    Maze edited = new Maze(100, 100, new Random(14));
+    original.finishConstruction();
+    edited.finishConstruction();
+    int edits = 0;
+    for (int cell = 0; cell < 10000 && edits < 10; cell += 997) {
+      if (edited.wallPlanes().isOpen(cell, cell + 100)) {
+        edited.closeWall(cell, cell + 100);
+      }
+      else {
+        edited.openWall(cell, cell + 100);
+      }
+      edits += 1;
+    }
+    WallDelta edits10 = edited.deltaFrom(original);
+    t.checkExpect(edits10.size(), 10);
+    t.checkExpect(edits10.encode().length < 40, true);
+    t.checkExpect(edits10.encode().length * 100 < 4 * 10000 / 8, true);
+
+    Maze replayed = new Maze(100, 100, new Random(14));
+    replayed.finishConstruction();
+    replayed.applyDelta(WallDelta.decode(edits10.encode()));
+    t.checkExpect(replayed.wallDiff(edited), 0);
+    t.checkExpect(replayed.passageCount(), edited.passageCount());
+    t.checkExpect(replayed.distanceTo(9999), edited.distanceTo(9999));
+    t.checkExpect(replayed.pathLength(), edited.pathLength());
+    replayed.applyDelta(edits10);
+    t.checkExpect(replayed.wallDiff(original), 0);
+    t.checkExpect(replayed.distanceTo(9999), original.distanceTo(9999));
+
+    // a delta with a bad flip is rejected before any of its flips are made
+    t.checkException(new IllegalArgumentException("cells 99 and 100 are not neighbors"),
+        replayed, "applyDelta", new WallDelta(100, 100, new int[] { 99 }));
+    t.checkException(new IllegalArgumentException("cells 99 and 100 are not neighbors"),
+        replayed, "applyDelta", new WallDelta(100, 100, new int[] { 0, 99 }));
+    t.checkExpect(replayed.wallDiff(original), 0);
+  }
+
+
+  // tests for Varint
+  void testVarint(Tester t) {
+    byte[] buffer = new byte[Varint.MAX_BYTES * 4];
+    int pos = Varint.put(buffer, 0, 0);
+    pos = Varint.put(buffer, pos, 127);
+    t.checkExpect(pos, 2);
+    pos = Varint.put(buffer, pos, 128);
+    t.checkExpect(pos, 4);
+    pos = Varint.put(buffer, pos, Integer.MAX_VALUE);
+    t.checkExpect(pos, 9);
+
+    int[] at = new int[1];
+    t.checkExpect(Varint.get(buffer, at), 0);
+    t.checkExpect(Varint.get(buffer, at), 127);
+    t.checkExpect(Varint.get(buffer, at), 128);
+    t.checkExpect(Varint.get(buffer, at), Integer.MAX_VALUE);
+    t.checkExpect(at[0], 9);
+    t.checkExpect(Varint.get(buffer, new int[] { 2 }), 128);
+    t.checkExpect(Varint.get(new byte[] { (byte) 0x80 }, new int[1]), -1);
+    Varint.put(buffer, 0, -1);
+    t.checkExpect(Varint.get(buffer, new int[1]), -1);
+
+    t.checkExpect(Varint.zigzag(0), 0);
+    t.checkExpect(Varint.zigzag(-1), 1);
+    t.checkExpect(Varint.zigzag(1), 2);
+    t.checkExpect(Varint.zigzag(-2), 3);
+    t.checkExpect(Varint.unzigzag(Varint.zigzag(-123456)), -123456);
+    t.checkExpect(Varint.unzigzag(Varint.zigzag(Integer.MIN_VALUE / 2)), Integer.MIN_VALUE / 2);
+  }
+
+  // tests for ConstructionLog
+  void testConstructionLog(Tester t) {
+    t.checkConstructorException(new IllegalArgumentException("interval must be positive"),
+        "ConstructionLog", 3, 3, 0);
+
+    // a 3x3 board, logged with a checkpoint every 2 steps
+    ConstructionLog log = new ConstructionLog(3, 3, 2);
+    int[] ids = new int[] { PassageKeys.id(4, 0, 1), PassageKeys.id(0, 1, 0),
+      PassageKeys.id(7, 0, 1), PassageKeys.id(0, 0, 1), PassageKeys.id(2, 1, 0) };
+    for (int id : ids) {
+      log.append(id);
+    }
+    t.checkExpect(log.steps(), 5);
+    t.checkExpect(log.otherCell(ids[1]), 3);
+
+    int[] out = new int[10];
+    t.checkExpect(log.read(0, out), 5);
+    t.checkExpect(Arrays.copyOf(out, 5), ids);
+    t.checkExpect(log.read(3, out), 2);
+    t.checkExpect(out[0], ids[3]);
+    t.checkExpect(log.read(5, out), 0);
+    t.checkExpect(log.read(1, new int[2]), 2);
+    t.checkException(new IllegalArgumentException("step must be between 0 and 5"), log, "read",
+        6, out);
+
+    WallPlanes walls = new WallPlanes();
+    log.seek(3, walls);
+    t.checkExpect(walls.openCount(), 3);
+    t.checkExpect(walls.isOpen(7, 8), true);
+    t.checkExpect(walls.isOpen(0, 1), false);
+    log.seek(5, walls);
+    t.checkExpect(walls.openCount(), 5);
+    t.checkExpect(walls.isOpen(2, 5), true);
+    log.seek(0, walls);
+    t.checkExpect(walls.openCount(), 0);
+    t.checkException(new IllegalArgumentException("step must be between 0 and 5"), log, "seek",
+        -1, walls);
+
+    // a log round-trips through its bytes, checkpoints included
+    byte[] encoded = log.encode();
+    t.checkExpect(encoded.length, 9);
+    ConstructionLog decoded = ConstructionLog.decode(encoded);
+    t.checkExpect(decoded.steps(), 5);
+    t.checkExpect(decoded.read(0, out), 5);
+    t.checkExpect(Arrays.copyOf(out, 5), ids);
+    decoded.seek(3, walls);
+    t.checkExpect(walls.isOpen(7, 8), true);
+    t.checkExpect(walls.openCount(), 3);
+    t.checkExpect(decoded.encode(), encoded);
+    t.checkException(new IllegalArgumentException("malformed construction log"), decoded,
+        "decode", Arrays.copyOf(encoded, 8));
+    t.checkException(new IllegalArgumentException("malformed construction log"), decoded,
+        "decode", Arrays.copyOf(encoded, 10));
+    // the right neighbor of the last cell of a row is not on the board
+    ConstructionLog wrapped = new ConstructionLog(3, 3, 2);
+    wrapped.append(PassageKeys.id(2, 0, 1));
+    t.checkExpect(wrapped.isPassage(PassageKeys.id(2, 0, 1)), false);
+    t.checkException(new IllegalArgumentException("malformed construction log"), decoded,
+        "decode", wrapped.encode());
+
+    // a maze replays its construction from its log without regenerating
+    Maze maze = new Maze(40, 30, new Random(6), MazeMask.circle(40, 30), Topology.HEX);
+    maze.setBraid(0.4);
+    ConstructionLog mazeLog = maze.constructionLog();
+    t.checkExpect(mazeLog.steps() > 0, true);
+    maze.finishConstruction();
+    WallPlanes finished = new WallPlanes();
+    finished.copyFrom(maze.wallPlanes());
+
+    Maze copy = new Maze(40, 30, new Random(99), MazeMask.circle(40, 30), Topology.HEX);
+    copy.finishConstruction();
+    t.checkExpect(copy.wallDiff(maze) > 0, true);
+    copy.replay(mazeLog);
+    t.checkExpect(copy.passageCount(), 0);
+    copy.finishConstruction();
+    t.checkExpect(copy.wallDiff(maze), 0);
+    t.checkExpect(copy.pathLength() > 0, true);
+    copy.replay(ConstructionLog.decode(mazeLog.encode()));
+    copy.finishConstruction();
+    t.checkExpect(copy.wallDiff(maze), 0);
+
+    // seeking the log matches the construction animation at every checkpoint
+    // and in between
+    WallPlanes seeked = new WallPlanes();
+    mazeLog.seek(mazeLog.steps(), seeked);
+    t.checkExpect(seeked.diffCount(finished), 0);
+    copy.replay(mazeLog);
+    for (int i = 0; i < 700; i += 1) {
+      copy.animateStep();
+    }
+    mazeLog.seek(700, seeked);
+    t.checkExpect(seeked.diffCount(copy.wallPlanes()), 0);
+
+    t.checkException(new IllegalArgumentException("mazes must be the same size"), copy,
+        "replay", new ConstructionLog(3, 3, 1));
+    ConstructionLog bad = new ConstructionLog(40, 30, 8);
+    bad.append(PassageKeys.id(0, 0, 1));
+    t.checkException(new IllegalArgumentException("cells 0 and 1 are not neighbors"), copy,
+        "replay", bad);
+
+    // a million-cell maze's replay fits in a few megabytes
+    Maze big = new Maze(1000, 1000, new Random(3));
+    ConstructionLog bigLog = big.constructionLog();
+    t.checkExpect(bigLog.steps(), 999999);
+    t.checkExpect(bigLog.byteSize() < 8000000, true);
+    bigLog.seek(555555, seeked);
+    t.checkExpect(seeked.openCount(), 555555);
+  }
+
+
+  // returns the palette indexes of every cell of the given maze
+  byte[] colorsOf(Maze maze, int width, int height) {
+    byte[] colors = new byte[width * height];
+    for (int row = 0; row < height; row += 1) {
+      for (int col = 0; col < width; col += 1) {
+        colors[row * width + col] = maze.colorAt(row, col);
+      }
+    }
+    return colors;
+  }
+
+  // tests seeking the search animation against playing it forward
+  void testSearchTimeline(Tester t) {
+    Maze played = new Maze(40, 30, new Random(12));
+    played.onKeyEvent("m");
+    played.finishConstruction();
+    played.onKeyEvent("w");
+    Maze sought = new Maze(40, 30, new Random(12));
+    sought.onKeyEvent("m");
+    sought.finishConstruction();
+    sought.onKeyEvent("w");
+    t.checkExpect(sought.canSeekSearch(), true);
+    int length = sought.timelineLength();
+    t.checkExpect(length > 600, true);
+
+    // record the colors and counters at every position while playing forward
+    ArrayList<byte[]> frames = new ArrayList<byte[]>();
+    int[] steps = new int[length + 1];
+    int[] wrong = new int[length + 1];
+    int position = 0;
+    while (position <= length) {
+      if (played.timelinePosition() == position) {
+        frames.add(this.colorsOf(played, 40, 30));
+        steps[position] = played.stepCount();
+        wrong[position] = played.wrongMoveCount();
+        position += 1;
+      }
+      played.animateStep();
+    }
+    t.checkExpect(played.timelinePosition(), length);
+
+    // forward, backward, and long jumps across snapshots all land on the frame
+    int[] targets = new int[] { 5, 4, length, 0, length / 2, length / 2 + 300, 17,
+        length - 1, length / 3 };
+    boolean same = true;
+    for (int k = 0; k < targets.length; k += 1) {
+      sought.seekSearch(targets[k]);
+      same = same && sought.timelinePosition() == targets[k]
+          && Arrays.equals(this.colorsOf(sought, 40, 30), frames.get(targets[k]))
+          && sought.stepCount() == steps[targets[k]]
+          && sought.wrongMoveCount() == wrong[targets[k]];
+    }
+    t.checkExpect(same, true);
+
+    // the animation carries on from a sought position as if played to it
+    sought.seekSearch(length / 4);
+    while (sought.timelinePosition() < length) {
+      sought.animateStep();
+    }
+    t.checkExpect(this.colorsOf(sought, 40, 30), frames.get(length));
+    t.checkExpect(sought.stepCount(), steps[length]);
+    t.checkExpect(sought.wrongMoveCount(), wrong[length]);
+
+    // the keys step and jump through the timeline
+    sought.onKeyEvent(",");
+    t.checkExpect(sought.timelinePosition(), length - 1);
+    sought.onKeyEvent("[");
+    t.checkExpect(sought.timelinePosition(), length - 1 - length / 10);
+    sought.onKeyEvent(".");
+    t.checkExpect(sought.timelinePosition(), length - length / 10);
+    sought.onKeyEvent("]");
+    sought.onKeyEvent("]");
+    t.checkExpect(sought.timelinePosition(), length);
+    t.checkExpect(this.colorsOf(sought, 40, 30), frames.get(length));
+    t.checkException(new IllegalArgumentException("position must be between 0 and " + length),
+        sought, "seekSearch", length + 1);
+
+    // there is nothing to seek in user mode
+    sought.onKeyEvent("u");
+    t.checkExpect(sought.canSeekSearch(), false);
+
+    // snapshots are spaced by the size of the board, not the length of the
+    // search, so a long search on a small board still seeks in a few steps
+    SearchTimeline timeline = new SearchTimeline();
+    ArrayList<Node> repeats = new ArrayList<Node>();
+    for (int k = 0; k < 5000; k += 1) {
+      repeats.add(new Node(k % 4, k % 3));
+    }
+    int[] none = new int[5001];
+    timeline.load(3, 12, repeats, new ArrayList<Node>(), none, new byte[12]);
+    t.checkExpect(timeline.interval(), 256);
+    timeline.load(400, 400000, repeats, new ArrayList<Node>(), none, new byte[400000]);
+    t.checkExpect(timeline.interval(), 100000);
+    byte[] colors = new byte[12];
+    timeline.load(3, 12, repeats, new ArrayList<Node>(), none, new byte[12]);
+    timeline.seek(0, 4999, colors);
+    t.checkExpect(colors[0], Palette.VISITED);
+    t.checkExpect(colors[5], Palette.VISITED);
+  }
+
+
+  // tests for HeapPlane and OffHeapPlane
+  void testBytePlanes(Tester t) throws IOException {
+    BytePlane heap = new HeapPlane(11);
+    BytePlane direct = OffHeapPlane.allocate(11);
+    heap.fill((byte) 5);
+    direct.fill((byte) 5);
+    heap.set(9, (byte) -1);
+    direct.set(9, (byte) -1);
+    t.checkExpect(direct.size(), 11);
+    t.checkExpect(direct.words(), 2);
+    t.checkExpect(heap.words(), 2);
+    t.checkExpect(direct.get(9), (byte) -1);
+    t.checkExpect(direct.get(10), (byte) 5);
+    // words are little-endian, and the bytes past the plane stay 0
+    t.checkExpect(direct.word(0), 0x0505050505050505L);
+    t.checkExpect(direct.word(1), 0x000000000005FF05L);
+    t.checkExpect(heap.word(0), direct.word(0));
+    t.checkExpect(heap.word(1), direct.word(1));
+
+    t.checkConstructorException(
+        new IllegalArgumentException("an off-heap plane needs a direct buffer"),
+        "OffHeapPlane", ByteBuffer.allocate(16), 16);
+    t.checkConstructorException(
+        new IllegalArgumentException("the buffer must hold 11 bytes rounded up to whole words"),
+        "OffHeapPlane", ByteBuffer.allocateDirect(11), 11);
+
+    // a mapped plane keeps its bytes in the file
+    Path file = Files.createTempFile("maze-plane", ".bin");
+    OffHeapPlane mapped = OffHeapPlane.map(file, 11);
+    mapped.set(3, (byte) 7);
+    t.checkExpect(OffHeapPlane.map(file, 11).get(3), (byte) 7);
+    t.checkExpect(Files.size(file), 16L);
+    Files.delete(file);
+  }
+
+  // tests that heap and off-heap volumes generate, solve and render the same
+  void testOffHeapVolume(Tester t) throws IOException {
+    MazeVolume heap = new MazeVolume(9, 7, 4);
+    MazeVolume direct = new MazeVolume(9, 7, 4, OffHeapPlane.allocate(9 * 7 * 4));
+    heap.generate(new Random(3), new IndexUnionFind());
+    direct.generate(new Random(3), new IndexUnionFind());
+    t.checkExpect(direct.passageCount(), 9 * 7 * 4 - 1);
+
+    boolean same = true;
+    for (int cell = 0; cell < heap.cellCount(); cell += 1) {
+      same = same && heap.hasWall(cell, MazeVolume.EAST) == direct.hasWall(cell, MazeVolume.EAST)
+          && heap.hasWall(cell, MazeVolume.SOUTH) == direct.hasWall(cell, MazeVolume.SOUTH)
+          && heap.hasWall(cell, MazeVolume.UP) == direct.hasWall(cell, MazeVolume.UP);
+    }
+    t.checkExpect(same, true);
+
+    CellSearch search = new CellSearch();
+    search.run(heap, 0, heap.cellCount() - 1, true);
+    int length = search.pathLength();
+    search.run(direct, 0, direct.cellCount() - 1, true);
+    t.checkExpect(search.pathLength(), length);
+
+    BytePlane colors = OffHeapPlane.allocate(9 * 7 * 4);
+    colors.fill(Palette.PATH);
+    t.checkExpect(((ComputedPixelImage) direct.renderLevel(2, 10, colors)).getColorAt(5, 5),
+        Palette.color(Palette.PATH));
+    MazeVolumeWorld world = new MazeVolumeWorld(direct, colors, new Random(3));
+    world.onKeyEvent("b");
+    t.checkExpect(colors.get(0), Palette.START);
+    t.checkExpect(world.makeScene() != null, true);
+    t.checkConstructorException(
+        new IllegalArgumentException("the color plane must hold one byte per cell"),
+        "MazeVolumeWorld", direct, new HeapPlane(10), new Random(3));
+    t.checkConstructorException(
+        new IllegalArgumentException("the wall plane must hold one byte per cell"),
+        "MazeVolume", 9, 7, 4, new HeapPlane(10));
+
+    // a volume over a mapped file comes back with its maze
+    Path file = Files.createTempFile("maze-volume", ".bin");
+    MazeVolume saved = new MazeVolume(9, 7, 4, OffHeapPlane.map(file, 9 * 7 * 4));
+    saved.generate(new Random(3), new IndexUnionFind());
+    MazeVolume reopened = new MazeVolume(9, 7, 4, OffHeapPlane.map(file, 9 * 7 * 4));
+    t.checkExpect(reopened.passageCount(), 9 * 7 * 4 - 1);
+    search.run(reopened, 0, reopened.cellCount() - 1, true);
+    t.checkExpect(search.pathLength(), length);
+    Files.delete(file);
+  }
+
+
+  // tests that ParallelDistances finds the same distances as Dijkstra's
+  // algorithm, on pools of one and of several threads
+  void testParallelDistances(Tester t) {
+    Maze maze = new Maze(120, 90, new Random(21), MazeMask.circle(120, 90), Topology.HEX);
+    maze.setBraid(0.5);
+    maze.finishConstruction();
+    maze.setTerrain(TerrainMap.random(120, 90, new Random(22), 0.4));
+    maze.syncOpenings();
+    CellSearch search = new CellSearch();
+    int source = MazeMask.circle(120, 90).activeCell(0);
+    search.runShortest(maze, source, -1, false);
+
+    ForkJoinPool pool = new ForkJoinPool(3);
+    ParallelDistances several = this.priceEveryWay(t, maze, new int[] { source }, 1, pool);
+    int[] distances = several.distances();
+    boolean same = true;
+    for (int cell = 0; cell < 120 * 90; cell += 1) {
+      same = same && distances[cell] == search.distance(cell);
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(distances.length, 120 * 90);
+    t.checkExpect(several.distance(source), 0);
+    t.checkExpect(several.expanded(), search.expanded());
+
+    // a volume's passages all weigh 1, so its distances are breadth-first steps
+    MazeVolume volume = new MazeVolume(30, 30, 8);
+    volume.generate(new Random(4), new IndexUnionFind());
+    several.compute(volume, 0);
+    search.run(volume, volume.cellCount() - 1, 0, true);
+    t.checkExpect(several.distance(volume.cellCount() - 1), search.pathLength() - 1);
+    t.checkExpect(several.expanded(), volume.cellCount());
+    pool.shutdown();
+
+    t.checkException(new IllegalArgumentException("source must be a cell of the graph"),
+        several, "compute", volume, volume.cellCount());
+    t.checkConstructorException(
+        new IllegalArgumentException("a chunk must hold at least one cell"),
+        "ParallelDistances", pool, 0);
+
+    // one worker never splits a level, nor do many unless each can have a
+    // chunk, and then they share it a few chunks each
+    t.checkExpect(ParallelDistances.partsFor(100000, 1, 1), 1);
+    t.checkExpect(ParallelDistances.partsFor(1000, 4, 256), 1);
+    t.checkExpect(ParallelDistances.partsFor(1280, 4, 256), 5);
+    t.checkExpect(ParallelDistances.partsFor(100000, 4, 256), 16);
+    t.checkExpect(ParallelDistances.partsFor(10, 4, 256), 1);
+  }
+
+  // tests that a board's first gradient measures its levels with a Dijkstra
+  // search, that the next is priced in parallel once a level is wide enough to
+  // split across the workers, and that both color every cell alike
+  void testParallelGradient(Tester t) {
+    Maze maze = new Maze(512, 512, new Random(9));
+    maze.setBraid(0.5);
+    maze.finishConstruction();
+    TerrainMap terrain = TerrainMap.random(512, 512, new Random(10), 0.3);
+    maze.setTerrain(terrain);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    // the widest levels of this board hold about 500 cells
+    maze.setGradientPool(pool, 64);
+
+    maze.syncOpenings();
+    CellSearch search = new CellSearch();
+    search.runShortest(maze, 0, 512 * 512 - 1, false);
+    long maxCost = search.pathCost() + terrain.cost(0);
+    search.runShortest(maze, 512 * 512 - 1, -1, false);
+    for (int press = 0; press < 2; press += 1) {
+      maze.onKeyEvent("e");
+      boolean same = true;
+      for (int cell = 0; cell < 512 * 512; cell += 1) {
+        same = same && maze.colorAt(cell / 512, cell % 512)
+            == Palette.gradient(search.distance(cell) + terrain.cost(512 * 512 - 1), maxCost);
+      }
+      t.checkExpect(same, true);
+      t.checkExpect(maze.gradientParts() > 1, press == 1);
+    }
+    pool.shutdown();
+  }
+
+
+  // prices the given graph from the first given number of sources on a single
+  // worker, on the given pool, and on the given pool in chunks of a single cell,
+  // which split every level of more than one cell, checks that all three agree
+  // on every cell and that only the last split a level, and returns the one
+  // priced on the given pool as usual
+  ParallelDistances priceEveryWay(Tester t, CellGraph graph, int[] sources, int count,
+      ForkJoinPool pool) {
+    ForkJoinPool onePool = new ForkJoinPool(1);
+    ParallelDistances single = new ParallelDistances(onePool);
+    ParallelDistances several = new ParallelDistances(pool);
+    ParallelDistances tiny = new ParallelDistances(pool, 1);
+    single.compute(graph, sources, count);
+    several.compute(graph, sources, count);
+    tiny.compute(graph, sources, count);
+    onePool.shutdown();
+
+    boolean same = true;
+    for (int cell = 0; cell < graph.cellCount(); cell += 1) {
+      same = same && single.distance(cell) == several.distance(cell)
+          && tiny.distance(cell) == several.distance(cell)
+          && single.sourceOf(cell) == several.sourceOf(cell)
+          && tiny.sourceOf(cell) == several.sourceOf(cell);
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(single.mostParts(), 1);
+    t.checkExpect(tiny.mostParts() > 1, true);
+    t.checkExpect(tiny.expanded(), several.expanded());
+    return several;
+  }
+
+  // tests that ParallelDistances from several sources gives every cell its
+  // nearest source and the distance to it, as a search from each source would
+  void testMultiSourceDistances(Tester t) {
+    Maze maze = new Maze(80, 60, new Random(31));
+    maze.setBraid(0.5);
+    maze.finishConstruction();
+    maze.setTerrain(TerrainMap.random(80, 60, new Random(32), 0.4));
+    maze.syncOpenings();
+    int[] sources = new int[] { 0, 80 * 60 - 1, 30 * 80 + 40, 0, 17 * 80 + 3 };
+
+    CellSearch search = new CellSearch();
+    long[][] each = new long[sources.length][80 * 60];
+    for (int k = 0; k < sources.length; k += 1) {
+      search.runShortest(maze, sources[k], -1, false);
+      for (int cell = 0; cell < 80 * 60; cell += 1) {
+        each[k][cell] = search.distance(cell);
+      }
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(3);
+    ParallelDistances several = this.priceEveryWay(t, maze, sources, sources.length, pool);
+    int[] nearest = several.sources();
+    boolean same = true;
+    for (int cell = 0; cell < 80 * 60; cell += 1) {
+      int best = -1;
+      for (int k = 0; k < sources.length; k += 1) {
+        if (each[k][cell] >= 0 && (best < 0 || each[k][cell] < each[best][cell])) {
+          best = k;
+        }
+      }
+      same = same && nearest[cell] == best && several.distance(cell) == each[best][cell];
+    }
+    t.checkExpect(same, true);
+    // the first of two equal sources owns their cell
+    t.checkExpect(several.sourceOf(0), 0);
+    t.checkExpect(several.sourceOf(30 * 80 + 40), 2);
+    t.checkExpect(several.distance(17 * 80 + 3), 0);
+
+    // only the first given number of sources count
+    several.compute(maze, sources, 1);
+    t.checkExpect(several.sourceOf(80 * 60 - 1), 0);
+    t.checkExpect(several.distance(80 * 60 - 1), (int) each[0][80 * 60 - 1]);
+    pool.shutdown();
+
+    t.checkException(new IllegalArgumentException("there must be between 1 and 5 sources"),
+        several, "compute", maze, sources, 0);
+    t.checkException(new IllegalArgumentException("sources must be cells of the graph"),
+        several, "compute", maze, new int[] { 3, 80 * 60 }, 2);
+  }
+
+  // tests the gradient and regions views around several sources
+  void testRegions(Tester t) {
+    Maze maze = new Maze(30, 20, new Random(41));
+    maze.finishConstruction();
+    ArrayList<Node> sources = maze.spreadSources(Maze.REGION_SOURCES);
+    t.checkExpect(sources.size(), Maze.REGION_SOURCES);
+    t.checkExpect(sources.get(0).index(30), 0);
+    t.checkExpect(sources.get(Maze.REGION_SOURCES - 1).index(30), 30 * 20 - 1);
+    t.checkExpect(sources.get(1).index(30), 599 / 5);
+
+    maze.onKeyEvent("g");
+    boolean colored = true;
+    int[] sizes = new int[Maze.REGION_SOURCES];
+    for (int cell = 0; cell < 30 * 20; cell += 1) {
+      int source = maze.nearestSource(cell / 30, cell % 30);
+      sizes[source] += 1;
+      byte color = maze.colorAt(cell / 30, cell % 30);
+      colored = colored && (color == Palette.region(source) || color == Palette.END);
+    }
+    t.checkExpect(colored, true);
+    boolean everyRegion = true;
+    for (int k = 0; k < Maze.REGION_SOURCES; k += 1) {
+      int source = sources.get(k).index(30);
+      everyRegion = everyRegion && sizes[k] > 0
+          && maze.colorAt(source / 30, source % 30) == Palette.END
+          && maze.nearestSource(source / 30, source % 30) == k
+          && maze.sourceDistance(source / 30, source % 30) == 0;
+    }
+    t.checkExpect(everyRegion, true);
+    t.checkExpect(Palette.region(Palette.REGION_COUNT + 2), Palette.region(2));
+
+    // the gradient around the two ends is red at both and blue far from either
+    ArrayList<Node> ends = new ArrayList<Node>(Arrays.asList(sources.get(0),
+        sources.get(Maze.REGION_SOURCES - 1)));
+    maze.colorGradient(ends);
+    t.checkExpect(maze.colorAt(0, 0), Palette.GRADIENT_RED);
+    t.checkExpect(maze.colorAt(19, 29), Palette.GRADIENT_RED);
+    int farthest = 0;
+    for (int cell = 0; cell < 30 * 20; cell += 1) {
+      if (maze.sourceDistance(cell / 30, cell % 30)
+          > maze.sourceDistance(farthest / 30, farthest % 30)) {
+        farthest = cell;
+      }
+    }
+    t.checkExpect(maze.colorAt(farthest / 30, farthest % 30), Palette.GRADIENT_BLUE);
+
+    t.checkException(new IllegalArgumentException("there must be at least one source"), maze,
+        "colorRegions", new ArrayList<Node>());
+  }
 }
\ No newline at end of file